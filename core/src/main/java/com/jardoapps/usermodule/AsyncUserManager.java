@@ -0,0 +1,483 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jardoapps.usermodule.containers.SocialAccountDetails;
+import com.jardoapps.usermodule.containers.UserRegistration;
+import com.jardoapps.usermodule.defines.EmailType;
+
+/**
+ * A non-blocking facade of {@link UserManager}. Every method submits the
+ * corresponding {@link UserManager} call to an I/O executor and immediately
+ * returns a {@link Result}, which can be waited for or observed with a
+ * {@link Callback}. The results are exactly the same as those of the
+ * synchronous methods.
+ * <p>
+ * Password hashes are calculated by a separate hashing executor, which should
+ * have about as many threads as there are processors. The I/O executor can
+ * be larger, because its threads mostly wait for the database and the email
+ * sender. The hashing executor is passed to each {@link UserManager} call,
+ * the user manager itself is not modified, so it can be shared with
+ * synchronous callers and other facades.
+ * <p>
+ * The {@link SessionModel} of the decorated manager is accessed from the I/O
+ * threads, so it must not depend on the calling thread.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class AsyncUserManager {
+
+	/**
+	 * Receives the outcome of an asynchronous call. Callbacks are invoked by
+	 * the thread which completed the call, or by the thread registering the
+	 * callback if the call is already complete, so they should be short.
+	 */
+	public interface Callback<T> {
+
+		void onSuccess(T result);
+
+		/**
+		 * Called if the {@link UserManager} method threw an exception, or if the
+		 * call was cancelled.
+		 */
+		void onFailure(Throwable e);
+	}
+
+	/**
+	 * A {@link Future} to which callbacks can be added.
+	 */
+	public static class Result<T> extends FutureTask<T> {
+
+		private final List<Callback<? super T>> callbacks = new ArrayList<Callback<? super T>>();
+
+		private final ReentrantLock lock = new ReentrantLock();
+
+		private boolean completed;
+
+		private void invoke(Callback<? super T> callback) {
+			T result;
+			try {
+				result = get();
+			} catch (ExecutionException e) {
+				callback.onFailure(e.getCause());
+				return;
+			} catch (Exception e) {
+				callback.onFailure(e);
+				return;
+			}
+
+			callback.onSuccess(result);
+		}
+
+		@Override
+		protected void done() {
+			List<Callback<? super T>> toInvoke;
+			lock.lock();
+			try {
+				completed = true;
+				toInvoke = new ArrayList<Callback<? super T>>(callbacks);
+				callbacks.clear();
+			} finally {
+				lock.unlock();
+			}
+
+			for (Callback<? super T> callback : toInvoke) {
+				try {
+					invoke(callback);
+				} catch (RuntimeException e) {
+					LOGGER.error("Asynchronous user manager callback failed.", e);
+				}
+			}
+		}
+
+		/**
+		 * Adds a callback which is invoked when the call completes. If it has
+		 * already completed, the callback is invoked immediately.
+		 *
+		 * @return this result
+		 */
+		public Result<T> addCallback(Callback<? super T> callback) {
+			lock.lock();
+			try {
+				if (!completed) {
+					callbacks.add(callback);
+					return this;
+				}
+			} finally {
+				lock.unlock();
+			}
+
+			invoke(callback);
+			return this;
+		}
+
+		public Result(Callable<T> callable) {
+			super(callable);
+		}
+	}
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(AsyncUserManager.class);
+
+	public static final int DEFAULT_IO_THREADS = 32;
+
+	private final UserManager userManager;
+
+	private final ExecutorService ioExecutor;
+
+	private final ExecutorService hashingExecutor;
+
+	private static ExecutorService createExecutor(int threads, final String namePrefix) {
+		return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+			private final AtomicInteger counter = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, namePrefix + counter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	private <T> Result<T> submit(Callable<T> call) {
+		Result<T> result = new Result<T>(call);
+		ioExecutor.execute(result);
+		return result;
+	}
+
+	/**
+	 * Stops both executors, waiting up to the given time for the running calls
+	 * to complete. The user manager is not affected and can still be used
+	 * synchronously afterwards.
+	 *
+	 * @return true if all calls completed, false if the timeout elapsed
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+		ioExecutor.shutdown();
+		boolean terminated = ioExecutor.awaitTermination(timeout, unit);
+		hashingExecutor.shutdown();
+		return terminated;
+	}
+
+	public UserManager getUserManager() {
+		return userManager;
+	}
+
+	/**
+	 * @see UserManager#cancelPasswordResetTokens(int)
+	 */
+	public Result<ResultCode> cancelPasswordResetTokens(final int userId) {
+		return submit(new Callable<ResultCode>() {
+			@Override
+			public ResultCode call() {
+				return userManager.cancelPasswordResetTokens(userId);
+			}
+		});
+	}
+
+	/**
+	 * @see UserManager#cancelRegistration(int, String)
+	 */
+	public Result<ResultCode> cancelRegistration(final int userId, final String password) {
+		return submit(new Callable<ResultCode>() {
+			@Override
+			public ResultCode call() {
+				return userManager.cancelRegistration(userId, password, hashingExecutor);
+			}
+		});
+	}
+
+	/**
+	 * @see UserManager#changePassword(int, String, String)
+	 */
+	public Result<ResultCode> changePassword(final int userId, final String oldPassword, final String newPassword) {
+		return submit(new Callable<ResultCode>() {
+			@Override
+			public ResultCode call() {
+				return userManager.changePassword(userId, oldPassword, newPassword, hashingExecutor);
+			}
+		});
+	}
+
+	/**
+	 * @see UserManager#confirmManualRegistration(String, String, String)
+	 */
+	public Result<ResultCode> confirmManualRegistration(final String email, final String registrationControlCode, final String password) {
+		return submit(new Callable<ResultCode>() {
+			@Override
+			public ResultCode call() {
+				return userManager.confirmManualRegistration(email, registrationControlCode, password, hashingExecutor);
+			}
+		});
+	}
+
+	/**
+	 * @see UserManager#confirmRegistration(String, String)
+	 */
+	public Result<ResultCode> confirmRegistration(final String email, final String registrationControlCode) {
+		return submit(new Callable<ResultCode>() {
+			@Override
+			public ResultCode call() {
+				return userManager.confirmRegistration(email, registrationControlCode);
+			}
+		});
+	}
+
+	/**
+	 * @see UserManager#createPasswordResetToken(String)
+	 */
+	public Result<ResultCode> createPasswordResetToken(final String email) {
+		return submit(new Callable<ResultCode>() {
+			@Override
+			public ResultCode call() {
+				return userManager.createPasswordResetToken(email);
+			}
+		});
+	}
+
+	/**
+	 * @see UserManager#getRegisteredUserCount(Date)
+	 */
+	public Result<Integer> getRegisteredUserCount(final Date since) {
+		return submit(new Callable<Integer>() {
+			@Override
+			public Integer call() {
+				return userManager.getRegisteredUserCount(since);
+			}
+		});
+	}
+
+	/**
+	 * @see UserManager#getUsersByEmails(Collection)
+	 */
+	public Result<Map<String, User>> getUsersByEmails(final Collection<String> emails) {
+		return submit(new Callable<Map<String, User>>() {
+			@Override
+			public Map<String, User> call() {
+				return userManager.getUsersByEmails(emails);
+			}
+		});
+	}
+
+	/**
+	 * @see UserManager#getUsersByIds(Collection)
+	 */
+	public Result<Map<Integer, User>> getUsersByIds(final Collection<Integer> userIds) {
+		return submit(new Callable<Map<Integer, User>>() {
+			@Override
+			public Map<Integer, User> call() {
+				return userManager.getUsersByIds(userIds);
+			}
+		});
+	}
+
+	/**
+	 * @see UserManager#isPasswordResetTokenValid(String, String)
+	 */
+	public Result<Boolean> isPasswordResetTokenValid(final String email, final String tokenKey) {
+		return submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return userManager.isPasswordResetTokenValid(email, tokenKey);
+			}
+		});
+	}
+
+	/**
+	 * @see UserManager#isPasswordValid(int, String)
+	 */
+	public Result<Boolean> isPasswordValid(final int userId, final String password) {
+		return submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return userManager.isPasswordValid(userId, password, hashingExecutor);
+			}
+		});
+	}
+
+	/**
+	 * @see UserManager#logIn(String, String, String)
+	 */
+	public Result<ResultCode> logIn(final String userNameOrEmail, final String password, final String usersIp) {
+		return submit(new Callable<ResultCode>() {
+			@Override
+			public ResultCode call() {
+				return userManager.logIn(userNameOrEmail, password, usersIp, hashingExecutor);
+			}
+		});
+	}
+
+	/**
+	 * @see UserManager#loginOrRegisterWithSocialAccount(SocialAccountDetails,
+	 *      String)
+	 */
+	public Result<User> loginOrRegisterWithSocialAccount(final SocialAccountDetails details, final String usersIp) {
+		return submit(new Callable<User>() {
+			@Override
+			public User call() {
+				return userManager.loginOrRegisterWithSocialAccount(details, usersIp);
+			}
+		});
+	}
+
+	/**
+	 * @see UserManager#logInWithoutPassword(String)
+	 */
+	public Result<ResultCode> logInWithoutPassword(final String userNameOrEmail) {
+		return submit(new Callable<ResultCode>() {
+			@Override
+			public ResultCode call() {
+				return userManager.logInWithoutPassword(userNameOrEmail);
+			}
+		});
+	}
+
+	/**
+	 * @see UserManager#registerUser(String, String, String, boolean)
+	 */
+	public Result<ResultCode> registerUser(final String email, final String name, final String password, final boolean registrationConfirmed) {
+		return submit(new Callable<ResultCode>() {
+			@Override
+			public ResultCode call() {
+				return userManager.registerUser(email, name, password, registrationConfirmed, hashingExecutor);
+			}
+		});
+	}
+
+	/**
+	 * @see UserManager#registerUserManually(String, String, int)
+	 */
+	public Result<ResultCode> registerUserManually(final String email, final String name, final int rank) {
+		return submit(new Callable<ResultCode>() {
+			@Override
+			public ResultCode call() {
+				return userManager.registerUserManually(email, name, rank);
+			}
+		});
+	}
+
+	/**
+	 * The listener is called from an I/O thread.
+	 *
+	 * @see UserManager#registerUsers(Iterable, UserManager.RegistrationListener)
+	 */
+	public Result<Integer> registerUsers(final Iterable<UserRegistration> registrations, final UserManager.RegistrationListener listener) {
+		return submit(new Callable<Integer>() {
+			@Override
+			public Integer call() {
+				return userManager.registerUsers(registrations, listener);
+			}
+		});
+	}
+
+	/**
+	 * @see UserManager#resendRegistrationEmail(String)
+	 */
+	public Result<ResultCode> resendRegistrationEmail(final String address) {
+		return submit(new Callable<ResultCode>() {
+			@Override
+			public ResultCode call() {
+				return userManager.resendRegistrationEmail(address);
+			}
+		});
+	}
+
+	/**
+	 * @see UserManager#resetPassword(String, String, String)
+	 */
+	public Result<ResultCode> resetPassword(final String userEmail, final String tokenKey, final String newPassword) {
+		return submit(new Callable<ResultCode>() {
+			@Override
+			public ResultCode call() {
+				return userManager.resetPassword(userEmail, tokenKey, newPassword, hashingExecutor);
+			}
+		});
+	}
+
+	/**
+	 * @see UserManager#sendTestingEmail(EmailType, String)
+	 */
+	public Result<Boolean> sendTestingEmail(final EmailType emailType, final String address) {
+		return submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return userManager.sendTestingEmail(emailType, address);
+			}
+		});
+	}
+
+	/**
+	 * Creates a facade with {@link #DEFAULT_IO_THREADS} I/O threads and one
+	 * hashing thread per available processor.
+	 *
+	 * @param userManager
+	 *            user manager whose methods are called
+	 */
+	public AsyncUserManager(UserManager userManager) {
+		this(userManager, createExecutor(DEFAULT_IO_THREADS, "usermodule-io-"),
+				createExecutor(Runtime.getRuntime().availableProcessors(), "usermodule-hashing-"));
+	}
+
+	/**
+	 * @param userManager
+	 *            user manager whose methods are called
+	 * @param ioExecutor
+	 *            executor calling the {@link UserManager} methods
+	 * @param hashingExecutor
+	 *            executor calculating password hashes, must be different from
+	 *            the I/O executor
+	 */
+	public AsyncUserManager(UserManager userManager, ExecutorService ioExecutor, ExecutorService hashingExecutor) {
+		if (userManager == null || ioExecutor == null || hashingExecutor == null) {
+			throw new IllegalArgumentException("User manager and executors cannot be null.");
+		}
+		if (ioExecutor == hashingExecutor) {
+			throw new IllegalArgumentException("I/O and hashing executors must be different.");
+		}
+
+		this.userManager = userManager;
+		this.ioExecutor = ioExecutor;
+		this.hashingExecutor = hashingExecutor;
+	}
+
+}
@@ -0,0 +1,91 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.List;
+
+import com.jardoapps.usermodule.containers.OutboxEmail;
+
+/**
+ * This interface is used by {@link EmailSenderOutboxImpl} to store emails
+ * which are waiting to be sent.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public interface EmailOutboxModel extends Serializable {
+
+	/**
+	 * Stores a new email in the outbox. The id of the passed email is ignored.
+	 * The email must be stored durably before this method returns.
+	 *
+	 * @return id of the stored email, or a negative number on failure
+	 */
+	long addEmail(OutboxEmail email);
+
+	/**
+	 * Moves the next attempt time of the given email, increments its attempt
+	 * counter, but only if the counter still has the expected value. This is
+	 * used to claim an email before sending it, so that it is not sent twice
+	 * if several dispatchers share the outbox.
+	 *
+	 * @param emailId
+	 *            id of the email
+	 * @param expectedAttempts
+	 *            number of attempts the email is expected to have
+	 * @param nextAttemptTime
+	 *            new next attempt time
+	 * @return true if the email was claimed, false if it does not exist or was
+	 *         claimed by somebody else
+	 */
+	boolean claimEmail(long emailId, int expectedAttempts, Date nextAttemptTime);
+
+	/**
+	 * Returns the number of emails in the outbox.
+	 */
+	int getEmailCount();
+
+	/**
+	 * Returns emails whose next attempt time is not after the given time,
+	 * ordered by the next attempt time.
+	 *
+	 * @param now
+	 *            current time
+	 * @param maxResults
+	 *            maximal number of returned emails
+	 */
+	List<OutboxEmail> getDueEmails(Date now, int maxResults);
+
+	/**
+	 * Returns the creation time of the oldest email in the outbox, or null if
+	 * the outbox is empty.
+	 */
+	Date getOldestEmailCreationTime();
+
+	/**
+	 * Removes the given email from the outbox.
+	 *
+	 * @return true if the email was removed, false if it does not exist
+	 */
+	boolean removeEmail(long emailId);
+
+}
@@ -0,0 +1,447 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jardoapps.usermodule.containers.OutboxEmail;
+import com.jardoapps.usermodule.defines.EmailType;
+
+/**
+ * An {@link EmailSender} implementation which does not send emails right
+ * away, but stores them in an {@link EmailOutboxModel} and returns as soon as
+ * they are stored. A background thread sends the stored emails in batches via
+ * the decorated email sender. It is woken up by every new email, and also
+ * polls the outbox periodically.
+ * <p>
+ * An email which fails to be sent is retried with exponential backoff, until
+ * the maximal number of attempts is reached. Then it is removed from the
+ * outbox and an error is logged. Before each attempt, the email is claimed
+ * in the outbox by moving its next attempt time, so several application
+ * instances can share one outbox, and an attempt interrupted by a crash is
+ * retried after the backoff.
+ * <p>
+ * If the {@link UserManager} calls are wrapped in a transaction and the
+ * outbox model joins it (like the JPA implementation does), the email is
+ * stored in the same transaction as the user or the password reset token it
+ * belongs to. The background thread cannot see the email before the commit,
+ * so an {@link #setAfterCommitExecutor(Executor) after commit executor}
+ * should be set, otherwise the email waits for the next poll.
+ * <p>
+ * Method {@link #shutdown()} should be called when the application stops.
+ * Emails left in the outbox are sent after the next start.
+ * <p>
+ * The background thread is started by the constructor, but not after
+ * deserialization, so that copies of the sender held by a serialized
+ * {@link UserManager} (for instance in passivated or replicated sessions) do
+ * not poll the outbox forever. A deserialized sender only stores the emails
+ * in the outbox, where the started sender finds them, unless {@link #start()}
+ * is called.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class EmailSenderOutboxImpl implements EmailSender {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(EmailSenderOutboxImpl.class);
+
+	public static final int DEFAULT_BATCH_SIZE = 50;
+
+	public static final long DEFAULT_POLL_INTERVAL_MILLIS = 5000L;
+
+	public static final int DEFAULT_MAX_ATTEMPTS = 10;
+
+	public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 10000L;
+
+	public static final long MAX_BACKOFF_MILLIS = 3600000L;
+
+	private final EmailSender delegate;
+
+	private final EmailOutboxModel outboxModel;
+
+	private final int batchSize;
+
+	private final long pollIntervalMillis;
+
+	private final int maxAttempts;
+
+	private final long initialBackoffMillis;
+
+	private transient volatile ScheduledExecutorService executor;
+
+	private transient AtomicBoolean started;
+
+	private transient Runnable dispatchTask;
+
+	private transient Runnable dispatchRequestTask;
+
+	private transient volatile Executor afterCommitExecutor;
+
+	private transient AtomicBoolean dispatchRequested;
+
+	private transient AtomicLong sentEmails;
+
+	private transient AtomicLong failedAttempts;
+
+	private transient AtomicLong droppedEmails;
+
+	private static ScheduledExecutorService createExecutor() {
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "usermodule-email-dispatcher");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+		return executor;
+	}
+
+	private void init() {
+		dispatchRequested = new AtomicBoolean();
+		sentEmails = new AtomicLong();
+		failedAttempts = new AtomicLong();
+		droppedEmails = new AtomicLong();
+
+		dispatchTask = new Runnable() {
+			@Override
+			public void run() {
+				dispatchRequested.set(false);
+				try {
+					dispatch();
+				} catch (RuntimeException e) {
+					LOGGER.error("DB error: Failed to dispatch emails from the outbox.", e);
+				}
+			}
+		};
+
+		dispatchRequestTask = new Runnable() {
+			@Override
+			public void run() {
+				requestDispatch();
+			}
+		};
+
+		started = new AtomicBoolean();
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		init();
+	}
+
+	private void requestDispatch() {
+		ScheduledExecutorService executor = this.executor;
+		if (executor != null && dispatchRequested.compareAndSet(false, true)) {
+			try {
+				executor.execute(dispatchTask);
+			} catch (RuntimeException e) {
+				// executor has been shut down, the email will be sent after the next start
+				dispatchRequested.set(false);
+			}
+		}
+	}
+
+	private long getBackoffMillis(int attempts) {
+		long backoff = initialBackoffMillis;
+		for (int i = 1; i < attempts && backoff < MAX_BACKOFF_MILLIS; i++) {
+			backoff *= 2;
+		}
+		return Math.min(backoff, MAX_BACKOFF_MILLIS);
+	}
+
+	private boolean store(EmailType type, String email, String userName, int userId, String code, User registrator) {
+		Date now = new Date();
+		OutboxEmail outboxEmail = new OutboxEmail(0, type, email, userName, userId, code, registrator, now, 0, now);
+
+		long id = outboxModel.addEmail(outboxEmail);
+		if (id < 0) {
+			LOGGER.error("DB error: Failed to store {} email for {} in the outbox.", type, email);
+			return false;
+		}
+
+		Executor afterCommitExecutor = this.afterCommitExecutor;
+		if (afterCommitExecutor != null) {
+			afterCommitExecutor.execute(dispatchRequestTask);
+		} else {
+			requestDispatch();
+		}
+		return true;
+	}
+
+	private boolean send(OutboxEmail email) {
+		try {
+			switch (email.getType()) {
+				case REGISTRATION:
+					return delegate.sendRegistrationEmail(email.getEmail(), email.getUserName(), email.getUserId(), email.getCode());
+				case MANUAL_REGISTRATION:
+					return delegate.sendManualRegistrationEmail(email.getEmail(), email.getUserName(), email.getUserId(), email.getCode(),
+							email.getRegistrator());
+				case LOST_PASSWORD:
+					return delegate.sendLostPasswordEmail(email.getEmail(), email.getCode());
+				default:
+					return false;
+			}
+		} catch (RuntimeException e) {
+			LOGGER.warn("Email error: Failed to send " + email.getType() + " email with id=" + email.getId() + ".", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Tries to send one claimed email and removes it from the outbox if it was
+	 * sent or if it has no attempts left.
+	 */
+	private void attempt(OutboxEmail email, int attempts) {
+		if (send(email)) {
+			sentEmails.incrementAndGet();
+			if (!outboxModel.removeEmail(email.getId())) {
+				LOGGER.warn("DB error: Failed to remove sent email with id={} from the outbox.", email.getId());
+			}
+			return;
+		}
+
+		failedAttempts.incrementAndGet();
+
+		if (attempts >= maxAttempts) {
+			LOGGER.error("Email error: Failed to send {} email to {} in {} attempts, giving up.", email.getType(), email.getEmail(), attempts);
+			droppedEmails.incrementAndGet();
+			outboxModel.removeEmail(email.getId());
+		}
+	}
+
+	/**
+	 * Sends all emails which are due, in batches. This method is called
+	 * automatically by the background thread, but it can also be called
+	 * manually.
+	 *
+	 * @return number of emails which were attempted to be sent
+	 */
+	public int dispatch() {
+		int total = 0;
+
+		while (true) {
+			Date now = new Date();
+			List<OutboxEmail> batch = outboxModel.getDueEmails(now, batchSize);
+
+			int claimed = 0;
+			for (OutboxEmail email : batch) {
+				int attempts = email.getAttempts() + 1;
+				Date nextAttemptTime = new Date(now.getTime() + getBackoffMillis(attempts));
+
+				if (outboxModel.claimEmail(email.getId(), email.getAttempts(), nextAttemptTime)) {
+					attempt(email, attempts);
+					claimed++;
+				}
+			}
+
+			total += claimed;
+
+			// claimed emails are not due anymore, so the next batch contains different emails
+			if (batch.size() < batchSize || claimed == 0) {
+				return total;
+			}
+		}
+	}
+
+	/**
+	 * Starts the background thread. It is started by the constructor, so this
+	 * method only needs to be called on a deserialized sender.
+	 *
+	 * @throws IllegalStateException
+	 *             if the background thread has already been started
+	 */
+	public void start() {
+		if (!started.compareAndSet(false, true)) {
+			throw new IllegalStateException("Background thread has already been started.");
+		}
+
+		ScheduledExecutorService executor = createExecutor();
+		executor.scheduleWithFixedDelay(dispatchTask, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+		this.executor = executor;
+	}
+
+	/**
+	 * Returns true if the background thread has been started and not shut
+	 * down yet.
+	 */
+	public boolean isRunning() {
+		ScheduledExecutorService executor = this.executor;
+		return executor != null && !executor.isShutdown();
+	}
+
+	/**
+	 * Stops the background thread and waits for the current dispatch to
+	 * finish.
+	 *
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the background thread to
+	 *             finish
+	 */
+	public void shutdown() throws InterruptedException {
+		ScheduledExecutorService executor = this.executor;
+		if (executor != null) {
+			executor.shutdown();
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		}
+	}
+
+	/**
+	 * Sets the executor which wakes up the background thread after a new
+	 * email is stored. It should run the task after the current transaction
+	 * commits, or right away if there is no transaction, and drop it if the
+	 * transaction rolls back. With Spring, for instance, it can register a
+	 * <code>TransactionSynchronization</code> whose <code>afterCommit</code>
+	 * method runs the task. By default (or if null is set), the background
+	 * thread is woken up right after the email is stored, which is correct
+	 * only if the {@link UserManager} calls are not wrapped in transactions.
+	 * <p>
+	 * The executor is not serialized.
+	 *
+	 * @param afterCommitExecutor
+	 *            executor to use, or null
+	 */
+	public void setAfterCommitExecutor(Executor afterCommitExecutor) {
+		this.afterCommitExecutor = afterCommitExecutor;
+	}
+
+	/**
+	 * Returns the number of emails waiting in the outbox.
+	 */
+	public int getBacklog() {
+		return outboxModel.getEmailCount();
+	}
+
+	/**
+	 * Returns the age of the oldest email waiting in the outbox, in
+	 * milliseconds, or 0 if the outbox is empty.
+	 */
+	public long getLagMillis() {
+		Date oldest = outboxModel.getOldestEmailCreationTime();
+		if (oldest == null) {
+			return 0;
+		}
+		return Math.max(0, System.currentTimeMillis() - oldest.getTime());
+	}
+
+	/**
+	 * Returns the number of emails which have been sent.
+	 */
+	public long getSentEmailCount() {
+		return sentEmails.get();
+	}
+
+	/**
+	 * Returns the number of failed attempts to send an email.
+	 */
+	public long getFailedAttemptCount() {
+		return failedAttempts.get();
+	}
+
+	/**
+	 * Returns the number of emails which were given up after the maximal
+	 * number of attempts.
+	 */
+	public long getDroppedEmailCount() {
+		return droppedEmails.get();
+	}
+
+	@Override
+	public boolean sendLostPasswordEmail(String email, String tokenKey) {
+		return store(EmailType.LOST_PASSWORD, email, null, 0, tokenKey, null);
+	}
+
+	@Override
+	public boolean sendManualRegistrationEmail(String email, String userName, int userId, String registrationControlCode, User registrator) {
+		return store(EmailType.MANUAL_REGISTRATION, email, userName, userId, registrationControlCode, registrator);
+	}
+
+	@Override
+	public boolean sendRegistrationEmail(String email, String userName, int userId, String registrationControlCode) {
+		return store(EmailType.REGISTRATION, email, userName, userId, registrationControlCode, null);
+	}
+
+	/**
+	 * Creates an outbox with {@link #DEFAULT_BATCH_SIZE default batch size},
+	 * {@link #DEFAULT_POLL_INTERVAL_MILLIS default poll interval},
+	 * {@link #DEFAULT_MAX_ATTEMPTS default maximal number of attempts} and
+	 * {@link #DEFAULT_INITIAL_BACKOFF_MILLIS default initial backoff}.
+	 *
+	 * @param delegate
+	 *            email sender which sends the emails
+	 * @param outboxModel
+	 *            storage of the waiting emails
+	 */
+	public EmailSenderOutboxImpl(EmailSender delegate, EmailOutboxModel outboxModel) {
+		this(delegate, outboxModel, DEFAULT_BATCH_SIZE, DEFAULT_POLL_INTERVAL_MILLIS, DEFAULT_MAX_ATTEMPTS, DEFAULT_INITIAL_BACKOFF_MILLIS);
+	}
+
+	/**
+	 * @param delegate
+	 *            email sender which sends the emails
+	 * @param outboxModel
+	 *            storage of the waiting emails
+	 * @param batchSize
+	 *            maximal number of emails read from the outbox at once
+	 * @param pollIntervalMillis
+	 *            maximal time between two checks of the outbox
+	 * @param maxAttempts
+	 *            maximal number of attempts to send one email
+	 * @param initialBackoffMillis
+	 *            delay after the first failed attempt, doubled after every
+	 *            next one up to {@link #MAX_BACKOFF_MILLIS}
+	 */
+	public EmailSenderOutboxImpl(EmailSender delegate, EmailOutboxModel outboxModel, int batchSize, long pollIntervalMillis, int maxAttempts,
+			long initialBackoffMillis) {
+		if (delegate == null || outboxModel == null) {
+			throw new IllegalArgumentException("Email sender and outbox model cannot be null.");
+		}
+		if (batchSize < 1 || pollIntervalMillis < 1 || maxAttempts < 1 || initialBackoffMillis < 1) {
+			throw new IllegalArgumentException("Batch size, poll interval, attempts and backoff must be positive.");
+		}
+
+		this.delegate = delegate;
+		this.outboxModel = outboxModel;
+		this.batchSize = batchSize;
+		this.pollIntervalMillis = pollIntervalMillis;
+		this.maxAttempts = maxAttempts;
+		this.initialBackoffMillis = initialBackoffMillis;
+
+		init();
+		start();
+	}
+
+}
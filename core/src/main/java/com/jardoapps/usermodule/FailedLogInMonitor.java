@@ -0,0 +1,246 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.jardoapps.usermodule.utils.CountMinSketch;
+import com.jardoapps.usermodule.utils.SpaceSaving;
+
+/**
+ * Counts failed log in attempts (attempts with an invalid password) per IP
+ * address in constant memory, so that it keeps working during distributed
+ * attacks from millions of addresses. It is fed by
+ * {@link UserManager#logIn(String, String, String)} if set by
+ * {@link UserManager#setFailedLogInMonitor(FailedLogInMonitor)}.
+ * <p>
+ * The number of failures of any IP address is estimated by a
+ * {@link CountMinSketch}, which never underestimates. The addresses with the
+ * most failures are tracked by {@link SpaceSaving}, split into stripes by the
+ * hash of the address, each of which tracks its share of the top addresses.
+ * Since an address whose estimate is below a threshold certainly has fewer
+ * failures than the threshold, {@link #isSuspicious(String)} can be used as a
+ * cheap pre-filter, see {@link LogInRateLimiter#setIpPreFilter(FailedLogInMonitor)}.
+ * <p>
+ * The counts grow until {@link #reset()} is called, which should be done
+ * periodically to only consider recent failures.
+ * <p>
+ * This class is thread safe. The sketch is lock-free, only each stripe of the
+ * top addresses is guarded by its own {@link ReentrantLock}, so failures from
+ * different addresses rarely wait for each other, and threads which do wait
+ * do not block on a monitor.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class FailedLogInMonitor implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final int DEFAULT_SKETCH_WIDTH = 8192;
+
+	public static final int DEFAULT_SKETCH_DEPTH = 4;
+
+	public static final int DEFAULT_TOP_CAPACITY = 100;
+
+	/**
+	 * Maximal number of stripes of the top addresses.
+	 */
+	public static final int MAX_TOP_STRIPES = 16;
+
+	private final int sketchWidth;
+
+	private final int sketchDepth;
+
+	private final int topCapacity;
+
+	private final int suspiciousThreshold;
+
+	private transient CountMinSketch sketch;
+
+	private transient SpaceSaving[] tops;
+
+	private transient ReentrantLock[] locks;
+
+	private transient int mask;
+
+	private static int powerOfTwoAtMost(int value) {
+		return Integer.highestOneBit(Math.max(1, value));
+	}
+
+	private void init() {
+		sketch = new CountMinSketch(sketchWidth, sketchDepth);
+
+		// every stripe tracks its share of the top addresses, rounded up
+		int stripeCount = powerOfTwoAtMost(Math.min(MAX_TOP_STRIPES, topCapacity));
+		int stripeCapacity = (topCapacity + stripeCount - 1) / stripeCount;
+
+		tops = new SpaceSaving[stripeCount];
+		locks = new ReentrantLock[stripeCount];
+		mask = stripeCount - 1;
+
+		for (int i = 0; i < stripeCount; i++) {
+			tops[i] = new SpaceSaving(stripeCapacity);
+			locks[i] = new ReentrantLock();
+		}
+	}
+
+	private int getStripe(String usersIp) {
+		int hash = usersIp.hashCode();
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		init();
+	}
+
+	/**
+	 * Records a failed log in attempt from the given ip address.
+	 *
+	 * @param usersIp
+	 *            ip address, null is ignored
+	 */
+	public void recordFailure(String usersIp) {
+		if (usersIp == null) {
+			return;
+		}
+
+		sketch.add(usersIp);
+
+		int stripe = getStripe(usersIp);
+		locks[stripe].lock();
+		try {
+			tops[stripe].add(usersIp);
+		} finally {
+			locks[stripe].unlock();
+		}
+	}
+
+	/**
+	 * Returns the approximate number of failed log in attempts from the given
+	 * ip address. It is never lower than the real number.
+	 */
+	public int getFailureCount(String usersIp) {
+		return sketch.estimateCount(usersIp);
+	}
+
+	/**
+	 * Returns true if the approximate number of failed log in attempts from
+	 * the given ip address has reached the suspicious threshold. If false is
+	 * returned, the real number is certainly below the threshold.
+	 */
+	public boolean isSuspicious(String usersIp) {
+		return sketch.estimateCount(usersIp) >= suspiciousThreshold;
+	}
+
+	/**
+	 * Returns up to <code>n</code> ip addresses with the most failed log in
+	 * attempts, the worst first. Each entry's count may be higher than the
+	 * real number by at most its error. The top addresses of all stripes are
+	 * merged, each stripe being locked only while it is read.
+	 */
+	public List<SpaceSaving.Entry> getTopIps(int n) {
+		List<SpaceSaving.Entry> result = new ArrayList<SpaceSaving.Entry>();
+		for (int i = 0; i < tops.length; i++) {
+			locks[i].lock();
+			try {
+				result.addAll(tops[i].getTop(n));
+			} finally {
+				locks[i].unlock();
+			}
+		}
+
+		Collections.sort(result, new Comparator<SpaceSaving.Entry>() {
+			@Override
+			public int compare(SpaceSaving.Entry e1, SpaceSaving.Entry e2) {
+				return Long.compare(e2.getCount(), e1.getCount());
+			}
+		});
+
+		return n < result.size() ? new ArrayList<SpaceSaving.Entry>(result.subList(0, n)) : result;
+	}
+
+	/**
+	 * Returns the total number of recorded failures.
+	 */
+	public long getTotalFailureCount() {
+		return sketch.getTotalCount();
+	}
+
+	/**
+	 * Forgets all recorded failures.
+	 */
+	public void reset() {
+		sketch.clear();
+		for (int i = 0; i < tops.length; i++) {
+			locks[i].lock();
+			try {
+				tops[i].clear();
+			} finally {
+				locks[i].unlock();
+			}
+		}
+	}
+
+	/**
+	 * Creates a monitor with a {@link #DEFAULT_SKETCH_WIDTH} x
+	 * {@link #DEFAULT_SKETCH_DEPTH} sketch (128 kB) which tracks
+	 * {@link #DEFAULT_TOP_CAPACITY} top addresses.
+	 *
+	 * @param suspiciousThreshold
+	 *            number of failures from which an ip address is considered
+	 *            suspicious
+	 */
+	public FailedLogInMonitor(int suspiciousThreshold) {
+		this(DEFAULT_SKETCH_WIDTH, DEFAULT_SKETCH_DEPTH, DEFAULT_TOP_CAPACITY, suspiciousThreshold);
+	}
+
+	/**
+	 * @param sketchWidth
+	 *            number of counters per row of the Count-Min sketch
+	 * @param sketchDepth
+	 *            number of rows of the Count-Min sketch
+	 * @param topCapacity
+	 *            number of tracked top ip addresses
+	 * @param suspiciousThreshold
+	 *            number of failures from which an ip address is considered
+	 *            suspicious
+	 */
+	public FailedLogInMonitor(int sketchWidth, int sketchDepth, int topCapacity, int suspiciousThreshold) {
+		if (suspiciousThreshold < 1) {
+			throw new IllegalArgumentException("Suspicious threshold must be positive.");
+		}
+
+		this.sketchWidth = sketchWidth;
+		this.sketchDepth = sketchDepth;
+		this.topCapacity = topCapacity;
+		this.suspiciousThreshold = suspiciousThreshold;
+
+		init();
+	}
+
+}
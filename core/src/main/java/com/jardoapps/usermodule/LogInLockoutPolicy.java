@@ -0,0 +1,110 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Decides whether an account is locked because of consecutive failed log in
+ * attempts, using only the {@link User#getFailedLogInCount() failed log in
+ * count} and {@link User#getLastFailedLogInTime() last failed log in time}
+ * stored with the user. It is checked by
+ * {@link UserManager#logIn(String, String, String)} if set by
+ * {@link UserManager#setLogInLockoutPolicy(LogInLockoutPolicy)}.
+ * <p>
+ * After the allowed number of consecutive failures, the account is locked
+ * for the base lock time after the last failure. Every further failure
+ * doubles the lock time, up to the maximal lock time. Attempts rejected
+ * because of the lock are not recorded, so they do not extend it. A
+ * successful log in resets the count.
+ * <p>
+ * This class is immutable.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class LogInLockoutPolicy implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int allowedFailures;
+
+	private final long baseLockMillis;
+
+	private final long maxLockMillis;
+
+	/**
+	 * Returns how long an account with the given number of consecutive
+	 * failures is locked after the last failure, in milliseconds, or zero if
+	 * it is not locked.
+	 */
+	public long getLockMillis(int failedLogInCount) {
+		if (failedLogInCount < allowedFailures) {
+			return 0;
+		}
+
+		long result = baseLockMillis;
+		for (int i = allowedFailures; i < failedLogInCount && result < maxLockMillis; i++) {
+			result <<= 1;
+		}
+		return Math.min(result, maxLockMillis);
+	}
+
+	/**
+	 * Returns the time until which the user's account is locked, or null if it
+	 * is not locked because of the number of failures.
+	 */
+	public Date getLockedUntil(User user) {
+		long lockMillis = getLockMillis(user.getFailedLogInCount());
+		if (lockMillis == 0 || user.getLastFailedLogInTime() == null) {
+			return null;
+		}
+		return new Date(user.getLastFailedLogInTime().getTime() + lockMillis);
+	}
+
+	/**
+	 * Returns true if the user's account is locked at the given time.
+	 */
+	public boolean isLocked(User user, long nowMillis) {
+		Date lockedUntil = getLockedUntil(user);
+		return lockedUntil != null && nowMillis < lockedUntil.getTime();
+	}
+
+	/**
+	 * @param allowedFailures
+	 *            number of consecutive failures after which the account is
+	 *            locked
+	 * @param baseLockMillis
+	 *            time for which the account is locked after the allowed
+	 *            number of failures
+	 * @param maxLockMillis
+	 *            maximal time for which the account is locked
+	 */
+	public LogInLockoutPolicy(int allowedFailures, long baseLockMillis, long maxLockMillis) {
+		if (allowedFailures < 1 || baseLockMillis < 1 || maxLockMillis < baseLockMillis) {
+			throw new IllegalArgumentException("Allowed failures and base lock time must be positive and maximal lock time must not be lower than the base lock time.");
+		}
+
+		this.allowedFailures = allowedFailures;
+		this.baseLockMillis = baseLockMillis;
+		this.maxLockMillis = maxLockMillis;
+	}
+
+}
@@ -0,0 +1,178 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import com.jardoapps.usermodule.utils.RateLimiter;
+
+/**
+ * Limits the rate of log in attempts per IP address and per account (user
+ * name or email, compared case-insensitively). It is checked by
+ * {@link UserManager#logIn(String, String, String)} before the user is looked
+ * up, so rejected attempts cost neither a database query nor a password hash.
+ * <p>
+ * Both limits are token buckets (see {@link RateLimiter}): a burst of
+ * attempts is allowed, after which one attempt is allowed per interval. The
+ * state is kept in memory of this application instance only, up to the given
+ * maximal number of IP addresses and accounts.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class LogInRateLimiter implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final int DEFAULT_MAX_KEYS = 100000;
+
+	private final int ipBurst;
+
+	private final long ipIntervalMillis;
+
+	private final int accountBurst;
+
+	private final long accountIntervalMillis;
+
+	private final int maxKeys;
+
+	private volatile FailedLogInMonitor ipPreFilter;
+
+	private transient RateLimiter ipLimiter;
+
+	private transient RateLimiter accountLimiter;
+
+	private static long nowMillis() {
+		// monotonic, unlike the wall clock
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+	}
+
+	private void init() {
+		ipLimiter = new RateLimiter(ipBurst, ipIntervalMillis, maxKeys);
+		accountLimiter = new RateLimiter(accountBurst, accountIntervalMillis, maxKeys);
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		init();
+	}
+
+	/**
+	 * Registers a log in attempt.
+	 *
+	 * @param usersIp
+	 *            ip address from which the attempt is made, can be null
+	 * @param userNameOrEmail
+	 *            user name or email of the account, can be null
+	 * @return true if the attempt is allowed, false if the limit of the ip
+	 *         address or of the account has been exceeded
+	 */
+	public boolean tryAcquire(String usersIp, String userNameOrEmail) {
+		long now = nowMillis();
+
+		FailedLogInMonitor preFilter = ipPreFilter;
+		if (usersIp != null && (preFilter == null || preFilter.isSuspicious(usersIp)) && !ipLimiter.tryAcquire(usersIp, now)) {
+			return false;
+		}
+
+		if (userNameOrEmail != null && !accountLimiter.tryAcquire(userNameOrEmail.toLowerCase(Locale.ENGLISH), now)) {
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Sets a monitor of failed log in attempts which decides which ip
+	 * addresses are limited. If set, only ip addresses which the monitor
+	 * considers {@link FailedLogInMonitor#isSuspicious(String) suspicious} are
+	 * checked and tracked by the ip address limit, which keeps the limiter
+	 * small when attempts come from many addresses. The account limit is not
+	 * affected. By default (or if null is set), all ip addresses are limited.
+	 *
+	 * @param ipPreFilter
+	 *            monitor to use, or null
+	 */
+	public void setIpPreFilter(FailedLogInMonitor ipPreFilter) {
+		this.ipPreFilter = ipPreFilter;
+	}
+
+	/**
+	 * Returns the number of attempts rejected because of the ip address limit.
+	 */
+	public long getRejectedByIpCount() {
+		return ipLimiter.getRejectedCount();
+	}
+
+	/**
+	 * Returns the number of attempts rejected because of the account limit.
+	 */
+	public long getRejectedByAccountCount() {
+		return accountLimiter.getRejectedCount();
+	}
+
+	/**
+	 * Creates a limiter which keeps up to {@link #DEFAULT_MAX_KEYS} ip
+	 * addresses and accounts.
+	 *
+	 * @param ipBurst
+	 *            number of attempts allowed at once from one ip address
+	 * @param ipIntervalMillis
+	 *            time after which one more attempt is allowed from one ip
+	 *            address
+	 * @param accountBurst
+	 *            number of attempts allowed at once for one account
+	 * @param accountIntervalMillis
+	 *            time after which one more attempt is allowed for one account
+	 */
+	public LogInRateLimiter(int ipBurst, long ipIntervalMillis, int accountBurst, long accountIntervalMillis) {
+		this(ipBurst, ipIntervalMillis, accountBurst, accountIntervalMillis, DEFAULT_MAX_KEYS);
+	}
+
+	/**
+	 * @param ipBurst
+	 *            number of attempts allowed at once from one ip address
+	 * @param ipIntervalMillis
+	 *            time after which one more attempt is allowed from one ip
+	 *            address
+	 * @param accountBurst
+	 *            number of attempts allowed at once for one account
+	 * @param accountIntervalMillis
+	 *            time after which one more attempt is allowed for one account
+	 * @param maxKeys
+	 *            maximal number of ip addresses, and of accounts, whose
+	 *            attempts are remembered
+	 */
+	public LogInRateLimiter(int ipBurst, long ipIntervalMillis, int accountBurst, long accountIntervalMillis, int maxKeys) {
+		this.ipBurst = ipBurst;
+		this.ipIntervalMillis = ipIntervalMillis;
+		this.accountBurst = accountBurst;
+		this.accountIntervalMillis = accountIntervalMillis;
+		this.maxKeys = maxKeys;
+
+		init();
+	}
+
+}
@@ -0,0 +1,69 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule;
+
+/**
+ * A {@link SessionModel} which stores only a {@link UserPrincipal} of the
+ * logged in user. {@link UserManager} stores and reads the principal by
+ * {@link #setCurrentPrincipal(UserPrincipal)} and
+ * {@link #getCurrentPrincipal()}, and resolves the full {@link User} by
+ * {@link UserDatabaseModel#getUserById(int)} when it is needed. The database
+ * model should therefore be decorated by a
+ * {@link com.jardoapps.usermodule.decorators.UserCacheDecorator
+ * UserCacheDecorator}.
+ * <p>
+ * The full user is not stored, so {@link #getCurrentUser()} always returns
+ * null. Use {@link UserManager#getCurrentUser()} instead.
+ * 
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public interface PrincipalSessionModel extends SessionModel {
+
+	/**
+	 * Returns principal of the user who is currently logged in.
+	 * 
+	 * @return principal of the user who is currently logged in or null, if no
+	 *         user is logged in
+	 */
+	UserPrincipal getCurrentPrincipal();
+
+	/**
+	 * Sets principal of the user who is currently logged in. If the principal
+	 * parameter is null, that means that no user is currently logged in.
+	 * 
+	 * @param principal
+	 *            principal of the user who is currently logged in, can be
+	 *            null
+	 */
+	void setCurrentPrincipal(UserPrincipal principal);
+
+	/**
+	 * Always returns null, because only the principal is stored. It is never
+	 * called by {@link UserManager}.
+	 * 
+	 * @deprecated use {@link UserManager#getCurrentUser()}, which loads the
+	 *             user of the stored principal, or
+	 *             {@link #getCurrentPrincipal()}
+	 */
+	@Deprecated
+	@Override
+	User getCurrentUser();
+
+}
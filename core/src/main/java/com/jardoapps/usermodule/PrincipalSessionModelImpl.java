@@ -0,0 +1,59 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule;
+
+/**
+ * Basic implementation of {@link PrincipalSessionModel}. The full user is not
+ * stored, so {@link #getCurrentUser()} always returns null, use
+ * {@link UserManager#getCurrentUser()} instead.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class PrincipalSessionModelImpl implements PrincipalSessionModel {
+
+	private static final long serialVersionUID = 1L;
+
+	private UserPrincipal principal;
+
+	@Override
+	public UserPrincipal getCurrentPrincipal() {
+		return principal;
+	}
+
+	@Override
+	public void setCurrentPrincipal(UserPrincipal principal) {
+		this.principal = principal;
+	}
+
+	/**
+	 * @deprecated use {@link UserManager#getCurrentUser()}
+	 */
+	@Deprecated
+	@Override
+	public User getCurrentUser() {
+		return null;
+	}
+
+	@Override
+	public void setCurrentUser(User user) {
+		principal = user != null ? new UserPrincipal(user) : null;
+	}
+
+}
@@ -0,0 +1,44 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule;
+
+import java.io.Serializable;
+
+/**
+ * This interface is used by {@link UserManager} to obtain securely generated
+ * random bytes for password salts, registration control codes and password
+ * reset token keys.
+ * <p>
+ * Implementations must be thread safe. By default, {@link UserManager} uses a
+ * {@link RandomSourcePooledImpl} backed by a {@link RandomSourceStripedImpl}.
+ *
+ * @author Jaroslav Brtiš
+ * @see UserManager#setRandomSource(RandomSource)
+ */
+public interface RandomSource extends Serializable {
+
+	/**
+	 * Fills the given array with securely generated random bytes.
+	 *
+	 * @param bytes
+	 *            array to be filled
+	 */
+	void nextBytes(byte[] bytes);
+
+}
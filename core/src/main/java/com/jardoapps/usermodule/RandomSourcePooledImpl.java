@@ -0,0 +1,185 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link RandomSource} implementation which keeps a pool of pre-generated
+ * random blocks, so that generating a salt or a token key on a request thread
+ * is just a lock-free poll from a queue. The pool is refilled in the
+ * background by a shared daemon thread whenever it drops below half of its
+ * capacity. If the pool is empty, or if more bytes than the block size are
+ * requested, the bytes are taken directly from the underlying random source.
+ * <p>
+ * Every pooled block is handed out only once.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class RandomSourcePooledImpl implements RandomSource {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final int DEFAULT_BLOCK_SIZE = 32;
+
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private static final ThreadPoolExecutor REFILL_EXECUTOR = createRefillExecutor();
+
+	private final RandomSource delegate;
+
+	private final int blockSize;
+
+	private final int capacity;
+
+	private transient Queue<byte[]> pool;
+
+	private transient AtomicInteger poolSize;
+
+	private transient AtomicBoolean refillScheduled;
+
+	private transient Runnable refillTask;
+
+	private static ThreadPoolExecutor createRefillExecutor() {
+		ThreadFactory threadFactory = new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "usermodule-random-refill");
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	private void init() {
+		pool = new ConcurrentLinkedQueue<byte[]>();
+		poolSize = new AtomicInteger();
+		refillScheduled = new AtomicBoolean();
+		refillTask = new Runnable() {
+			@Override
+			public void run() {
+				refill();
+			}
+		};
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		init();
+	}
+
+	private void refill() {
+		try {
+			while (poolSize.get() < capacity) {
+				byte[] block = new byte[blockSize];
+				delegate.nextBytes(block);
+				pool.offer(block);
+				poolSize.incrementAndGet();
+			}
+		} finally {
+			refillScheduled.set(false);
+		}
+	}
+
+	private void scheduleRefill() {
+		if (refillScheduled.compareAndSet(false, true)) {
+			REFILL_EXECUTOR.execute(refillTask);
+		}
+	}
+
+	/**
+	 * Returns the number of pre-generated blocks which are currently available.
+	 */
+	public int getPoolSize() {
+		return poolSize.get();
+	}
+
+	@Override
+	public void nextBytes(byte[] bytes) {
+		if (bytes.length <= blockSize) {
+			byte[] block = pool.poll();
+			if (block != null) {
+				int remaining = poolSize.decrementAndGet();
+				System.arraycopy(block, 0, bytes, 0, bytes.length);
+				if (remaining <= capacity / 2) {
+					scheduleRefill();
+				}
+				return;
+			}
+			scheduleRefill();
+		}
+
+		delegate.nextBytes(bytes);
+	}
+
+	/**
+	 * Fills the pool in the background. Calling this method is optional, the
+	 * pool is otherwise filled on first use.
+	 */
+	public void prefill() {
+		scheduleRefill();
+	}
+
+	/**
+	 * Creates a pooled random source with {@link #DEFAULT_BLOCK_SIZE default
+	 * block size} and {@link #DEFAULT_CAPACITY default capacity}.
+	 *
+	 * @param delegate
+	 *            random source used to generate the pooled blocks
+	 */
+	public RandomSourcePooledImpl(RandomSource delegate) {
+		this(delegate, DEFAULT_BLOCK_SIZE, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param delegate
+	 *            random source used to generate the pooled blocks
+	 * @param blockSize
+	 *            size of one pooled block in bytes. Requests for more bytes
+	 *            bypass the pool.
+	 * @param capacity
+	 *            maximal number of pooled blocks
+	 */
+	public RandomSourcePooledImpl(RandomSource delegate, int blockSize, int capacity) {
+		if (blockSize < 1 || capacity < 1) {
+			throw new IllegalArgumentException("Block size and capacity must be positive.");
+		}
+
+		this.delegate = delegate;
+		this.blockSize = blockSize;
+		this.capacity = capacity;
+
+		init();
+	}
+
+}
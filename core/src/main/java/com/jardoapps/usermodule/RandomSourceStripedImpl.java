@@ -0,0 +1,124 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link RandomSource} implementation which spreads the load over several
+ * independently seeded <code>SecureRandom</code> instances. Every
+ * <code>SecureRandom</code> instance is internally synchronized, so each
+ * stripe is guarded by its own <code>ReentrantLock</code> and the monitor is
+ * never contended. A caller starts at the stripe chosen by its thread id and
+ * takes the first stripe which is not locked, and only waits (on the lock of
+ * its own stripe, not on a monitor) if all stripes are busy. Waiting callers
+ * therefore never block inside a monitor, which would pin virtual threads to
+ * their carrier threads.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class RandomSourceStripedImpl implements RandomSource {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(RandomSourceStripedImpl.class);
+
+	private static final String ALGORITHM = "SHA1PRNG";
+
+	private final SecureRandom[] stripes;
+
+	private final ReentrantLock[] locks;
+
+	private final int mask;
+
+	private static SecureRandom createSecureRandom() {
+		try {
+			return SecureRandom.getInstance(ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			LOGGER.warn("Failed to create random generator with algorithm " + ALGORITHM + ", using default algorithm.", e);
+			return new SecureRandom();
+		}
+	}
+
+	private static int powerOfTwoAtLeast(int value) {
+		int result = 1;
+		while (result < value) {
+			result <<= 1;
+		}
+		return result;
+	}
+
+	@Override
+	public void nextBytes(byte[] bytes) {
+		int home = (int) Thread.currentThread().getId() & mask;
+
+		for (int i = 0; i <= mask; i++) {
+			int stripe = (home + i) & mask;
+			if (locks[stripe].tryLock()) {
+				try {
+					stripes[stripe].nextBytes(bytes);
+				} finally {
+					locks[stripe].unlock();
+				}
+				return;
+			}
+		}
+
+		locks[home].lock();
+		try {
+			stripes[home].nextBytes(bytes);
+		} finally {
+			locks[home].unlock();
+		}
+	}
+
+	/**
+	 * Creates a random source with one stripe per available processor.
+	 */
+	public RandomSourceStripedImpl() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a random source with the given minimal number of stripes. The
+	 * actual number of stripes is rounded up to a power of two.
+	 *
+	 * @param stripeCount
+	 *            minimal number of stripes
+	 */
+	public RandomSourceStripedImpl(int stripeCount) {
+		int size = powerOfTwoAtLeast(Math.max(1, stripeCount));
+
+		this.stripes = new SecureRandom[size];
+		this.locks = new ReentrantLock[size];
+		this.mask = size - 1;
+
+		for (int i = 0; i < size; i++) {
+			stripes[i] = createSecureRandom();
+			locks[i] = new ReentrantLock();
+		}
+	}
+
+}
@@ -36,5 +36,8 @@ public enum ResultCode {
 	NO_VALID_PASSWORD_RESET_TOKEN,
 	REGISTRATION_NOT_CONFIRMED,
 	REGISTRATION_ALREADY_CONFIRMED,
-	INVALID_REGISTRATION_CONTROL_CODE
+	INVALID_REGISTRATION_CONTROL_CODE,
+	INVALID_EMAIL,
+	TOO_MANY_LOG_IN_ATTEMPTS,
+	ACCOUNT_LOCKED
 }
@@ -18,6 +18,9 @@
 
 package com.jardoapps.usermodule;
 
+import java.io.Serializable;
+import java.util.Date;
+
 import com.jardoapps.usermodule.containers.UserPassword;
 
 /**
@@ -26,7 +29,9 @@ import com.jardoapps.usermodule.containers.UserPassword;
  * @author Jaroslav Brtiš
  * 
  */
-public class User {
+public class User implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	private final int id;
 
@@ -42,6 +47,12 @@ public class User {
 
 	private int rank;
 
+	private final Date registrationDate;
+
+	private final int failedLogInCount;
+
+	private final Date lastFailedLogInTime;
+
 	public int getId() {
 		return id;
 	}
@@ -70,15 +81,59 @@ public class User {
 		return rank;
 	}
 
+	/**
+	 * Returns the date when the user was added to the database, or null if it
+	 * is not known (for instance for users which have not been stored yet).
+	 * 
+	 * @since 0.4.0
+	 */
+	public Date getRegistrationDate() {
+		return registrationDate;
+	}
+
+	/**
+	 * Returns the number of consecutive failed log in attempts (with an
+	 * invalid password) since the last successful one.
+	 *
+	 * @since 0.4.0
+	 */
+	public int getFailedLogInCount() {
+		return failedLogInCount;
+	}
+
+	/**
+	 * Returns the time of the last failed log in attempt, or null if there has
+	 * been none or it is not known.
+	 *
+	 * @since 0.4.0
+	 */
+	public Date getLastFailedLogInTime() {
+		return lastFailedLogInTime;
+	}
+
 	public void setRank(int rank) {
 		this.rank = rank;
 	}
 
 	public User withId(int newId) {
-		return new User(newId, name, email, registrationControlCode, registrationConfirmed, password, rank);
+		return new User(newId, name, email, registrationControlCode, registrationConfirmed, password, rank, registrationDate, failedLogInCount, lastFailedLogInTime);
 	}
 
 	public User(int id, String name, String email, String registrationControlCode, boolean registrationConfirmed, UserPassword password, int rank) {
+		this(id, name, email, registrationControlCode, registrationConfirmed, password, rank, null);
+	}
+
+	/**
+	 * @since 0.4.0
+	 */
+	public User(int id, String name, String email, String registrationControlCode, boolean registrationConfirmed, UserPassword password, int rank, Date registrationDate) {
+		this(id, name, email, registrationControlCode, registrationConfirmed, password, rank, registrationDate, 0, null);
+	}
+
+	/**
+	 * @since 0.4.0
+	 */
+	public User(int id, String name, String email, String registrationControlCode, boolean registrationConfirmed, UserPassword password, int rank, Date registrationDate, int failedLogInCount, Date lastFailedLogInTime) {
 		this.id = id;
 		this.name = name;
 		this.email = email;
@@ -86,6 +141,9 @@ public class User {
 		this.registrationConfirmed = registrationConfirmed;
 		this.password = password;
 		this.rank = rank;
+		this.registrationDate = registrationDate;
+		this.failedLogInCount = failedLogInCount;
+		this.lastFailedLogInTime = lastFailedLogInTime;
 	}
 
 }
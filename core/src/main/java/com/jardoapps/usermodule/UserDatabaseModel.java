@@ -19,10 +19,16 @@
 package com.jardoapps.usermodule;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import com.jardoapps.usermodule.containers.LogInRecord;
 import com.jardoapps.usermodule.containers.PasswordResetToken;
 import com.jardoapps.usermodule.containers.SocialAccountDetails;
+import com.jardoapps.usermodule.containers.UserFilter;
 import com.jardoapps.usermodule.containers.UserPassword;
 
 /**
@@ -53,6 +59,19 @@ public interface UserDatabaseModel extends Serializable {
 	 */
 	int addUser(User newUser);
 
+	/**
+	 * Adds multiple new users at once. Implementations should add all the
+	 * users in a single transaction and use batched inserts where possible.
+	 * 
+	 * @param newUsers
+	 *            users to be added
+	 * @return Ids of the new users in the same order as the users, or null on
+	 *         failure (in which case no user should be added).
+	 * @see #addUser(User)
+	 * @since 0.4.0
+	 */
+	int[] addUsers(List<User> newUsers);
+
 	/**
 	 * Cancels all password reset tokens for user with specified id. The
 	 * canceled tokens should no longer be returned by method
@@ -85,6 +104,20 @@ public interface UserDatabaseModel extends Serializable {
 	 */
 	boolean deleteUser(int userId);
 
+	/**
+	 * Passes all registered users ordered by id to the given visitor, until
+	 * the visitor returns false. Deleted users are not passed. Implementations
+	 * should read the users lazily, so that the used memory does not depend on
+	 * the number of users.
+	 * 
+	 * @param visitor
+	 *            receives the users
+	 * @return Number of users passed to the visitor.
+	 * @see #getUsers(int, int)
+	 * @since 0.4.0
+	 */
+	int exportUsers(UserVisitor visitor);
+
 	/**
 	 * Returns number of users which have been added by method
 	 * {@link #addUser(User)} since the specified date.
@@ -95,6 +128,32 @@ public interface UserDatabaseModel extends Serializable {
 	 */
 	int getRegisteredUserCount(Date since);
 
+	/**
+	 * Returns those of the given emails which are registered, in the sense of
+	 * {@link #isEmailRegistered(String)}. Implementations should check all the
+	 * emails by a few set-based queries rather than one query per email.
+	 * 
+	 * @param emails
+	 *            email addresses which should be checked
+	 * @return Registered emails, or an empty set if none of them is
+	 *         registered.
+	 * @since 0.4.0
+	 */
+	Set<String> getRegisteredEmails(Collection<String> emails);
+
+	/**
+	 * Returns those of the given user names which are registered, in the sense
+	 * of {@link #isUserNameRegistered(String)}. Implementations should check
+	 * all the names by a few set-based queries rather than one query per name.
+	 * 
+	 * @param names
+	 *            user names which should be checked
+	 * @return Registered user names, or an empty set if none of them is
+	 *         registered.
+	 * @since 0.4.0
+	 */
+	Set<String> getRegisteredUserNames(Collection<String> names);
+
 	/**
 	 * Returns password reset token for user with specified email, which has the
 	 * latest {@link PasswordResetToken#getCreationTime() creation time}.
@@ -122,6 +181,17 @@ public interface UserDatabaseModel extends Serializable {
 	 */
 	User getUserByEmail(String email);
 
+	/**
+	 * Returns user with the specified id.
+	 * 
+	 * @param userId
+	 *            id of the user which should be returned
+	 * @return User with the specified id or null, if no such user exists or
+	 *         the user has been deleted.
+	 * @since 0.4.0
+	 */
+	User getUserById(int userId);
+
 	/**
 	 * Returns user registered with the specified {@link User#getName() name}.
 	 * 
@@ -133,6 +203,32 @@ public interface UserDatabaseModel extends Serializable {
 	 */
 	User getUserByName(String name);
 
+	/**
+	 * Returns the users registered with the specified email addresses. It
+	 * should load all the users in as few database queries as possible.
+	 * 
+	 * @param emails
+	 *            email addresses of the users which should be returned
+	 * @return Map of the found users by their email addresses. Emails for
+	 *         which no user exists are left out.
+	 * @see #getUserByEmail(String)
+	 * @since 0.4.0
+	 */
+	Map<String, User> getUsersByEmails(Collection<String> emails);
+
+	/**
+	 * Returns the users with the specified ids. It should load all the users
+	 * in as few database queries as possible.
+	 * 
+	 * @param userIds
+	 *            ids of the users which should be returned
+	 * @return Map of the found users by their ids. Ids for which no user
+	 *         exists or whose users have been deleted are left out.
+	 * @see #getUserById(int)
+	 * @since 0.4.0
+	 */
+	Map<Integer, User> getUsersByIds(Collection<Integer> userIds);
+
 	/**
 	 * @since 0.2.0
 	 * @see #saveUserWithSocialAccount(User, SocialAccountDetails)
@@ -152,6 +248,16 @@ public interface UserDatabaseModel extends Serializable {
 	 */
 	int getUserIdByEmail(String email);
 
+	/**
+	 * Returns ids of all users who have at least one password reset token
+	 * which has not been cancelled. The tokens may have expired.
+	 * 
+	 * @return Ids of the users, or an empty set if there are none.
+	 * @see #cancelAllPasswordResetTokens(int)
+	 * @since 0.4.0
+	 */
+	Set<Integer> getUserIdsWithPasswordResetTokens();
+
 	/**
 	 * Returns password of user with the specified id.
 	 * 
@@ -163,6 +269,43 @@ public interface UserDatabaseModel extends Serializable {
 	 */
 	UserPassword getUserPassword(int userId);
 
+	/**
+	 * Returns a page of registered users ordered by id. Deleted users are not
+	 * returned. Users can be iterated by passing the id of the last user of
+	 * the previous page as <code>afterUserId</code>, starting with 0.
+	 * 
+	 * @param afterUserId
+	 *            only users with a greater id are returned
+	 * @param maxResults
+	 *            maximal number of returned users
+	 * @return Users ordered by id, or an empty list if there are no more users.
+	 * @since 0.4.0
+	 */
+	List<User> getUsers(int afterUserId, int maxResults);
+
+	/**
+	 * Returns a page of registered users which match the given filter,
+	 * ordered as specified by the filter. Deleted users are not returned.
+	 * Pages are iterated by passing the last user of the previous page as
+	 * <code>after</code>, starting with null. Implementations should find the
+	 * start of the page by the sort key of that user (not by skipping the
+	 * preceding users), so that the cost of a page does not depend on its
+	 * position.
+	 * 
+	 * @param filter
+	 *            conditions and order of the users
+	 * @param after
+	 *            last user of the previous page, or null for the first page
+	 * @param maxResults
+	 *            maximal number of returned users
+	 * @return Users of the page, or an empty list if there are no more users.
+	 * @throws IllegalArgumentException
+	 *             if the users are ordered by registration date and
+	 *             <code>after</code> has no registration date
+	 * @since 0.4.0
+	 */
+	List<User> getUsers(UserFilter filter, User after, int maxResults);
+
 	/**
 	 * Check whether there is a user registered with the given email. The result
 	 * should be true also for registered users whose registration was not
@@ -187,6 +330,12 @@ public interface UserDatabaseModel extends Serializable {
 
 	/**
 	 * Records a log in attempt for the user with specified id.
+	 * <p>
+	 * Since version 0.4.0, implementations should also maintain the
+	 * {@link User#getFailedLogInCount() failed log in count} and
+	 * {@link User#getLastFailedLogInTime() last failed log in time} of the
+	 * user in the same transaction: a failed attempt increments the count and
+	 * sets the time, a successful attempt resets the count to zero.
 	 * 
 	 * @param userId
 	 *            user who was trying to log in
@@ -199,6 +348,37 @@ public interface UserDatabaseModel extends Serializable {
 	 */
 	boolean makeLogInRecord(int userId, boolean logInSuccessful, String usersIp);
 
+	/**
+	 * Stores multiple log in records at once. Implementations should store
+	 * all the records in a single transaction and use batched inserts where
+	 * possible. The failed log in counts of the users are maintained as if
+	 * the records were made one by one, in the order of the list.
+	 * 
+	 * @param records
+	 *            records to be stored
+	 * @return True on success, otherwise false.
+	 * @see #makeLogInRecord(int, boolean, String)
+	 * @since 0.4.0
+	 */
+	boolean makeLogInRecords(List<LogInRecord> records);
+
+	/**
+	 * Records a successful log in of the user and cancels all their password
+	 * reset tokens, which is what happens after every successful log in.
+	 * Implementations should do both in a single transaction, so that a log
+	 * in costs one commit.
+	 * 
+	 * @param userId
+	 *            user who has logged in
+	 * @param usersIp
+	 *            users ip address
+	 * @return True on success, otherwise false.
+	 * @see #makeLogInRecord(int, boolean, String)
+	 * @see #cancelAllPasswordResetTokens(int)
+	 * @since 0.4.0
+	 */
+	boolean recordSuccessfulLogIn(int userId, String usersIp);
+
 	/**
 	 * @return Positive integer value representing the new user ID on success,
 	 *         or negative integer value on failure.
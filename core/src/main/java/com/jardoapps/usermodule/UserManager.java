@@ -18,14 +18,24 @@
 
 package com.jardoapps.usermodule;
 
-import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.io.UnsupportedEncodingException;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.inject.Inject;
 
@@ -35,8 +45,10 @@ import org.slf4j.LoggerFactory;
 import com.jardoapps.usermodule.containers.PasswordResetToken;
 import com.jardoapps.usermodule.containers.SocialAccountDetails;
 import com.jardoapps.usermodule.containers.UserPassword;
+import com.jardoapps.usermodule.containers.UserRegistration;
 import com.jardoapps.usermodule.defines.EmailType;
 import com.jardoapps.usermodule.utils.EmailUtils;
+import com.jardoapps.usermodule.utils.HashUtils;
 
 /**
  * The main class which contains all the user management logic such as user
@@ -55,16 +67,81 @@ public class UserManager implements Serializable {
 		}
 	}
 
+	/**
+	 * Receives the results of
+	 * {@link UserManager#registerUsers(Iterable, RegistrationListener)}.
+	 */
+	public interface RegistrationListener {
+
+		/**
+		 * Called once for every registration, in the order of the
+		 * registrations.
+		 * 
+		 * @param registration
+		 *            registered user
+		 * @param result
+		 *            result of the registration, the same as the one which
+		 *            would be returned by
+		 *            {@link UserManager#registerUser(String, String, String, boolean)
+		 *            registerUser}, or {@link ResultCode#INVALID_EMAIL
+		 *            INVALID_EMAIL} or {@link ResultCode#INVALID_PASSWORD
+		 *            INVALID_PASSWORD}
+		 */
+		void onResult(UserRegistration registration, ResultCode result);
+	}
+
+	/**
+	 * Creates the passwords of a range of registrations, splitting the range
+	 * in halves until it is small enough.
+	 */
+	private class PasswordCreationTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<UserRegistration> registrations;
+		private final UserPassword[] passwords;
+		private final int from;
+		private final int to;
+
+		@Override
+		protected void compute() {
+			if (to - from <= PARALLEL_HASHING_THRESHOLD) {
+				for (int i = from; i < to; i++) {
+					passwords[i] = createUserPassword(registrations.get(i).getPassword(), null);
+				}
+				return;
+			}
+
+			int middle = (from + to) >>> 1;
+			invokeAll(new PasswordCreationTask(registrations, passwords, from, middle), new PasswordCreationTask(registrations, passwords, middle, to));
+		}
+
+		PasswordCreationTask(List<UserRegistration> registrations, UserPassword[] passwords, int from, int to) {
+			this.registrations = registrations;
+			this.passwords = passwords;
+			this.from = from;
+			this.to = to;
+		}
+	}
+
 	private static final Logger LOGGER = LoggerFactory.getLogger(UserManager.class);
 
 	private static final byte MD5_HASH_LENGTH = 16;
 	private static final long MILIS_IN_MINUTE = 60000L;
 	private static final byte PASSWORD_SALT_LENGTH = 32;
 
-	private static final String PASSWORD_HASH_ENCODING = "UTF-16";
+	private static final Charset PASSWORD_HASH_CHARSET = StandardCharsets.UTF_16;
 
 	private static final long serialVersionUID = 1L;
 
+	private static final int PARALLEL_HASHING_THRESHOLD = 8;
+
+	/**
+	 * Number of users checked and added together by
+	 * {@link #registerUsers(Iterable, RegistrationListener)}.
+	 */
+	public static final int BULK_REGISTRATION_BATCH_SIZE = 500;
+
 	@Inject
 	private UserManagementProperties properties;
 
@@ -77,9 +154,29 @@ public class UserManager implements Serializable {
 	@Inject
 	private SessionModel sessionModel;
 
-	private SecureRandom randomGenerator;
+	private RandomSource randomSource;
+
+	private LogInRateLimiter logInRateLimiter;
+
+	private FailedLogInMonitor failedLogInMonitor;
 
-	private transient MessageDigest sha256;
+	private LogInLockoutPolicy logInLockoutPolicy;
+
+	private User getSessionUser() {
+		if (sessionModel instanceof PrincipalSessionModel) {
+			UserPrincipal principal = ((PrincipalSessionModel) sessionModel).getCurrentPrincipal();
+			return principal != null ? databaseModel.getUserById(principal.getId()) : null;
+		}
+		return sessionModel.getCurrentUser();
+	}
+
+	private void setSessionUser(User user) {
+		if (sessionModel instanceof PrincipalSessionModel) {
+			((PrincipalSessionModel) sessionModel).setCurrentPrincipal(user != null ? new UserPrincipal(user) : null);
+		} else {
+			sessionModel.setCurrentUser(user);
+		}
+	}
 
 	private ResultCode checkRegistrationConfirmationPreconditions(User user, String registrationControlCode) {
 
@@ -113,9 +210,9 @@ public class UserManager implements Serializable {
 		return ResultCode.OK;
 	}
 
-	private UserPassword createUserPassword(String password) {
+	private UserPassword createUserPassword(String password, ExecutorService hashingExecutor) {
 		String salt = generatePasswordSalt();
-		String hash = calculatePasswordHash(password, salt);
+		String hash = calculatePasswordHash(password, salt, hashingExecutor);
 
 		return new UserPassword(hash, salt);
 	}
@@ -126,8 +223,8 @@ public class UserManager implements Serializable {
 
 	private String generateRandomMD5Hash() {
 		byte[] bytes = new byte[MD5_HASH_LENGTH];
-		randomGenerator.nextBytes(bytes);
-		return toHex(bytes);
+		randomSource.nextBytes(bytes);
+		return HashUtils.toHex(bytes);
 	}
 
 	private boolean makeLogInRecord(int userId, boolean logInSuccessfull, String usersIp) {
@@ -140,39 +237,144 @@ public class UserManager implements Serializable {
 		return result;
 	}
 
-	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
-		in.defaultReadObject();
-		try {
-			sha256 = MessageDigest.getInstance("SHA-256");
-		} catch (NoSuchAlgorithmException e) {
-			LOGGER.error("Failed to create password hasher.", e);
+	private int registerBatch(List<UserRegistration> batch, ForkJoinPool pool, RegistrationListener listener) {
+
+		ResultCode[] results = new ResultCode[batch.size()];
+
+		Set<String> emails = new HashSet<String>();
+		Set<String> names = new HashSet<String>();
+		for (UserRegistration registration : batch) {
+			emails.add(registration.getEmail());
+			if (registration.getName() != null) {
+				names.add(registration.getName());
+			}
 		}
-	}
 
-	private String toHex(byte[] bytes) {
-		StringBuilder result = new StringBuilder();
-		char[] digits = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
-		for (int idx = 0; idx < bytes.length; ++idx) {
-			byte b = bytes[idx];
-			result.append(digits[(b & 0xf0) >> 4]);
-			result.append(digits[b & 0x0f]);
+		Set<String> registeredEmails = databaseModel.getRegisteredEmails(emails);
+		Set<String> registeredNames = names.isEmpty() ? Collections.<String> emptySet() : databaseModel.getRegisteredUserNames(names);
+
+		// emails and names must also be unique within the batch
+		Set<String> acceptedEmails = new HashSet<String>();
+		Set<String> acceptedNames = new HashSet<String>();
+		List<UserRegistration> accepted = new ArrayList<UserRegistration>(batch.size());
+
+		for (int i = 0; i < results.length; i++) {
+			UserRegistration registration = batch.get(i);
+			String email = registration.getEmail();
+			String name = registration.getName();
+
+			if (!EmailUtils.isEmailValid(email)) {
+				results[i] = ResultCode.INVALID_EMAIL;
+			} else if (registration.getPassword() == null) {
+				results[i] = ResultCode.INVALID_PASSWORD;
+			} else if (name != null && (registeredNames.contains(name) || acceptedNames.contains(name))) {
+				results[i] = ResultCode.USER_NAME_ALREADY_REGISTERED;
+			} else if (registeredEmails.contains(email) || acceptedEmails.contains(email)) {
+				results[i] = ResultCode.EMAIL_ALREADY_REGISTERED;
+			} else {
+				acceptedEmails.add(email);
+				if (name != null) {
+					acceptedNames.add(name);
+				}
+				accepted.add(registration);
+			}
+		}
+
+		int addedUsers = 0;
+		if (!accepted.isEmpty()) {
+			UserPassword[] passwords = new UserPassword[accepted.size()];
+			pool.invoke(new PasswordCreationTask(accepted, passwords, 0, passwords.length));
+
+			List<User> newUsers = new ArrayList<User>(accepted.size());
+			for (int i = 0; i < passwords.length; i++) {
+				UserRegistration registration = accepted.get(i);
+				newUsers.add(new User(0, registration.getName(), registration.getEmail(), generateRandomMD5Hash(), registration.isRegistrationConfirmed(), passwords[i], UserRanks.NORMAL_USER));
+			}
+
+			int[] newUserIds = databaseModel.addUsers(newUsers);
+			if (newUserIds == null) {
+				LOGGER.error("DB error: Failed to add a batch of {} users.", newUsers.size());
+			} else {
+				addedUsers = newUserIds.length;
+			}
+
+			int acceptedIdx = 0;
+			for (int i = 0; i < results.length; i++) {
+				if (results[i] != null) {
+					continue;
+				}
+
+				User newUser = newUsers.get(acceptedIdx);
+				if (newUserIds == null) {
+					results[i] = ResultCode.DATABASE_ERROR;
+				} else if (newUser.isRegistrationConfirmed()) {
+					results[i] = ResultCode.OK;
+				} else if (emailSender.sendRegistrationEmail(newUser.getEmail(), newUser.getName(), newUserIds[acceptedIdx], newUser.getRegistrationControlCode())) {
+					results[i] = ResultCode.OK;
+				} else {
+					LOGGER.error("Email error: Failed to send registration email to user with id={}.", newUserIds[acceptedIdx]);
+					results[i] = ResultCode.FAILED_TO_SEND_EMAIL;
+				}
+				acceptedIdx++;
+			}
+		}
+
+		if (listener != null) {
+			for (int i = 0; i < results.length; i++) {
+				listener.onResult(batch.get(i), results[i]);
+			}
 		}
-		return result.toString();
+
+		return addedUsers;
+	}
+
+	/**
+	 * Calculates the password hash. This method is thread safe and does not
+	 * lock, so it can be called concurrently by any number of threads.
+	 */
+	protected String calculatePasswordHash(String password, String salt) {
+		return HashUtils.sha256Hex(salt.getBytes(PASSWORD_HASH_CHARSET), password.getBytes(PASSWORD_HASH_CHARSET));
 	}
 
-	protected synchronized String calculatePasswordHash(String password, String salt) {
+	/**
+	 * Calculates the password hash by the given executor and waits for it. If
+	 * the executor is null or rejects the task (for instance because it has
+	 * been shut down), the hash is calculated by the calling thread. The
+	 * executor must not be the one calling this method, otherwise it can
+	 * deadlock.
+	 */
+	String calculatePasswordHash(final String password, final String salt, ExecutorService executor) {
+
+		if (executor == null) {
+			return calculatePasswordHash(password, salt);
+		}
+
+		Future<String> hash;
 		try {
-			sha256.update(salt.getBytes(PASSWORD_HASH_ENCODING));
-			return toHex(sha256.digest(password.getBytes(PASSWORD_HASH_ENCODING)));
-		} catch (UnsupportedEncodingException e) {
-			throw new FatalException("The system doesn't support password hash encoding: " + PASSWORD_HASH_ENCODING, e);
+			hash = executor.submit(new Callable<String>() {
+				@Override
+				public String call() {
+					return calculatePasswordHash(password, salt);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			return calculatePasswordHash(password, salt);
+		}
+
+		try {
+			return hash.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new FatalException("Interrupted while waiting for password hash.", e);
+		} catch (ExecutionException e) {
+			throw new FatalException("Failed to calculate password hash.", e.getCause());
 		}
 	}
 
 	protected String generatePasswordSalt() {
 		byte[] salt = new byte[PASSWORD_SALT_LENGTH];
-		randomGenerator.nextBytes(salt);
-		return toHex(salt);
+		randomSource.nextBytes(salt);
+		return HashUtils.toHex(salt);
 	}
 
 	public ResultCode cancelPasswordResetTokens(int userId) {
@@ -201,13 +403,22 @@ public class UserManager implements Serializable {
 	 *         {@link ResultCode#DATABASE_ERROR DATABASE_ERROR}
 	 */
 	public ResultCode cancelRegistration(int userId, String password) {
+		return cancelRegistration(userId, password, null);
+	}
+
+	/**
+	 * Same as {@link #cancelRegistration(int, String)}, but the
+	 * password hash is calculated by the given executor, or by the calling
+	 * thread if it is null.
+	 */
+	ResultCode cancelRegistration(int userId, String password, ExecutorService hashingExecutor) {
 
 		UserPassword storedPassword = databaseModel.getUserPassword(userId);
 		if (storedPassword == null) {
 			return ResultCode.NO_SUCH_USER;
 		}
 
-		String passwordHash = calculatePasswordHash(password, storedPassword.getSalt());
+		String passwordHash = calculatePasswordHash(password, storedPassword.getSalt(), hashingExecutor);
 		if (storedPassword.getHash().equalsIgnoreCase(passwordHash) == false) {
 			return ResultCode.INVALID_PASSWORD;
 		}
@@ -236,12 +447,21 @@ public class UserManager implements Serializable {
 	 *         password), {@link ResultCode#DATABASE_ERROR DATABASE_ERROR}
 	 */
 	public ResultCode changePassword(int userId, String oldPassword, String newPassword) {
+		return changePassword(userId, oldPassword, newPassword, null);
+	}
 
-		if (!isPasswordValid(userId, oldPassword)) {
+	/**
+	 * Same as {@link #changePassword(int, String, String)}, but the
+	 * password hash is calculated by the given executor, or by the calling
+	 * thread if it is null.
+	 */
+	ResultCode changePassword(int userId, String oldPassword, String newPassword, ExecutorService hashingExecutor) {
+
+		if (!isPasswordValid(userId, oldPassword, hashingExecutor)) {
 			return ResultCode.INVALID_PASSWORD;
 		}
 
-		UserPassword userPassword = createUserPassword(newPassword);
+		UserPassword userPassword = createUserPassword(newPassword, hashingExecutor);
 
 		boolean ok = databaseModel.setUserPassword(userId, userPassword);
 		if (!ok) {
@@ -311,6 +531,15 @@ public class UserManager implements Serializable {
 	 *      User)
 	 */
 	public ResultCode confirmManualRegistration(String email, String registrationControlCode, String password) {
+		return confirmManualRegistration(email, registrationControlCode, password, null);
+	}
+
+	/**
+	 * Same as {@link #confirmManualRegistration(String, String, String)}, but the
+	 * password hash is calculated by the given executor, or by the calling
+	 * thread if it is null.
+	 */
+	ResultCode confirmManualRegistration(String email, String registrationControlCode, String password, ExecutorService hashingExecutor) {
 
 		User user = databaseModel.getUserByEmail(email);
 
@@ -325,7 +554,7 @@ public class UserManager implements Serializable {
 			return ResultCode.DATABASE_ERROR;
 		}
 
-		UserPassword userPassword = createUserPassword(password);
+		UserPassword userPassword = createUserPassword(password, hashingExecutor);
 		ok = databaseModel.setUserPassword(user.getId(), userPassword);
 		if (!ok) {
 			LOGGER.error("DB error: Failed to set password for user with id={}.", user.getId());
@@ -429,12 +658,34 @@ public class UserManager implements Serializable {
 	}
 
 	/**
-	 * Returns user who is currently logged in.
+	 * Returns user who is currently logged in. If the session model is a
+	 * {@link PrincipalSessionModel}, the user is loaded by
+	 * {@link UserDatabaseModel#getUserById(int)}, so null is also returned if
+	 * the logged in user has been deleted in the meantime.
 	 * 
 	 * @return user who is currently logged in or null, if no user is logged in
+	 * @see #getCurrentPrincipal()
 	 */
 	public User getCurrentUser() {
-		return sessionModel.getCurrentUser();
+		return getSessionUser();
+	}
+
+	/**
+	 * Returns principal (id, name and rank) of the user who is currently
+	 * logged in. Unlike {@link #getCurrentUser()}, it never accesses the
+	 * database.
+	 * 
+	 * @return principal of the user who is currently logged in or null, if no
+	 *         user is logged in
+	 * @since 0.4.0
+	 */
+	public UserPrincipal getCurrentPrincipal() {
+		if (sessionModel instanceof PrincipalSessionModel) {
+			return ((PrincipalSessionModel) sessionModel).getCurrentPrincipal();
+		}
+
+		User user = sessionModel.getCurrentUser();
+		return user != null ? new UserPrincipal(user) : null;
 	}
 
 	/**
@@ -449,6 +700,35 @@ public class UserManager implements Serializable {
 		return databaseModel.getRegisteredUserCount(since);
 	}
 
+	/**
+	 * Returns the users registered with the specified email addresses. All
+	 * the users are loaded at once, which is much faster than looking them up
+	 * one by one.
+	 * 
+	 * @param emails
+	 *            email addresses of the users
+	 * @return Map of the found users by their email addresses. Emails for
+	 *         which no user exists are left out.
+	 * @since 0.4.0
+	 */
+	public Map<String, User> getUsersByEmails(Collection<String> emails) {
+		return databaseModel.getUsersByEmails(emails);
+	}
+
+	/**
+	 * Returns the users with the specified ids. All the users are loaded at
+	 * once, which is much faster than looking them up one by one.
+	 * 
+	 * @param userIds
+	 *            ids of the users
+	 * @return Map of the found users by their ids. Ids for which no user
+	 *         exists or whose users have been deleted are left out.
+	 * @since 0.4.0
+	 */
+	public Map<Integer, User> getUsersByIds(Collection<Integer> userIds) {
+		return databaseModel.getUsersByIds(userIds);
+	}
+
 	/**
 	 * Checks whether a password reset token is valid (can be used to reset
 	 * users password). If a password reset token is invalid, it cannot be used
@@ -496,13 +776,22 @@ public class UserManager implements Serializable {
 	 * @return true if password is valid, otherwise false
 	 */
 	public boolean isPasswordValid(int userId, String password) {
+		return isPasswordValid(userId, password, null);
+	}
+
+	/**
+	 * Same as {@link #isPasswordValid(int, String)}, but the
+	 * password hash is calculated by the given executor, or by the calling
+	 * thread if it is null.
+	 */
+	boolean isPasswordValid(int userId, String password, ExecutorService hashingExecutor) {
 
 		UserPassword storedPassword = databaseModel.getUserPassword(userId);
 		if (storedPassword == null) {
 			return false;
 		}
 
-		String hash = calculatePasswordHash(password, storedPassword.getSalt());
+		String hash = calculatePasswordHash(password, storedPassword.getSalt(), hashingExecutor);
 
 		return storedPassword.getHash().equalsIgnoreCase(hash);
 	}
@@ -524,11 +813,31 @@ public class UserManager implements Serializable {
 	 * @return {@link ResultCode#OK OK} on success or these possible errors:
 	 *         {@link ResultCode#NO_SUCH_USER NO_SUCH_USER},
 	 *         {@link ResultCode#REGISTRATION_NOT_CONFIRMED REGISTRATION_NOT_CONFIRMED},
-	 *         {@link ResultCode#INVALID_PASSWORD INVALID_PASSWORD}
+	 *         {@link ResultCode#INVALID_PASSWORD INVALID_PASSWORD},
+	 *         {@link ResultCode#TOO_MANY_LOG_IN_ATTEMPTS TOO_MANY_LOG_IN_ATTEMPTS}
+	 *         (only if a {@link #setLogInRateLimiter(LogInRateLimiter) rate
+	 *         limiter} is set, no login record is made in that case),
+	 *         {@link ResultCode#ACCOUNT_LOCKED ACCOUNT_LOCKED} (only if a
+	 *         {@link #setLogInLockoutPolicy(LogInLockoutPolicy) lockout
+	 *         policy} is set, no login record is made in that case)
 	 * @see #logInWithoutPassword(String)
 	 * @see UserDatabaseModel#makeLogInRecord(int, boolean, String)
+	 * @see UserDatabaseModel#recordSuccessfulLogIn(int, String)
 	 */
 	public ResultCode logIn(String userNameOrEmail, String password, String usersIp) {
+		return logIn(userNameOrEmail, password, usersIp, null);
+	}
+
+	/**
+	 * Same as {@link #logIn(String, String, String)}, but the
+	 * password hash is calculated by the given executor, or by the calling
+	 * thread if it is null.
+	 */
+	ResultCode logIn(String userNameOrEmail, String password, String usersIp, ExecutorService hashingExecutor) {
+
+		if (logInRateLimiter != null && !logInRateLimiter.tryAcquire(usersIp, userNameOrEmail)) {
+			return ResultCode.TOO_MANY_LOG_IN_ATTEMPTS;
+		}
 
 		User user;
 
@@ -546,18 +855,24 @@ public class UserManager implements Serializable {
 			return ResultCode.REGISTRATION_NOT_CONFIRMED;
 		}
 
-		String passwordHash = calculatePasswordHash(password, user.getPassword().getSalt());
+		if (logInLockoutPolicy != null && logInLockoutPolicy.isLocked(user, System.currentTimeMillis())) {
+			return ResultCode.ACCOUNT_LOCKED;
+		}
+
+		String passwordHash = calculatePasswordHash(password, user.getPassword().getSalt(), hashingExecutor);
 		if (!user.getPassword().getHash().equalsIgnoreCase(passwordHash)) {
 			makeLogInRecord(user.getId(), false, usersIp);
+			if (failedLogInMonitor != null) {
+				failedLogInMonitor.recordFailure(usersIp);
+			}
 			return ResultCode.INVALID_PASSWORD;
 		}
 
-		sessionModel.setCurrentUser(user);
-		makeLogInRecord(user.getId(), true, usersIp);
+		setSessionUser(user);
 
-		boolean ok = databaseModel.cancelAllPasswordResetTokens(user.getId());
+		boolean ok = databaseModel.recordSuccessfulLogIn(user.getId(), usersIp);
 		if (!ok) {
-			LOGGER.warn("DB error: Failed to cancel password reset tokens for user with id={}.", user.getId());
+			LOGGER.warn("DB error: Failed to record successful login and cancel password reset tokens: userId={}, ip={}", user.getId(), usersIp);
 		}
 
 		return ResultCode.OK;
@@ -579,7 +894,7 @@ public class UserManager implements Serializable {
 			user = user.withId(newId);
 		}
 
-		sessionModel.setCurrentUser(user);
+		setSessionUser(user);
 		makeLogInRecord(user.getId(), true, usersIp);
 
 		return user;
@@ -610,7 +925,7 @@ public class UserManager implements Serializable {
 			return ResultCode.REGISTRATION_NOT_CONFIRMED;
 		}
 
-		sessionModel.setCurrentUser(user);
+		setSessionUser(user);
 
 		return ResultCode.OK;
 	}
@@ -619,7 +934,7 @@ public class UserManager implements Serializable {
 	 * Logs out current user.
 	 */
 	public void logOut() {
-		sessionModel.setCurrentUser(null);
+		setSessionUser(null);
 	}
 
 	/**
@@ -656,6 +971,15 @@ public class UserManager implements Serializable {
 	 * @see EmailSender#sendRegistrationEmail(String, String, int, String)
 	 */
 	public ResultCode registerUser(String email, String name, String password, boolean registrationConfirmed) {
+		return registerUser(email, name, password, registrationConfirmed, null);
+	}
+
+	/**
+	 * Same as {@link #registerUser(String, String, String, boolean)}, but the
+	 * password hash is calculated by the given executor, or by the calling
+	 * thread if it is null.
+	 */
+	ResultCode registerUser(String email, String name, String password, boolean registrationConfirmed, ExecutorService hashingExecutor) {
 
 		ResultCode checkResult = checkRegistrationPreconditions(email, name);
 		if (checkResult != ResultCode.OK) {
@@ -664,7 +988,7 @@ public class UserManager implements Serializable {
 
 		String controlCode = generateRandomMD5Hash();
 
-		UserPassword userPassword = createUserPassword(password);
+		UserPassword userPassword = createUserPassword(password, hashingExecutor);
 
 		User newUser = new User(0, name, email, controlCode, registrationConfirmed, userPassword, UserRanks.NORMAL_USER);
 
@@ -730,7 +1054,7 @@ public class UserManager implements Serializable {
 
 		String controlCode = generateRandomMD5Hash();
 
-		UserPassword userPassword = createUserPassword("");
+		UserPassword userPassword = createUserPassword("", null);
 
 		User newUser = new User(-1, name, email, controlCode, false, userPassword, rank);
 
@@ -740,7 +1064,7 @@ public class UserManager implements Serializable {
 			return ResultCode.DATABASE_ERROR;
 		}
 
-		User registrator = sessionModel.getCurrentUser();
+		User registrator = getSessionUser();
 
 		if (emailSender.sendManualRegistrationEmail(email, name, newUserId, controlCode, registrator)) {
 			return ResultCode.OK;
@@ -750,6 +1074,56 @@ public class UserManager implements Serializable {
 		}
 	}
 
+	/**
+	 * Registers many users at once, for instance when migrating users from
+	 * another system. Each registration behaves like
+	 * {@link #registerUser(String, String, String, boolean)}, but the
+	 * registrations are processed in batches of
+	 * {@link #BULK_REGISTRATION_BATCH_SIZE}: the emails and names of a whole
+	 * batch are checked by set-based queries, the password hashes are
+	 * calculated in parallel by a {@link ForkJoinPool} and the users are added
+	 * by a single {@link UserDatabaseModel#addUsers(List)} call. Only one batch
+	 * is held in memory, so the registrations can be read lazily (for instance
+	 * from a file).
+	 * <p>
+	 * Emails which are not {@link EmailUtils#isEmailValid(String) valid} are
+	 * rejected. If two registrations in the input share an email or a name,
+	 * the first one wins.
+	 * 
+	 * @param registrations
+	 *            users to be registered
+	 * @param listener
+	 *            receives the result of each registration once its batch is
+	 *            processed, can be null
+	 * @return number of added users
+	 * @see #registerUser(String, String, String, boolean)
+	 * @since 0.4.0
+	 */
+	public int registerUsers(Iterable<UserRegistration> registrations, RegistrationListener listener) {
+
+		ForkJoinPool pool = new ForkJoinPool();
+		try {
+			int addedUsers = 0;
+			List<UserRegistration> batch = new ArrayList<UserRegistration>(BULK_REGISTRATION_BATCH_SIZE);
+
+			for (UserRegistration registration : registrations) {
+				batch.add(registration);
+				if (batch.size() == BULK_REGISTRATION_BATCH_SIZE) {
+					addedUsers += registerBatch(batch, pool, listener);
+					batch.clear();
+				}
+			}
+
+			if (!batch.isEmpty()) {
+				addedUsers += registerBatch(batch, pool, listener);
+			}
+
+			return addedUsers;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
 	/**
 	 * Resends the registration email containing the registration control code
 	 * in case the email failed to send during registration, or if the user did
@@ -803,6 +1177,15 @@ public class UserManager implements Serializable {
 	 * @see EmailSender#sendLostPasswordEmail(String, String)
 	 */
 	public ResultCode resetPassword(String userEmail, String tokenKey, String newPassword) {
+		return resetPassword(userEmail, tokenKey, newPassword, null);
+	}
+
+	/**
+	 * Same as {@link #resetPassword(String, String, String)}, but the
+	 * password hash is calculated by the given executor, or by the calling
+	 * thread if it is null.
+	 */
+	ResultCode resetPassword(String userEmail, String tokenKey, String newPassword, ExecutorService hashingExecutor) {
 
 		boolean tokenValid = isPasswordResetTokenValid(userEmail, tokenKey);
 		if (!tokenValid) {
@@ -814,7 +1197,7 @@ public class UserManager implements Serializable {
 			return ResultCode.NO_SUCH_USER;
 		}
 
-		UserPassword userPassword = createUserPassword(newPassword);
+		UserPassword userPassword = createUserPassword(newPassword, hashingExecutor);
 
 		if (!databaseModel.setUserPassword(userId, userPassword)) {
 			LOGGER.error("DB error: Failed to set password for user with id={}", userId);
@@ -853,6 +1236,63 @@ public class UserManager implements Serializable {
 		}
 	}
 
+	/**
+	 * Sets the source of random bytes used to generate password salts,
+	 * registration control codes and password reset token keys. By default, a
+	 * {@link RandomSourcePooledImpl pooled} {@link RandomSourceStripedImpl
+	 * striped} random source is used.
+	 *
+	 * @param randomSource
+	 *            random source to use, must be thread safe
+	 * @since 0.4.0
+	 */
+	public void setRandomSource(RandomSource randomSource) {
+		this.randomSource = randomSource;
+	}
+
+	/**
+	 * Sets the limiter of log in attempts checked by
+	 * {@link #logIn(String, String, String)} before any other work is done. By
+	 * default (or if null is set), log in attempts are not limited.
+	 *
+	 * @param logInRateLimiter
+	 *            limiter to use, or null
+	 * @since 0.4.0
+	 */
+	public void setLogInRateLimiter(LogInRateLimiter logInRateLimiter) {
+		this.logInRateLimiter = logInRateLimiter;
+	}
+
+	/**
+	 * Sets the monitor to which {@link #logIn(String, String, String)} reports
+	 * the ip addresses of log in attempts with an invalid password. By default
+	 * (or if null is set), failed attempts are only recorded by
+	 * {@link UserDatabaseModel#makeLogInRecord(int, boolean, String)}.
+	 *
+	 * @param failedLogInMonitor
+	 *            monitor to use, or null
+	 * @since 0.4.0
+	 */
+	public void setFailedLogInMonitor(FailedLogInMonitor failedLogInMonitor) {
+		this.failedLogInMonitor = failedLogInMonitor;
+	}
+
+	/**
+	 * Sets the policy by which {@link #logIn(String, String, String)} rejects
+	 * log in attempts to accounts with too many consecutive failed attempts,
+	 * before the password is hashed. The decision is based on the
+	 * {@link User#getFailedLogInCount() failed log in count} stored with the
+	 * user, so no log in records are read. By default (or if null is set),
+	 * accounts are never locked.
+	 *
+	 * @param logInLockoutPolicy
+	 *            policy to use, or null
+	 * @since 0.4.0
+	 */
+	public void setLogInLockoutPolicy(LogInLockoutPolicy logInLockoutPolicy) {
+		this.logInLockoutPolicy = logInLockoutPolicy;
+	}
+
 	/**
 	 * Creates a new instance of UserManager. The constructor creates new
 	 * instances of random generators, which is quite an expensive operation, so
@@ -861,14 +1301,7 @@ public class UserManager implements Serializable {
 	 * functionality.
 	 */
 	public UserManager() {
-
-		try {
-			this.randomGenerator = SecureRandom.getInstance("SHA1PRNG");
-			this.sha256 = MessageDigest.getInstance("SHA-256");
-		} catch (NoSuchAlgorithmException e) {
-			LOGGER.warn("Failed to create random generator.", e);
-		}
-
+		this.randomSource = new RandomSourcePooledImpl(new RandomSourceStripedImpl());
 	}
 
 }
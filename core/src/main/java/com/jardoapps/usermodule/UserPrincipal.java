@@ -0,0 +1,65 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule;
+
+import java.io.Serializable;
+
+/**
+ * Compact reference to a logged in user, which is stored in the session by
+ * {@link PrincipalSessionModel session models} instead of the whole
+ * {@link User}. It contains only the user's id, name and rank, so it does not
+ * carry the password hash, salt and registration control code in every
+ * session.
+ * 
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class UserPrincipal implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int id;
+
+	private final String name;
+
+	private final int rank;
+
+	public int getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getRank() {
+		return rank;
+	}
+
+	public UserPrincipal(int id, String name, int rank) {
+		this.id = id;
+		this.name = name;
+		this.rank = rank;
+	}
+
+	public UserPrincipal(User user) {
+		this(user.getId(), user.getName(), user.getRank());
+	}
+
+}
@@ -0,0 +1,132 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule.containers;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import com.jardoapps.usermodule.EmailOutboxModel;
+import com.jardoapps.usermodule.EmailSender;
+import com.jardoapps.usermodule.User;
+import com.jardoapps.usermodule.defines.EmailType;
+
+/**
+ * Container class representing an email which is waiting in the outbox to be
+ * sent. It holds the arguments of the corresponding {@link EmailSender}
+ * method. See {@link EmailOutboxModel}.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class OutboxEmail implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long id;
+	private final EmailType type;
+	private final String email;
+	private final String userName;
+	private final int userId;
+	private final String code;
+	private final User registrator;
+	private final Date creationTime;
+	private final int attempts;
+	private final Date nextAttemptTime;
+
+	public long getId() {
+		return id;
+	}
+
+	public EmailType getType() {
+		return type;
+	}
+
+	/**
+	 * Returns the address the email is sent to.
+	 */
+	public String getEmail() {
+		return email;
+	}
+
+	/**
+	 * Returns the name of the user the email is sent to. It is null for lost
+	 * password emails.
+	 */
+	public String getUserName() {
+		return userName;
+	}
+
+	/**
+	 * Returns the id of the user the email is sent to. It is 0 for lost
+	 * password emails.
+	 */
+	public int getUserId() {
+		return userId;
+	}
+
+	/**
+	 * Returns the registration control code, or the password reset token key
+	 * for lost password emails.
+	 */
+	public String getCode() {
+		return code;
+	}
+
+	/**
+	 * Returns the user who registered the recipient. It is null for all
+	 * emails except manual registration emails.
+	 */
+	public User getRegistrator() {
+		return registrator;
+	}
+
+	public Date getCreationTime() {
+		return creationTime;
+	}
+
+	/**
+	 * Returns the number of attempts to send this email made so far.
+	 */
+	public int getAttempts() {
+		return attempts;
+	}
+
+	/**
+	 * Returns the time after which the email can be sent.
+	 */
+	public Date getNextAttemptTime() {
+		return nextAttemptTime;
+	}
+
+	public OutboxEmail(long id, EmailType type, String email, String userName, int userId, String code, User registrator, Date creationTime,
+			int attempts, Date nextAttemptTime) {
+		this.id = id;
+		this.type = type;
+		this.email = email;
+		this.userName = userName;
+		this.userId = userId;
+		this.code = code;
+		this.registrator = registrator;
+		this.creationTime = creationTime;
+		this.attempts = attempts;
+		this.nextAttemptTime = nextAttemptTime;
+	}
+
+}
@@ -0,0 +1,138 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.containers;
+
+import java.util.Date;
+
+import com.jardoapps.usermodule.User;
+import com.jardoapps.usermodule.UserDatabaseModel;
+import com.jardoapps.usermodule.UserRanks;
+
+/**
+ * Container class specifying which users are listed by
+ * {@link UserDatabaseModel#getUsers(UserFilter, User, int)} and in which order.
+ * Each condition is optional, an empty filter lists all registered users
+ * ordered by id. Filters are immutable, the <code>with...</code> methods return
+ * a modified copy:
+ * <p>
+ * <code>UserFilter.ALL.withRank(UserRanks.ADMIN).withOrder(Order.REGISTRATION_DATE)</code>
+ * 
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class UserFilter {
+
+	/**
+	 * Order of the listed users. Each order is also the key by which the next
+	 * page is found, so deep pages are as fast as the first one, as long as
+	 * the database can read the users in that order from an index. Listings
+	 * filtered by registration date should therefore be ordered by
+	 * registration date.
+	 */
+	public enum Order {
+
+		/** Ordered by user id. */
+		ID,
+
+		/**
+		 * Ordered by registration date, users registered at the same time are
+		 * ordered by id. Users without a registration date are not listed.
+		 */
+		REGISTRATION_DATE
+	}
+
+	/**
+	 * Filter which lists all registered users ordered by id.
+	 */
+	public static final UserFilter ALL = new UserFilter(null, null, null, null, Order.ID);
+
+	private final Integer rank;
+	private final Boolean registrationConfirmed;
+	private final Date registeredSince;
+	private final Date registeredBefore;
+	private final Order order;
+
+	/**
+	 * Returns the rank of the listed users (see {@link UserRanks}), or null
+	 * if users of all ranks are listed.
+	 */
+	public Integer getRank() {
+		return rank;
+	}
+
+	/**
+	 * Returns true if only confirmed users are listed, false if only
+	 * unconfirmed users are listed, or null if both are listed.
+	 */
+	public Boolean getRegistrationConfirmed() {
+		return registrationConfirmed;
+	}
+
+	/**
+	 * Returns the earliest registration date (inclusive) of the listed users,
+	 * or null.
+	 */
+	public Date getRegisteredSince() {
+		return registeredSince;
+	}
+
+	/**
+	 * Returns the registration date (exclusive) before which the listed users
+	 * were registered, or null.
+	 */
+	public Date getRegisteredBefore() {
+		return registeredBefore;
+	}
+
+	public Order getOrder() {
+		return order;
+	}
+
+	public UserFilter withRank(Integer newRank) {
+		return new UserFilter(newRank, registrationConfirmed, registeredSince, registeredBefore, order);
+	}
+
+	public UserFilter withRegistrationConfirmed(Boolean newRegistrationConfirmed) {
+		return new UserFilter(rank, newRegistrationConfirmed, registeredSince, registeredBefore, order);
+	}
+
+	public UserFilter withRegisteredSince(Date newRegisteredSince) {
+		return new UserFilter(rank, registrationConfirmed, newRegisteredSince, registeredBefore, order);
+	}
+
+	public UserFilter withRegisteredBefore(Date newRegisteredBefore) {
+		return new UserFilter(rank, registrationConfirmed, registeredSince, newRegisteredBefore, order);
+	}
+
+	public UserFilter withOrder(Order newOrder) {
+		if (newOrder == null) {
+			throw new IllegalArgumentException("Order cannot be null.");
+		}
+		return new UserFilter(rank, registrationConfirmed, registeredSince, registeredBefore, newOrder);
+	}
+
+	private UserFilter(Integer rank, Boolean registrationConfirmed, Date registeredSince, Date registeredBefore, Order order) {
+		this.rank = rank;
+		this.registrationConfirmed = registrationConfirmed;
+		this.registeredSince = registeredSince;
+		this.registeredBefore = registeredBefore;
+		this.order = order;
+	}
+
+}
@@ -18,6 +18,8 @@
 
 package com.jardoapps.usermodule.containers;
 
+import java.io.Serializable;
+
 /**
  * Container class representing a user password which consits out of the
  * password hash and a random generated salt.
@@ -25,7 +27,9 @@ package com.jardoapps.usermodule.containers;
  * @author Jaroslav Brtiš
  * 
  */
-public class UserPassword {
+public class UserPassword implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	private final String hash;
 	private final String salt;
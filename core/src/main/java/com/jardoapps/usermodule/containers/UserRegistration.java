@@ -0,0 +1,71 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.containers;
+
+import com.jardoapps.usermodule.UserManager;
+
+/**
+ * Container class holding the data of a single user registered by
+ * {@link UserManager#registerUsers(Iterable, UserManager.RegistrationListener)}.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class UserRegistration {
+
+	private final String email;
+	private final String name;
+	private final String password;
+	private final boolean registrationConfirmed;
+
+	public String getEmail() {
+		return email;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getPassword() {
+		return password;
+	}
+
+	public boolean isRegistrationConfirmed() {
+		return registrationConfirmed;
+	}
+
+	/**
+	 * @param email
+	 *            email address of the new account
+	 * @param name
+	 *            name of the user, can be null
+	 * @param password
+	 *            login password of the new account
+	 * @param registrationConfirmed
+	 *            whether the registration will be confirmed, see
+	 *            {@link UserManager#registerUser(String, String, String, boolean)}
+	 */
+	public UserRegistration(String email, String name, String password, boolean registrationConfirmed) {
+		this.email = email;
+		this.name = name;
+		this.password = password;
+		this.registrationConfirmed = registrationConfirmed;
+	}
+
+}
@@ -0,0 +1,433 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.decorators;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jardoapps.usermodule.UserDatabaseModel;
+import com.jardoapps.usermodule.containers.LogInRecord;
+
+/**
+ * A {@link UserDatabaseModel} decorator which takes log in records off the
+ * log in path. Records passed to
+ * {@link #makeLogInRecord(int, boolean, String)} are put into a bounded
+ * lock-free queue and written to the decorated database model by a background
+ * thread via {@link UserDatabaseModel#makeLogInRecords(List)}. The queue is
+ * flushed when it reaches the batch size, or periodically after the flush
+ * interval, whichever comes first.
+ * <p>
+ * When the queue is full, the record is either dropped or written
+ * synchronously, depending on the {@link OverflowPolicy}. Records which fail
+ * to be written are not retried.
+ * <p>
+ * Method {@link #shutdown()} should be called when the application stops,
+ * otherwise the queued records are lost.
+ * <p>
+ * The background thread is started by the constructor, but not after
+ * deserialization, so that copies of the decorator (for instance in
+ * passivated or replicated sessions) do not leave threads behind. A
+ * deserialized decorator writes the records synchronously, unless
+ * {@link #start()} is called. The records queued by the original decorator
+ * stay in its queue and are written by its thread.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class LogInRecordWriteBehindDecorator extends UserDatabaseModelDecorator {
+
+	/**
+	 * Specifies what happens to a log in record when the queue is full.
+	 */
+	public enum OverflowPolicy {
+
+		/**
+		 * The record is dropped and
+		 * {@link UserDatabaseModel#makeLogInRecord(int, boolean, String)
+		 * makeLogInRecord} returns false.
+		 */
+		DROP,
+
+		/**
+		 * The record is written synchronously by the calling thread, which
+		 * slows down the callers until the background thread catches up.
+		 */
+		WRITE_THROUGH
+	}
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(LogInRecordWriteBehindDecorator.class);
+
+	public static final int DEFAULT_CAPACITY = 10000;
+
+	public static final int DEFAULT_BATCH_SIZE = 100;
+
+	public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000L;
+
+	private final int capacity;
+
+	private final int batchSize;
+
+	private final long flushIntervalMillis;
+
+	private final OverflowPolicy overflowPolicy;
+
+	private transient Queue<LogInRecord> queue;
+
+	private transient AtomicInteger queueSize;
+
+	private transient AtomicBoolean flushRequested;
+
+	private transient volatile ScheduledExecutorService executor;
+
+	private transient AtomicBoolean started;
+
+	private transient Runnable flushTask;
+
+	private transient AtomicLong writtenRecords;
+
+	private transient AtomicLong failedRecords;
+
+	private transient AtomicLong droppedRecords;
+
+	private transient AtomicLong flushCount;
+
+	private transient AtomicLong totalFlushNanos;
+
+	private transient AtomicLong lastFlushNanos;
+
+	private transient AtomicLong maxFlushNanos;
+
+	private static ScheduledExecutorService createExecutor() {
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "usermodule-login-record-writer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+		return executor;
+	}
+
+	private static void updateMax(AtomicLong max, long value) {
+		long current = max.get();
+		while (value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+	private void init() {
+		queue = new ConcurrentLinkedQueue<LogInRecord>();
+		queueSize = new AtomicInteger();
+		flushRequested = new AtomicBoolean();
+
+		writtenRecords = new AtomicLong();
+		failedRecords = new AtomicLong();
+		droppedRecords = new AtomicLong();
+		flushCount = new AtomicLong();
+		totalFlushNanos = new AtomicLong();
+		lastFlushNanos = new AtomicLong();
+		maxFlushNanos = new AtomicLong();
+
+		flushTask = new Runnable() {
+			@Override
+			public void run() {
+				flushRequested.set(false);
+				flush();
+			}
+		};
+
+		started = new AtomicBoolean();
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		init();
+	}
+
+	private void requestFlush() {
+		ScheduledExecutorService executor = this.executor;
+		if (executor != null && flushRequested.compareAndSet(false, true)) {
+			try {
+				executor.execute(flushTask);
+			} catch (RuntimeException e) {
+				// executor has been shut down, the records will be flushed by shutdown()
+				flushRequested.set(false);
+			}
+		}
+	}
+
+	private void writeBatch(List<LogInRecord> batch) {
+		long start = System.nanoTime();
+
+		boolean ok = false;
+		try {
+			ok = delegate.makeLogInRecords(batch);
+			if (!ok) {
+				LOGGER.error("DB error: Failed to write a batch of {} log in records.", batch.size());
+			}
+		} catch (RuntimeException e) {
+			LOGGER.error("DB error: Failed to write a batch of " + batch.size() + " log in records.", e);
+		}
+
+		long duration = System.nanoTime() - start;
+
+		if (ok) {
+			writtenRecords.addAndGet(batch.size());
+		} else {
+			failedRecords.addAndGet(batch.size());
+		}
+
+		flushCount.incrementAndGet();
+		totalFlushNanos.addAndGet(duration);
+		lastFlushNanos.set(duration);
+		updateMax(maxFlushNanos, duration);
+	}
+
+	/**
+	 * Writes all queued records to the decorated database model in batches.
+	 * This method is called automatically by the background thread, but it
+	 * can also be called manually.
+	 */
+	public void flush() {
+		List<LogInRecord> batch = new ArrayList<LogInRecord>(batchSize);
+		LogInRecord record;
+		while ((record = queue.poll()) != null) {
+			queueSize.decrementAndGet();
+			batch.add(record);
+
+			if (batch.size() == batchSize) {
+				writeBatch(batch);
+				batch = new ArrayList<LogInRecord>(batchSize);
+			}
+		}
+
+		if (!batch.isEmpty()) {
+			writeBatch(batch);
+		}
+	}
+
+	/**
+	 * Starts the background thread. It is started by the constructor, so this
+	 * method only needs to be called on a deserialized decorator.
+	 *
+	 * @throws IllegalStateException
+	 *             if the background thread has already been started
+	 */
+	public void start() {
+		if (!started.compareAndSet(false, true)) {
+			throw new IllegalStateException("Background thread has already been started.");
+		}
+
+		ScheduledExecutorService executor = createExecutor();
+		executor.scheduleWithFixedDelay(flushTask, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+		this.executor = executor;
+	}
+
+	/**
+	 * Returns true if the background thread has been started and not shut
+	 * down yet.
+	 */
+	public boolean isRunning() {
+		ScheduledExecutorService executor = this.executor;
+		return executor != null && !executor.isShutdown();
+	}
+
+	/**
+	 * Stops the background thread and writes all remaining queued records.
+	 * Records made after the shutdown are written synchronously.
+	 *
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the background thread to
+	 *             finish
+	 */
+	public void shutdown() throws InterruptedException {
+		ScheduledExecutorService executor = this.executor;
+		if (executor != null) {
+			executor.shutdown();
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		}
+		flush();
+	}
+
+	@Override
+	public boolean makeLogInRecord(int userId, boolean logInSuccessful, String usersIp) {
+		LogInRecord record = new LogInRecord(userId, logInSuccessful, usersIp, new Date());
+
+		if (!isRunning()) {
+			return delegate.makeLogInRecords(Collections.singletonList(record));
+		}
+
+		int size = queueSize.incrementAndGet();
+		if (size > capacity) {
+			queueSize.decrementAndGet();
+			requestFlush();
+
+			if (overflowPolicy == OverflowPolicy.WRITE_THROUGH) {
+				return delegate.makeLogInRecords(Collections.singletonList(record));
+			}
+
+			droppedRecords.incrementAndGet();
+			return false;
+		}
+
+		queue.offer(record);
+
+		if (size >= batchSize) {
+			requestFlush();
+		}
+
+		return true;
+	}
+
+	/**
+	 * Queues the log in record like
+	 * {@link #makeLogInRecord(int, boolean, String)} and cancels the password
+	 * reset tokens of the user synchronously.
+	 */
+	@Override
+	public boolean recordSuccessfulLogIn(int userId, String usersIp) {
+		boolean recorded = makeLogInRecord(userId, true, usersIp);
+		boolean cancelled = delegate.cancelAllPasswordResetTokens(userId);
+		return recorded && cancelled;
+	}
+
+	/**
+	 * Returns the number of records waiting to be written.
+	 */
+	public int getQueueDepth() {
+		return queueSize.get();
+	}
+
+	/**
+	 * Returns the number of records which have been successfully written.
+	 */
+	public long getWrittenRecordCount() {
+		return writtenRecords.get();
+	}
+
+	/**
+	 * Returns the number of records which failed to be written.
+	 */
+	public long getFailedRecordCount() {
+		return failedRecords.get();
+	}
+
+	/**
+	 * Returns the number of records which have been dropped because the queue
+	 * was full.
+	 */
+	public long getDroppedRecordCount() {
+		return droppedRecords.get();
+	}
+
+	/**
+	 * Returns the number of written batches.
+	 */
+	public long getFlushCount() {
+		return flushCount.get();
+	}
+
+	/**
+	 * Returns the time it took to write the last batch, in milliseconds.
+	 */
+	public double getLastFlushMillis() {
+		return lastFlushNanos.get() / 1000000.0;
+	}
+
+	/**
+	 * Returns the longest time it took to write a batch, in milliseconds.
+	 */
+	public double getMaxFlushMillis() {
+		return maxFlushNanos.get() / 1000000.0;
+	}
+
+	/**
+	 * Returns the average time it took to write a batch, in milliseconds.
+	 */
+	public double getAverageFlushMillis() {
+		long count = flushCount.get();
+		if (count == 0) {
+			return 0;
+		}
+		return totalFlushNanos.get() / 1000000.0 / count;
+	}
+
+	/**
+	 * Creates a decorator with {@link #DEFAULT_CAPACITY default capacity},
+	 * {@link #DEFAULT_BATCH_SIZE default batch size},
+	 * {@link #DEFAULT_FLUSH_INTERVAL_MILLIS default flush interval} and
+	 * {@link OverflowPolicy#WRITE_THROUGH WRITE_THROUGH} overflow policy.
+	 *
+	 * @param delegate
+	 *            decorated database model
+	 */
+	public LogInRecordWriteBehindDecorator(UserDatabaseModel delegate) {
+		this(delegate, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL_MILLIS, OverflowPolicy.WRITE_THROUGH);
+	}
+
+	/**
+	 * @param delegate
+	 *            decorated database model
+	 * @param capacity
+	 *            maximal number of queued records
+	 * @param batchSize
+	 *            maximal number of records written in one batch. A flush is
+	 *            triggered as soon as this many records are queued.
+	 * @param flushIntervalMillis
+	 *            maximal time between two flushes
+	 * @param overflowPolicy
+	 *            what to do when the queue is full
+	 */
+	public LogInRecordWriteBehindDecorator(UserDatabaseModel delegate, int capacity, int batchSize, long flushIntervalMillis, OverflowPolicy overflowPolicy) {
+		super(delegate);
+
+		if (capacity < 1 || batchSize < 1 || flushIntervalMillis < 1) {
+			throw new IllegalArgumentException("Capacity, batch size and flush interval must be positive.");
+		}
+
+		this.capacity = capacity;
+		this.batchSize = batchSize;
+		this.flushIntervalMillis = flushIntervalMillis;
+		this.overflowPolicy = overflowPolicy;
+
+		init();
+		start();
+	}
+
+}
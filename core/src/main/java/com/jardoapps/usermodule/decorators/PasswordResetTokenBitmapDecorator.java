@@ -0,0 +1,244 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.decorators;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.jardoapps.usermodule.UserDatabaseModel;
+import com.jardoapps.usermodule.UserManager;
+import com.jardoapps.usermodule.containers.PasswordResetToken;
+import com.jardoapps.usermodule.utils.RoaringBitmap;
+
+/**
+ * A {@link UserDatabaseModel} decorator which skips cancelling password reset
+ * tokens of users who have none. {@link UserManager} cancels the tokens of a
+ * user on every successful log in, although only a small fraction of users
+ * ever has a token. This decorator keeps the ids of users with tokens in a
+ * compressed bitmap ({@link RoaringBitmap}) and forwards
+ * {@link #cancelAllPasswordResetTokens(int)} only for users in the bitmap.
+ * {@link #recordSuccessfulLogIn(int, String)} of other users is forwarded as
+ * {@link UserDatabaseModel#makeLogInRecord(int, boolean, String)}.
+ * <p>
+ * The bitmap is built by {@link #rebuild()}, which reads
+ * {@link UserDatabaseModel#getUserIdsWithPasswordResetTokens()}. It should be
+ * called once when the application starts. Until then, all calls are
+ * forwarded. The bitmap is updated by
+ * {@link #addPasswordResetToken(PasswordResetToken)} and
+ * {@link #cancelAllPasswordResetTokens(int)}. Tokens added to the database by
+ * other means (for instance by another application instance) are not known
+ * until the next rebuild, so they are not cancelled on log in.
+ * <p>
+ * The bitmap may contain users without tokens (for instance if adding a
+ * token failed), which only costs an unnecessary cancellation.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class PasswordResetTokenBitmapDecorator extends UserDatabaseModelDecorator {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Guards the bitmap and the ids added during a rebuild.
+	 */
+	private transient ReentrantLock lock;
+
+	/**
+	 * Ids of users with tokens, null until the first rebuild.
+	 */
+	private transient RoaringBitmap usersWithTokens;
+
+	/**
+	 * Ids of users whose tokens were added while a rebuild is reading the
+	 * database, null if no rebuild is in progress.
+	 */
+	private transient Set<Integer> addedDuringRebuild;
+
+	private transient AtomicLong skippedCancellations;
+
+	private void init() {
+		lock = new ReentrantLock();
+		usersWithTokens = null;
+		addedDuringRebuild = null;
+		skippedCancellations = new AtomicLong();
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		init();
+	}
+
+	/**
+	 * Removes the user from the bitmap before their tokens are cancelled, so
+	 * that a token added concurrently adds them again.
+	 *
+	 * @return false if the user has no tokens to cancel
+	 */
+	private boolean removeUser(int userId) {
+		lock.lock();
+		try {
+			if (usersWithTokens != null && !usersWithTokens.remove(userId)) {
+				skippedCancellations.incrementAndGet();
+				return false;
+			}
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void restoreUser(int userId) {
+		lock.lock();
+		try {
+			if (usersWithTokens != null) {
+				usersWithTokens.add(userId);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Builds the bitmap from the decorated database model.
+	 */
+	public void rebuild() {
+		lock.lock();
+		try {
+			addedDuringRebuild = new HashSet<Integer>();
+		} finally {
+			lock.unlock();
+		}
+
+		RoaringBitmap built = new RoaringBitmap();
+		boolean complete = false;
+		try {
+			for (Integer userId : delegate.getUserIdsWithPasswordResetTokens()) {
+				built.add(userId);
+			}
+			complete = true;
+		} finally {
+			lock.lock();
+			try {
+				if (complete) {
+					// tokens added in the meantime might not have been read
+					for (Integer userId : addedDuringRebuild) {
+						built.add(userId);
+					}
+					usersWithTokens = built;
+				}
+				addedDuringRebuild = null;
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of users in the bitmap.
+	 */
+	public long getUserCount() {
+		lock.lock();
+		try {
+			return usersWithTokens != null ? usersWithTokens.getCardinality() : 0;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the approximate memory taken by the bitmap, in bytes.
+	 */
+	public long getSizeInBytes() {
+		lock.lock();
+		try {
+			return usersWithTokens != null ? usersWithTokens.getSizeInBytes() : 0;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of cancellations which were not forwarded to the
+	 * decorated database model, because the user had no tokens.
+	 */
+	public long getSkippedCancellationCount() {
+		return skippedCancellations.get();
+	}
+
+	@Override
+	public boolean addPasswordResetToken(PasswordResetToken token) {
+		// the user is added first, so that a concurrent cancellation cannot miss the token
+		lock.lock();
+		try {
+			if (usersWithTokens != null) {
+				usersWithTokens.add(token.getUserId());
+			}
+			if (addedDuringRebuild != null) {
+				addedDuringRebuild.add(token.getUserId());
+			}
+		} finally {
+			lock.unlock();
+		}
+
+		return delegate.addPasswordResetToken(token);
+	}
+
+	@Override
+	public boolean cancelAllPasswordResetTokens(int userId) {
+		if (!removeUser(userId)) {
+			return true;
+		}
+
+		boolean result = delegate.cancelAllPasswordResetTokens(userId);
+		if (!result) {
+			restoreUser(userId);
+		}
+
+		return result;
+	}
+
+	@Override
+	public boolean recordSuccessfulLogIn(int userId, String usersIp) {
+		if (!removeUser(userId)) {
+			return delegate.makeLogInRecord(userId, true, usersIp);
+		}
+
+		boolean result = delegate.recordSuccessfulLogIn(userId, usersIp);
+		if (!result) {
+			restoreUser(userId);
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param delegate
+	 *            decorated database model
+	 */
+	public PasswordResetTokenBitmapDecorator(UserDatabaseModel delegate) {
+		super(delegate);
+		init();
+	}
+
+}
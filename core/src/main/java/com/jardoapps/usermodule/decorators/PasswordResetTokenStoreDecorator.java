@@ -0,0 +1,298 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.decorators;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.jardoapps.usermodule.User;
+import com.jardoapps.usermodule.UserDatabaseModel;
+import com.jardoapps.usermodule.UserManagementProperties;
+import com.jardoapps.usermodule.containers.PasswordResetToken;
+import com.jardoapps.usermodule.utils.TimingWheel;
+
+/**
+ * A {@link UserDatabaseModel} decorator which keeps the newest valid password
+ * reset token of each user in memory. Tokens are looked up in a concurrent
+ * map without accessing the database and are removed from memory when they
+ * expire, using a {@link TimingWheel} with one second ticks. The expiration
+ * time is taken from
+ * {@link UserManagementProperties#getPasswordResetTokenExpirationMinutes()}.
+ * <p>
+ * By default, tokens are stored only in memory, so they are lost when the
+ * application restarts and they are not shared between multiple application
+ * instances. In this mode, cancelling the tokens of a user who has none (for
+ * instance on every log in) does not access the database at all. In the write
+ * through mode, tokens are also added to and cancelled in the decorated
+ * database model, and tokens not found in memory are looked up there.
+ * <p>
+ * The email of the user is needed to store a token, so
+ * {@link #addPasswordResetToken(PasswordResetToken)} looks the user up by
+ * {@link UserDatabaseModel#getUserById(int)}.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class PasswordResetTokenStoreDecorator extends UserDatabaseModelDecorator {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final long TICK_MILLIS = 1000L;
+
+	private static final long MILLIS_IN_MINUTE = 60000L;
+
+	private static final class Entry {
+
+		private final PasswordResetToken token;
+
+		private final String email;
+
+		private TimingWheel.Timeout<Entry> timeout;
+
+		private Entry(PasswordResetToken token, String email) {
+			this.token = token;
+			this.email = email;
+		}
+	}
+
+	private final long expirationMillis;
+
+	private final boolean writeThrough;
+
+	private transient ConcurrentMap<String, Entry> tokensByEmail;
+
+	private transient ConcurrentMap<Integer, Entry> tokensByUserId;
+
+	/**
+	 * Guards all modifications of the maps and the timing wheel. Reads from
+	 * the maps are not locked.
+	 */
+	private transient ReentrantLock lock;
+
+	private transient TimingWheel<Entry> timingWheel;
+
+	/**
+	 * Incremented on every cancellation. Tokens loaded from the database are
+	 * only stored in memory if no cancellation happened while they were being
+	 * loaded.
+	 */
+	private transient long cancellations;
+
+	private void init() {
+		tokensByEmail = new ConcurrentHashMap<String, Entry>();
+		tokensByUserId = new ConcurrentHashMap<Integer, Entry>();
+		lock = new ReentrantLock();
+		timingWheel = new TimingWheel<Entry>(TICK_MILLIS, System.currentTimeMillis());
+		cancellations = 0;
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		init();
+	}
+
+	private boolean isExpired(PasswordResetToken token, long now) {
+		return token.getCreationTime().getTime() + expirationMillis <= now;
+	}
+
+	private void cancelInMemory(int userId) {
+		lock.lock();
+		try {
+			cancellations++;
+			Entry entry = tokensByUserId.get(userId);
+			if (entry != null) {
+				remove(entry);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// the following private methods must be called while holding the lock
+
+	private void remove(Entry entry) {
+		tokensByEmail.remove(entry.email, entry);
+		tokensByUserId.remove(entry.token.getUserId(), entry);
+		timingWheel.cancel(entry.timeout);
+	}
+
+	private void expire(long now) {
+		for (Entry entry : timingWheel.advance(now)) {
+			tokensByEmail.remove(entry.email, entry);
+			tokensByUserId.remove(entry.token.getUserId(), entry);
+		}
+	}
+
+	private void store(PasswordResetToken token, String email) {
+		Entry entry = new Entry(token, email);
+
+		Entry previous = tokensByUserId.get(token.getUserId());
+		if (previous != null) {
+			if (previous.token.getCreationTime().after(token.getCreationTime())) {
+				return;
+			}
+			remove(previous);
+		}
+
+		entry.timeout = timingWheel.schedule(entry, token.getCreationTime().getTime() + expirationMillis);
+		tokensByEmail.put(email, entry);
+		tokensByUserId.put(token.getUserId(), entry);
+	}
+
+	/**
+	 * Returns the number of tokens held in memory.
+	 */
+	public int getSize() {
+		return tokensByUserId.size();
+	}
+
+	/**
+	 * Removes expired tokens from memory. This is done automatically on every
+	 * access to the tokens, but it can also be called periodically to release
+	 * memory when there is no activity.
+	 */
+	public void expireTokens() {
+		lock.lock();
+		try {
+			expire(System.currentTimeMillis());
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean addPasswordResetToken(PasswordResetToken token) {
+		User user = delegate.getUserById(token.getUserId());
+		if (user == null || user.getEmail() == null) {
+			return false;
+		}
+
+		if (writeThrough && !delegate.addPasswordResetToken(token)) {
+			return false;
+		}
+
+		long now = System.currentTimeMillis();
+
+		lock.lock();
+		try {
+			expire(now);
+			if (!isExpired(token, now)) {
+				store(token, user.getEmail());
+			}
+		} finally {
+			lock.unlock();
+		}
+
+		return true;
+	}
+
+	@Override
+	public boolean cancelAllPasswordResetTokens(int userId) {
+		cancelInMemory(userId);
+
+		if (writeThrough) {
+			return delegate.cancelAllPasswordResetTokens(userId);
+		}
+
+		return true;
+	}
+
+	@Override
+	public boolean recordSuccessfulLogIn(int userId, String usersIp) {
+		cancelInMemory(userId);
+
+		if (writeThrough) {
+			return delegate.recordSuccessfulLogIn(userId, usersIp);
+		}
+
+		return delegate.makeLogInRecord(userId, true, usersIp);
+	}
+
+	@Override
+	public PasswordResetToken getNewestPasswordResetToken(String email) {
+		long now = System.currentTimeMillis();
+
+		Entry entry = tokensByEmail.get(email);
+		if (entry != null && !isExpired(entry.token, now)) {
+			return entry.token;
+		}
+
+		long expectedCancellations;
+		lock.lock();
+		try {
+			expire(now);
+			expectedCancellations = cancellations;
+		} finally {
+			lock.unlock();
+		}
+
+		if (!writeThrough) {
+			return null;
+		}
+
+		PasswordResetToken token = delegate.getNewestPasswordResetToken(email);
+
+		if (token != null && !isExpired(token, now)) {
+			lock.lock();
+			try {
+				if (cancellations == expectedCancellations) {
+					store(token, email);
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		return token;
+	}
+
+	/**
+	 * Creates a decorator which keeps the tokens only in memory.
+	 *
+	 * @param delegate
+	 *            decorated database model
+	 * @param properties
+	 *            properties specifying the token expiration time
+	 */
+	public PasswordResetTokenStoreDecorator(UserDatabaseModel delegate, UserManagementProperties properties) {
+		this(delegate, properties, false);
+	}
+
+	/**
+	 * @param delegate
+	 *            decorated database model
+	 * @param properties
+	 *            properties specifying the token expiration time
+	 * @param writeThrough
+	 *            if true, tokens are also stored in the decorated database
+	 *            model
+	 */
+	public PasswordResetTokenStoreDecorator(UserDatabaseModel delegate, UserManagementProperties properties, boolean writeThrough) {
+		super(delegate);
+
+		this.expirationMillis = properties.getPasswordResetTokenExpirationMinutes() * MILLIS_IN_MINUTE;
+		this.writeThrough = writeThrough;
+
+		init();
+	}
+
+}
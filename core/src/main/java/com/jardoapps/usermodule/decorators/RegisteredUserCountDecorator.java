@@ -0,0 +1,289 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.decorators;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jardoapps.usermodule.User;
+import com.jardoapps.usermodule.UserDatabaseModel;
+import com.jardoapps.usermodule.containers.SocialAccountDetails;
+import com.jardoapps.usermodule.utils.TimeBucketCounter;
+
+/**
+ * A {@link UserDatabaseModel} decorator which answers
+ * {@link #getRegisteredUserCount(Date)} from an in-memory
+ * {@link TimeBucketCounter} instead of counting the users in the database.
+ * Confirmed and not deleted users are counted in buckets (one day by default)
+ * by their {@link User#getRegistrationDate() registration date}, so the
+ * <code>since</code> date is rounded down to the start of its bucket.
+ * <p>
+ * The counter is built by {@link #rebuild()}, which reads all users page by
+ * page via {@link UserDatabaseModel#getUsers(int, int)}. It should be called
+ * once when the application starts. Until then, all calls are forwarded. The
+ * counter is updated by {@link #addUser(User)}, {@link #addUsers(List)},
+ * {@link #saveUserWithSocialAccount(User, SocialAccountDetails)},
+ * {@link #confirmUserRegistration(String)} and {@link #deleteUser(int)}, so
+ * changes made by other means (for instance by another application instance)
+ * are not visible until the next rebuild. Users which are changed while a
+ * rebuild is reading them might be counted incorrectly until the next
+ * rebuild.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class RegisteredUserCountDecorator extends UserDatabaseModelDecorator {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(RegisteredUserCountDecorator.class);
+
+	public static final int REBUILD_PAGE_SIZE = 1000;
+
+	private final long bucketMillis;
+
+	private final TimeZone timeZone;
+
+	/**
+	 * Counter used for answering queries, null until the first rebuild.
+	 */
+	private transient volatile TimeBucketCounter counter;
+
+	/**
+	 * Counter being built by a rebuild in progress, together with the id of
+	 * the last user it has read. Changes of users which have already been read
+	 * are applied to this counter too. Guarded by the lock.
+	 */
+	private transient TimeBucketCounter newCounter;
+
+	private transient int newCounterLastUserId;
+
+	private transient ReentrantLock lock;
+
+	/**
+	 * Serializes the read-modify sequences of confirmations and deletions, so
+	 * that a user is not counted twice when confirmed concurrently.
+	 */
+	private transient ReentrantLock updateLock;
+
+	private void init() {
+		counter = null;
+		lock = new ReentrantLock();
+		updateLock = new ReentrantLock();
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		init();
+	}
+
+	private void update(int userId, Date registrationDate, int delta) {
+		if (registrationDate == null) {
+			registrationDate = new Date();
+		}
+
+		lock.lock();
+		try {
+			if (counter != null) {
+				counter.add(registrationDate, delta);
+			}
+			if (newCounter != null && userId <= newCounterLastUserId) {
+				newCounter.add(registrationDate, delta);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Builds a new counter from all users in the database and replaces the
+	 * current one. Queries are answered by the current counter while the new
+	 * one is being built.
+	 */
+	public void rebuild() {
+		TimeBucketCounter built = new TimeBucketCounter(bucketMillis, timeZone);
+
+		lock.lock();
+		try {
+			newCounter = built;
+			newCounterLastUserId = 0;
+		} finally {
+			lock.unlock();
+		}
+
+		try {
+			int lastUserId = 0;
+			int userCount = 0;
+			List<User> page;
+			do {
+				page = delegate.getUsers(lastUserId, REBUILD_PAGE_SIZE);
+
+				lock.lock();
+				try {
+					for (User user : page) {
+						if (user.isRegistrationConfirmed() && user.getRegistrationDate() != null) {
+							built.add(user.getRegistrationDate(), 1);
+							userCount++;
+						}
+						lastUserId = user.getId();
+					}
+					newCounterLastUserId = lastUserId;
+				} finally {
+					lock.unlock();
+				}
+			} while (page.size() == REBUILD_PAGE_SIZE);
+
+			lock.lock();
+			try {
+				counter = built;
+			} finally {
+				lock.unlock();
+			}
+
+			LOGGER.info("Registered user counter rebuilt from {} users.", userCount);
+		} finally {
+			lock.lock();
+			try {
+				newCounter = null;
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the counter has been built and is used for answering
+	 * queries.
+	 */
+	public boolean isReady() {
+		return counter != null;
+	}
+
+	@Override
+	public int addUser(User newUser) {
+		int result = delegate.addUser(newUser);
+		if (result > 0 && newUser.isRegistrationConfirmed()) {
+			update(result, newUser.getRegistrationDate(), 1);
+		}
+		return result;
+	}
+
+	@Override
+	public int[] addUsers(List<User> newUsers) {
+		int[] result = delegate.addUsers(newUsers);
+		if (result != null) {
+			for (int i = 0; i < result.length; i++) {
+				User newUser = newUsers.get(i);
+				if (result[i] > 0 && newUser.isRegistrationConfirmed()) {
+					update(result[i], newUser.getRegistrationDate(), 1);
+				}
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public boolean confirmUserRegistration(String email) {
+		updateLock.lock();
+		try {
+			User user = delegate.getUserByEmail(email);
+			boolean result = delegate.confirmUserRegistration(email);
+			if (result && user != null && !user.isRegistrationConfirmed()) {
+				update(user.getId(), user.getRegistrationDate(), 1);
+			}
+			return result;
+		} finally {
+			updateLock.unlock();
+		}
+	}
+
+	@Override
+	public boolean deleteUser(int userId) {
+		updateLock.lock();
+		try {
+			User user = delegate.getUserById(userId);
+			boolean result = delegate.deleteUser(userId);
+			if (result && user != null && user.isRegistrationConfirmed()) {
+				update(userId, user.getRegistrationDate(), -1);
+			}
+			return result;
+		} finally {
+			updateLock.unlock();
+		}
+	}
+
+	@Override
+	public int getRegisteredUserCount(Date since) {
+		TimeBucketCounter current = counter;
+		if (current == null) {
+			return delegate.getRegisteredUserCount(since);
+		}
+		return current.countSince(since);
+	}
+
+	@Override
+	public int saveUserWithSocialAccount(User user, SocialAccountDetails details) {
+		int result = delegate.saveUserWithSocialAccount(user, details);
+		if (result > 0 && user.isRegistrationConfirmed()) {
+			update(result, user.getRegistrationDate(), 1);
+		}
+		return result;
+	}
+
+	/**
+	 * Creates a decorator which counts users per day in the default time zone.
+	 *
+	 * @param delegate
+	 *            decorated database model
+	 */
+	public RegisteredUserCountDecorator(UserDatabaseModel delegate) {
+		this(delegate, TimeBucketCounter.DAY_MILLIS, TimeZone.getDefault());
+	}
+
+	/**
+	 * @param delegate
+	 *            decorated database model
+	 * @param bucketMillis
+	 *            size of the time buckets in milliseconds, which is the
+	 *            precision of the <code>since</code> argument of
+	 *            {@link #getRegisteredUserCount(Date)}
+	 * @param timeZone
+	 *            time zone to which the buckets are aligned
+	 */
+	public RegisteredUserCountDecorator(UserDatabaseModel delegate, long bucketMillis, TimeZone timeZone) {
+		super(delegate);
+
+		if (bucketMillis < 1) {
+			throw new IllegalArgumentException("Bucket size must be positive.");
+		}
+
+		this.bucketMillis = bucketMillis;
+		this.timeZone = timeZone;
+
+		init();
+	}
+
+}
@@ -0,0 +1,380 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.decorators;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jardoapps.usermodule.User;
+import com.jardoapps.usermodule.UserDatabaseModel;
+import com.jardoapps.usermodule.containers.SocialAccountDetails;
+import com.jardoapps.usermodule.utils.BloomFilter;
+
+/**
+ * A {@link UserDatabaseModel} decorator which answers most
+ * {@link #isEmailRegistered(String)} and {@link #isUserNameRegistered(String)}
+ * calls for unregistered emails and names without accessing the database.
+ * Emails and names which are certainly not registered are also left out of
+ * the set-based queries {@link #getRegisteredEmails(Collection)} and
+ * {@link #getRegisteredUserNames(Collection)}. It
+ * keeps a {@link BloomFilter} of all registered emails and one of all
+ * registered names. If the filter says the value is certainly not registered,
+ * false is returned immediately, otherwise the call is forwarded to the
+ * decorated database model.
+ * <p>
+ * The filters are built by {@link #rebuild()}, which reads all users page by
+ * page via {@link UserDatabaseModel#getUsers(int, int)}. It should be called
+ * once when the application starts. Until then, all calls are forwarded. Users
+ * added by {@link #addUser(User)}, {@link #addUsers(List)} and
+ * {@link #saveUserWithSocialAccount(User, SocialAccountDetails)} are added to
+ * the filters, so users registered by other means (for instance by another
+ * application instance) are not visible until the next rebuild. Deleted users
+ * stay in the filters, which only causes additional database queries.
+ * Emails and names are lower-cased before they are added to or looked up in
+ * the filters, so a case-insensitive database collation never makes the
+ * filter answer "not registered" for a registered value.
+ * <p>
+ * The memory used by each filter is given by the number of bits, which can
+ * either be specified directly or calculated from the expected number of users
+ * and the desired false positive rate. The actual false positive rate can be
+ * monitored by {@link #getFalsePositiveRate()}.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class RegistrationBloomFilterDecorator extends UserDatabaseModelDecorator {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(RegistrationBloomFilterDecorator.class);
+
+	public static final int DEFAULT_EXPECTED_USERS = 100000;
+
+	public static final double DEFAULT_FALSE_POSITIVE_PROBABILITY = 0.01;
+
+	public static final int REBUILD_PAGE_SIZE = 1000;
+
+	private final long bitCount;
+
+	private final int hashFunctionCount;
+
+	/**
+	 * Filters used for answering queries, null until the first rebuild.
+	 */
+	private transient volatile BloomFilter emailFilter;
+
+	private transient volatile BloomFilter nameFilter;
+
+	/**
+	 * Filters being built by a rebuild in progress. Users added during the
+	 * rebuild are added to these filters too. Guarded by the lock.
+	 */
+	private transient BloomFilter newEmailFilter;
+
+	private transient BloomFilter newNameFilter;
+
+	private transient ReentrantLock lock;
+
+	private transient AtomicLong filteredQueries;
+
+	private transient AtomicLong forwardedQueries;
+
+	private transient AtomicLong falsePositives;
+
+	private void init() {
+		emailFilter = null;
+		nameFilter = null;
+		lock = new ReentrantLock();
+		filteredQueries = new AtomicLong();
+		forwardedQueries = new AtomicLong();
+		falsePositives = new AtomicLong();
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		init();
+	}
+
+	private static void addTo(BloomFilter filter, String value) {
+		if (filter != null && value != null) {
+			filter.add(toKey(value));
+		}
+	}
+
+	private void addToFilters(User user) {
+		lock.lock();
+		try {
+			addTo(emailFilter, user.getEmail());
+			addTo(nameFilter, user.getName());
+			addTo(newEmailFilter, user.getEmail());
+			addTo(newNameFilter, user.getName());
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private boolean isRegistered(BloomFilter filter, String value, boolean email) {
+		if (filter != null && value != null && !filter.mightContain(toKey(value))) {
+			filteredQueries.incrementAndGet();
+			return false;
+		}
+
+		boolean result = email ? delegate.isEmailRegistered(value) : delegate.isUserNameRegistered(value);
+
+		if (filter != null && value != null) {
+			forwardedQueries.incrementAndGet();
+			if (!result) {
+				falsePositives.incrementAndGet();
+			}
+		}
+
+		return result;
+	}
+
+	private Set<String> getRegistered(BloomFilter filter, Collection<String> values, boolean email) {
+		Collection<String> candidates = values;
+		if (filter != null) {
+			candidates = new ArrayList<String>(values.size());
+			for (String value : values) {
+				if (value == null || filter.mightContain(toKey(value))) {
+					candidates.add(value);
+				}
+			}
+			filteredQueries.addAndGet(values.size() - candidates.size());
+		}
+
+		if (candidates.isEmpty()) {
+			return Collections.emptySet();
+		}
+
+		Set<String> result = email ? delegate.getRegisteredEmails(candidates) : delegate.getRegisteredUserNames(candidates);
+
+		if (filter != null) {
+			forwardedQueries.addAndGet(candidates.size());
+			falsePositives.addAndGet(candidates.size() - result.size());
+		}
+
+		return result;
+	}
+
+	/**
+	 * Builds new filters from all users in the database and replaces the
+	 * current ones. Queries are answered by the current filters while the new
+	 * ones are being built.
+	 */
+	public void rebuild() {
+		BloomFilter emails = new BloomFilter(bitCount, hashFunctionCount);
+		BloomFilter names = new BloomFilter(bitCount, hashFunctionCount);
+
+		lock.lock();
+		try {
+			newEmailFilter = emails;
+			newNameFilter = names;
+		} finally {
+			lock.unlock();
+		}
+
+		try {
+			int lastUserId = 0;
+			List<User> page;
+			do {
+				page = delegate.getUsers(lastUserId, REBUILD_PAGE_SIZE);
+				for (User user : page) {
+					addTo(emails, user.getEmail());
+					addTo(names, user.getName());
+					lastUserId = user.getId();
+				}
+			} while (page.size() == REBUILD_PAGE_SIZE);
+
+			lock.lock();
+			try {
+				emailFilter = emails;
+				nameFilter = names;
+			} finally {
+				lock.unlock();
+			}
+
+			LOGGER.info("Bloom filters rebuilt from {} users.", emails.getInsertionCount());
+		} finally {
+			lock.lock();
+			try {
+				newEmailFilter = null;
+				newNameFilter = null;
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the filters have been built and are used for answering
+	 * queries.
+	 */
+	public boolean isReady() {
+		return emailFilter != null;
+	}
+
+	/**
+	 * Returns the number of queries answered without accessing the database.
+	 */
+	public long getFilteredQueryCount() {
+		return filteredQueries.get();
+	}
+
+	/**
+	 * Returns the number of queries which passed the filter and were
+	 * forwarded to the database.
+	 */
+	public long getForwardedQueryCount() {
+		return forwardedQueries.get();
+	}
+
+	/**
+	 * Returns the number of queries which passed the filter, but the value
+	 * turned out not to be registered.
+	 */
+	public long getFalsePositiveCount() {
+		return falsePositives.get();
+	}
+
+	/**
+	 * Returns the observed false positive rate, which is the ratio of false
+	 * positives to all queries for unregistered values, or 0 if there were no
+	 * such queries.
+	 */
+	public double getFalsePositiveRate() {
+		long fp = falsePositives.get();
+		long negatives = fp + filteredQueries.get();
+		return negatives == 0 ? 0 : (double) fp / negatives;
+	}
+
+	/**
+	 * Returns the false positive rate expected from the current number of
+	 * users in the email filter, or 0 if the filters have not been built yet.
+	 */
+	public double getExpectedFalsePositiveRate() {
+		BloomFilter filter = emailFilter;
+		return filter == null ? 0 : filter.getExpectedFalsePositiveRate();
+	}
+
+	/**
+	 * Returns the approximate memory used by both filters, in bytes.
+	 */
+	public long getMemoryUsage() {
+		return 2 * ((bitCount + 63) / 64) * 8;
+	}
+
+	@Override
+	public int addUser(User newUser) {
+		// added before the user is stored, so that the filters never miss a stored user
+		addToFilters(newUser);
+		return delegate.addUser(newUser);
+	}
+
+	@Override
+	public int[] addUsers(List<User> newUsers) {
+		for (User newUser : newUsers) {
+			addToFilters(newUser);
+		}
+		return delegate.addUsers(newUsers);
+	}
+
+	@Override
+	public Set<String> getRegisteredEmails(Collection<String> emails) {
+		return getRegistered(emailFilter, emails, true);
+	}
+
+	@Override
+	public Set<String> getRegisteredUserNames(Collection<String> names) {
+		return getRegistered(nameFilter, names, false);
+	}
+
+	@Override
+	public boolean isEmailRegistered(String email) {
+		return isRegistered(emailFilter, email, true);
+	}
+
+	@Override
+	public boolean isUserNameRegistered(String name) {
+		return isRegistered(nameFilter, name, false);
+	}
+
+	@Override
+	public int saveUserWithSocialAccount(User user, SocialAccountDetails details) {
+		addToFilters(user);
+		return delegate.saveUserWithSocialAccount(user, details);
+	}
+
+	/**
+	 * Creates filters sized for {@link #DEFAULT_EXPECTED_USERS} users with
+	 * {@link #DEFAULT_FALSE_POSITIVE_PROBABILITY} false positive probability.
+	 *
+	 * @param delegate
+	 *            decorated database model
+	 */
+	public RegistrationBloomFilterDecorator(UserDatabaseModel delegate) {
+		this(delegate, DEFAULT_EXPECTED_USERS, DEFAULT_FALSE_POSITIVE_PROBABILITY);
+	}
+
+	/**
+	 * @param delegate
+	 *            decorated database model
+	 * @param expectedUsers
+	 *            expected number of registered users
+	 * @param falsePositiveProbability
+	 *            desired false positive probability when the expected number
+	 *            of users is registered
+	 */
+	public RegistrationBloomFilterDecorator(UserDatabaseModel delegate, int expectedUsers, double falsePositiveProbability) {
+		this(delegate, BloomFilter.optimalBitCount(expectedUsers, falsePositiveProbability),
+				BloomFilter.optimalHashFunctionCount(BloomFilter.optimalBitCount(expectedUsers, falsePositiveProbability), expectedUsers));
+	}
+
+	/**
+	 * @param delegate
+	 *            decorated database model
+	 * @param bitCount
+	 *            size of each filter in bits
+	 * @param hashFunctionCount
+	 *            number of bits set for each value
+	 */
+	public RegistrationBloomFilterDecorator(UserDatabaseModel delegate, long bitCount, int hashFunctionCount) {
+		super(delegate);
+
+		if (bitCount < 1 || hashFunctionCount < 1) {
+			throw new IllegalArgumentException("Bit count and hash function count must be positive.");
+		}
+
+		this.bitCount = bitCount;
+		this.hashFunctionCount = hashFunctionCount;
+
+		init();
+	}
+
+}
@@ -0,0 +1,627 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.decorators;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.jardoapps.usermodule.User;
+import com.jardoapps.usermodule.UserDatabaseModel;
+import com.jardoapps.usermodule.containers.LogInRecord;
+import com.jardoapps.usermodule.containers.SocialAccountDetails;
+import com.jardoapps.usermodule.containers.UserPassword;
+import com.jardoapps.usermodule.utils.IntIntHashMap;
+
+/**
+ * A {@link UserDatabaseModel} decorator which caches users returned by
+ * {@link #getUserByEmail(String)}, {@link #getUserById(int)} and
+ * {@link #getUserByName(String)}. Cached
+ * users are also used to answer {@link #getUserIdByEmail(String)} and
+ * {@link #getUserPassword(int)}. The multi-get methods
+ * {@link #getUsersByIds(Collection)} and {@link #getUsersByEmails(Collection)}
+ * answer the cached users and load only the missing ones, in one call to the
+ * decorated database model.
+ * <p>
+ * The cache has a fixed capacity. When it is full, an entry is evicted using
+ * the CLOCK algorithm with small access counters, so frequently used users
+ * survive longer than users which were looked up only once. Users are indexed
+ * by id (using primitive keys), email and name. Emails and names are indexed
+ * lower-cased, so that a user cached under one spelling is also invalidated
+ * by calls using another one, as a database with a case-insensitive
+ * collation treats them as the same user. Lookups stay case-sensitive: a
+ * cached user is only returned if its email or name equals the requested one
+ * exactly, anything else is a miss answered by the decorated database model.
+ * Otherwise, on a case-sensitive database, a lookup for one account could
+ * return another account which differs only in case.
+ * <p>
+ * Cached users are invalidated by {@link #setUserPassword(int, UserPassword)},
+ * {@link #deleteUser(int)}, {@link #confirmUserRegistration(String)},
+ * {@link #addUser(User)}, {@link #addUsers(List)} and
+ * {@link #saveUserWithSocialAccount(User, SocialAccountDetails)}, and by
+ * {@link #makeLogInRecord(int, boolean, String)} and
+ * {@link #makeLogInRecords(List)} and {@link #recordSuccessfulLogIn(int, String)}
+ * when they change the user's failed log in count. If a {@link LogInRecordWriteBehindDecorator} is used, it should be
+ * stacked on top of this decorator, so that users are invalidated when the
+ * records are written rather than when they are queued. Changes made
+ * to the database by other means (for instance by another application
+ * instance) are not visible until the entry is evicted.
+ * <p>
+ * The same {@link User} instance is returned to all callers, so the returned
+ * users should not be modified.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class UserCacheDecorator extends UserDatabaseModelDecorator {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int NO_SLOT = -1;
+
+	private static final byte MAX_FREQUENCY = 3;
+
+	public static final int DEFAULT_CAPACITY = 10000;
+
+	private final int capacity;
+
+	private transient ReentrantLock lock;
+
+	private transient User[] users;
+
+	private transient byte[] frequencies;
+
+	private transient IntIntHashMap idIndex;
+
+	private transient Map<String, Integer> emailIndex;
+
+	private transient Map<String, Integer> nameIndex;
+
+	private transient int[] freeSlots;
+
+	private transient int freeSlotCount;
+
+	private transient int clockHand;
+
+	/**
+	 * Incremented on every invalidation. Users loaded from the database are
+	 * only cached if no invalidation happened while they were being loaded.
+	 */
+	private transient AtomicLong invalidations;
+
+	private transient AtomicLong hits;
+
+	private transient AtomicLong misses;
+
+	private transient AtomicLong evictions;
+
+	private void init() {
+		lock = new ReentrantLock();
+		users = new User[capacity];
+		frequencies = new byte[capacity];
+		idIndex = new IntIntHashMap(capacity, NO_SLOT);
+		emailIndex = new HashMap<String, Integer>();
+		nameIndex = new HashMap<String, Integer>();
+
+		freeSlots = new int[capacity];
+		for (int i = 0; i < capacity; i++) {
+			freeSlots[i] = capacity - 1 - i;
+		}
+		freeSlotCount = capacity;
+		clockHand = 0;
+
+		invalidations = new AtomicLong();
+		hits = new AtomicLong();
+		misses = new AtomicLong();
+		evictions = new AtomicLong();
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		init();
+	}
+
+	// all the following private methods must be called while holding the lock
+
+	private User hit(int slot) {
+		if (frequencies[slot] < MAX_FREQUENCY) {
+			frequencies[slot]++;
+		}
+		return users[slot];
+	}
+
+	private void removeSlot(int slot) {
+		User user = users[slot];
+
+		idIndex.remove(user.getId());
+		if (user.getEmail() != null) {
+			emailIndex.remove(toKey(user.getEmail()));
+		}
+		if (user.getName() != null) {
+			nameIndex.remove(toKey(user.getName()));
+		}
+
+		users[slot] = null;
+		frequencies[slot] = 0;
+		freeSlots[freeSlotCount++] = slot;
+	}
+
+	private void evict() {
+		while (true) {
+			int slot = clockHand;
+			clockHand = (clockHand + 1) % capacity;
+
+			if (users[slot] == null) {
+				continue;
+			}
+
+			if (frequencies[slot] > 0) {
+				frequencies[slot]--;
+			} else {
+				removeSlot(slot);
+				evictions.incrementAndGet();
+				return;
+			}
+		}
+	}
+
+	private void removeByKey(Map<String, Integer> index, String key) {
+		if (key == null) {
+			return;
+		}
+
+		Integer slot = index.get(toKey(key));
+		if (slot != null) {
+			removeSlot(slot);
+		}
+	}
+
+	/**
+	 * Returns the slot of the user with exactly the given email, or null if
+	 * it is not cached. The index is lower-cased, so it can point to a user
+	 * whose email differs in case.
+	 */
+	private Integer findByEmail(String email) {
+		Integer slot = emailIndex.get(toKey(email));
+		return slot != null && users[slot].getEmail().equals(email) ? slot : null;
+	}
+
+	private Integer findByName(String name) {
+		Integer slot = nameIndex.get(toKey(name));
+		return slot != null && users[slot].getName().equals(name) ? slot : null;
+	}
+
+	private User getCached(String email, String name) {
+		lock.lock();
+		try {
+			Integer slot = email != null ? findByEmail(email) : findByName(name);
+			if (slot != null) {
+				return hit(slot);
+			}
+			return null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private User getCached(int userId) {
+		lock.lock();
+		try {
+			int slot = idIndex.get(userId);
+			if (slot != NO_SLOT) {
+				return hit(slot);
+			}
+			return null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void store(User user) {
+		// replace any entries which would collide with the new one
+		int slot = idIndex.get(user.getId());
+		if (slot != NO_SLOT) {
+			removeSlot(slot);
+		}
+		removeByKey(emailIndex, user.getEmail());
+		removeByKey(nameIndex, user.getName());
+
+		if (freeSlotCount == 0) {
+			evict();
+		}
+
+		slot = freeSlots[--freeSlotCount];
+		users[slot] = user;
+		frequencies[slot] = 0;
+
+		idIndex.put(user.getId(), slot);
+		if (user.getEmail() != null) {
+			emailIndex.put(toKey(user.getEmail()), slot);
+		}
+		if (user.getName() != null) {
+			nameIndex.put(toKey(user.getName()), slot);
+		}
+	}
+
+	private void put(Collection<User> loadedUsers, long expectedInvalidations) {
+		lock.lock();
+		try {
+			if (invalidations.get() != expectedInvalidations) {
+				// the users might have been changed while being loaded
+				return;
+			}
+
+			for (User user : loadedUsers) {
+				store(user);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void put(User user, long expectedInvalidations) {
+		put(Collections.singletonList(user), expectedInvalidations);
+	}
+
+	private void invalidate(int userId) {
+		lock.lock();
+		try {
+			invalidations.incrementAndGet();
+			int slot = idIndex.get(userId);
+			if (slot != NO_SLOT) {
+				removeSlot(slot);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void invalidate(String email, String name) {
+		lock.lock();
+		try {
+			invalidations.incrementAndGet();
+			removeByKey(emailIndex, email);
+			removeByKey(nameIndex, name);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void invalidateFailedLogInCount(int userId, boolean logInSuccessful) {
+		lock.lock();
+		try {
+			int slot = idIndex.get(userId);
+			// a successful log in does not change a cached count of zero
+			if (logInSuccessful && slot != NO_SLOT && users[slot].getFailedLogInCount() == 0) {
+				return;
+			}
+
+			invalidations.incrementAndGet();
+			if (slot != NO_SLOT) {
+				removeSlot(slot);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private User load(String email, String name) {
+		long expectedInvalidations = invalidations.get();
+
+		User user;
+		if (email != null) {
+			user = delegate.getUserByEmail(email);
+		} else {
+			user = delegate.getUserByName(name);
+		}
+
+		if (user != null) {
+			put(user, expectedInvalidations);
+		}
+
+		return user;
+	}
+
+	/**
+	 * Removes all users from the cache.
+	 */
+	public void clear() {
+		lock.lock();
+		try {
+			invalidations.incrementAndGet();
+			for (int slot = 0; slot < capacity; slot++) {
+				if (users[slot] != null) {
+					removeSlot(slot);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of lookups which were answered from the cache.
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of lookups which had to go to the decorated database
+	 * model.
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns the ratio of hits to all lookups, or 0 if there were no lookups.
+	 */
+	public double getHitRate() {
+		long hitCount = hits.get();
+		long total = hitCount + misses.get();
+		return total == 0 ? 0 : (double) hitCount / total;
+	}
+
+	/**
+	 * Returns the number of users evicted because the cache was full.
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * Returns the number of cached users.
+	 */
+	public int getSize() {
+		lock.lock();
+		try {
+			return capacity - freeSlotCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int addUser(User newUser) {
+		int result = delegate.addUser(newUser);
+		invalidate(newUser.getEmail(), newUser.getName());
+		return result;
+	}
+
+	@Override
+	public int[] addUsers(List<User> newUsers) {
+		int[] result = delegate.addUsers(newUsers);
+		for (User newUser : newUsers) {
+			invalidate(newUser.getEmail(), newUser.getName());
+		}
+		return result;
+	}
+
+	@Override
+	public boolean confirmUserRegistration(String email) {
+		boolean result = delegate.confirmUserRegistration(email);
+		invalidate(email, null);
+		return result;
+	}
+
+	@Override
+	public boolean deleteUser(int userId) {
+		boolean result = delegate.deleteUser(userId);
+		invalidate(userId);
+		return result;
+	}
+
+	@Override
+	public User getUserByEmail(String email) {
+		User user = getCached(email, null);
+		if (user != null) {
+			hits.incrementAndGet();
+			return user;
+		}
+
+		misses.incrementAndGet();
+		return load(email, null);
+	}
+
+	@Override
+	public User getUserById(int userId) {
+		User user = getCached(userId);
+		if (user != null) {
+			hits.incrementAndGet();
+			return user;
+		}
+
+		misses.incrementAndGet();
+
+		long expectedInvalidations = invalidations.get();
+		user = delegate.getUserById(userId);
+		if (user != null) {
+			put(user, expectedInvalidations);
+		}
+		return user;
+	}
+
+	@Override
+	public User getUserByName(String name) {
+		User user = getCached(null, name);
+		if (user != null) {
+			hits.incrementAndGet();
+			return user;
+		}
+
+		misses.incrementAndGet();
+		return load(null, name);
+	}
+
+	@Override
+	public Map<String, User> getUsersByEmails(Collection<String> emails) {
+		Map<String, User> result = new HashMap<String, User>();
+		List<String> missingEmails = new ArrayList<String>();
+
+		lock.lock();
+		try {
+			for (String email : emails) {
+				Integer slot = findByEmail(email);
+				if (slot != null) {
+					result.put(email, hit(slot));
+				} else {
+					missingEmails.add(email);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+
+		hits.addAndGet(emails.size() - missingEmails.size());
+		misses.addAndGet(missingEmails.size());
+
+		if (!missingEmails.isEmpty()) {
+			long expectedInvalidations = invalidations.get();
+			Map<String, User> loadedUsers = delegate.getUsersByEmails(missingEmails);
+			put(loadedUsers.values(), expectedInvalidations);
+			result.putAll(loadedUsers);
+		}
+
+		return result;
+	}
+
+	@Override
+	public Map<Integer, User> getUsersByIds(Collection<Integer> userIds) {
+		Map<Integer, User> result = new HashMap<Integer, User>();
+		List<Integer> missingIds = new ArrayList<Integer>();
+
+		lock.lock();
+		try {
+			for (Integer userId : userIds) {
+				int slot = idIndex.get(userId);
+				if (slot != NO_SLOT) {
+					result.put(userId, hit(slot));
+				} else {
+					missingIds.add(userId);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+
+		hits.addAndGet(userIds.size() - missingIds.size());
+		misses.addAndGet(missingIds.size());
+
+		if (!missingIds.isEmpty()) {
+			long expectedInvalidations = invalidations.get();
+			Map<Integer, User> loadedUsers = delegate.getUsersByIds(missingIds);
+			put(loadedUsers.values(), expectedInvalidations);
+			result.putAll(loadedUsers);
+		}
+
+		return result;
+	}
+
+	@Override
+	public int getUserIdByEmail(String email) {
+		User user = getUserByEmail(email);
+		return user != null ? user.getId() : -1;
+	}
+
+	@Override
+	public UserPassword getUserPassword(int userId) {
+		User user = getCached(userId);
+		if (user != null && user.getPassword() != null) {
+			hits.incrementAndGet();
+			return user.getPassword();
+		}
+
+		misses.incrementAndGet();
+		return delegate.getUserPassword(userId);
+	}
+
+	@Override
+	public boolean makeLogInRecord(int userId, boolean logInSuccessful, String usersIp) {
+		boolean result = delegate.makeLogInRecord(userId, logInSuccessful, usersIp);
+		invalidateFailedLogInCount(userId, logInSuccessful);
+		return result;
+	}
+
+	@Override
+	public boolean makeLogInRecords(List<LogInRecord> records) {
+		boolean result = delegate.makeLogInRecords(records);
+		for (LogInRecord record : records) {
+			invalidateFailedLogInCount(record.getUserId(), record.isSuccessful());
+		}
+		return result;
+	}
+
+	@Override
+	public boolean recordSuccessfulLogIn(int userId, String usersIp) {
+		boolean result = delegate.recordSuccessfulLogIn(userId, usersIp);
+		invalidateFailedLogInCount(userId, true);
+		return result;
+	}
+
+	@Override
+	public int saveUserWithSocialAccount(User user, SocialAccountDetails details) {
+		int result = delegate.saveUserWithSocialAccount(user, details);
+		invalidate(user.getEmail(), user.getName());
+		return result;
+	}
+
+	@Override
+	public boolean setUserPassword(int userId, UserPassword password) {
+		boolean result = delegate.setUserPassword(userId, password);
+		invalidate(userId);
+		return result;
+	}
+
+	/**
+	 * Creates a cache with {@link #DEFAULT_CAPACITY default capacity}.
+	 *
+	 * @param delegate
+	 *            decorated database model
+	 */
+	public UserCacheDecorator(UserDatabaseModel delegate) {
+		this(delegate, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param delegate
+	 *            decorated database model
+	 * @param capacity
+	 *            maximal number of cached users
+	 */
+	public UserCacheDecorator(UserDatabaseModel delegate, int capacity) {
+		super(delegate);
+
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive.");
+		}
+
+		this.capacity = capacity;
+
+		init();
+	}
+
+}
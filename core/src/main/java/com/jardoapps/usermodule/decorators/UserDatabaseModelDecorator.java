@@ -0,0 +1,217 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.decorators;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.jardoapps.usermodule.User;
+import com.jardoapps.usermodule.UserDatabaseModel;
+import com.jardoapps.usermodule.UserVisitor;
+import com.jardoapps.usermodule.containers.LogInRecord;
+import com.jardoapps.usermodule.containers.PasswordResetToken;
+import com.jardoapps.usermodule.containers.SocialAccountDetails;
+import com.jardoapps.usermodule.containers.UserFilter;
+import com.jardoapps.usermodule.containers.UserPassword;
+
+/**
+ * Base class for {@link UserDatabaseModel} decorators. All methods are
+ * forwarded to the decorated database model, so subclasses only override the
+ * methods they add functionality to. Decorators can be stacked on top of each
+ * other.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public abstract class UserDatabaseModelDecorator implements UserDatabaseModel {
+
+	private static final long serialVersionUID = 1L;
+
+	protected final UserDatabaseModel delegate;
+
+	/**
+	 * Returns the key under which an email or a user name is kept in memory.
+	 * Keys are lower-cased, because the database may compare emails and names
+	 * case-insensitively (which is the default collation on MySQL and SQL
+	 * Server), and an in-memory structure must not tell apart values which the
+	 * database considers equal.
+	 *
+	 * @return lower-cased value, or null if the value is null
+	 */
+	protected static String toKey(String emailOrName) {
+		return emailOrName == null ? null : emailOrName.toLowerCase(Locale.ENGLISH);
+	}
+
+	protected UserDatabaseModelDecorator(UserDatabaseModel delegate) {
+		if (delegate == null) {
+			throw new IllegalArgumentException("Decorated database model cannot be null.");
+		}
+		this.delegate = delegate;
+	}
+
+	@Override
+	public boolean addPasswordResetToken(PasswordResetToken token) {
+		return delegate.addPasswordResetToken(token);
+	}
+
+	@Override
+	public int addUser(User newUser) {
+		return delegate.addUser(newUser);
+	}
+
+	@Override
+	public int[] addUsers(List<User> newUsers) {
+		return delegate.addUsers(newUsers);
+	}
+
+	@Override
+	public boolean cancelAllPasswordResetTokens(int userId) {
+		return delegate.cancelAllPasswordResetTokens(userId);
+	}
+
+	@Override
+	public boolean confirmUserRegistration(String email) {
+		return delegate.confirmUserRegistration(email);
+	}
+
+	@Override
+	public boolean deleteUser(int userId) {
+		return delegate.deleteUser(userId);
+	}
+
+	@Override
+	public int exportUsers(UserVisitor visitor) {
+		return delegate.exportUsers(visitor);
+	}
+
+	@Override
+	public int getRegisteredUserCount(Date since) {
+		return delegate.getRegisteredUserCount(since);
+	}
+
+	@Override
+	public Set<String> getRegisteredEmails(Collection<String> emails) {
+		return delegate.getRegisteredEmails(emails);
+	}
+
+	@Override
+	public Set<String> getRegisteredUserNames(Collection<String> names) {
+		return delegate.getRegisteredUserNames(names);
+	}
+
+	@Override
+	public PasswordResetToken getNewestPasswordResetToken(String email) {
+		return delegate.getNewestPasswordResetToken(email);
+	}
+
+	@Override
+	public User getUserByEmail(String email) {
+		return delegate.getUserByEmail(email);
+	}
+
+	@Override
+	public User getUserById(int userId) {
+		return delegate.getUserById(userId);
+	}
+
+	@Override
+	public User getUserByName(String name) {
+		return delegate.getUserByName(name);
+	}
+
+	@Override
+	public Map<String, User> getUsersByEmails(Collection<String> emails) {
+		return delegate.getUsersByEmails(emails);
+	}
+
+	@Override
+	public Map<Integer, User> getUsersByIds(Collection<Integer> userIds) {
+		return delegate.getUsersByIds(userIds);
+	}
+
+	@Override
+	public User getUserBySocialAccount(SocialAccountDetails details) {
+		return delegate.getUserBySocialAccount(details);
+	}
+
+	@Override
+	public int getUserIdByEmail(String email) {
+		return delegate.getUserIdByEmail(email);
+	}
+
+	@Override
+	public Set<Integer> getUserIdsWithPasswordResetTokens() {
+		return delegate.getUserIdsWithPasswordResetTokens();
+	}
+
+	@Override
+	public UserPassword getUserPassword(int userId) {
+		return delegate.getUserPassword(userId);
+	}
+
+	@Override
+	public List<User> getUsers(int afterUserId, int maxResults) {
+		return delegate.getUsers(afterUserId, maxResults);
+	}
+
+	@Override
+	public List<User> getUsers(UserFilter filter, User after, int maxResults) {
+		return delegate.getUsers(filter, after, maxResults);
+	}
+
+	@Override
+	public boolean isEmailRegistered(String email) {
+		return delegate.isEmailRegistered(email);
+	}
+
+	@Override
+	public boolean isUserNameRegistered(String name) {
+		return delegate.isUserNameRegistered(name);
+	}
+
+	@Override
+	public boolean makeLogInRecord(int userId, boolean logInSuccessful, String usersIp) {
+		return delegate.makeLogInRecord(userId, logInSuccessful, usersIp);
+	}
+
+	@Override
+	public boolean makeLogInRecords(List<LogInRecord> records) {
+		return delegate.makeLogInRecords(records);
+	}
+
+	@Override
+	public boolean recordSuccessfulLogIn(int userId, String usersIp) {
+		return delegate.recordSuccessfulLogIn(userId, usersIp);
+	}
+
+	@Override
+	public int saveUserWithSocialAccount(User user, SocialAccountDetails details) {
+		return delegate.saveUserWithSocialAccount(user, details);
+	}
+
+	@Override
+	public boolean setUserPassword(int userId, UserPassword password) {
+		return delegate.setUserPassword(userId, password);
+	}
+
+}
@@ -0,0 +1,183 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter for strings. It answers whether a string might have been
+ * added to the filter, or whether it has certainly not been added. The filter
+ * has a fixed size, so the false positive rate grows with the number of added
+ * strings.
+ * <p>
+ * This class is thread safe. Strings can be added and looked up concurrently
+ * without locking.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class BloomFilter {
+
+	private static final double LN2 = Math.log(2);
+
+	private final AtomicLongArray bits;
+
+	private final long bitCount;
+
+	private final int hashFunctionCount;
+
+	private final AtomicInteger insertions = new AtomicInteger();
+
+	/**
+	 * Returns the number of bits needed to store the expected number of
+	 * strings with the given false positive probability.
+	 */
+	public static long optimalBitCount(int expectedInsertions, double falsePositiveProbability) {
+		if (expectedInsertions < 1 || falsePositiveProbability <= 0 || falsePositiveProbability >= 1) {
+			throw new IllegalArgumentException("Expected insertions must be positive and false positive probability must be between 0 and 1.");
+		}
+		return Math.max(64, (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveProbability) / (LN2 * LN2)));
+	}
+
+	/**
+	 * Returns the number of hash functions which minimizes the false positive
+	 * rate for the given number of bits and strings.
+	 */
+	public static int optimalHashFunctionCount(long bitCount, int expectedInsertions) {
+		return Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * LN2));
+	}
+
+	/**
+	 * 64-bit FNV-1a hash of the string's characters, followed by a final mix
+	 * so that both halves of the result can be used as independent hashes.
+	 */
+	private static long hash(String value) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			h ^= value.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private long bitIndex(int h1, int h2, int i) {
+		// double hashing: index_i = h1 + i * h2
+		long combined = (h1 + (long) i * h2) & Long.MAX_VALUE;
+		return combined % bitCount;
+	}
+
+	/**
+	 * Adds the string to the filter.
+	 */
+	public void add(String value) {
+		long h = hash(value);
+		int h1 = (int) h;
+		int h2 = (int) (h >>> 32);
+
+		for (int i = 0; i < hashFunctionCount; i++) {
+			long index = bitIndex(h1, h2, i);
+			int word = (int) (index >>> 6);
+			long mask = 1L << index;
+
+			long current = bits.get(word);
+			while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+				current = bits.get(word);
+			}
+		}
+
+		insertions.incrementAndGet();
+	}
+
+	/**
+	 * Returns false if the string has certainly not been added to the filter,
+	 * or true if it might have been added.
+	 */
+	public boolean mightContain(String value) {
+		long h = hash(value);
+		int h1 = (int) h;
+		int h2 = (int) (h >>> 32);
+
+		for (int i = 0; i < hashFunctionCount; i++) {
+			long index = bitIndex(h1, h2, i);
+			if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public long getBitCount() {
+		return bitCount;
+	}
+
+	public int getHashFunctionCount() {
+		return hashFunctionCount;
+	}
+
+	/**
+	 * Returns the number of {@link #add(String)} calls, including duplicate
+	 * strings.
+	 */
+	public int getInsertionCount() {
+		return insertions.get();
+	}
+
+	/**
+	 * Returns the expected false positive probability for the current number
+	 * of insertions.
+	 */
+	public double getExpectedFalsePositiveRate() {
+		double exponent = -(double) hashFunctionCount * insertions.get() / bitCount;
+		return Math.pow(1 - Math.exp(exponent), hashFunctionCount);
+	}
+
+	/**
+	 * Creates a filter sized for the expected number of strings and false
+	 * positive probability.
+	 */
+	public BloomFilter(int expectedInsertions, double falsePositiveProbability) {
+		this(optimalBitCount(expectedInsertions, falsePositiveProbability), optimalHashFunctionCount(optimalBitCount(expectedInsertions, falsePositiveProbability), expectedInsertions));
+	}
+
+	/**
+	 * @param bitCount
+	 *            size of the filter in bits
+	 * @param hashFunctionCount
+	 *            number of bits set for each string
+	 */
+	public BloomFilter(long bitCount, int hashFunctionCount) {
+		if (bitCount < 1 || hashFunctionCount < 1) {
+			throw new IllegalArgumentException("Bit count and hash function count must be positive.");
+		}
+
+		long words = (bitCount + 63) >>> 6;
+		if (words > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Bit count is too large.");
+		}
+
+		this.bitCount = bitCount;
+		this.hashFunctionCount = hashFunctionCount;
+		this.bits = new AtomicLongArray((int) words);
+	}
+
+}
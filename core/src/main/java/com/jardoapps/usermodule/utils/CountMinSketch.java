@@ -0,0 +1,153 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.utils;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Count-Min sketch, which estimates how many times each string has been
+ * added in a fixed amount of memory, no matter how many distinct strings
+ * there are. The estimate is never lower than the real count. It is higher by
+ * at most <code>e * N / width</code> (where <code>N</code> is the total
+ * number of additions) with probability <code>1 - e^-depth</code>.
+ * <p>
+ * This class is thread safe. Strings can be added and looked up concurrently
+ * without locking.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class CountMinSketch {
+
+	private final int width;
+
+	private final int depth;
+
+	/** Counters of all rows, row by row. */
+	private final AtomicIntegerArray counters;
+
+	private final AtomicLong totalCount = new AtomicLong();
+
+	/**
+	 * 64-bit FNV-1a hash of the string's characters, followed by a final mix
+	 * so that both halves of the result can be used as independent hashes.
+	 */
+	private static long hash(String value) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			h ^= value.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private int counterIndex(int h1, int h2, int row) {
+		// double hashing: column_i = h1 + i * h2
+		long combined = (h1 + (long) row * h2) & Long.MAX_VALUE;
+		return row * width + (int) (combined % width);
+	}
+
+	/**
+	 * Adds one occurrence of the string.
+	 *
+	 * @return estimated count of the string, including this occurrence
+	 */
+	public int add(String value) {
+		long h = hash(value);
+		int h1 = (int) h;
+		int h2 = (int) (h >>> 32);
+
+		int estimate = Integer.MAX_VALUE;
+		for (int row = 0; row < depth; row++) {
+			estimate = Math.min(estimate, counters.incrementAndGet(counterIndex(h1, h2, row)));
+		}
+
+		totalCount.incrementAndGet();
+		return estimate;
+	}
+
+	/**
+	 * Returns the estimated number of occurrences of the string. It is never
+	 * lower than the real number.
+	 */
+	public int estimateCount(String value) {
+		long h = hash(value);
+		int h1 = (int) h;
+		int h2 = (int) (h >>> 32);
+
+		int estimate = Integer.MAX_VALUE;
+		for (int row = 0; row < depth; row++) {
+			estimate = Math.min(estimate, counters.get(counterIndex(h1, h2, row)));
+		}
+		return estimate;
+	}
+
+	/**
+	 * Sets all counters to zero. Strings added concurrently with this method
+	 * may be partially counted.
+	 */
+	public void clear() {
+		for (int i = 0; i < counters.length(); i++) {
+			counters.set(i, 0);
+		}
+		totalCount.set(0);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Returns the number of {@link #add(String)} calls since the sketch was
+	 * created or cleared.
+	 */
+	public long getTotalCount() {
+		return totalCount.get();
+	}
+
+	/**
+	 * @param width
+	 *            number of counters per row, the error of the estimates is
+	 *            inversely proportional to it
+	 * @param depth
+	 *            number of rows, the probability of exceeding the error bound
+	 *            decreases exponentially with it
+	 */
+	public CountMinSketch(int width, int depth) {
+		if (width < 1 || depth < 1) {
+			throw new IllegalArgumentException("Width and depth must be positive.");
+		}
+		if ((long) width * depth > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Width and depth are too large.");
+		}
+
+		this.width = width;
+		this.depth = depth;
+		this.counters = new AtomicIntegerArray(width * depth);
+	}
+
+}
@@ -18,6 +18,8 @@
 
 package com.jardoapps.usermodule.utils;
 
+import java.util.regex.Pattern;
+
 /**
  * Class which provides functionality for working with email addresses.
  * 
@@ -35,11 +37,31 @@ public final class EmailUtils {
 	 */
 	public static final String EMAIL_REGEX = "[_A-Za-z0-9-]+(\\.[_A-Za-z0-9-]+)*@[A-Za-z0-9-]+(\\.[A-Za-z0-9]+)*(\\.[A-Za-z]{2,})";
 
+	/**
+	 * Compiled {@link #EMAIL_REGEX}.
+	 */
+	public static final Pattern EMAIL_PATTERN = Pattern.compile(EMAIL_REGEX);
+
+	private static boolean isLetter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	private static boolean isLetterOrDigit(char c) {
+		return isLetter(c) || (c >= '0' && c <= '9');
+	}
+
+	private static boolean isLocalPartChar(char c) {
+		return isLetterOrDigit(c) || c == '_' || c == '-';
+	}
+
 	/**
 	 * Check whether the given email matches the {@link #EMAIL_REGEX}. Note that
 	 * this method is <b>not</b> compliant with RFC 822. See documentation of
 	 * EMAIL_REGEX for more information. Top level domain validity is not
 	 * checked.
+	 * <p>
+	 * The check is done in a single pass without any allocations and accepts
+	 * exactly the same addresses as the regex.
 	 * 
 	 * @param email
 	 *            email address to check
@@ -49,7 +71,61 @@ public final class EmailUtils {
 		if (email == null) {
 			return false;
 		}
-		return email.matches(EMAIL_REGEX);
+
+		int length = email.length();
+		int idx = 0;
+
+		// local part: non-empty atoms separated by single dots
+		int atomLength = 0;
+		while (idx < length) {
+			char c = email.charAt(idx);
+			if (isLocalPartChar(c)) {
+				atomLength++;
+			} else if (c == '.' && atomLength > 0) {
+				atomLength = 0;
+			} else {
+				break;
+			}
+			idx++;
+		}
+
+		if (atomLength == 0 || idx == length || email.charAt(idx) != '@') {
+			return false;
+		}
+		idx++;
+
+		// first domain label may contain hyphens
+		int labelLength = 0;
+		while (idx < length && (isLetterOrDigit(email.charAt(idx)) || email.charAt(idx) == '-')) {
+			labelLength++;
+			idx++;
+		}
+
+		if (labelLength == 0) {
+			return false;
+		}
+
+		// at least one more label, the last one has at least two letters
+		int labelCount = 0;
+		boolean onlyLetters = false;
+		while (idx < length) {
+			if (email.charAt(idx) != '.' || (labelCount > 0 && labelLength == 0)) {
+				return false;
+			}
+			idx++;
+
+			labelCount++;
+			labelLength = 0;
+			onlyLetters = true;
+
+			while (idx < length && isLetterOrDigit(email.charAt(idx))) {
+				onlyLetters &= isLetter(email.charAt(idx));
+				labelLength++;
+				idx++;
+			}
+		}
+
+		return labelCount > 0 && onlyLetters && labelLength >= 2;
 	}
 
 	private EmailUtils() {
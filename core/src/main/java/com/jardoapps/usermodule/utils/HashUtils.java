@@ -0,0 +1,102 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.utils;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Class which provides hashing functionality used for password hashes and
+ * random generated codes.
+ * <p>
+ * <code>MessageDigest</code> instances are not thread safe, so instead of
+ * sharing a single synchronized instance, digests are borrowed from a
+ * lock-free pool and returned after use. The pool grows up to the number of
+ * threads which are hashing at the same time and is shared by all instances of
+ * the user manager, so it is not affected by serialization.
+ *
+ * @author Jaroslav Brtiš
+ *
+ */
+public final class HashUtils {
+
+	private static final String SHA256_ALGORITHM = "SHA-256";
+
+	private static final char[] HEX_DIGITS = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+
+	private static final Queue<MessageDigest> SHA256_POOL = new ConcurrentLinkedQueue<MessageDigest>();
+
+	private static MessageDigest borrowSha256() {
+		MessageDigest digest = SHA256_POOL.poll();
+		if (digest != null) {
+			return digest;
+		}
+
+		try {
+			return MessageDigest.getInstance(SHA256_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("The system doesn't support hash algorithm: " + SHA256_ALGORITHM, e);
+		}
+	}
+
+	/**
+	 * Calculates a SHA-256 hash of the given salt followed by the given data.
+	 * This method is thread safe and does not block.
+	 *
+	 * @param salt
+	 *            salt bytes which are hashed before the data
+	 * @param data
+	 *            data bytes
+	 * @return lower case hex representation of the hash
+	 */
+	public static String sha256Hex(byte[] salt, byte[] data) {
+		MessageDigest digest = borrowSha256();
+		try {
+			digest.update(salt);
+			return toHex(digest.digest(data));
+		} finally {
+			digest.reset();
+			SHA256_POOL.offer(digest);
+		}
+	}
+
+	/**
+	 * Converts the given bytes to a lower case hex string.
+	 *
+	 * @param bytes
+	 *            bytes to convert
+	 * @return hex representation of the bytes (two characters per byte)
+	 */
+	public static String toHex(byte[] bytes) {
+		char[] result = new char[bytes.length * 2];
+		for (int idx = 0; idx < bytes.length; ++idx) {
+			byte b = bytes[idx];
+			result[idx * 2] = HEX_DIGITS[(b & 0xf0) >> 4];
+			result[idx * 2 + 1] = HEX_DIGITS[b & 0x0f];
+		}
+		return new String(result);
+	}
+
+	private HashUtils() {
+
+	}
+
+}
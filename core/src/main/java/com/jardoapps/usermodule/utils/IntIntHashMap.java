@@ -0,0 +1,192 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.utils;
+
+import java.util.Arrays;
+
+/**
+ * A hash map with primitive <code>int</code> keys and values. It uses open
+ * addressing with linear probing, so it does not allocate any objects per
+ * entry and does not box the keys.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class IntIntHashMap {
+
+	private static final float LOAD_FACTOR = 0.5f;
+
+	private final int missingValue;
+
+	private int[] keys;
+
+	private int[] values;
+
+	private boolean[] used;
+
+	private int size;
+
+	private int mask;
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		values = new int[capacity];
+		used = new boolean[capacity];
+		mask = capacity - 1;
+	}
+
+	private int indexOf(int key) {
+		int idx = hash(key) & mask;
+		while (used[idx]) {
+			if (keys[idx] == key) {
+				return idx;
+			}
+			idx = (idx + 1) & mask;
+		}
+		return -1;
+	}
+
+	private void resize() {
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		boolean[] oldUsed = used;
+
+		allocate(keys.length * 2);
+		size = 0;
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldUsed[i]) {
+				put(oldKeys[i], oldValues[i]);
+			}
+		}
+	}
+
+	/**
+	 * Removes the entry at the given index and shifts the following entries
+	 * of the probe sequence back, so that no tombstones are needed.
+	 */
+	private void removeAt(int idx) {
+		int gap = idx;
+		int next = (gap + 1) & mask;
+
+		while (used[next]) {
+			int home = hash(keys[next]) & mask;
+			// move the entry into the gap if its home slot is not between the gap and its position
+			if (((next - home) & mask) >= ((next - gap) & mask)) {
+				keys[gap] = keys[next];
+				values[gap] = values[next];
+				gap = next;
+			}
+			next = (next + 1) & mask;
+		}
+
+		used[gap] = false;
+		size--;
+	}
+
+	public void clear() {
+		Arrays.fill(used, false);
+		size = 0;
+	}
+
+	public boolean containsKey(int key) {
+		return indexOf(key) >= 0;
+	}
+
+	/**
+	 * Returns the value for the given key, or the missing value specified in
+	 * the constructor if there is no such key.
+	 */
+	public int get(int key) {
+		int idx = indexOf(key);
+		return idx >= 0 ? values[idx] : missingValue;
+	}
+
+	/**
+	 * Associates the value with the given key.
+	 *
+	 * @return previous value for the key, or the missing value if there was
+	 *         none
+	 */
+	public int put(int key, int value) {
+		int idx = hash(key) & mask;
+		while (used[idx]) {
+			if (keys[idx] == key) {
+				int previous = values[idx];
+				values[idx] = value;
+				return previous;
+			}
+			idx = (idx + 1) & mask;
+		}
+
+		used[idx] = true;
+		keys[idx] = key;
+		values[idx] = value;
+
+		if (++size > keys.length * LOAD_FACTOR) {
+			resize();
+		}
+
+		return missingValue;
+	}
+
+	/**
+	 * Removes the given key.
+	 *
+	 * @return removed value, or the missing value if there was no such key
+	 */
+	public int remove(int key) {
+		int idx = indexOf(key);
+		if (idx < 0) {
+			return missingValue;
+		}
+
+		int previous = values[idx];
+		removeAt(idx);
+		return previous;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param expectedSize
+	 *            expected number of entries, the map grows if needed
+	 * @param missingValue
+	 *            value returned by {@link #get(int)} for missing keys
+	 */
+	public IntIntHashMap(int expectedSize, int missingValue) {
+		int capacity = 16;
+		while (capacity * LOAD_FACTOR < expectedSize) {
+			capacity <<= 1;
+		}
+
+		this.missingValue = missingValue;
+		allocate(capacity);
+	}
+
+}
@@ -0,0 +1,183 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the rate of events per key, for instance log in attempts per IP
+ * address. Each key has a token bucket which holds at most <code>burst</code>
+ * tokens and gets a new token every <code>intervalMillis</code>. An event
+ * takes one token, events are rejected while the bucket is empty. The bucket
+ * is represented only by the time at which it will be full again (the generic
+ * cell rate algorithm), so each key takes a single <code>long</code>.
+ * <p>
+ * The keys are spread over a fixed number of stripes, each with its own lock
+ * and holding at most <code>maxKeys / stripes</code> keys in the order of
+ * their last use. A key whose bucket is full again is the same as an unknown
+ * key, so such keys are evicted when they are found at the least recently
+ * used end of their stripe. If a stripe is still full, its least recently used
+ * key is evicted, which forgets that key's history.
+ * <p>
+ * Times are passed in by the caller and must not go backwards by more than
+ * the interval. This class is thread safe.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class RateLimiter {
+
+	private static final int STRIPE_COUNT = 16;
+
+	private final long intervalMillis;
+
+	private final long burstMillis;
+
+	private final int maxKeysPerStripe;
+
+	private final ReentrantLock[] locks;
+
+	/** Time at which each key's bucket is full again, in access order. */
+	private final LinkedHashMap<String, long[]>[] stripes;
+
+	private final AtomicLong rejections = new AtomicLong();
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	private static int stripeOf(String key) {
+		int h = key.hashCode() * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & (STRIPE_COUNT - 1);
+	}
+
+	// must be called while holding the stripe's lock
+	private void evictIdle(LinkedHashMap<String, long[]> entries, long nowMillis) {
+		Iterator<Map.Entry<String, long[]>> iterator = entries.entrySet().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().getValue()[0] > nowMillis) {
+				return;
+			}
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Takes one token from the bucket of the given key.
+	 *
+	 * @param key
+	 *            key whose rate is limited
+	 * @param nowMillis
+	 *            current time in milliseconds
+	 * @return true if the event is allowed, false if the key's bucket is empty
+	 */
+	public boolean tryAcquire(String key, long nowMillis) {
+		int stripe = stripeOf(key);
+		ReentrantLock lock = locks[stripe];
+
+		lock.lock();
+		try {
+			LinkedHashMap<String, long[]> entries = stripes[stripe];
+			evictIdle(entries, nowMillis);
+
+			long[] fullAt = entries.get(key);
+			long newFullAt = (fullAt != null ? Math.max(fullAt[0], nowMillis) : nowMillis) + intervalMillis;
+			if (newFullAt - nowMillis > burstMillis) {
+				rejections.incrementAndGet();
+				return false;
+			}
+
+			if (fullAt == null) {
+				if (entries.size() >= maxKeysPerStripe) {
+					Iterator<long[]> eldest = entries.values().iterator();
+					eldest.next();
+					eldest.remove();
+					evictions.incrementAndGet();
+				}
+				fullAt = new long[1];
+				entries.put(key, fullAt);
+			}
+
+			fullAt[0] = newFullAt;
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of keys whose history is kept.
+	 */
+	public int getKeyCount() {
+		int result = 0;
+		for (int stripe = 0; stripe < STRIPE_COUNT; stripe++) {
+			locks[stripe].lock();
+			try {
+				result += stripes[stripe].size();
+			} finally {
+				locks[stripe].unlock();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the number of rejected events.
+	 */
+	public long getRejectedCount() {
+		return rejections.get();
+	}
+
+	/**
+	 * Returns the number of keys which have been evicted before their bucket
+	 * was full again, because their stripe was full.
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * @param burst
+	 *            maximal number of events allowed at once (the bucket size)
+	 * @param intervalMillis
+	 *            time in which one token is added to the bucket
+	 * @param maxKeys
+	 *            maximal number of keys whose history is kept
+	 */
+	@SuppressWarnings("unchecked")
+	public RateLimiter(int burst, long intervalMillis, int maxKeys) {
+		if (burst < 1 || intervalMillis < 1 || maxKeys < 1) {
+			throw new IllegalArgumentException("Burst, interval and maximal number of keys must be positive.");
+		}
+
+		this.intervalMillis = intervalMillis;
+		this.burstMillis = burst * intervalMillis;
+		this.maxKeysPerStripe = Math.max(1, maxKeys / STRIPE_COUNT);
+
+		locks = new ReentrantLock[STRIPE_COUNT];
+		stripes = new LinkedHashMap[STRIPE_COUNT];
+		for (int stripe = 0; stripe < STRIPE_COUNT; stripe++) {
+			locks[stripe] = new ReentrantLock();
+			stripes[stripe] = new LinkedHashMap<String, long[]>(16, 0.75f, true);
+		}
+	}
+
+}
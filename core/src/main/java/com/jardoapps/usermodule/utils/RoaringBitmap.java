@@ -0,0 +1,264 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.utils;
+
+import java.util.Arrays;
+
+/**
+ * A compressed set of non-negative <code>int</code> values, in the style of
+ * Roaring bitmaps. Values are split by their high 16 bits into chunks of
+ * 65536 values. Each non-empty chunk is stored in a container holding the
+ * low 16 bits: a sorted array of values while the chunk has at most 4096 of
+ * them, or a plain bitmap of 8 kB when it has more. Sparse sets (such as a
+ * small fraction of user ids) therefore take about 2 bytes per value, and
+ * dense sets at most 1 bit per possible value.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class RoaringBitmap {
+
+	/** Maximal number of values in an array container. */
+	private static final int MAX_ARRAY_SIZE = 4096;
+
+	private static final int BITMAP_WORDS = 65536 / 64;
+
+	/**
+	 * Low 16 bits of the values of one chunk, either as a sorted array or as
+	 * a bitmap.
+	 */
+	private static final class Container {
+
+		private char[] array;
+
+		private long[] bitmap;
+
+		private int cardinality;
+
+		private Container() {
+			array = new char[4];
+		}
+
+		private int indexOf(char low) {
+			return Arrays.binarySearch(array, 0, cardinality, low);
+		}
+
+		private boolean contains(char low) {
+			if (bitmap != null) {
+				return (bitmap[low >>> 6] & (1L << low)) != 0;
+			}
+			return indexOf(low) >= 0;
+		}
+
+		private boolean add(char low) {
+			if (bitmap != null) {
+				long mask = 1L << low;
+				if ((bitmap[low >>> 6] & mask) != 0) {
+					return false;
+				}
+				bitmap[low >>> 6] |= mask;
+				cardinality++;
+				return true;
+			}
+
+			int idx = indexOf(low);
+			if (idx >= 0) {
+				return false;
+			}
+
+			if (cardinality == MAX_ARRAY_SIZE) {
+				toBitmap();
+				return add(low);
+			}
+
+			idx = -idx - 1;
+			if (cardinality == array.length) {
+				array = Arrays.copyOf(array, Math.min(MAX_ARRAY_SIZE, array.length * 2));
+			}
+			System.arraycopy(array, idx, array, idx + 1, cardinality - idx);
+			array[idx] = low;
+			cardinality++;
+			return true;
+		}
+
+		private boolean remove(char low) {
+			if (bitmap != null) {
+				long mask = 1L << low;
+				if ((bitmap[low >>> 6] & mask) == 0) {
+					return false;
+				}
+				bitmap[low >>> 6] &= ~mask;
+				if (--cardinality <= MAX_ARRAY_SIZE / 2) {
+					toArray();
+				}
+				return true;
+			}
+
+			int idx = indexOf(low);
+			if (idx < 0) {
+				return false;
+			}
+			System.arraycopy(array, idx + 1, array, idx, cardinality - idx - 1);
+			if (--cardinality < array.length / 4 && array.length > 4) {
+				array = Arrays.copyOf(array, array.length / 2);
+			}
+			return true;
+		}
+
+		private void toBitmap() {
+			bitmap = new long[BITMAP_WORDS];
+			for (int i = 0; i < cardinality; i++) {
+				bitmap[array[i] >>> 6] |= 1L << array[i];
+			}
+			array = null;
+		}
+
+		private void toArray() {
+			array = new char[Math.max(4, cardinality)];
+			int size = 0;
+			for (int word = 0; word < BITMAP_WORDS; word++) {
+				long bits = bitmap[word];
+				while (bits != 0) {
+					array[size++] = (char) (word * 64 + Long.numberOfTrailingZeros(bits));
+					bits &= bits - 1;
+				}
+			}
+			bitmap = null;
+		}
+
+		private long getSizeInBytes() {
+			return bitmap != null ? bitmap.length * 8L : array.length * 2L;
+		}
+	}
+
+	/** High 16 bits of the chunks, sorted. */
+	private char[] keys = new char[4];
+
+	private Container[] containers = new Container[4];
+
+	private int containerCount;
+
+	private long cardinality;
+
+	private static void checkValue(int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Value must not be negative.");
+		}
+	}
+
+	private int indexOfContainer(char high) {
+		return Arrays.binarySearch(keys, 0, containerCount, high);
+	}
+
+	private void removeContainer(int idx) {
+		System.arraycopy(keys, idx + 1, keys, idx, containerCount - idx - 1);
+		System.arraycopy(containers, idx + 1, containers, idx, containerCount - idx - 1);
+		containers[--containerCount] = null;
+	}
+
+	/**
+	 * Adds the value to the set.
+	 *
+	 * @return true if the value has been added, false if it was already there
+	 */
+	public boolean add(int value) {
+		checkValue(value);
+		char high = (char) (value >>> 16);
+
+		int idx = indexOfContainer(high);
+		if (idx < 0) {
+			idx = -idx - 1;
+			if (containerCount == keys.length) {
+				keys = Arrays.copyOf(keys, keys.length * 2);
+				containers = Arrays.copyOf(containers, containers.length * 2);
+			}
+			System.arraycopy(keys, idx, keys, idx + 1, containerCount - idx);
+			System.arraycopy(containers, idx, containers, idx + 1, containerCount - idx);
+			keys[idx] = high;
+			containers[idx] = new Container();
+			containerCount++;
+		}
+
+		if (containers[idx].add((char) value)) {
+			cardinality++;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Removes the value from the set.
+	 *
+	 * @return true if the value has been removed, false if it was not there
+	 */
+	public boolean remove(int value) {
+		if (value < 0) {
+			return false;
+		}
+
+		int idx = indexOfContainer((char) (value >>> 16));
+		if (idx < 0 || !containers[idx].remove((char) value)) {
+			return false;
+		}
+
+		if (containers[idx].cardinality == 0) {
+			removeContainer(idx);
+		}
+		cardinality--;
+		return true;
+	}
+
+	public boolean contains(int value) {
+		if (value < 0) {
+			return false;
+		}
+
+		int idx = indexOfContainer((char) (value >>> 16));
+		return idx >= 0 && containers[idx].contains((char) value);
+	}
+
+	public void clear() {
+		keys = new char[4];
+		containers = new Container[4];
+		containerCount = 0;
+		cardinality = 0;
+	}
+
+	/**
+	 * Returns the number of values in the set.
+	 */
+	public long getCardinality() {
+		return cardinality;
+	}
+
+	/**
+	 * Returns the approximate memory taken by the values, in bytes, not
+	 * counting object headers.
+	 */
+	public long getSizeInBytes() {
+		long result = keys.length * 2L + containers.length * 4L;
+		for (int i = 0; i < containerCount; i++) {
+			result += containers[i].getSizeInBytes();
+		}
+		return result;
+	}
+
+}
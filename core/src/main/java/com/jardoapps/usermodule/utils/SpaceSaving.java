@@ -0,0 +1,241 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the most frequent strings of a stream with the Space-Saving
+ * algorithm, keeping a fixed number of counters. When a string which is not
+ * counted yet arrives and all counters are taken, the counter with the lowest
+ * count is given to the new string, which inherits the count as its maximal
+ * error. Every string which occurs more than <code>N / capacity</code> times
+ * (where <code>N</code> is the number of additions) is guaranteed to be
+ * counted.
+ * <p>
+ * The counters are kept in a min-heap, so an addition takes
+ * <code>O(log capacity)</code> time.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class SpaceSaving {
+
+	/**
+	 * A counted string with its count.
+	 */
+	public static final class Entry {
+
+		private final String key;
+
+		private final long count;
+
+		private final long error;
+
+		public String getKey() {
+			return key;
+		}
+
+		/**
+		 * Returns the counted number of occurrences, which is never lower than
+		 * the real number.
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Returns by how much the count may be higher than the real number.
+		 */
+		public long getError() {
+			return error;
+		}
+
+		private Entry(String key, long count, long error) {
+			this.key = key;
+			this.count = count;
+			this.error = error;
+		}
+	}
+
+	private final int capacity;
+
+	private final String[] keys;
+
+	private final long[] counts;
+
+	private final long[] errors;
+
+	private final Map<String, Integer> positions;
+
+	private int size;
+
+	private void swap(int i, int j) {
+		String key = keys[i];
+		keys[i] = keys[j];
+		keys[j] = key;
+
+		long count = counts[i];
+		counts[i] = counts[j];
+		counts[j] = count;
+
+		long error = errors[i];
+		errors[i] = errors[j];
+		errors[j] = error;
+
+		positions.put(keys[i], i);
+		positions.put(keys[j], j);
+	}
+
+	private void siftUp(int idx) {
+		while (idx > 0) {
+			int parent = (idx - 1) >>> 1;
+			if (counts[parent] <= counts[idx]) {
+				return;
+			}
+			swap(idx, parent);
+			idx = parent;
+		}
+	}
+
+	private void siftDown(int idx) {
+		while (true) {
+			int smallest = idx;
+			int left = 2 * idx + 1;
+			int right = left + 1;
+			if (left < size && counts[left] < counts[smallest]) {
+				smallest = left;
+			}
+			if (right < size && counts[right] < counts[smallest]) {
+				smallest = right;
+			}
+			if (smallest == idx) {
+				return;
+			}
+			swap(idx, smallest);
+			idx = smallest;
+		}
+	}
+
+	/**
+	 * Adds one occurrence of the string.
+	 */
+	public void add(String key) {
+		Integer position = positions.get(key);
+		if (position != null) {
+			counts[position]++;
+			siftDown(position);
+			return;
+		}
+
+		if (size < capacity) {
+			keys[size] = key;
+			counts[size] = 1;
+			errors[size] = 0;
+			positions.put(key, size);
+			siftUp(size++);
+			return;
+		}
+
+		// take over the counter with the lowest count, which is the root of the heap
+		positions.remove(keys[0]);
+		long minCount = counts[0];
+		keys[0] = key;
+		counts[0] = minCount + 1;
+		errors[0] = minCount;
+		positions.put(key, 0);
+		siftDown(0);
+	}
+
+	/**
+	 * Returns the counted number of occurrences of the string. For a string
+	 * which is not counted, this is the lowest count (the maximal number of
+	 * occurrences it may have had), or zero while not all counters are taken.
+	 */
+	public long estimateCount(String key) {
+		Integer position = positions.get(key);
+		if (position != null) {
+			return counts[position];
+		}
+		return size < capacity ? 0 : counts[0];
+	}
+
+	/**
+	 * Returns up to <code>n</code> counted strings with the highest counts,
+	 * the most frequent first.
+	 */
+	public List<Entry> getTop(int n) {
+		List<Entry> result = new ArrayList<Entry>(size);
+		for (int i = 0; i < size; i++) {
+			result.add(new Entry(keys[i], counts[i], errors[i]));
+		}
+
+		Collections.sort(result, new Comparator<Entry>() {
+			@Override
+			public int compare(Entry e1, Entry e2) {
+				return Long.compare(e2.count, e1.count);
+			}
+		});
+
+		return n < result.size() ? new ArrayList<Entry>(result.subList(0, n)) : result;
+	}
+
+	public void clear() {
+		Arrays.fill(keys, null);
+		positions.clear();
+		size = 0;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Returns the number of counted strings.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param capacity
+	 *            number of counters, i.e. the maximal number of counted
+	 *            strings
+	 */
+	public SpaceSaving(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive.");
+		}
+
+		this.capacity = capacity;
+		this.keys = new String[capacity];
+		this.counts = new long[capacity];
+		this.errors = new long[capacity];
+		this.positions = new HashMap<String, Integer>(capacity * 2);
+	}
+
+}
@@ -0,0 +1,120 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.utils;
+
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts events in fixed-size time buckets, for instance per day. Buckets are
+ * aligned to the local time of the given time zone, so that day buckets start
+ * at local midnight. Only buckets which contain events take up memory.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class TimeBucketCounter {
+
+	public static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+	private final long bucketMillis;
+
+	private final TimeZone timeZone;
+
+	private final ConcurrentNavigableMap<Long, AtomicInteger> buckets = new ConcurrentSkipListMap<Long, AtomicInteger>();
+
+	private long bucketOf(Date time) {
+		long millis = time.getTime();
+		long localMillis = millis + timeZone.getOffset(millis);
+
+		// floor division, so that times before the epoch are put into the right bucket
+		long bucket = localMillis / bucketMillis;
+		if (localMillis % bucketMillis < 0) {
+			bucket--;
+		}
+		return bucket;
+	}
+
+	/**
+	 * Adds the delta to the bucket containing the given time. The delta can
+	 * be negative.
+	 */
+	public void add(Date time, int delta) {
+		Long bucket = bucketOf(time);
+
+		AtomicInteger counter = buckets.get(bucket);
+		if (counter == null) {
+			AtomicInteger newCounter = new AtomicInteger();
+			counter = buckets.putIfAbsent(bucket, newCounter);
+			if (counter == null) {
+				counter = newCounter;
+			}
+		}
+
+		counter.addAndGet(delta);
+	}
+
+	/**
+	 * Returns the sum of all buckets starting with the bucket which contains
+	 * the given time. The time is therefore effectively rounded down to the
+	 * start of its bucket. If the time is null, the sum of all buckets is
+	 * returned.
+	 */
+	public int countSince(Date since) {
+		ConcurrentNavigableMap<Long, AtomicInteger> counted = since == null ? buckets : buckets.tailMap(bucketOf(since), true);
+
+		int result = 0;
+		for (AtomicInteger counter : counted.values()) {
+			result += counter.get();
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the number of non-empty buckets.
+	 */
+	public int getBucketCount() {
+		return buckets.size();
+	}
+
+	public long getBucketMillis() {
+		return bucketMillis;
+	}
+
+	/**
+	 * @param bucketMillis
+	 *            size of each bucket in milliseconds
+	 * @param timeZone
+	 *            time zone to which the buckets are aligned
+	 */
+	public TimeBucketCounter(long bucketMillis, TimeZone timeZone) {
+		if (bucketMillis < 1) {
+			throw new IllegalArgumentException("Bucket size must be positive.");
+		}
+
+		this.bucketMillis = bucketMillis;
+		this.timeZone = timeZone;
+	}
+
+}
@@ -0,0 +1,227 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hierarchical timing wheel for expiring a large number of items with
+ * constant time insertion and removal. Time is divided into ticks. The first
+ * wheel has one slot per tick, each next wheel has slots as long as a whole
+ * revolution of the previous one. Items are put into the slot of their
+ * expiration time on the lowest wheel which can hold it and are cascaded to
+ * the lower wheels as the time advances.
+ * <p>
+ * The wheel does not have its own thread. It is advanced by calling
+ * {@link #advance(long)}, which returns the expired items.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @param <T>
+ *            type of the scheduled items
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class TimingWheel<T> {
+
+	private static final int WHEEL_BITS = 6;
+
+	private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+
+	private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+	private static final int LEVELS = 5;
+
+	/**
+	 * A scheduled item, which can be used to cancel it.
+	 */
+	public static final class Timeout<T> {
+
+		private final T item;
+
+		private final long deadlineTick;
+
+		private Timeout<T> prev;
+
+		private Timeout<T> next;
+
+		public T getItem() {
+			return item;
+		}
+
+		private Timeout(T item, long deadlineTick) {
+			this.item = item;
+			this.deadlineTick = deadlineTick;
+		}
+	}
+
+	private final long tickMillis;
+
+	/**
+	 * Slots of all wheels. Each slot is a circular list with a sentinel head.
+	 */
+	private final Timeout<T>[][] slots;
+
+	private long currentTick;
+
+	private int size;
+
+	private static <T> void unlink(Timeout<T> timeout) {
+		timeout.prev.next = timeout.next;
+		timeout.next.prev = timeout.prev;
+		timeout.prev = null;
+		timeout.next = null;
+	}
+
+	private static <T> void link(Timeout<T> head, Timeout<T> timeout) {
+		timeout.prev = head.prev;
+		timeout.next = head;
+		head.prev.next = timeout;
+		head.prev = timeout;
+	}
+
+	private void place(Timeout<T> timeout, List<T> expired) {
+		long deadline = timeout.deadlineTick;
+		if (deadline <= currentTick) {
+			size--;
+			expired.add(timeout.item);
+			return;
+		}
+
+		for (int level = 0; level < LEVELS; level++) {
+			int shift = WHEEL_BITS * level;
+			if ((deadline >>> shift) - (currentTick >>> shift) < WHEEL_SIZE) {
+				link(slots[level][(int) ((deadline >>> shift) & WHEEL_MASK)], timeout);
+				return;
+			}
+		}
+
+		throw new IllegalArgumentException("Deadline is too far in the future.");
+	}
+
+	private void expireSlot(Timeout<T> head, List<T> expired) {
+		while (head.next != head) {
+			Timeout<T> timeout = head.next;
+			unlink(timeout);
+			place(timeout, expired);
+		}
+	}
+
+	/**
+	 * Returns the current time of the wheel in milliseconds, rounded down to
+	 * a whole tick.
+	 */
+	public long getCurrentMillis() {
+		return currentTick * tickMillis;
+	}
+
+	/**
+	 * Returns the number of scheduled items.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Schedules the item to expire at the given time. If the time has already
+	 * passed, the item expires on the next {@link #advance(long)}.
+	 *
+	 * @return timeout which can be passed to {@link #cancel(Timeout)}
+	 */
+	public Timeout<T> schedule(T item, long deadlineMillis) {
+		// round up, so that items never expire before their deadline
+		long deadlineTick = Math.max((deadlineMillis + tickMillis - 1) / tickMillis, currentTick + 1);
+
+		Timeout<T> timeout = new Timeout<T>(item, deadlineTick);
+		size++;
+		place(timeout, null);
+		return timeout;
+	}
+
+	/**
+	 * Removes a scheduled item. Does nothing if the item has already expired
+	 * or has been cancelled.
+	 */
+	public void cancel(Timeout<T> timeout) {
+		if (timeout.next != null) {
+			unlink(timeout);
+			size--;
+		}
+	}
+
+	/**
+	 * Advances the wheel to the given time.
+	 *
+	 * @return items which expired on or before the given time
+	 */
+	public List<T> advance(long nowMillis) {
+		long targetTick = nowMillis / tickMillis;
+		List<T> expired = new ArrayList<T>();
+
+		while (currentTick < targetTick) {
+			if (size == 0) {
+				currentTick = targetTick;
+				break;
+			}
+
+			currentTick++;
+
+			// cascade the items of the higher wheels whose slots have just started
+			for (int level = LEVELS - 1; level > 0; level--) {
+				int shift = WHEEL_BITS * level;
+				if ((currentTick & ((1L << shift) - 1)) == 0) {
+					expireSlot(slots[level][(int) ((currentTick >>> shift) & WHEEL_MASK)], expired);
+				}
+			}
+
+			expireSlot(slots[0][(int) (currentTick & WHEEL_MASK)], expired);
+		}
+
+		return expired;
+	}
+
+	/**
+	 * @param tickMillis
+	 *            duration of one tick, which is the precision of the
+	 *            expiration
+	 * @param nowMillis
+	 *            current time
+	 */
+	@SuppressWarnings("unchecked")
+	public TimingWheel(long tickMillis, long nowMillis) {
+		if (tickMillis < 1) {
+			throw new IllegalArgumentException("Tick duration must be positive.");
+		}
+
+		this.tickMillis = tickMillis;
+		this.currentTick = nowMillis / tickMillis;
+
+		slots = new Timeout[LEVELS][WHEEL_SIZE];
+		for (int level = 0; level < LEVELS; level++) {
+			for (int i = 0; i < WHEEL_SIZE; i++) {
+				Timeout<T> head = new Timeout<T>(null, 0);
+				head.prev = head;
+				head.next = head;
+				slots[level][i] = head;
+			}
+		}
+	}
+
+}
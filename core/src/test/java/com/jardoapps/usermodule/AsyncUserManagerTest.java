@@ -0,0 +1,238 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.jardoapps.usermodule.AsyncUserManager.Callback;
+import com.jardoapps.usermodule.AsyncUserManager.Result;
+import com.jardoapps.usermodule.containers.UserPassword;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AsyncUserManagerTest {
+
+	// password = 'password'
+	private static final String STORED_PASSWORD_HASH = "C0794DCF71360C8A6302C49B3228CBCFFC8CD07BBC55250EAC7D2C599B9AE2BD";
+	private static final String STORED_PASSWORD_SALT = "7886788CB39BF33C856EF18206A81CE4B498DC5A1A4199ABC0CB0FB686EAB008";
+
+	@Spy
+	private UserManagementProperties properties = new UserManagementPropertiesImpl();
+
+	@Mock
+	private EmailSender emailSender;
+
+	@Mock
+	private UserDatabaseModel databaseModel;
+
+	@Mock
+	private SessionModel sessionModel;
+
+	@InjectMocks
+	private UserManager userManager;
+
+	private AsyncUserManager asyncUserManager;
+
+	private final AtomicInteger hashingThreads = new AtomicInteger();
+
+	private final User storedUser = new User(1, "John", "john@example.com", "5658ffccee7f0ebfda2b226238b1eb6e", true,
+			new UserPassword(STORED_PASSWORD_HASH, STORED_PASSWORD_SALT), UserRanks.NORMAL_USER);
+
+	private static class RecordingCallback<T> implements Callback<T> {
+
+		private final CountDownLatch latch = new CountDownLatch(1);
+
+		private final AtomicReference<T> result = new AtomicReference<T>();
+
+		private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+		@Override
+		public void onSuccess(T value) {
+			result.set(value);
+			latch.countDown();
+		}
+
+		@Override
+		public void onFailure(Throwable e) {
+			failure.set(e);
+			latch.countDown();
+		}
+
+		public void await() throws InterruptedException {
+			assertTrue(latch.await(5, TimeUnit.SECONDS));
+		}
+	}
+
+	@Before
+	public void setUp() {
+		ExecutorService hashingExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				hashingThreads.incrementAndGet();
+				return new Thread(runnable);
+			}
+		});
+		asyncUserManager = new AsyncUserManager(userManager, Executors.newFixedThreadPool(4), hashingExecutor);
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		asyncUserManager.shutdown(5, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void testLogIn() throws Exception {
+		Mockito.when(databaseModel.getUserByEmail("john@example.com")).thenReturn(storedUser);
+		Mockito.when(databaseModel.makeLogInRecord(Mockito.anyInt(), Mockito.anyBoolean(), Mockito.anyString())).thenReturn(true);
+		Mockito.when(databaseModel.recordSuccessfulLogIn(Mockito.anyInt(), Mockito.anyString())).thenReturn(true);
+
+		assertEquals(ResultCode.OK, asyncUserManager.logIn("john@example.com", "password", "127.0.0.1").get());
+		assertEquals(ResultCode.INVALID_PASSWORD, asyncUserManager.logIn("john@example.com", "wrong", "127.0.0.1").get());
+		assertEquals(ResultCode.NO_SUCH_USER, asyncUserManager.logIn("carl@example.com", "password", "127.0.0.1").get());
+
+		// hashes were calculated by the hashing executor
+		assertEquals(1, hashingThreads.get());
+		Mockito.verify(sessionModel).setCurrentUser(storedUser);
+	}
+
+	@Test
+	public void testUserManagerWorksAfterShutdown() throws Exception {
+		Mockito.when(databaseModel.getUserByEmail("john@example.com")).thenReturn(storedUser);
+		Mockito.when(databaseModel.recordSuccessfulLogIn(Mockito.anyInt(), Mockito.anyString())).thenReturn(true);
+
+		assertTrue(asyncUserManager.shutdown(5, TimeUnit.SECONDS));
+		assertEquals(ResultCode.OK, userManager.logIn("john@example.com", "password", "127.0.0.1"));
+	}
+
+	@Test
+	public void testSynchronousCallsDoNotUseHashingExecutor() {
+		Mockito.when(databaseModel.getUserByEmail("john@example.com")).thenReturn(storedUser);
+		Mockito.when(databaseModel.recordSuccessfulLogIn(Mockito.anyInt(), Mockito.anyString())).thenReturn(true);
+
+		assertEquals(ResultCode.OK, userManager.logIn("john@example.com", "password", "127.0.0.1"));
+		assertEquals(0, hashingThreads.get());
+	}
+
+	@Test
+	public void testRejectedHashIsCalculatedInline() throws Exception {
+		Mockito.when(databaseModel.getUserByEmail("john@example.com")).thenReturn(storedUser);
+		Mockito.when(databaseModel.recordSuccessfulLogIn(Mockito.anyInt(), Mockito.anyString())).thenReturn(true);
+
+		ExecutorService stoppedExecutor = Executors.newSingleThreadExecutor();
+		stoppedExecutor.shutdown();
+		AsyncUserManager stoppedHashing = new AsyncUserManager(userManager, Executors.newSingleThreadExecutor(), stoppedExecutor);
+
+		try {
+			assertEquals(ResultCode.OK, stoppedHashing.logIn("john@example.com", "password", "127.0.0.1").get());
+			assertEquals(ResultCode.INVALID_PASSWORD, stoppedHashing.logIn("john@example.com", "wrong", "127.0.0.1").get());
+		} finally {
+			stoppedHashing.shutdown(5, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	public void testGetUsersByIds() throws Exception {
+		Map<Integer, User> users = Collections.singletonMap(1, storedUser);
+		Mockito.when(databaseModel.getUsersByIds(Arrays.asList(1))).thenReturn(users);
+
+		assertEquals(users, asyncUserManager.getUsersByIds(Arrays.asList(1)).get());
+	}
+
+	@Test
+	public void testCallback() throws InterruptedException {
+		Mockito.when(databaseModel.cancelAllPasswordResetTokens(1)).thenReturn(false);
+
+		RecordingCallback<ResultCode> callback = new RecordingCallback<ResultCode>();
+		asyncUserManager.cancelPasswordResetTokens(1).addCallback(callback);
+
+		callback.await();
+		assertEquals(ResultCode.DATABASE_ERROR, callback.result.get());
+		assertNull(callback.failure.get());
+	}
+
+	@Test
+	public void testCallbackAfterCompletion() throws Exception {
+		Mockito.when(databaseModel.getUserPassword(1)).thenReturn(storedUser.getPassword());
+
+		Result<Boolean> result = asyncUserManager.isPasswordValid(1, "password");
+		assertEquals(true, result.get());
+
+		RecordingCallback<Boolean> callback = new RecordingCallback<Boolean>();
+		result.addCallback(callback);
+
+		callback.await();
+		assertEquals(true, callback.result.get());
+	}
+
+	@Test
+	public void testFailure() throws InterruptedException {
+		IllegalStateException exception = new IllegalStateException("Connection lost.");
+		Mockito.when(databaseModel.getUserIdByEmail("john@example.com")).thenThrow(exception);
+
+		RecordingCallback<ResultCode> callback = new RecordingCallback<ResultCode>();
+		Result<ResultCode> result = asyncUserManager.createPasswordResetToken("john@example.com").addCallback(callback);
+
+		callback.await();
+		assertSame(exception, callback.failure.get());
+
+		try {
+			result.get();
+		} catch (ExecutionException e) {
+			assertSame(exception, e.getCause());
+			return;
+		}
+		throw new AssertionError("ExecutionException expected.");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSameExecutors() {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			new AsyncUserManager(userManager, executor, executor);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,279 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.jardoapps.usermodule.containers.OutboxEmail;
+
+@RunWith(MockitoJUnitRunner.class)
+public class EmailSenderOutboxImplTest {
+
+	private static final long LONG_INTERVAL = 60000L;
+
+	private static class InMemoryOutboxModel implements EmailOutboxModel {
+
+		private static final long serialVersionUID = 1L;
+
+		private final ConcurrentHashMap<Long, OutboxEmail> emails = new ConcurrentHashMap<Long, OutboxEmail>();
+
+		private final AtomicLong lastId = new AtomicLong();
+
+		@Override
+		public long addEmail(OutboxEmail email) {
+			long id = lastId.incrementAndGet();
+			emails.put(id, new OutboxEmail(id, email.getType(), email.getEmail(), email.getUserName(), email.getUserId(), email.getCode(),
+					email.getRegistrator(), email.getCreationTime(), email.getAttempts(), email.getNextAttemptTime()));
+			return id;
+		}
+
+		@Override
+		public boolean claimEmail(long emailId, int expectedAttempts, Date nextAttemptTime) {
+			OutboxEmail email = emails.get(emailId);
+			if (email == null || email.getAttempts() != expectedAttempts) {
+				return false;
+			}
+
+			OutboxEmail claimed = new OutboxEmail(emailId, email.getType(), email.getEmail(), email.getUserName(), email.getUserId(),
+					email.getCode(), email.getRegistrator(), email.getCreationTime(), expectedAttempts + 1, nextAttemptTime);
+			return emails.replace(emailId, email, claimed);
+		}
+
+		@Override
+		public int getEmailCount() {
+			return emails.size();
+		}
+
+		@Override
+		public List<OutboxEmail> getDueEmails(Date now, int maxResults) {
+			List<OutboxEmail> result = new ArrayList<OutboxEmail>();
+			for (OutboxEmail email : emails.values()) {
+				if (!email.getNextAttemptTime().after(now)) {
+					result.add(email);
+				}
+			}
+
+			Collections.sort(result, new Comparator<OutboxEmail>() {
+				@Override
+				public int compare(OutboxEmail e1, OutboxEmail e2) {
+					return e1.getNextAttemptTime().compareTo(e2.getNextAttemptTime());
+				}
+			});
+
+			return result.size() > maxResults ? result.subList(0, maxResults) : result;
+		}
+
+		@Override
+		public Date getOldestEmailCreationTime() {
+			Date oldest = null;
+			for (OutboxEmail email : emails.values()) {
+				if (oldest == null || email.getCreationTime().before(oldest)) {
+					oldest = email.getCreationTime();
+				}
+			}
+			return oldest;
+		}
+
+		@Override
+		public boolean removeEmail(long emailId) {
+			return emails.remove(emailId) != null;
+		}
+	}
+
+	@Mock
+	private EmailSender emailSender;
+
+	private final InMemoryOutboxModel outboxModel = new InMemoryOutboxModel();
+
+	private EmailSenderOutboxImpl outbox;
+
+	private static EmailSenderOutboxImpl copy(EmailSenderOutboxImpl outbox) throws IOException, ClassNotFoundException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(outbox);
+		}
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			return (EmailSenderOutboxImpl) in.readObject();
+		}
+	}
+
+	/**
+	 * Creates an outbox whose background thread is already stopped, so that
+	 * the test can dispatch the emails manually.
+	 */
+	private EmailSenderOutboxImpl createStoppedOutbox(int batchSize, int maxAttempts, long initialBackoffMillis) throws InterruptedException {
+		EmailSenderOutboxImpl result = new EmailSenderOutboxImpl(emailSender, outboxModel, batchSize, LONG_INTERVAL, maxAttempts,
+				initialBackoffMillis);
+		result.shutdown();
+		return result;
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		if (outbox != null) {
+			outbox.shutdown();
+		}
+	}
+
+	@Test
+	public void testBackgroundDispatch() throws InterruptedException {
+		Mockito.when(emailSender.sendRegistrationEmail("john@example.com", "John", 1, "code")).thenReturn(true);
+		outbox = new EmailSenderOutboxImpl(emailSender, outboxModel, 10, LONG_INTERVAL, 3, LONG_INTERVAL);
+
+		assertEquals(true, outbox.sendRegistrationEmail("john@example.com", "John", 1, "code"));
+
+		// woken up by the new email, not by the poll interval
+		Mockito.verify(emailSender, Mockito.timeout(5000)).sendRegistrationEmail("john@example.com", "John", 1, "code");
+		outbox.shutdown();
+
+		assertEquals(1, outbox.getSentEmailCount());
+		assertEquals(0, outbox.getBacklog());
+		assertEquals(0, outbox.getLagMillis());
+	}
+
+	@Test
+	public void testDispatchInBatches() throws InterruptedException {
+		Mockito.when(emailSender.sendLostPasswordEmail(Mockito.anyString(), Mockito.anyString())).thenReturn(true);
+		Mockito.when(emailSender.sendManualRegistrationEmail(Mockito.anyString(), Mockito.anyString(), Mockito.anyInt(), Mockito.anyString(),
+				Mockito.any(User.class))).thenReturn(true);
+		outbox = createStoppedOutbox(2, 3, LONG_INTERVAL);
+
+		User registrator = new User(5, "Admin", "admin@example.com", "", true, null, UserRanks.ADMIN);
+		outbox.sendLostPasswordEmail("john@example.com", "key1");
+		outbox.sendLostPasswordEmail("carl@example.com", "key2");
+		outbox.sendManualRegistrationEmail("mike@example.com", "Mike", 3, "code", registrator);
+		assertEquals(3, outbox.getBacklog());
+
+		assertEquals(3, outbox.dispatch());
+		assertEquals(0, outbox.getBacklog());
+		assertEquals(3, outbox.getSentEmailCount());
+
+		Mockito.verify(emailSender).sendLostPasswordEmail("john@example.com", "key1");
+		Mockito.verify(emailSender).sendLostPasswordEmail("carl@example.com", "key2");
+		Mockito.verify(emailSender).sendManualRegistrationEmail("mike@example.com", "Mike", 3, "code", registrator);
+	}
+
+	@Test
+	public void testRetryWithBackoff() throws InterruptedException {
+		Mockito.when(emailSender.sendLostPasswordEmail("john@example.com", "key")).thenReturn(false).thenReturn(true);
+		outbox = createStoppedOutbox(10, 3, LONG_INTERVAL);
+
+		outbox.sendLostPasswordEmail("john@example.com", "key");
+
+		long before = System.currentTimeMillis();
+		assertEquals(1, outbox.dispatch());
+		assertEquals(1, outbox.getFailedAttemptCount());
+
+		// the email waits for the backoff
+		OutboxEmail email = outboxModel.emails.values().iterator().next();
+		assertEquals(1, email.getAttempts());
+		assertTrue(email.getNextAttemptTime().getTime() >= before + LONG_INTERVAL);
+		assertEquals(0, outbox.dispatch());
+		assertEquals(1, outbox.getBacklog());
+	}
+
+	@Test
+	public void testGiveUpAfterMaxAttempts() throws InterruptedException {
+		Mockito.when(emailSender.sendLostPasswordEmail("john@example.com", "key")).thenThrow(new IllegalStateException("Relay down."));
+		outbox = createStoppedOutbox(10, 2, 1);
+
+		outbox.sendLostPasswordEmail("john@example.com", "key");
+
+		assertEquals(1, outbox.dispatch());
+		Thread.sleep(10);
+		assertEquals(1, outbox.dispatch());
+
+		assertEquals(2, outbox.getFailedAttemptCount());
+		assertEquals(1, outbox.getDroppedEmailCount());
+		assertEquals(0, outbox.getBacklog());
+	}
+
+	@Test
+	public void testClaimedEmailIsNotSentTwice() throws InterruptedException {
+		outbox = createStoppedOutbox(10, 3, LONG_INTERVAL);
+		outbox.sendLostPasswordEmail("john@example.com", "key");
+
+		// another dispatcher claims the email first
+		OutboxEmail email = outboxModel.emails.values().iterator().next();
+		assertEquals(true, outboxModel.claimEmail(email.getId(), 0, new Date(System.currentTimeMillis() + LONG_INTERVAL)));
+
+		assertEquals(0, outbox.dispatch());
+		Mockito.verifyZeroInteractions(emailSender);
+	}
+
+	@Test
+	public void testStoreFailure() throws InterruptedException {
+		EmailOutboxModel failingModel = Mockito.mock(EmailOutboxModel.class);
+		Mockito.when(failingModel.addEmail(Mockito.any(OutboxEmail.class))).thenReturn(-1L);
+		outbox = new EmailSenderOutboxImpl(emailSender, failingModel);
+
+		assertEquals(false, outbox.sendRegistrationEmail("john@example.com", "John", 1, "code"));
+	}
+
+	@Test
+	public void testDeserializedCopyDoesNotStartThread() throws Exception {
+		EmailSender serializableSender = Mockito.mock(EmailSender.class, Mockito.withSettings().serializable());
+		outbox = new EmailSenderOutboxImpl(serializableSender, outboxModel, 10, LONG_INTERVAL, 3, LONG_INTERVAL);
+		assertEquals(true, outbox.isRunning());
+
+		EmailSenderOutboxImpl copy = copy(outbox);
+		assertEquals(false, copy.isRunning());
+
+		// the copy only stores the email
+		assertEquals(true, copy.sendLostPasswordEmail("john@example.com", "key"));
+		assertEquals(1, copy.getBacklog());
+
+		copy.start();
+		assertEquals(true, copy.isRunning());
+		copy.shutdown();
+	}
+
+	@Test
+	public void testLag() throws InterruptedException {
+		outbox = createStoppedOutbox(10, 3, LONG_INTERVAL);
+
+		Date hourAgo = new Date(System.currentTimeMillis() - 3600000L);
+		outboxModel.addEmail(new OutboxEmail(0, null, "john@example.com", null, 0, "key", null, hourAgo, 0, hourAgo));
+
+		assertTrue(outbox.getLagMillis() >= 3600000L);
+	}
+
+}
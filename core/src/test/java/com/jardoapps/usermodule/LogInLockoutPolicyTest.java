@@ -0,0 +1,62 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+import com.jardoapps.usermodule.containers.UserPassword;
+
+public class LogInLockoutPolicyTest {
+
+	private final LogInLockoutPolicy policy = new LogInLockoutPolicy(3, 1000L, 10000L);
+
+	private User createUser(int failedLogInCount, Date lastFailedLogInTime) {
+		return new User(1, "john", "john@example.com", null, true, new UserPassword("hash", "salt"), UserRanks.NORMAL_USER, null, failedLogInCount, lastFailedLogInTime);
+	}
+
+	@Test
+	public void testExponentialBackoff() {
+		assertEquals(0, policy.getLockMillis(0));
+		assertEquals(0, policy.getLockMillis(2));
+		assertEquals(1000, policy.getLockMillis(3));
+		assertEquals(2000, policy.getLockMillis(4));
+		assertEquals(8000, policy.getLockMillis(6));
+		assertEquals(10000, policy.getLockMillis(7));
+		assertEquals(10000, policy.getLockMillis(Integer.MAX_VALUE));
+	}
+
+	@Test
+	public void testIsLocked() {
+		Date lastFailure = new Date(100000);
+
+		assertEquals(false, policy.isLocked(createUser(2, lastFailure), 100000));
+		assertEquals(true, policy.isLocked(createUser(3, lastFailure), 100999));
+		assertEquals(false, policy.isLocked(createUser(3, lastFailure), 101000));
+		assertEquals(true, policy.isLocked(createUser(4, lastFailure), 101999));
+		assertEquals(new Date(102000), policy.getLockedUntil(createUser(4, lastFailure)));
+
+		// count without a known time of the last failure
+		assertEquals(false, policy.isLocked(createUser(5, null), 100000));
+	}
+
+}
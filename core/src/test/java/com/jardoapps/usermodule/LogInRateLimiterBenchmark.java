@@ -0,0 +1,99 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the overhead of {@link LogInRateLimiter#tryAcquire(String, String)}
+ * per log in attempt, with attempts from many ip addresses for many accounts,
+ * by one and by several threads. It is not run by the build, run its main
+ * method manually.
+ */
+public class LogInRateLimiterBenchmark {
+
+	private static final int ITERATIONS = 2000000;
+
+	private static final int ROUNDS = 5;
+
+	private static final int KEYS = 50000;
+
+	private static final int THREADS = 4;
+
+	private static String[] createKeys(String prefix) {
+		String[] keys = new String[KEYS];
+		for (int i = 0; i < KEYS; i++) {
+			keys[i] = prefix + i;
+		}
+		return keys;
+	}
+
+	private static long run(LogInRateLimiter limiter, String[] ips, String[] accounts, int offset) {
+		long allowed = 0;
+		for (int i = 0; i < ITERATIONS; i++) {
+			int key = (int) (((long) i * 7919 + offset) % KEYS);
+			if (limiter.tryAcquire(ips[key], accounts[(key * 31) % KEYS])) {
+				allowed++;
+			}
+		}
+		return allowed;
+	}
+
+	private static void measure(final LogInRateLimiter limiter, final String[] ips, final String[] accounts, int threads) throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final CountDownLatch done = new CountDownLatch(threads);
+		final AtomicLong allowed = new AtomicLong();
+
+		long start = System.nanoTime();
+		for (int t = 0; t < threads; t++) {
+			final int offset = t * 1000;
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					allowed.addAndGet(LogInRateLimiterBenchmark.run(limiter, ips, accounts, offset));
+					done.countDown();
+				}
+			});
+		}
+		done.await();
+		long nanos = System.nanoTime() - start;
+		executor.shutdown();
+		executor.awaitTermination(1, TimeUnit.MINUTES);
+
+		long calls = (long) ITERATIONS * threads;
+		System.out.printf("%7d | %12.1f | %13.0f | %7d%n", threads, (double) nanos * threads / calls, calls * 1e9 / nanos, allowed.get());
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		String[] ips = createKeys("10.0.");
+		String[] accounts = createKeys("user");
+		LogInRateLimiter limiter = new LogInRateLimiter(1000, 1L, 5, 60000L);
+
+		System.out.println("threads | ns/call/thr. |       calls/s | allowed");
+		for (int round = 0; round < ROUNDS; round++) {
+			measure(limiter, ips, accounts, 1);
+			measure(limiter, ips, accounts, THREADS);
+		}
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Date;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.jardoapps.usermodule.containers.UserPassword;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PrincipalSessionModelTest {
+
+	@Mock
+	private UserDatabaseModel databaseModel;
+
+	@Spy
+	private PrincipalSessionModelImpl sessionModel = new PrincipalSessionModelImpl();
+
+	@InjectMocks
+	private UserManager userManager;
+
+	private final User storedUser = new User(1, "John", "john@example.com", "5658ffccee7f0ebfda2b226238b1eb6e", true, new UserPassword(
+			"C0794DCF71360C8A6302C49B3228CBCFFC8CD07BBC55250EAC7D2C599B9AE2BD", "7886788CB39BF33C856EF18206A81CE4B498DC5A1A4199ABC0CB0FB686EAB008"),
+			UserRanks.NORMAL_USER, new Date());
+
+	private static int getSerializedSize(SessionModel session) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(session);
+		}
+		return bytes.size();
+	}
+
+	@Test
+	public void testLogInStoresPrincipal() {
+		Mockito.when(databaseModel.getUserByEmail("john@example.com")).thenReturn(storedUser);
+
+		assertEquals(ResultCode.OK, userManager.logInWithoutPassword("john@example.com"));
+
+		UserPrincipal principal = sessionModel.getCurrentPrincipal();
+		assertEquals(1, principal.getId());
+		assertEquals("John", principal.getName());
+		assertEquals(UserRanks.NORMAL_USER, principal.getRank());
+		assertSame(principal, userManager.getCurrentPrincipal());
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void testCurrentUserIsResolvedById() {
+		Mockito.when(databaseModel.getUserById(1)).thenReturn(storedUser);
+		sessionModel.setCurrentPrincipal(new UserPrincipal(storedUser));
+
+		assertSame(storedUser, userManager.getCurrentUser());
+		Mockito.verify(databaseModel).getUserById(1);
+		Mockito.verify(sessionModel, Mockito.never()).getCurrentUser();
+	}
+
+	@Test
+	public void testLogOut() {
+		sessionModel.setCurrentPrincipal(new UserPrincipal(storedUser));
+
+		userManager.logOut();
+
+		assertNull(sessionModel.getCurrentPrincipal());
+		assertNull(userManager.getCurrentUser());
+		Mockito.verify(databaseModel, Mockito.never()).getUserById(Mockito.anyInt());
+	}
+
+	@Test
+	public void testSessionSize() throws IOException {
+		SessionModelImpl fullSession = new SessionModelImpl();
+		fullSession.setCurrentUser(storedUser);
+
+		PrincipalSessionModelImpl principalSession = new PrincipalSessionModelImpl();
+		principalSession.setCurrentUser(storedUser);
+
+		int fullSize = getSerializedSize(fullSession);
+		int principalSize = getSerializedSize(principalSession);
+		assertTrue("full user " + fullSize + " B, principal " + principalSize + " B", principalSize * 2 < fullSize);
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void testGetCurrentUserReturnsNull() {
+		PrincipalSessionModelImpl principalSession = new PrincipalSessionModelImpl();
+		principalSession.setCurrentUser(storedUser);
+
+		assertNull(principalSession.getCurrentUser());
+		assertEquals(1, principalSession.getCurrentPrincipal().getId());
+	}
+
+}
@@ -0,0 +1,109 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class RandomSourcePooledImplTest {
+
+	/**
+	 * Generates an increasing sequence of bytes, so that every generated block
+	 * is unique.
+	 */
+	private static class CountingRandomSource implements RandomSource {
+
+		private static final long serialVersionUID = 1L;
+
+		private int counter;
+
+		private int calls;
+
+		@Override
+		public synchronized void nextBytes(byte[] bytes) {
+			calls++;
+			for (int i = 0; i < bytes.length; i++) {
+				bytes[i] = (byte) counter++;
+			}
+		}
+
+		public synchronized int getCalls() {
+			return calls;
+		}
+	}
+
+	private static void waitForPoolSize(RandomSourcePooledImpl randomSource, int expectedSize) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (randomSource.getPoolSize() < expectedSize && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(expectedSize, randomSource.getPoolSize());
+	}
+
+	@Test
+	public void testNextBytesFromPool() throws Exception {
+		CountingRandomSource delegate = new CountingRandomSource();
+		RandomSourcePooledImpl randomSource = new RandomSourcePooledImpl(delegate, 4, 8);
+
+		randomSource.prefill();
+		waitForPoolSize(randomSource, 8);
+		assertEquals(8, delegate.getCalls());
+
+		byte[] first = new byte[4];
+		byte[] second = new byte[2];
+		randomSource.nextBytes(first);
+		randomSource.nextBytes(second);
+
+		assertTrue(Arrays.equals(new byte[] { 0, 1, 2, 3 }, first));
+		assertTrue(Arrays.equals(new byte[] { 4, 5 }, second));
+	}
+
+	@Test
+	public void testNextBytesLargerThanBlock() throws Exception {
+		CountingRandomSource delegate = new CountingRandomSource();
+		RandomSourcePooledImpl randomSource = new RandomSourcePooledImpl(delegate, 4, 8);
+
+		byte[] bytes = new byte[5];
+		randomSource.nextBytes(bytes);
+
+		assertEquals(1, delegate.getCalls());
+		assertEquals(0, randomSource.getPoolSize());
+	}
+
+	@Test
+	public void testNextBytesUnique() throws Exception {
+		RandomSourcePooledImpl randomSource = new RandomSourcePooledImpl(new RandomSourceStripedImpl(), 16, 64);
+
+		Set<String> generated = new HashSet<String>();
+		for (int i = 0; i < 1000; i++) {
+			byte[] bytes = new byte[16];
+			randomSource.nextBytes(bytes);
+			assertFalse(generated.contains(Arrays.toString(bytes)));
+			generated.add(Arrays.toString(bytes));
+		}
+	}
+
+}
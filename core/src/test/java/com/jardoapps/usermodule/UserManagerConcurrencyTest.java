@@ -0,0 +1,254 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.jardoapps.usermodule.containers.UserPassword;
+import com.jardoapps.usermodule.decorators.UserDatabaseModelDecorator;
+
+/**
+ * Runs many concurrent log ins and registrations and checks that no thread
+ * ever waited for a monitor, which would pin a virtual thread to its carrier
+ * thread. The rate limiter, the failed log in monitor and the lockout policy
+ * are set, and the operations go through every branch of
+ * {@link UserManager#logIn(String, String, String)}.
+ */
+public class UserManagerConcurrencyTest {
+
+	// password = 'password'
+	private static final String STORED_PASSWORD_HASH = "C0794DCF71360C8A6302C49B3228CBCFFC8CD07BBC55250EAC7D2C599B9AE2BD";
+	private static final String STORED_PASSWORD_SALT = "7886788CB39BF33C856EF18206A81CE4B498DC5A1A4199ABC0CB0FB686EAB008";
+
+	private static final int THREADS = 64;
+
+	private static final int OPERATIONS = 100000;
+
+	private static final int USERS = 100;
+
+	private static final String LOCKED_EMAIL = "locked@example.com";
+
+	private static final String ATTACKER_IP = "10.0.0.66";
+
+	/**
+	 * Database model keeping users in a concurrent map. Only the methods used
+	 * by log in and registration are implemented. A skip list map is used,
+	 * because ConcurrentHashMap locks a bin monitor when two keys collide,
+	 * which would be counted as a wait of the tested code.
+	 */
+	private static class InMemoryDatabaseModel extends UserDatabaseModelDecorator {
+
+		private static final long serialVersionUID = 1L;
+
+		private final ConcurrentMap<String, User> users = new ConcurrentSkipListMap<String, User>();
+
+		private final AtomicInteger lastId = new AtomicInteger();
+
+		private final AtomicInteger logInRecords = new AtomicInteger();
+
+		@Override
+		public int addUser(User newUser) {
+			User user = newUser.withId(lastId.incrementAndGet());
+			users.put(user.getEmail(), user);
+			return user.getId();
+		}
+
+		@Override
+		public boolean cancelAllPasswordResetTokens(int userId) {
+			return true;
+		}
+
+		@Override
+		public User getUserByEmail(String email) {
+			return users.get(email);
+		}
+
+		@Override
+		public boolean isEmailRegistered(String email) {
+			return users.containsKey(email);
+		}
+
+		@Override
+		public boolean isUserNameRegistered(String name) {
+			return false;
+		}
+
+		@Override
+		public boolean makeLogInRecord(int userId, boolean logInSuccessful, String usersIp) {
+			logInRecords.incrementAndGet();
+			return true;
+		}
+
+		@Override
+		public boolean recordSuccessfulLogIn(int userId, String usersIp) {
+			logInRecords.incrementAndGet();
+			return true;
+		}
+
+		public InMemoryDatabaseModel() {
+			super(Mockito.mock(UserDatabaseModel.class));
+		}
+	}
+
+	private static void inject(UserManager userManager, String fieldName, Object value) throws Exception {
+		Field field = UserManager.class.getDeclaredField(fieldName);
+		field.setAccessible(true);
+		field.set(userManager, value);
+	}
+
+	/**
+	 * Returns the ip address of a failed log in. Most failures come from a
+	 * distributed attack, whose addresses never become suspicious, so that the
+	 * failure branch runs concurrently. The rest comes from a single attacker,
+	 * who gets rate limited.
+	 */
+	private static String attackerIp(int operation) {
+		if (operation % 100 == 1) {
+			return ATTACKER_IP;
+		}
+		return "10.1." + (operation / 256 % 256) + "." + (operation % 256);
+	}
+
+	private static String email(int idx) {
+		return "user" + idx + "@example.com";
+	}
+
+	@Test
+	public void testConcurrentLogIns() throws Exception {
+		final InMemoryDatabaseModel databaseModel = new InMemoryDatabaseModel();
+		UserPassword password = new UserPassword(STORED_PASSWORD_HASH, STORED_PASSWORD_SALT);
+		for (int i = 0; i < USERS; i++) {
+			databaseModel.addUser(new User(0, "user" + i, email(i), "", true, password, UserRanks.NORMAL_USER));
+		}
+		databaseModel.addUser(new User(0, "locked", LOCKED_EMAIL, "", true, password, UserRanks.NORMAL_USER, null, 10, new Date()));
+
+		// only suspicious ip addresses are limited, so the attacker is stopped and the other users are not
+		FailedLogInMonitor failedLogInMonitor = new FailedLogInMonitor(5);
+		LogInRateLimiter logInRateLimiter = new LogInRateLimiter(10, 60000L, OPERATIONS, 1L);
+		logInRateLimiter.setIpPreFilter(failedLogInMonitor);
+
+		final UserManager userManager = new UserManager();
+		inject(userManager, "properties", new UserManagementPropertiesImpl());
+		inject(userManager, "databaseModel", databaseModel);
+		inject(userManager, "emailSender", Mockito.mock(EmailSender.class));
+		inject(userManager, "sessionModel", new SessionModelImpl());
+		userManager.setFailedLogInMonitor(failedLogInMonitor);
+		userManager.setLogInRateLimiter(logInRateLimiter);
+		userManager.setLogInLockoutPolicy(new LogInLockoutPolicy(3, 60000L, 3600000L));
+
+		// load all classes used by the log in path before measuring
+		assertEquals(ResultCode.OK, userManager.logIn(email(0), "password", "127.0.0.1"));
+		assertEquals(ResultCode.OK, userManager.registerUser("warmup@example.com", "warmup", "password", true));
+
+		final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		final AtomicInteger nextOperation = new AtomicInteger();
+		final AtomicInteger failures = new AtomicInteger();
+		final AtomicInteger expectedRecords = new AtomicInteger(1);
+		final AtomicInteger invalidPasswords = new AtomicInteger();
+		final AtomicInteger rateLimited = new AtomicInteger();
+		final AtomicLong monitorWaits = new AtomicLong();
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		List<Future<Void>> results = new ArrayList<Future<Void>>();
+		for (int t = 0; t < THREADS; t++) {
+			results.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() {
+					long threadId = Thread.currentThread().getId();
+					long blockedBefore = threadBean.getThreadInfo(threadId).getBlockedCount();
+
+					int operation;
+					while ((operation = nextOperation.getAndIncrement()) < OPERATIONS) {
+						ResultCode result;
+						ResultCode expected = ResultCode.OK;
+						switch (operation % 10) {
+							case 0:
+								result = userManager.registerUser("new" + operation + "@example.com", null, "password", true);
+								break;
+							case 1:
+								result = userManager.logIn(email(operation % USERS), "wrong", attackerIp(operation));
+								expected = result == ResultCode.TOO_MANY_LOG_IN_ATTEMPTS ? result : ResultCode.INVALID_PASSWORD;
+								break;
+							case 2:
+								result = userManager.logIn("nobody@example.com", "password", "127.0.0.1");
+								expected = ResultCode.NO_SUCH_USER;
+								break;
+							case 3:
+								result = userManager.logIn(LOCKED_EMAIL, "password", "127.0.0.1");
+								expected = ResultCode.ACCOUNT_LOCKED;
+								break;
+							default:
+								result = userManager.logIn(email(operation % USERS), "password", "127.0.0.1");
+								if (result == ResultCode.OK) {
+									expectedRecords.incrementAndGet();
+								}
+								break;
+						}
+
+						if (result == ResultCode.INVALID_PASSWORD) {
+							invalidPasswords.incrementAndGet();
+							expectedRecords.incrementAndGet();
+						} else if (result == ResultCode.TOO_MANY_LOG_IN_ATTEMPTS) {
+							rateLimited.incrementAndGet();
+						}
+
+						if (result != expected) {
+							failures.incrementAndGet();
+						}
+					}
+
+					monitorWaits.addAndGet(threadBean.getThreadInfo(threadId).getBlockedCount() - blockedBefore);
+					return null;
+				}
+			}));
+		}
+
+		for (Future<Void> result : results) {
+			result.get();
+		}
+		executor.shutdown();
+
+		assertEquals(0, failures.get());
+		assertTrue(invalidPasswords.get() > 0);
+		assertTrue(rateLimited.get() > 0);
+		assertEquals(expectedRecords.get(), databaseModel.logInRecords.get());
+		assertEquals("Threads waited for a monitor.", 0, monitorWaits.get());
+	}
+
+}
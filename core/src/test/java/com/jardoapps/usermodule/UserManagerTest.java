@@ -24,7 +24,14 @@ import static org.junit.Assert.assertSame;
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -34,12 +41,16 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.Spy;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 
 import com.jardoapps.usermodule.containers.PasswordResetToken;
 import com.jardoapps.usermodule.containers.SocialAccountDetails;
 import com.jardoapps.usermodule.containers.UserPassword;
+import com.jardoapps.usermodule.containers.UserRegistration;
 import com.jardoapps.usermodule.defines.EmailType;
+import com.jardoapps.usermodule.utils.SpaceSaving;
 
 @RunWith(MockitoJUnitRunner.class)
 public class UserManagerTest {
@@ -77,6 +88,18 @@ public class UserManagerTest {
 
 	private MessageDigest sha256;
 
+	private static class ResultRecorder implements UserManager.RegistrationListener {
+
+		private final List<UserRegistration> registrations = new ArrayList<UserRegistration>();
+		private final List<ResultCode> results = new ArrayList<ResultCode>();
+
+		@Override
+		public void onResult(UserRegistration registration, ResultCode result) {
+			registrations.add(registration);
+			results.add(result);
+		}
+	}
+
 	private void assertPasswordData(String password, UserPassword passwordData) throws UnsupportedEncodingException {
 		sha256.update(passwordData.getSalt().getBytes(HASH_ENCODING));
 		String expectedHash = toHex(sha256.digest(password.getBytes(HASH_ENCODING)));
@@ -342,6 +365,15 @@ public class UserManagerTest {
 		Assert.assertEquals(since, dateCaptor.getValue());
 	}
 
+	@Test
+	public void testGetUsersByIds() {
+		Map<Integer, User> users = Collections.singletonMap(1, storedUser);
+		Mockito.when(databaseModel.getUsersByIds(Arrays.asList(1, 2))).thenReturn(users);
+
+		Map<Integer, User> result = userManager.getUsersByIds(Arrays.asList(1, 2));
+		Assert.assertSame(users, result);
+	}
+
 	@Test
 	public void testIsPasswordValidTrue() {
 		Mockito.when(databaseModel.getUserPassword(1)).thenReturn(storedPassword);
@@ -378,10 +410,11 @@ public class UserManagerTest {
 		Assert.assertSame(storedUser, userCaptor.getValue());
 
 		ArgumentCaptor<String> ipCaptor = ArgumentCaptor.forClass(String.class);
-		Mockito.verify(databaseModel).makeLogInRecord(Mockito.eq(1), Mockito.eq(true), ipCaptor.capture());
+		Mockito.verify(databaseModel).recordSuccessfulLogIn(Mockito.eq(1), ipCaptor.capture());
 		Assert.assertSame(inetAddress, ipCaptor.getValue());
 
-		Mockito.verify(databaseModel).cancelAllPasswordResetTokens(1);
+		Mockito.verify(databaseModel, Mockito.never()).makeLogInRecord(Mockito.anyInt(), Mockito.anyBoolean(), Mockito.anyString());
+		Mockito.verify(databaseModel, Mockito.never()).cancelAllPasswordResetTokens(Mockito.anyInt());
 	}
 
 	@Test
@@ -406,6 +439,89 @@ public class UserManagerTest {
 		Assert.assertSame(inetAddress, ipCaptor.getValue());
 	}
 
+	@Test
+	public void testLogInRateLimited() {
+		Mockito.when(databaseModel.getUserByEmail(Mockito.anyString())).thenReturn(storedUser);
+		userManager.setLogInRateLimiter(new LogInRateLimiter(100, 60000L, 2, 60000L));
+
+		Assert.assertEquals(ResultCode.INVALID_PASSWORD, userManager.logIn("john@example.com", "wrong_password", inetAddress));
+		Assert.assertEquals(ResultCode.INVALID_PASSWORD, userManager.logIn("John@Example.com", "wrong_password", inetAddress));
+
+		// the account limit is reached, the attempt is rejected before the user is looked up
+		Assert.assertEquals(ResultCode.TOO_MANY_LOG_IN_ATTEMPTS, userManager.logIn("john@example.com", "password", inetAddress));
+		Mockito.verify(databaseModel, Mockito.times(2)).getUserByEmail(Mockito.anyString());
+		Mockito.verify(databaseModel, Mockito.times(2)).makeLogInRecord(Mockito.anyInt(), Mockito.anyBoolean(), Mockito.anyString());
+	}
+
+	@Test
+	public void testLogInFailuresAreMonitored() {
+		Mockito.when(databaseModel.getUserByEmail("john@example.com")).thenReturn(storedUser);
+		FailedLogInMonitor monitor = new FailedLogInMonitor(2);
+		userManager.setFailedLogInMonitor(monitor);
+
+		Assert.assertEquals(ResultCode.INVALID_PASSWORD, userManager.logIn("john@example.com", "wrong_password", inetAddress));
+		Assert.assertEquals(ResultCode.OK, userManager.logIn("john@example.com", "password", inetAddress));
+		Assert.assertEquals(false, monitor.isSuspicious(inetAddress));
+
+		Assert.assertEquals(ResultCode.INVALID_PASSWORD, userManager.logIn("john@example.com", "wrong_password", inetAddress));
+		Assert.assertEquals(2, monitor.getFailureCount(inetAddress));
+		Assert.assertEquals(true, monitor.isSuspicious(inetAddress));
+		Assert.assertEquals(inetAddress, monitor.getTopIps(1).get(0).getKey());
+	}
+
+	@Test
+	public void testFailedLogInMonitorMergesStripes() {
+		FailedLogInMonitor monitor = new FailedLogInMonitor(100);
+		for (int i = 0; i < 20; i++) {
+			for (int j = 0; j <= i; j++) {
+				monitor.recordFailure("10.0.0." + i);
+			}
+		}
+
+		List<SpaceSaving.Entry> topIps = monitor.getTopIps(3);
+		Assert.assertEquals(3, topIps.size());
+		Assert.assertEquals("10.0.0.19", topIps.get(0).getKey());
+		Assert.assertEquals("10.0.0.18", topIps.get(1).getKey());
+		Assert.assertEquals("10.0.0.17", topIps.get(2).getKey());
+
+		monitor.reset();
+		Assert.assertEquals(0, monitor.getTopIps(3).size());
+	}
+
+	@Test
+	public void testLogInRateLimitedWithIpPreFilter() {
+		Mockito.when(databaseModel.getUserByEmail(Mockito.anyString())).thenReturn(storedUser);
+		FailedLogInMonitor monitor = new FailedLogInMonitor(1);
+		LogInRateLimiter limiter = new LogInRateLimiter(1, 60000L, 100, 60000L);
+		limiter.setIpPreFilter(monitor);
+		userManager.setFailedLogInMonitor(monitor);
+		userManager.setLogInRateLimiter(limiter);
+
+		// ip addresses without failures are not limited
+		Assert.assertEquals(ResultCode.OK, userManager.logIn("john@example.com", "password", inetAddress));
+		Assert.assertEquals(ResultCode.INVALID_PASSWORD, userManager.logIn("john@example.com", "wrong_password", inetAddress));
+
+		Assert.assertEquals(ResultCode.OK, userManager.logIn("john@example.com", "password", inetAddress));
+		Assert.assertEquals(ResultCode.TOO_MANY_LOG_IN_ATTEMPTS, userManager.logIn("john@example.com", "password", inetAddress));
+		Assert.assertEquals(ResultCode.OK, userManager.logIn("john@example.com", "password", "10.0.0.2"));
+	}
+
+	@Test
+	public void testLogInAccountLocked() {
+		long now = System.currentTimeMillis();
+		User lockedUser = new User(1, "John", "john@example.com", null, true, storedPassword, UserRanks.NORMAL_USER, null, 3, new Date(now - 10000));
+		User unlockedUser = new User(1, "John", "john@example.com", null, true, storedPassword, UserRanks.NORMAL_USER, null, 3, new Date(now - 70000));
+		Mockito.when(databaseModel.getUserByEmail("john@example.com")).thenReturn(lockedUser, unlockedUser);
+		userManager.setLogInLockoutPolicy(new LogInLockoutPolicy(3, 60000L, 3600000L));
+
+		// the password is not checked while the account is locked
+		Assert.assertEquals(ResultCode.ACCOUNT_LOCKED, userManager.logIn("john@example.com", "password", inetAddress));
+		Mockito.verify(databaseModel, Mockito.never()).makeLogInRecord(Mockito.anyInt(), Mockito.anyBoolean(), Mockito.anyString());
+
+		Assert.assertEquals(ResultCode.OK, userManager.logIn("john@example.com", "password", inetAddress));
+		Mockito.verify(databaseModel).recordSuccessfulLogIn(1, inetAddress);
+	}
+
 	@Test
 	public void testLogInWithEmailRegistrationNotConfirmed() {
 		Mockito.when(databaseModel.getUserByEmail("carl@example.com")).thenReturn(userWithUnfinishedRegistration);
@@ -476,10 +592,11 @@ public class UserManagerTest {
 		Assert.assertSame(storedUser, userCaptor.getValue());
 
 		ArgumentCaptor<String> ipCaptor = ArgumentCaptor.forClass(String.class);
-		Mockito.verify(databaseModel).makeLogInRecord(Mockito.eq(1), Mockito.eq(true), ipCaptor.capture());
+		Mockito.verify(databaseModel).recordSuccessfulLogIn(Mockito.eq(1), ipCaptor.capture());
 		Assert.assertSame(inetAddress, ipCaptor.getValue());
 
-		Mockito.verify(databaseModel).cancelAllPasswordResetTokens(1);
+		Mockito.verify(databaseModel, Mockito.never()).makeLogInRecord(Mockito.anyInt(), Mockito.anyBoolean(), Mockito.anyString());
+		Mockito.verify(databaseModel, Mockito.never()).cancelAllPasswordResetTokens(Mockito.anyInt());
 	}
 
 	@Test
@@ -655,6 +772,100 @@ public class UserManagerTest {
 		Mockito.verify(emailSender).sendManualRegistrationEmail("carl@example.com", "Carl", 2, addedUser.getRegistrationControlCode(), registrator);
 	}
 
+	@Test
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void testRegisterUsers() throws Exception {
+		Mockito.when(databaseModel.getRegisteredEmails(Mockito.anyCollectionOf(String.class))).thenReturn(Collections.singleton("john@example.com"));
+		Mockito.when(databaseModel.getRegisteredUserNames(Mockito.anyCollectionOf(String.class))).thenReturn(Collections.singleton("John"));
+		Mockito.when(databaseModel.addUsers(Mockito.anyListOf(User.class))).thenReturn(new int[] { 2, 3 });
+		Mockito.when(emailSender.sendRegistrationEmail(Mockito.eq("carl@example.com"), Mockito.eq("Carl"), Mockito.eq(2), Mockito.notNull(String.class))).thenReturn(true);
+
+		List<UserRegistration> registrations = Arrays.asList(
+				new UserRegistration("carl@example.com", "Carl", "password", false),
+				new UserRegistration("john@example.com", null, "password", false),
+				new UserRegistration("other@example.com", "John", "password", false),
+				new UserRegistration("carl2@example.com", "Carl", "password", false),
+				new UserRegistration("carl@example.com", null, "password", false),
+				new UserRegistration("invalid-email", null, "password", false),
+				new UserRegistration("nopassword@example.com", null, null, false),
+				new UserRegistration("dave@example.com", null, "secret", true));
+
+		ResultRecorder recorder = new ResultRecorder();
+		int addedUsers = userManager.registerUsers(registrations, recorder);
+		Assert.assertEquals(2, addedUsers);
+
+		Assert.assertEquals(registrations, recorder.registrations);
+		Assert.assertEquals(Arrays.asList(ResultCode.OK, ResultCode.EMAIL_ALREADY_REGISTERED, ResultCode.USER_NAME_ALREADY_REGISTERED,
+				ResultCode.USER_NAME_ALREADY_REGISTERED, ResultCode.EMAIL_ALREADY_REGISTERED, ResultCode.INVALID_EMAIL, ResultCode.INVALID_PASSWORD,
+				ResultCode.OK), recorder.results);
+
+		// check database model calls
+
+		ArgumentCaptor<Collection> emailsCaptor = ArgumentCaptor.forClass(Collection.class);
+		Mockito.verify(databaseModel).getRegisteredEmails(emailsCaptor.capture());
+		Assert.assertEquals(8 - 1, new HashSet<String>(emailsCaptor.getValue()).size());
+
+		ArgumentCaptor<List> usersCaptor = ArgumentCaptor.forClass(List.class);
+		Mockito.verify(databaseModel).addUsers(usersCaptor.capture());
+
+		List<User> addedUserList = usersCaptor.getValue();
+		Assert.assertEquals(2, addedUserList.size());
+		Assert.assertEquals("carl@example.com", addedUserList.get(0).getEmail());
+		Assert.assertEquals(false, addedUserList.get(0).isRegistrationConfirmed());
+		assertPasswordData("password", addedUserList.get(0).getPassword());
+		Assert.assertEquals("dave@example.com", addedUserList.get(1).getEmail());
+		Assert.assertEquals(true, addedUserList.get(1).isRegistrationConfirmed());
+		assertPasswordData("secret", addedUserList.get(1).getPassword());
+
+		Mockito.verify(databaseModel, Mockito.never()).addUser(Mockito.any(User.class));
+		Mockito.verify(databaseModel, Mockito.never()).isEmailRegistered(Mockito.anyString());
+
+		// check email sender call, confirmed users get no email
+
+		Mockito.verify(emailSender).sendRegistrationEmail("carl@example.com", "Carl", 2, addedUserList.get(0).getRegistrationControlCode());
+		Mockito.verifyNoMoreInteractions(emailSender);
+	}
+
+	@Test
+	public void testRegisterUsersDatabaseError() {
+		Mockito.when(databaseModel.getRegisteredEmails(Mockito.anyCollectionOf(String.class))).thenReturn(Collections.<String> emptySet());
+		Mockito.when(databaseModel.getRegisteredUserNames(Mockito.anyCollectionOf(String.class))).thenReturn(Collections.<String> emptySet());
+		Mockito.when(databaseModel.addUsers(Mockito.anyListOf(User.class))).thenReturn(null);
+
+		ResultRecorder recorder = new ResultRecorder();
+		int addedUsers = userManager.registerUsers(Arrays.asList(new UserRegistration("carl@example.com", "Carl", "password", false)), recorder);
+
+		Assert.assertEquals(0, addedUsers);
+		Assert.assertEquals(Arrays.asList(ResultCode.DATABASE_ERROR), recorder.results);
+		Mockito.verifyZeroInteractions(emailSender);
+	}
+
+	@Test
+	public void testRegisterUsersInBatches() {
+		Mockito.when(databaseModel.getRegisteredEmails(Mockito.anyCollectionOf(String.class))).thenReturn(Collections.<String> emptySet());
+		Mockito.when(databaseModel.addUsers(Mockito.anyListOf(User.class))).thenAnswer(new Answer<int[]>() {
+			@Override
+			public int[] answer(InvocationOnMock invocation) {
+				return new int[((List<?>) invocation.getArguments()[0]).size()];
+			}
+		});
+
+		final int count = 2 * UserManager.BULK_REGISTRATION_BATCH_SIZE + 1;
+		List<UserRegistration> registrations = new ArrayList<UserRegistration>();
+		for (int i = 0; i < count; i++) {
+			registrations.add(new UserRegistration("user" + i + "@example.com", null, "password", true));
+		}
+
+		ResultRecorder recorder = new ResultRecorder();
+		Assert.assertEquals(count, userManager.registerUsers(registrations, recorder));
+		Assert.assertEquals(count, recorder.results.size());
+		Assert.assertEquals(Collections.nCopies(count, ResultCode.OK), recorder.results);
+
+		Mockito.verify(databaseModel, Mockito.times(3)).getRegisteredEmails(Mockito.anyCollectionOf(String.class));
+		Mockito.verify(databaseModel, Mockito.times(3)).addUsers(Mockito.anyListOf(User.class));
+		Mockito.verify(databaseModel, Mockito.never()).getRegisteredUserNames(Mockito.anyCollectionOf(String.class));
+	}
+
 	@Test
 	public void testResendRegistrationEmail() {
 		Mockito.when(databaseModel.getUserByEmail("carl@example.com")).thenReturn(userWithUnfinishedRegistration);
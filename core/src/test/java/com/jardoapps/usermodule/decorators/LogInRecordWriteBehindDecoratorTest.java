@@ -0,0 +1,196 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.decorators;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.jardoapps.usermodule.UserDatabaseModel;
+import com.jardoapps.usermodule.containers.LogInRecord;
+import com.jardoapps.usermodule.decorators.LogInRecordWriteBehindDecorator.OverflowPolicy;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LogInRecordWriteBehindDecoratorTest {
+
+	private static final long LONG_INTERVAL = 60000L;
+
+	@Mock
+	private UserDatabaseModel databaseModel;
+
+	private LogInRecordWriteBehindDecorator decorator;
+
+	private static LogInRecordWriteBehindDecorator copy(LogInRecordWriteBehindDecorator decorator) throws IOException, ClassNotFoundException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(decorator);
+		}
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			return (LogInRecordWriteBehindDecorator) in.readObject();
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private List<List<LogInRecord>> captureBatches(int expectedBatches) {
+		ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+		Mockito.verify(databaseModel, Mockito.timeout(5000).times(expectedBatches)).makeLogInRecords(captor.capture());
+		return (List) captor.getAllValues();
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		if (decorator != null) {
+			decorator.shutdown();
+		}
+	}
+
+	@Test
+	public void testFlushWhenBatchIsFull() {
+		Mockito.when(databaseModel.makeLogInRecords(Mockito.anyListOf(LogInRecord.class))).thenReturn(true);
+		decorator = new LogInRecordWriteBehindDecorator(databaseModel, 100, 3, LONG_INTERVAL, OverflowPolicy.DROP);
+
+		assertEquals(true, decorator.makeLogInRecord(1, true, "10.0.0.1"));
+		assertEquals(true, decorator.makeLogInRecord(2, false, "10.0.0.2"));
+		assertEquals(true, decorator.makeLogInRecord(3, true, "10.0.0.3"));
+
+		List<List<LogInRecord>> batches = captureBatches(1);
+		assertEquals(3, batches.get(0).size());
+		assertEquals(2, batches.get(0).get(1).getUserId());
+		assertEquals(false, batches.get(0).get(1).isSuccessful());
+		assertEquals("10.0.0.2", batches.get(0).get(1).getIp());
+
+		Mockito.verify(databaseModel, Mockito.never()).makeLogInRecord(Mockito.anyInt(), Mockito.anyBoolean(), Mockito.anyString());
+	}
+
+	@Test
+	public void testFlushAfterInterval() {
+		Mockito.when(databaseModel.makeLogInRecords(Mockito.anyListOf(LogInRecord.class))).thenReturn(true);
+		decorator = new LogInRecordWriteBehindDecorator(databaseModel, 100, 50, 10, OverflowPolicy.DROP);
+
+		decorator.makeLogInRecord(1, true, "10.0.0.1");
+
+		List<List<LogInRecord>> batches = captureBatches(1);
+		assertEquals(1, batches.get(0).size());
+		assertEquals(1, decorator.getWrittenRecordCount());
+		assertEquals(1, decorator.getFlushCount());
+	}
+
+	@Test
+	public void testOverflowDrop() throws InterruptedException {
+		Mockito.when(databaseModel.makeLogInRecords(Mockito.anyListOf(LogInRecord.class))).thenReturn(true);
+		decorator = new LogInRecordWriteBehindDecorator(databaseModel, 2, 50, LONG_INTERVAL, OverflowPolicy.DROP);
+
+		assertEquals(true, decorator.makeLogInRecord(1, true, "10.0.0.1"));
+		assertEquals(true, decorator.makeLogInRecord(2, true, "10.0.0.2"));
+		assertEquals(false, decorator.makeLogInRecord(3, true, "10.0.0.3"));
+
+		assertEquals(1, decorator.getDroppedRecordCount());
+	}
+
+	@Test
+	public void testOverflowWriteThrough() throws InterruptedException {
+		Mockito.when(databaseModel.makeLogInRecords(Mockito.anyListOf(LogInRecord.class))).thenReturn(true);
+		decorator = new LogInRecordWriteBehindDecorator(databaseModel, 1, 50, LONG_INTERVAL, OverflowPolicy.WRITE_THROUGH);
+
+		assertEquals(true, decorator.makeLogInRecord(1, true, "10.0.0.1"));
+		assertEquals(true, decorator.makeLogInRecord(2, true, "10.0.0.2"));
+
+		assertEquals(0, decorator.getDroppedRecordCount());
+
+		// one record written synchronously, the other one by the flush triggered by the overflow
+		List<List<LogInRecord>> batches = captureBatches(2);
+		assertEquals(2, batches.get(0).size() + batches.get(1).size());
+	}
+
+	@Test
+	public void testShutdownFlushesQueue() throws InterruptedException {
+		Mockito.when(databaseModel.makeLogInRecords(Mockito.anyListOf(LogInRecord.class))).thenReturn(true);
+		decorator = new LogInRecordWriteBehindDecorator(databaseModel, 100, 50, LONG_INTERVAL, OverflowPolicy.DROP);
+
+		decorator.makeLogInRecord(1, true, "10.0.0.1");
+		decorator.makeLogInRecord(2, true, "10.0.0.2");
+		assertEquals(2, decorator.getQueueDepth());
+
+		decorator.shutdown();
+		assertEquals(0, decorator.getQueueDepth());
+		assertEquals(2, captureBatches(1).get(0).size());
+
+		// records made after shutdown are written synchronously
+		decorator.makeLogInRecord(3, true, "10.0.0.3");
+		assertEquals(3, captureBatches(2).get(1).get(0).getUserId());
+		decorator = null;
+	}
+
+	@Test
+	public void testSuccessfulLogInIsQueued() throws InterruptedException {
+		Mockito.when(databaseModel.cancelAllPasswordResetTokens(1)).thenReturn(true);
+		decorator = new LogInRecordWriteBehindDecorator(databaseModel, 100, 50, LONG_INTERVAL, OverflowPolicy.DROP);
+
+		assertEquals(true, decorator.recordSuccessfulLogIn(1, "10.0.0.1"));
+		assertEquals(1, decorator.getQueueDepth());
+
+		// the tokens are cancelled synchronously, only the record is deferred
+		Mockito.verify(databaseModel).cancelAllPasswordResetTokens(1);
+		Mockito.verify(databaseModel, Mockito.never()).recordSuccessfulLogIn(Mockito.anyInt(), Mockito.anyString());
+	}
+
+	@Test
+	public void testDeserializedCopyDoesNotStartThread() throws Exception {
+		UserDatabaseModel serializableModel = Mockito.mock(UserDatabaseModel.class, Mockito.withSettings().serializable());
+		decorator = new LogInRecordWriteBehindDecorator(serializableModel, 100, 50, LONG_INTERVAL, OverflowPolicy.DROP);
+		assertEquals(true, decorator.isRunning());
+
+		LogInRecordWriteBehindDecorator copy = copy(decorator);
+		assertEquals(false, copy.isRunning());
+
+		// records of the copy are written synchronously
+		copy.makeLogInRecord(1, true, "10.0.0.1");
+		assertEquals(0, copy.getQueueDepth());
+
+		copy.start();
+		assertEquals(true, copy.isRunning());
+		copy.shutdown();
+	}
+
+	@Test
+	public void testFailedBatch() throws InterruptedException {
+		Mockito.when(databaseModel.makeLogInRecords(Mockito.anyListOf(LogInRecord.class))).thenReturn(false);
+		decorator = new LogInRecordWriteBehindDecorator(databaseModel, 100, 50, LONG_INTERVAL, OverflowPolicy.DROP);
+
+		decorator.makeLogInRecord(1, true, "10.0.0.1");
+		decorator.flush();
+
+		assertEquals(1, decorator.getFailedRecordCount());
+		assertEquals(0, decorator.getWrittenRecordCount());
+	}
+
+}
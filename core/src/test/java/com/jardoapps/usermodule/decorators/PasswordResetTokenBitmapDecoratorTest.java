@@ -0,0 +1,117 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.decorators;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.jardoapps.usermodule.UserDatabaseModel;
+import com.jardoapps.usermodule.containers.PasswordResetToken;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PasswordResetTokenBitmapDecoratorTest {
+
+	@Mock
+	private UserDatabaseModel databaseModel;
+
+	@Test
+	public void testCancellationIsSkippedForUsersWithoutTokens() {
+		Mockito.when(databaseModel.getUserIdsWithPasswordResetTokens()).thenReturn(new HashSet<Integer>(Arrays.asList(1, 70000)));
+		Mockito.when(databaseModel.cancelAllPasswordResetTokens(Mockito.anyInt())).thenReturn(true);
+		PasswordResetTokenBitmapDecorator decorator = new PasswordResetTokenBitmapDecorator(databaseModel);
+		decorator.rebuild();
+		assertEquals(2, decorator.getUserCount());
+
+		assertEquals(true, decorator.cancelAllPasswordResetTokens(2));
+		assertEquals(true, decorator.cancelAllPasswordResetTokens(1));
+		assertEquals(true, decorator.cancelAllPasswordResetTokens(1));
+
+		Mockito.verify(databaseModel, Mockito.times(1)).cancelAllPasswordResetTokens(Mockito.anyInt());
+		Mockito.verify(databaseModel).cancelAllPasswordResetTokens(1);
+		assertEquals(2, decorator.getSkippedCancellationCount());
+		assertEquals(1, decorator.getUserCount());
+	}
+
+	@Test
+	public void testAddedTokensAreCancelled() {
+		Mockito.when(databaseModel.getUserIdsWithPasswordResetTokens()).thenReturn(Collections.<Integer> emptySet());
+		Mockito.when(databaseModel.addPasswordResetToken(Mockito.any(PasswordResetToken.class))).thenReturn(true);
+		PasswordResetTokenBitmapDecorator decorator = new PasswordResetTokenBitmapDecorator(databaseModel);
+		decorator.rebuild();
+
+		PasswordResetToken token = new PasswordResetToken(5, "key", new Date());
+		assertEquals(true, decorator.addPasswordResetToken(token));
+		Mockito.verify(databaseModel).addPasswordResetToken(token);
+
+		// failed cancellation keeps the user in the bitmap
+		Mockito.when(databaseModel.cancelAllPasswordResetTokens(5)).thenReturn(false, true);
+		assertEquals(false, decorator.cancelAllPasswordResetTokens(5));
+		assertEquals(true, decorator.cancelAllPasswordResetTokens(5));
+		assertEquals(true, decorator.cancelAllPasswordResetTokens(5));
+
+		Mockito.verify(databaseModel, Mockito.times(2)).cancelAllPasswordResetTokens(5);
+	}
+
+	@Test
+	public void testSuccessfulLogInOfUserWithoutTokensOnlyMakesRecord() {
+		Mockito.when(databaseModel.getUserIdsWithPasswordResetTokens()).thenReturn(Collections.singleton(1));
+		Mockito.when(databaseModel.recordSuccessfulLogIn(Mockito.anyInt(), Mockito.anyString())).thenReturn(true);
+		Mockito.when(databaseModel.makeLogInRecord(Mockito.anyInt(), Mockito.anyBoolean(), Mockito.anyString())).thenReturn(true);
+		PasswordResetTokenBitmapDecorator decorator = new PasswordResetTokenBitmapDecorator(databaseModel);
+		decorator.rebuild();
+
+		assertEquals(true, decorator.recordSuccessfulLogIn(1, "10.0.0.1"));
+		assertEquals(true, decorator.recordSuccessfulLogIn(1, "10.0.0.1"));
+		assertEquals(true, decorator.recordSuccessfulLogIn(2, "10.0.0.2"));
+
+		Mockito.verify(databaseModel).recordSuccessfulLogIn(1, "10.0.0.1");
+		Mockito.verify(databaseModel).makeLogInRecord(1, true, "10.0.0.1");
+		Mockito.verify(databaseModel).makeLogInRecord(2, true, "10.0.0.2");
+		Mockito.verify(databaseModel, Mockito.never()).cancelAllPasswordResetTokens(Mockito.anyInt());
+		assertEquals(2, decorator.getSkippedCancellationCount());
+	}
+
+	@Test
+	public void testCallsAreForwardedBeforeRebuild() {
+		Mockito.when(databaseModel.getUserIdsWithPasswordResetTokens()).thenReturn(Collections.singleton(3));
+		PasswordResetTokenBitmapDecorator decorator = new PasswordResetTokenBitmapDecorator(databaseModel);
+
+		decorator.cancelAllPasswordResetTokens(1);
+		Mockito.verify(databaseModel).cancelAllPasswordResetTokens(1);
+
+		decorator.rebuild();
+		assertEquals(1, decorator.getUserCount());
+
+		decorator.cancelAllPasswordResetTokens(1);
+		decorator.cancelAllPasswordResetTokens(3);
+		Mockito.verify(databaseModel, Mockito.times(1)).cancelAllPasswordResetTokens(1);
+		Mockito.verify(databaseModel).cancelAllPasswordResetTokens(3);
+	}
+
+}
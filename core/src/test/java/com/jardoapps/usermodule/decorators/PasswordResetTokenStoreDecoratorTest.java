@@ -0,0 +1,148 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.decorators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.jardoapps.usermodule.User;
+import com.jardoapps.usermodule.UserDatabaseModel;
+import com.jardoapps.usermodule.UserManagementProperties;
+import com.jardoapps.usermodule.UserRanks;
+import com.jardoapps.usermodule.containers.PasswordResetToken;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PasswordResetTokenStoreDecoratorTest {
+
+	private static final long EXPIRATION_MILLIS = 60000L;
+
+	@Mock
+	private UserDatabaseModel databaseModel;
+
+	@Mock
+	private UserManagementProperties properties;
+
+	private final User john = new User(1, "john", "john@test.com", "code", true, null, UserRanks.NORMAL_USER);
+
+	@Before
+	public void setUp() {
+		Mockito.when(properties.getPasswordResetTokenExpirationMinutes()).thenReturn(1);
+		Mockito.when(databaseModel.getUserById(1)).thenReturn(john);
+	}
+
+	@Test
+	public void testMemoryOnly() {
+		PasswordResetTokenStoreDecorator store = new PasswordResetTokenStoreDecorator(databaseModel, properties);
+
+		PasswordResetToken older = new PasswordResetToken(1, "key1", new Date(System.currentTimeMillis() - 1000));
+		PasswordResetToken newer = new PasswordResetToken(1, "key2", new Date());
+
+		assertEquals(true, store.addPasswordResetToken(newer));
+		assertEquals(true, store.addPasswordResetToken(older));
+		assertSame(newer, store.getNewestPasswordResetToken("john@test.com"));
+		assertEquals(null, store.getNewestPasswordResetToken("mike@test.com"));
+		assertEquals(1, store.getSize());
+
+		assertEquals(true, store.cancelAllPasswordResetTokens(1));
+		assertEquals(null, store.getNewestPasswordResetToken("john@test.com"));
+		assertEquals(0, store.getSize());
+
+		Mockito.verify(databaseModel, Mockito.never()).addPasswordResetToken(Mockito.any(PasswordResetToken.class));
+		Mockito.verify(databaseModel, Mockito.never()).cancelAllPasswordResetTokens(Mockito.anyInt());
+		Mockito.verify(databaseModel, Mockito.never()).getNewestPasswordResetToken(Mockito.anyString());
+	}
+
+	@Test
+	public void testSuccessfulLogInCancelsTokens() {
+		Mockito.when(databaseModel.makeLogInRecord(1, true, "10.0.0.1")).thenReturn(true);
+		PasswordResetTokenStoreDecorator store = new PasswordResetTokenStoreDecorator(databaseModel, properties);
+
+		store.addPasswordResetToken(new PasswordResetToken(1, "key1", new Date()));
+		assertEquals(true, store.recordSuccessfulLogIn(1, "10.0.0.1"));
+		assertEquals(0, store.getSize());
+
+		// tokens are not in the database, so only the log in record is written
+		Mockito.verify(databaseModel).makeLogInRecord(1, true, "10.0.0.1");
+		Mockito.verify(databaseModel, Mockito.never()).recordSuccessfulLogIn(Mockito.anyInt(), Mockito.anyString());
+	}
+
+	@Test
+	public void testUnknownUser() {
+		PasswordResetTokenStoreDecorator store = new PasswordResetTokenStoreDecorator(databaseModel, properties);
+		assertEquals(false, store.addPasswordResetToken(new PasswordResetToken(2, "key", new Date())));
+	}
+
+	@Test
+	public void testExpiration() throws InterruptedException {
+		PasswordResetTokenStoreDecorator store = new PasswordResetTokenStoreDecorator(databaseModel, properties);
+
+		// already expired
+		store.addPasswordResetToken(new PasswordResetToken(1, "key1", new Date(System.currentTimeMillis() - EXPIRATION_MILLIS)));
+		assertEquals(0, store.getSize());
+
+		// expires in one second
+		store.addPasswordResetToken(new PasswordResetToken(1, "key2", new Date(System.currentTimeMillis() - EXPIRATION_MILLIS + 1000)));
+		assertEquals(1, store.getSize());
+
+		Thread.sleep(2100);
+		assertEquals(null, store.getNewestPasswordResetToken("john@test.com"));
+		store.expireTokens();
+		assertEquals(0, store.getSize());
+	}
+
+	@Test
+	public void testWriteThrough() {
+		PasswordResetTokenStoreDecorator store = new PasswordResetTokenStoreDecorator(databaseModel, properties, true);
+
+		PasswordResetToken token = new PasswordResetToken(1, "key", new Date());
+		Mockito.when(databaseModel.addPasswordResetToken(token)).thenReturn(true);
+		Mockito.when(databaseModel.cancelAllPasswordResetTokens(1)).thenReturn(true);
+
+		assertEquals(true, store.addPasswordResetToken(token));
+		assertSame(token, store.getNewestPasswordResetToken("john@test.com"));
+		Mockito.verify(databaseModel).addPasswordResetToken(token);
+		Mockito.verify(databaseModel, Mockito.never()).getNewestPasswordResetToken("john@test.com");
+
+		assertEquals(true, store.cancelAllPasswordResetTokens(1));
+		Mockito.verify(databaseModel).cancelAllPasswordResetTokens(1);
+	}
+
+	@Test
+	public void testWriteThroughLoadsMissingTokens() {
+		PasswordResetTokenStoreDecorator store = new PasswordResetTokenStoreDecorator(databaseModel, properties, true);
+
+		// for instance a token created before the application was restarted
+		PasswordResetToken token = new PasswordResetToken(1, "key", new Date());
+		Mockito.when(databaseModel.getNewestPasswordResetToken("john@test.com")).thenReturn(token);
+
+		assertSame(token, store.getNewestPasswordResetToken("john@test.com"));
+		assertSame(token, store.getNewestPasswordResetToken("john@test.com"));
+		Mockito.verify(databaseModel, Mockito.times(1)).getNewestPasswordResetToken("john@test.com");
+	}
+
+}
@@ -0,0 +1,132 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.decorators;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.jardoapps.usermodule.User;
+import com.jardoapps.usermodule.UserDatabaseModel;
+import com.jardoapps.usermodule.UserRanks;
+import com.jardoapps.usermodule.utils.TimeBucketCounter;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RegisteredUserCountDecoratorTest {
+
+	private static final long DAY = TimeBucketCounter.DAY_MILLIS;
+
+	@Mock
+	private UserDatabaseModel databaseModel;
+
+	private RegisteredUserCountDecorator decorator;
+
+	private static User createUser(int id, boolean confirmed, long registrationTime) {
+		return new User(id, "user" + id, "user" + id + "@test.com", "code", confirmed, null, UserRanks.NORMAL_USER, new Date(registrationTime));
+	}
+
+	@Before
+	public void setUp() {
+		decorator = new RegisteredUserCountDecorator(databaseModel, DAY, TimeZone.getTimeZone("UTC"));
+
+		Mockito.when(databaseModel.getUsers(0, RegisteredUserCountDecorator.REBUILD_PAGE_SIZE)).thenReturn(Arrays.asList(
+				createUser(1, true, 10 * DAY),
+				createUser(2, true, 11 * DAY),
+				createUser(3, false, 12 * DAY)));
+	}
+
+	@Test
+	public void testForwardsUntilRebuilt() {
+		Mockito.when(databaseModel.getRegisteredUserCount(null)).thenReturn(5);
+
+		assertEquals(false, decorator.isReady());
+		assertEquals(5, decorator.getRegisteredUserCount(null));
+	}
+
+	@Test
+	public void testRebuild() {
+		decorator.rebuild();
+
+		assertEquals(true, decorator.isReady());
+		assertEquals(2, decorator.getRegisteredUserCount(null));
+		assertEquals(1, decorator.getRegisteredUserCount(new Date(11 * DAY + 1000)));
+		assertEquals(0, decorator.getRegisteredUserCount(new Date(12 * DAY)));
+		Mockito.verify(databaseModel, Mockito.never()).getRegisteredUserCount(Mockito.any(Date.class));
+	}
+
+	@Test
+	public void testConfirmUserRegistration() {
+		decorator.rebuild();
+
+		User user = createUser(3, false, 12 * DAY);
+		Mockito.when(databaseModel.getUserByEmail(user.getEmail())).thenReturn(user);
+		Mockito.when(databaseModel.confirmUserRegistration(user.getEmail())).thenReturn(true);
+
+		decorator.confirmUserRegistration(user.getEmail());
+		assertEquals(1, decorator.getRegisteredUserCount(new Date(12 * DAY)));
+
+		// already confirmed users are not counted again
+		Mockito.when(databaseModel.getUserByEmail(user.getEmail())).thenReturn(createUser(3, true, 12 * DAY));
+		decorator.confirmUserRegistration(user.getEmail());
+		assertEquals(1, decorator.getRegisteredUserCount(new Date(12 * DAY)));
+	}
+
+	@Test
+	public void testDeleteUser() {
+		decorator.rebuild();
+
+		Mockito.when(databaseModel.getUserById(1)).thenReturn(createUser(1, true, 10 * DAY));
+		Mockito.when(databaseModel.deleteUser(1)).thenReturn(true);
+		Mockito.when(databaseModel.getUserById(3)).thenReturn(createUser(3, false, 12 * DAY));
+		Mockito.when(databaseModel.deleteUser(3)).thenReturn(true);
+
+		decorator.deleteUser(1);
+		decorator.deleteUser(3);
+		assertEquals(1, decorator.getRegisteredUserCount(null));
+
+		// failed deletion
+		Mockito.when(databaseModel.getUserById(2)).thenReturn(createUser(2, true, 11 * DAY));
+		decorator.deleteUser(2);
+		assertEquals(1, decorator.getRegisteredUserCount(null));
+	}
+
+	@Test
+	public void testAddUser() {
+		decorator.rebuild();
+
+		Mockito.when(databaseModel.addUser(Mockito.any(User.class))).thenReturn(4, 5, -1);
+
+		decorator.addUser(createUser(0, false, 0));
+		decorator.addUser(createUser(0, true, 0));
+		decorator.addUser(createUser(0, true, 0));
+
+		// only the confirmed and successfully added user is counted
+		assertEquals(3, decorator.getRegisteredUserCount(null));
+	}
+
+}
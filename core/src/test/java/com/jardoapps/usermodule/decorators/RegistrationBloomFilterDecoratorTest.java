@@ -0,0 +1,145 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.decorators;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.jardoapps.usermodule.User;
+import com.jardoapps.usermodule.UserDatabaseModel;
+import com.jardoapps.usermodule.UserRanks;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RegistrationBloomFilterDecoratorTest {
+
+	@Mock
+	private UserDatabaseModel databaseModel;
+
+	private RegistrationBloomFilterDecorator decorator;
+
+	private static User createUser(int id, String name) {
+		return new User(id, name, name + "@test.com", "code", true, null, UserRanks.NORMAL_USER);
+	}
+
+	@Before
+	public void setUp() {
+		decorator = new RegistrationBloomFilterDecorator(databaseModel, 1000, 0.01);
+
+		Mockito.when(databaseModel.getUsers(0, RegistrationBloomFilterDecorator.REBUILD_PAGE_SIZE)).thenReturn(Arrays.asList(createUser(1, "john"), createUser(2, "mike")));
+		Mockito.when(databaseModel.getUsers(2, RegistrationBloomFilterDecorator.REBUILD_PAGE_SIZE)).thenReturn(Collections.<User> emptyList());
+		Mockito.when(databaseModel.isEmailRegistered("john@test.com")).thenReturn(true);
+		Mockito.when(databaseModel.isUserNameRegistered("mike")).thenReturn(true);
+	}
+
+	@Test
+	public void testForwardsUntilRebuilt() {
+		assertEquals(false, decorator.isReady());
+		assertEquals(false, decorator.isEmailRegistered("nobody@test.com"));
+		Mockito.verify(databaseModel).isEmailRegistered("nobody@test.com");
+		assertEquals(0, decorator.getForwardedQueryCount());
+	}
+
+	@Test
+	public void testFilterMissSkipsDatabase() {
+		decorator.rebuild();
+		assertEquals(true, decorator.isReady());
+
+		assertEquals(false, decorator.isEmailRegistered("nobody@test.com"));
+		assertEquals(false, decorator.isUserNameRegistered("nobody"));
+		Mockito.verify(databaseModel, Mockito.never()).isEmailRegistered("nobody@test.com");
+		Mockito.verify(databaseModel, Mockito.never()).isUserNameRegistered("nobody");
+		assertEquals(2, decorator.getFilteredQueryCount());
+	}
+
+	@Test
+	public void testOtherCaseIsForwarded() {
+		// a database with a case-insensitive collation finds the user
+		Mockito.when(databaseModel.isEmailRegistered("John@Test.com")).thenReturn(true);
+		Mockito.when(databaseModel.getRegisteredUserNames(Arrays.asList("MIKE"))).thenReturn(Collections.singleton("MIKE"));
+		decorator.rebuild();
+		decorator.addUser(createUser(3, "Carl"));
+
+		assertEquals(true, decorator.isEmailRegistered("John@Test.com"));
+		assertEquals(Collections.singleton("MIKE"), decorator.getRegisteredUserNames(Arrays.asList("MIKE")));
+		decorator.isUserNameRegistered("carl");
+		Mockito.verify(databaseModel).isUserNameRegistered("carl");
+		assertEquals(0, decorator.getFilteredQueryCount());
+	}
+
+	@Test
+	public void testPossibleHitIsForwarded() {
+		decorator.rebuild();
+
+		assertEquals(true, decorator.isEmailRegistered("john@test.com"));
+		assertEquals(true, decorator.isUserNameRegistered("mike"));
+		assertEquals(2, decorator.getForwardedQueryCount());
+		assertEquals(0, decorator.getFalsePositiveCount());
+
+		// mike is in the filter, but his email is no longer registered (deleted user)
+		assertEquals(false, decorator.isEmailRegistered("mike@test.com"));
+		assertEquals(1, decorator.getFalsePositiveCount());
+		assertEquals(1.0, decorator.getFalsePositiveRate(), 0.0);
+	}
+
+	@Test
+	public void testAddedUsersAreFiltered() {
+		decorator.rebuild();
+
+		decorator.addUser(createUser(0, "carl"));
+		decorator.isUserNameRegistered("carl");
+		Mockito.verify(databaseModel).isUserNameRegistered("carl");
+
+		decorator.saveUserWithSocialAccount(createUser(0, "dave"), null);
+		decorator.isEmailRegistered("dave@test.com");
+		Mockito.verify(databaseModel).isEmailRegistered("dave@test.com");
+	}
+
+	@Test
+	public void testSetBasedQueryIsFiltered() {
+		decorator.rebuild();
+
+		Mockito.when(databaseModel.getRegisteredEmails(Arrays.asList("john@test.com"))).thenReturn(Collections.singleton("john@test.com"));
+
+		assertEquals(Collections.singleton("john@test.com"), decorator.getRegisteredEmails(Arrays.asList("john@test.com", "nobody@test.com")));
+		assertEquals(Collections.emptySet(), decorator.getRegisteredUserNames(Arrays.asList("nobody")));
+
+		Mockito.verify(databaseModel, Mockito.never()).getRegisteredUserNames(Mockito.anyCollectionOf(String.class));
+		assertEquals(2, decorator.getFilteredQueryCount());
+		assertEquals(1, decorator.getForwardedQueryCount());
+	}
+
+	@Test
+	public void testRebuildPaging() {
+		decorator.rebuild();
+
+		Mockito.verify(databaseModel).getUsers(0, RegistrationBloomFilterDecorator.REBUILD_PAGE_SIZE);
+		// the first page was not full, so no more pages are read
+		Mockito.verify(databaseModel, Mockito.never()).getUsers(2, RegistrationBloomFilterDecorator.REBUILD_PAGE_SIZE);
+	}
+
+}
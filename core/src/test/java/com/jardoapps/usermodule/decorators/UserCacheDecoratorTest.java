@@ -0,0 +1,266 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.decorators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.jardoapps.usermodule.User;
+import com.jardoapps.usermodule.UserDatabaseModel;
+import com.jardoapps.usermodule.UserRanks;
+import com.jardoapps.usermodule.containers.LogInRecord;
+import com.jardoapps.usermodule.containers.UserPassword;
+
+@RunWith(MockitoJUnitRunner.class)
+public class UserCacheDecoratorTest {
+
+	@Mock
+	private UserDatabaseModel databaseModel;
+
+	private UserCacheDecorator cache;
+
+	private final UserPassword password = new UserPassword("hash", "salt");
+
+	private final User john = new User(1, "john", "john@example.com", "code", true, password, UserRanks.NORMAL_USER);
+
+	private final User mike = new User(2, "mike", "mike@example.com", "code", true, password, UserRanks.NORMAL_USER);
+
+	private final User carl = new User(3, "carl", "carl@example.com", "code", true, password, UserRanks.NORMAL_USER);
+
+	@Before
+	public void setUp() {
+		cache = new UserCacheDecorator(databaseModel, 2);
+
+		Mockito.when(databaseModel.getUserByEmail("john@example.com")).thenReturn(john);
+		Mockito.when(databaseModel.getUserByEmail("mike@example.com")).thenReturn(mike);
+		Mockito.when(databaseModel.getUserByEmail("carl@example.com")).thenReturn(carl);
+		Mockito.when(databaseModel.getUserByName("john")).thenReturn(john);
+	}
+
+	@Test
+	public void testReadThrough() {
+		assertSame(john, cache.getUserByEmail("john@example.com"));
+		assertSame(john, cache.getUserByEmail("john@example.com"));
+		assertSame(john, cache.getUserByName("john"));
+		assertEquals(1, cache.getUserIdByEmail("john@example.com"));
+		assertSame(password, cache.getUserPassword(1));
+
+		Mockito.verify(databaseModel, Mockito.times(1)).getUserByEmail("john@example.com");
+		Mockito.verify(databaseModel, Mockito.never()).getUserByName("john");
+		Mockito.verify(databaseModel, Mockito.never()).getUserIdByEmail(Mockito.anyString());
+		Mockito.verify(databaseModel, Mockito.never()).getUserPassword(1);
+
+		assertEquals(4, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void testReadThroughById() {
+		Mockito.when(databaseModel.getUserById(2)).thenReturn(mike);
+
+		assertSame(mike, cache.getUserById(2));
+		assertSame(mike, cache.getUserByEmail("mike@example.com"));
+		assertSame(mike, cache.getUserById(2));
+
+		Mockito.verify(databaseModel, Mockito.times(1)).getUserById(2);
+		Mockito.verify(databaseModel, Mockito.never()).getUserByEmail("mike@example.com");
+	}
+
+	@Test
+	public void testGetUsersByIdsLoadsOnlyMissingUsers() {
+		Mockito.when(databaseModel.getUsersByIds(Arrays.asList(2, 4))).thenReturn(Collections.singletonMap(2, mike));
+		cache.getUserByEmail("john@example.com");
+
+		// john is cached, user 4 doesn't exist
+		Map<Integer, User> result = cache.getUsersByIds(Arrays.asList(1, 2, 4));
+		assertEquals(2, result.size());
+		assertSame(john, result.get(1));
+		assertSame(mike, result.get(2));
+		Mockito.verify(databaseModel).getUsersByIds(Arrays.asList(2, 4));
+
+		// loaded users are cached
+		assertSame(mike, cache.getUserByEmail("mike@example.com"));
+		Mockito.verify(databaseModel, Mockito.never()).getUserByEmail("mike@example.com");
+
+		assertEquals(2, cache.getHitCount());
+		assertEquals(3, cache.getMissCount());
+	}
+
+	@Test
+	public void testGetUsersByEmailsLoadsOnlyMissingUsers() {
+		Mockito.when(databaseModel.getUsersByEmails(Arrays.asList("mike@example.com"))).thenReturn(Collections.singletonMap("mike@example.com", mike));
+		cache.getUserByEmail("john@example.com");
+
+		Map<String, User> result = cache.getUsersByEmails(Arrays.asList("john@example.com", "mike@example.com"));
+		assertEquals(2, result.size());
+		assertSame(john, result.get("john@example.com"));
+		assertSame(mike, result.get("mike@example.com"));
+
+		// both users are cached now
+		result = cache.getUsersByEmails(Arrays.asList("john@example.com", "mike@example.com"));
+		assertEquals(2, result.size());
+		Mockito.verify(databaseModel, Mockito.times(1)).getUsersByEmails(Mockito.anyCollectionOf(String.class));
+	}
+
+	@Test
+	public void testLogInRecordsInvalidateFailedLogInCount() {
+		User lockedJohn = new User(1, "john", "john@example.com", "code", true, password, UserRanks.NORMAL_USER, null, 3, new Date());
+		Mockito.when(databaseModel.getUserByEmail("john@example.com")).thenReturn(john, lockedJohn, john, lockedJohn, john);
+
+		// a successful log in does not invalidate a user without failures
+		cache.getUserByEmail("john@example.com");
+		cache.makeLogInRecord(1, true, "10.0.0.1");
+		assertSame(john, cache.getUserByEmail("john@example.com"));
+
+		cache.makeLogInRecord(1, false, "10.0.0.1");
+		assertSame(lockedJohn, cache.getUserByEmail("john@example.com"));
+
+		cache.makeLogInRecords(Collections.singletonList(new LogInRecord(1, true, "10.0.0.1", new Date())));
+		assertSame(john, cache.getUserByEmail("john@example.com"));
+
+		cache.makeLogInRecord(1, false, "10.0.0.1");
+		assertSame(lockedJohn, cache.getUserByEmail("john@example.com"));
+
+		cache.recordSuccessfulLogIn(1, "10.0.0.1");
+		assertSame(john, cache.getUserByEmail("john@example.com"));
+
+		Mockito.verify(databaseModel, Mockito.times(5)).getUserByEmail("john@example.com");
+	}
+
+	@Test
+	public void testMissesAreNotCached() {
+		assertEquals(null, cache.getUserByEmail("nobody@example.com"));
+		assertEquals(null, cache.getUserByEmail("nobody@example.com"));
+		assertEquals(-1, cache.getUserIdByEmail("nobody@example.com"));
+
+		Mockito.verify(databaseModel, Mockito.times(3)).getUserByEmail("nobody@example.com");
+		assertEquals(0, cache.getSize());
+	}
+
+	@Test
+	public void testEvictionKeepsFrequentlyUsedUsers() {
+		cache.getUserByEmail("john@example.com");
+		cache.getUserByEmail("john@example.com");
+		cache.getUserByEmail("mike@example.com");
+
+		// cache is full, mike was used less than john
+		cache.getUserByEmail("carl@example.com");
+
+		assertEquals(2, cache.getSize());
+		assertEquals(1, cache.getEvictionCount());
+
+		cache.getUserByEmail("john@example.com");
+		cache.getUserByEmail("carl@example.com");
+		Mockito.verify(databaseModel, Mockito.times(1)).getUserByEmail("john@example.com");
+		Mockito.verify(databaseModel, Mockito.times(1)).getUserByEmail("carl@example.com");
+
+		cache.getUserByEmail("mike@example.com");
+		Mockito.verify(databaseModel, Mockito.times(2)).getUserByEmail("mike@example.com");
+	}
+
+	@Test
+	public void testSetUserPasswordInvalidates() {
+		cache.getUserByEmail("john@example.com");
+		cache.setUserPassword(1, new UserPassword("new_hash", "new_salt"));
+
+		cache.getUserPassword(1);
+		Mockito.verify(databaseModel).getUserPassword(1);
+		cache.getUserByName("john");
+		Mockito.verify(databaseModel).getUserByName("john");
+	}
+
+	@Test
+	public void testDeleteUserInvalidates() {
+		cache.getUserByEmail("john@example.com");
+		cache.deleteUser(1);
+
+		cache.getUserByEmail("john@example.com");
+		Mockito.verify(databaseModel, Mockito.times(2)).getUserByEmail("john@example.com");
+	}
+
+	@Test
+	public void testInvalidationIgnoresCase() {
+		cache.getUserByEmail("john@example.com");
+
+		// the entry is invalidated by a differently spelled email, like the database row
+		cache.confirmUserRegistration("JOHN@example.com");
+		cache.getUserByEmail("john@example.com");
+		Mockito.verify(databaseModel, Mockito.times(2)).getUserByEmail("john@example.com");
+	}
+
+	@Test
+	public void testAccountsDifferingInCase() {
+		// a case-sensitive database can hold both accounts
+		User otherJohn = new User(4, "John", "John@example.com", "code", true, password, UserRanks.NORMAL_USER);
+		Mockito.when(databaseModel.getUserByEmail("John@example.com")).thenReturn(otherJohn);
+		Mockito.when(databaseModel.getUserByName("John")).thenReturn(otherJohn);
+		Mockito.when(databaseModel.getUsersByEmails(Arrays.asList("John@example.com"))).thenReturn(Collections.singletonMap("John@example.com", otherJohn));
+
+		cache.getUserByEmail("john@example.com");
+		assertSame(otherJohn, cache.getUserByEmail("John@example.com"));
+		assertSame(otherJohn, cache.getUserByName("John"));
+		assertSame(john, cache.getUserByName("john"));
+		assertSame(john, cache.getUserByEmail("john@example.com"));
+
+		Map<String, User> users = cache.getUsersByEmails(Arrays.asList("John@example.com"));
+		assertSame(otherJohn, users.get("John@example.com"));
+
+		Mockito.verify(databaseModel).getUserByEmail("John@example.com");
+	}
+
+	@Test
+	public void testConfirmUserRegistrationInvalidates() {
+		cache.getUserByName("john");
+		cache.confirmUserRegistration("john@example.com");
+
+		cache.getUserByName("john");
+		Mockito.verify(databaseModel, Mockito.times(2)).getUserByName("john");
+	}
+
+	@Test
+	public void testAddUserInvalidates() {
+		cache.getUserByEmail("john@example.com");
+		cache.addUser(new User(0, "john", "other@example.com", "code", false, password, UserRanks.NORMAL_USER));
+
+		cache.getUserByName("john");
+		Mockito.verify(databaseModel).getUserByName("john");
+	}
+
+	@Test
+	public void testSaveUserWithSocialAccountInvalidates() {
+		cache.getUserByEmail("john@example.com");
+		cache.saveUserWithSocialAccount(new User(0, null, "john@example.com", null, true, null, UserRanks.NORMAL_USER), null);
+
+		cache.getUserByEmail("john@example.com");
+		Mockito.verify(databaseModel, Mockito.times(2)).getUserByEmail("john@example.com");
+	}
+
+}
@@ -0,0 +1,66 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class BloomFilterTest {
+
+	@Test
+	public void testSizing() {
+		assertEquals(958506, BloomFilter.optimalBitCount(100000, 0.01));
+		assertEquals(7, BloomFilter.optimalHashFunctionCount(958506, 100000));
+	}
+
+	@Test
+	public void testNoFalseNegatives() {
+		BloomFilter filter = new BloomFilter(1000, 0.01);
+		for (int i = 0; i < 1000; i++) {
+			filter.add("user" + i + "@test.com");
+		}
+
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(filter.mightContain("user" + i + "@test.com"));
+		}
+		assertEquals(1000, filter.getInsertionCount());
+	}
+
+	@Test
+	public void testFalsePositiveRate() {
+		BloomFilter filter = new BloomFilter(10000, 0.01);
+		for (int i = 0; i < 10000; i++) {
+			filter.add("user" + i + "@test.com");
+		}
+
+		int falsePositives = 0;
+		for (int i = 0; i < 100000; i++) {
+			if (filter.mightContain("other" + i + "@test.com")) {
+				falsePositives++;
+			}
+		}
+
+		double rate = falsePositives / 100000.0;
+		assertTrue("False positive rate too high: " + rate, rate < 0.02);
+		assertEquals(0.01, filter.getExpectedFalsePositiveRate(), 0.002);
+	}
+
+}
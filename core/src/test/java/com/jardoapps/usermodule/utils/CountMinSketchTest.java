@@ -0,0 +1,73 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CountMinSketchTest {
+
+	@Test
+	public void testExactCountsWithoutCollisions() {
+		CountMinSketch sketch = new CountMinSketch(1024, 4);
+
+		assertEquals(1, sketch.add("10.0.0.1"));
+		assertEquals(2, sketch.add("10.0.0.1"));
+		sketch.add("10.0.0.2");
+
+		assertEquals(2, sketch.estimateCount("10.0.0.1"));
+		assertEquals(1, sketch.estimateCount("10.0.0.2"));
+		assertEquals(0, sketch.estimateCount("10.0.0.3"));
+		assertEquals(3, sketch.getTotalCount());
+	}
+
+	@Test
+	public void testNeverUnderestimates() {
+		CountMinSketch sketch = new CountMinSketch(256, 4);
+
+		for (int i = 0; i < 100000; i++) {
+			sketch.add("10.0." + (i % 5000));
+		}
+		for (int i = 0; i < 1000; i++) {
+			sketch.add("attacker");
+		}
+
+		for (int i = 0; i < 5000; i++) {
+			assertTrue(sketch.estimateCount("10.0." + i) >= 20);
+		}
+
+		// error bound e * N / width is about 1080, with probability 1 - e^-4
+		int estimate = sketch.estimateCount("attacker");
+		assertTrue(estimate >= 1000);
+		assertTrue(estimate < 1000 + 1100);
+	}
+
+	@Test
+	public void testClear() {
+		CountMinSketch sketch = new CountMinSketch(64, 2);
+		sketch.add("10.0.0.1");
+		sketch.clear();
+
+		assertEquals(0, sketch.estimateCount("10.0.0.1"));
+		assertEquals(0, sketch.getTotalCount());
+	}
+
+}
@@ -0,0 +1,83 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.utils;
+
+/**
+ * Measures the cost of validating one email address, which is paid by every
+ * log in, by <code>String.matches</code> (the former implementation), by the
+ * precompiled {@link EmailUtils#EMAIL_PATTERN} and by
+ * {@link EmailUtils#isEmailValid(String)}. It is not run by the build, run its
+ * main method manually.
+ */
+public class EmailUtilsBenchmark {
+
+	private static final int ITERATIONS = 2000000;
+
+	private static final int ROUNDS = 5;
+
+	// log ins use both emails and user names, user names are not valid emails
+	private static final String[] INPUTS = { "john.smith@example.com", "mike_1985@mail.example.co.uk", "john", "user-name-42",
+			"allan@test.com", "invalid@@example.com", "very.long.local.part.of.an.address@subdomain.example.org", "carl@localhost" };
+
+	private interface Validator {
+		boolean isValid(String email);
+	}
+
+	private static void measure(String name, Validator validator) {
+		int valid = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			if (validator.isValid(INPUTS[i % INPUTS.length])) {
+				valid++;
+			}
+		}
+		long nanos = System.nanoTime() - start;
+
+		System.out.printf("%-14s | %8.1f | %7d%n", name, (double) nanos / ITERATIONS, valid);
+	}
+
+	public static void main(String[] args) {
+		Validator matches = new Validator() {
+			@Override
+			public boolean isValid(String email) {
+				return email.matches(EmailUtils.EMAIL_REGEX);
+			}
+		};
+		Validator pattern = new Validator() {
+			@Override
+			public boolean isValid(String email) {
+				return EmailUtils.EMAIL_PATTERN.matcher(email).matches();
+			}
+		};
+		Validator scanner = new Validator() {
+			@Override
+			public boolean isValid(String email) {
+				return EmailUtils.isEmailValid(email);
+			}
+		};
+
+		System.out.println("validator      |  ns/call |   valid");
+		for (int round = 0; round < ROUNDS; round++) {
+			measure("String.matches", matches);
+			measure("EMAIL_PATTERN", pattern);
+			measure("scanner", scanner);
+		}
+	}
+
+}
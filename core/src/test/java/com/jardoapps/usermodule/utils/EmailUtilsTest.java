@@ -20,10 +20,65 @@ package com.jardoapps.usermodule.utils;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.Random;
+
 import org.junit.Test;
 
 public class EmailUtilsTest {
 
+	private static final String FUZZ_ALPHABET = "aZ09_-.@xY.@-é ";
+
+	private static final String[] FUZZ_SEEDS = { "user@example.com", "a.b-c_d@ex-am.ple.co.uk", "x@y.z1.ab", "u@d.c", "u@1-2.3.cz" };
+
+	private static String mutate(String seed, Random random) {
+		StringBuilder result = new StringBuilder(seed);
+		int mutations = 1 + random.nextInt(3);
+		for (int i = 0; i < mutations; i++) {
+			char c = FUZZ_ALPHABET.charAt(random.nextInt(FUZZ_ALPHABET.length()));
+			int position = result.length() == 0 ? 0 : random.nextInt(result.length());
+			switch (random.nextInt(3)) {
+				case 0:
+					result.insert(position, c);
+					break;
+				case 1:
+					if (result.length() > 0) {
+						result.deleteCharAt(position);
+					}
+					break;
+				default:
+					if (result.length() > 0) {
+						result.setCharAt(position, c);
+					}
+			}
+		}
+		return result.toString();
+	}
+
+	private static String randomString(Random random) {
+		int length = random.nextInt(12);
+		StringBuilder result = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			result.append(FUZZ_ALPHABET.charAt(random.nextInt(FUZZ_ALPHABET.length())));
+		}
+		return result.toString();
+	}
+
+	@Test
+	public void testIsEmailValidMatchesRegex() {
+		Random random = new Random(42);
+		for (int i = 0; i < 200000; i++) {
+			String email;
+			if (i % 2 == 0) {
+				email = randomString(random);
+			} else {
+				email = mutate(FUZZ_SEEDS[random.nextInt(FUZZ_SEEDS.length)], random);
+			}
+
+			boolean expected = EmailUtils.EMAIL_PATTERN.matcher(email).matches();
+			assertEquals(email, expected, EmailUtils.isEmailValid(email));
+		}
+	}
+
 	@Test
 	public void testIsEmailValid() {
 		assertEquals(false, EmailUtils.isEmailValid(null));
@@ -43,6 +98,15 @@ public class EmailUtilsTest {
 		assertEquals(true, EmailUtils.isEmailValid("valid.user@example.co.uk"));
 		assertEquals(true, EmailUtils.isEmailValid("Valid.User@example.co.uk"));
 		assertEquals(true, EmailUtils.isEmailValid("valid1.user2@example3.co.uk"));
+		assertEquals(true, EmailUtils.isEmailValid("user@1-2.3.cz"));
+		assertEquals(false, EmailUtils.isEmailValid(".user@example.com"));
+		assertEquals(false, EmailUtils.isEmailValid("us..er@example.com"));
+		assertEquals(false, EmailUtils.isEmailValid("user.@example.com"));
+		assertEquals(false, EmailUtils.isEmailValid("user@exam_ple.com"));
+		assertEquals(false, EmailUtils.isEmailValid("user@example..com"));
+		assertEquals(false, EmailUtils.isEmailValid("user@sub.exam-ple.com"));
+		assertEquals(false, EmailUtils.isEmailValid("user@example.c"));
+		assertEquals(false, EmailUtils.isEmailValid("user@example.c0m"));
 	}
 
 }
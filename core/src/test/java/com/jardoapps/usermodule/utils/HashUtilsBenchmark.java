@@ -0,0 +1,116 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.utils;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of password hashing by one synchronized
+ * <code>MessageDigest</code> (as <code>UserManager</code> used to do) and by
+ * the digest pool of {@link HashUtils}, at 1, 4, 16 and 64 threads. It is not
+ * run by the build, run its main method manually.
+ */
+public class HashUtilsBenchmark {
+
+	private static final Charset CHARSET = StandardCharsets.UTF_16;
+
+	private static final int ITERATIONS = 200000;
+
+	private static final int ROUNDS = 3;
+
+	private static final int[] THREADS = { 1, 4, 16, 64 };
+
+	private interface Hasher {
+		String hash(String password, String salt);
+	}
+
+	/**
+	 * The former implementation, one digest shared by all threads.
+	 */
+	private static class SynchronizedHasher implements Hasher {
+
+		private final MessageDigest sha256;
+
+		@Override
+		public synchronized String hash(String password, String salt) {
+			sha256.update(salt.getBytes(CHARSET));
+			return HashUtils.toHex(sha256.digest(password.getBytes(CHARSET)));
+		}
+
+		private SynchronizedHasher() throws NoSuchAlgorithmException {
+			sha256 = MessageDigest.getInstance("SHA-256");
+		}
+	}
+
+	private static class PooledHasher implements Hasher {
+
+		@Override
+		public String hash(String password, String salt) {
+			return HashUtils.sha256Hex(salt.getBytes(CHARSET), password.getBytes(CHARSET));
+		}
+	}
+
+	private static void measure(String name, final Hasher hasher, int threads) throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final CountDownLatch done = new CountDownLatch(threads);
+		final int iterations = ITERATIONS / threads;
+
+		long start = System.nanoTime();
+		for (int t = 0; t < threads; t++) {
+			final String salt = "7886788cb39bf33c856ef18206a81ce4b498dc5a1a4199abc0cb0fb686eab008" + t;
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < iterations; i++) {
+						hasher.hash("password" + (i & 1023), salt);
+					}
+					done.countDown();
+				}
+			});
+		}
+		done.await();
+		long nanos = System.nanoTime() - start;
+		executor.shutdown();
+		executor.awaitTermination(1, TimeUnit.MINUTES);
+
+		long hashes = (long) iterations * threads;
+		System.out.printf("%-12s | %7d | %11.0f%n", name, threads, hashes * 1e9 / nanos);
+	}
+
+	public static void main(String[] args) throws Exception {
+		Hasher synchronizedHasher = new SynchronizedHasher();
+		Hasher pooledHasher = new PooledHasher();
+
+		System.out.println("hasher       | threads |    hashes/s");
+		for (int round = 0; round < ROUNDS; round++) {
+			for (int threads : THREADS) {
+				measure("synchronized", synchronizedHasher, threads);
+				measure("pooled", pooledHasher, threads);
+			}
+		}
+	}
+
+}
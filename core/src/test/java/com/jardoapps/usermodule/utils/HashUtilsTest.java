@@ -0,0 +1,86 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class HashUtilsTest {
+
+	// password = 'password'
+	private static final String PASSWORD_HASH = "c0794dcf71360c8a6302c49b3228cbcffc8cd07bbc55250eac7d2c599b9ae2bd";
+	private static final String PASSWORD_SALT = "7886788CB39BF33C856EF18206A81CE4B498DC5A1A4199ABC0CB0FB686EAB008";
+
+	private static String hashPassword() {
+		byte[] salt = PASSWORD_SALT.getBytes(StandardCharsets.UTF_16);
+		byte[] password = "password".getBytes(StandardCharsets.UTF_16);
+		return HashUtils.sha256Hex(salt, password);
+	}
+
+	@Test
+	public void testSha256Hex() {
+		assertEquals(PASSWORD_HASH, hashPassword());
+
+		// pooled digest must be reset after use
+		assertEquals(PASSWORD_HASH, hashPassword());
+	}
+
+	@Test
+	public void testSha256HexConcurrent() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(16);
+		try {
+			List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+			for (int i = 0; i < 16; i++) {
+				results.add(executor.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() {
+						for (int j = 0; j < 1000; j++) {
+							if (!PASSWORD_HASH.equals(hashPassword())) {
+								return false;
+							}
+						}
+						return true;
+					}
+				}));
+			}
+
+			for (Future<Boolean> result : results) {
+				assertEquals(true, result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testToHex() {
+		assertEquals("", HashUtils.toHex(new byte[0]));
+		assertEquals("00017f80ff", HashUtils.toHex(new byte[] { 0, 1, 127, -128, -1 }));
+	}
+
+}
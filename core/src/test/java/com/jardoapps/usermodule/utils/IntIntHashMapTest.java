@@ -0,0 +1,73 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IntIntHashMapTest {
+
+	@Test
+	public void testPutGetRemove() {
+		IntIntHashMap map = new IntIntHashMap(4, -1);
+
+		assertEquals(-1, map.get(1));
+		assertEquals(-1, map.put(1, 10));
+		assertEquals(10, map.put(1, 11));
+		assertEquals(11, map.get(1));
+		assertEquals(1, map.size());
+
+		assertEquals(11, map.remove(1));
+		assertEquals(-1, map.remove(1));
+		assertEquals(false, map.containsKey(1));
+		assertEquals(0, map.size());
+	}
+
+	@Test
+	public void testAgainstHashMap() {
+		IntIntHashMap map = new IntIntHashMap(16, -1);
+		Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+
+		Random random = new Random(7);
+		for (int i = 0; i < 100000; i++) {
+			// small key range to get a lot of collisions and removals
+			int key = random.nextInt(2000) - 1000;
+			if (random.nextBoolean()) {
+				int value = random.nextInt(1000);
+				Integer previous = expected.put(key, value);
+				assertEquals(previous == null ? -1 : previous.intValue(), map.put(key, value));
+			} else {
+				Integer previous = expected.remove(key);
+				assertEquals(previous == null ? -1 : previous.intValue(), map.remove(key));
+			}
+		}
+
+		assertEquals(expected.size(), map.size());
+		for (int key = -1000; key < 1000; key++) {
+			Integer value = expected.get(key);
+			assertEquals(value == null ? -1 : value.intValue(), map.get(key));
+		}
+	}
+
+}
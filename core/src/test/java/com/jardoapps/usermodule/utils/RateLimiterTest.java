@@ -0,0 +1,84 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class RateLimiterTest {
+
+	@Test
+	public void testBurstAndRefill() {
+		RateLimiter limiter = new RateLimiter(3, 1000, 100);
+
+		assertTrue(limiter.tryAcquire("a", 0));
+		assertTrue(limiter.tryAcquire("a", 0));
+		assertTrue(limiter.tryAcquire("a", 10));
+		assertFalse(limiter.tryAcquire("a", 20));
+
+		// other keys have their own buckets
+		assertTrue(limiter.tryAcquire("b", 20));
+
+		// one token per interval
+		assertTrue(limiter.tryAcquire("a", 1000));
+		assertFalse(limiter.tryAcquire("a", 1500));
+		assertTrue(limiter.tryAcquire("a", 2000));
+
+		// the bucket is full again after burst * interval
+		for (int i = 0; i < 3; i++) {
+			assertTrue(limiter.tryAcquire("a", 5000));
+		}
+		assertFalse(limiter.tryAcquire("a", 5000));
+
+		assertEquals(3, limiter.getRejectedCount());
+	}
+
+	@Test
+	public void testIdleKeysAreEvicted() {
+		RateLimiter limiter = new RateLimiter(2, 1000, 1000);
+
+		for (int i = 0; i < 100; i++) {
+			limiter.tryAcquire("key" + i, 0);
+		}
+		assertEquals(100, limiter.getKeyCount());
+
+		// the buckets of all keys are full again, so they are dropped when their stripes are used
+		for (int i = 0; i < 100; i++) {
+			limiter.tryAcquire("other" + i, 1000);
+		}
+		assertTrue(limiter.getKeyCount() <= 100);
+		assertEquals(0, limiter.getEvictionCount());
+	}
+
+	@Test
+	public void testMaxKeys() {
+		RateLimiter limiter = new RateLimiter(1, 1000, 32);
+
+		for (int i = 0; i < 1000; i++) {
+			limiter.tryAcquire("key" + i, 0);
+		}
+
+		assertTrue(limiter.getKeyCount() <= 32);
+		assertEquals(1000 - limiter.getKeyCount(), limiter.getEvictionCount());
+	}
+
+}
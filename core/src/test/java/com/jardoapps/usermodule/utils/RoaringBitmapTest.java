@@ -0,0 +1,125 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class RoaringBitmapTest {
+
+	@Test
+	public void testAddRemoveContains() {
+		RoaringBitmap bitmap = new RoaringBitmap();
+
+		assertEquals(true, bitmap.add(5));
+		assertEquals(false, bitmap.add(5));
+		assertEquals(true, bitmap.add(65536 * 3 + 7));
+		assertEquals(true, bitmap.add(Integer.MAX_VALUE));
+		assertEquals(true, bitmap.add(0));
+
+		assertEquals(true, bitmap.contains(0));
+		assertEquals(true, bitmap.contains(5));
+		assertEquals(true, bitmap.contains(65536 * 3 + 7));
+		assertEquals(true, bitmap.contains(Integer.MAX_VALUE));
+		assertEquals(false, bitmap.contains(6));
+		assertEquals(false, bitmap.contains(7));
+		assertEquals(false, bitmap.contains(-1));
+		assertEquals(4, bitmap.getCardinality());
+
+		assertEquals(true, bitmap.remove(65536 * 3 + 7));
+		assertEquals(false, bitmap.remove(65536 * 3 + 7));
+		assertEquals(false, bitmap.contains(65536 * 3 + 7));
+		assertEquals(3, bitmap.getCardinality());
+
+		bitmap.clear();
+		assertEquals(false, bitmap.contains(5));
+		assertEquals(0, bitmap.getCardinality());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeValue() {
+		new RoaringBitmap().add(-1);
+	}
+
+	@Test
+	public void testDenseChunk() {
+		RoaringBitmap bitmap = new RoaringBitmap();
+
+		// more than 4096 values in one chunk are stored as a bitmap
+		for (int i = 0; i < 10000; i++) {
+			bitmap.add(i * 2);
+		}
+		assertEquals(10000, bitmap.getCardinality());
+		assertTrue(bitmap.getSizeInBytes() < 9000);
+		assertEquals(true, bitmap.contains(19998));
+		assertEquals(false, bitmap.contains(19999));
+
+		// and converted back to an array when they are removed
+		for (int i = 0; i < 9990; i++) {
+			bitmap.remove(i * 2);
+		}
+		assertEquals(10, bitmap.getCardinality());
+		assertTrue(bitmap.getSizeInBytes() < 200);
+		assertEquals(true, bitmap.contains(19998));
+		assertEquals(false, bitmap.contains(0));
+	}
+
+	@Test
+	public void testRandomValuesMatchBitSet() {
+		Random random = new Random(42);
+		RoaringBitmap bitmap = new RoaringBitmap();
+		BitSet expected = new BitSet();
+
+		for (int i = 0; i < 100000; i++) {
+			int value = random.nextInt(1 << 20);
+			if (random.nextInt(4) == 0) {
+				assertEquals(expected.get(value), bitmap.remove(value));
+				expected.clear(value);
+			} else {
+				assertEquals(!expected.get(value), bitmap.add(value));
+				expected.set(value);
+			}
+		}
+
+		assertEquals(expected.cardinality(), bitmap.getCardinality());
+		for (int value = 0; value < 1 << 20; value++) {
+			assertEquals(expected.get(value), bitmap.contains(value));
+		}
+	}
+
+	@Test
+	public void testSparseSetIsSmall() {
+		RoaringBitmap bitmap = new RoaringBitmap();
+
+		// 1% of 1 million user ids
+		Random random = new Random(42);
+		for (int i = 0; i < 10000; i++) {
+			bitmap.add(random.nextInt(1000000));
+		}
+
+		// about 2 bytes per value, instead of 125 kB for a plain bitmap
+		assertTrue(bitmap.getSizeInBytes() < 32000);
+	}
+
+}
@@ -0,0 +1,107 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class SpaceSavingTest {
+
+	@Test
+	public void testCountsWhileNotFull() {
+		SpaceSaving spaceSaving = new SpaceSaving(10);
+		spaceSaving.add("a");
+		spaceSaving.add("b");
+		spaceSaving.add("b");
+		spaceSaving.add("c");
+		spaceSaving.add("b");
+		spaceSaving.add("c");
+
+		List<SpaceSaving.Entry> top = spaceSaving.getTop(2);
+		assertEquals(2, top.size());
+		assertEquals("b", top.get(0).getKey());
+		assertEquals(3, top.get(0).getCount());
+		assertEquals(0, top.get(0).getError());
+		assertEquals("c", top.get(1).getKey());
+		assertEquals(2, top.get(1).getCount());
+
+		assertEquals(1, spaceSaving.estimateCount("a"));
+		assertEquals(0, spaceSaving.estimateCount("d"));
+		assertEquals(3, spaceSaving.size());
+	}
+
+	@Test
+	public void testReplacesMinimum() {
+		SpaceSaving spaceSaving = new SpaceSaving(2);
+		spaceSaving.add("a");
+		spaceSaving.add("a");
+		spaceSaving.add("a");
+		spaceSaving.add("b");
+		spaceSaving.add("c");
+
+		// c took over the counter of b
+		List<SpaceSaving.Entry> top = spaceSaving.getTop(10);
+		assertEquals(2, top.size());
+		assertEquals("a", top.get(0).getKey());
+		assertEquals(3, top.get(0).getCount());
+		assertEquals("c", top.get(1).getKey());
+		assertEquals(2, top.get(1).getCount());
+		assertEquals(1, top.get(1).getError());
+
+		assertEquals(2, spaceSaving.estimateCount("b"));
+	}
+
+	@Test
+	public void testFindsHeavyHitters() {
+		SpaceSaving spaceSaving = new SpaceSaving(50);
+
+		// 3 heavy hitters among 100000 additions of 10000 distinct keys,
+		// all keys occurring more than 100000 / 50 times are guaranteed to be found
+		for (int i = 0; i < 100000; i++) {
+			if (i % 10 == 0) {
+				spaceSaving.add("heavy" + (i % 3));
+			} else {
+				spaceSaving.add("key" + (i * 7919 % 10000));
+			}
+		}
+
+		List<SpaceSaving.Entry> top = spaceSaving.getTop(3);
+		for (SpaceSaving.Entry entry : top) {
+			assertTrue(entry.getKey().startsWith("heavy"));
+			assertTrue(entry.getCount() - entry.getError() <= 3334);
+			assertTrue(entry.getCount() >= 3333);
+		}
+	}
+
+	@Test
+	public void testClear() {
+		SpaceSaving spaceSaving = new SpaceSaving(2);
+		spaceSaving.add("a");
+		spaceSaving.clear();
+
+		assertEquals(0, spaceSaving.size());
+		assertEquals(0, spaceSaving.getTop(10).size());
+		assertEquals(0, spaceSaving.estimateCount("a"));
+	}
+
+}
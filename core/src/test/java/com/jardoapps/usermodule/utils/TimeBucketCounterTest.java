@@ -0,0 +1,72 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class TimeBucketCounterTest {
+
+	private static final TimeZone TIME_ZONE = TimeZone.getTimeZone("Europe/Bratislava");
+
+	private static Date date(String value) throws ParseException {
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+		format.setTimeZone(TIME_ZONE);
+		return format.parse(value);
+	}
+
+	@Test
+	public void testCountSince() throws ParseException {
+		TimeBucketCounter counter = new TimeBucketCounter(TimeBucketCounter.DAY_MILLIS, TIME_ZONE);
+
+		counter.add(date("2013-01-01 00:30"), 1);
+		counter.add(date("2013-01-01 23:30"), 1);
+		counter.add(date("2013-01-02 10:00"), 1);
+		counter.add(date("2013-01-05 10:00"), 2);
+		counter.add(date("2013-01-05 11:00"), -1);
+
+		assertEquals(3, counter.getBucketCount());
+		assertEquals(4, counter.countSince(null));
+		assertEquals(4, counter.countSince(date("2012-12-31 23:59")));
+
+		// rounded down to the start of the day
+		assertEquals(4, counter.countSince(date("2013-01-01 12:00")));
+		assertEquals(2, counter.countSince(date("2013-01-02 00:00")));
+		assertEquals(1, counter.countSince(date("2013-01-03 00:00")));
+		assertEquals(0, counter.countSince(date("2013-01-06 00:00")));
+	}
+
+	@Test
+	public void testBeforeEpoch() throws ParseException {
+		TimeBucketCounter counter = new TimeBucketCounter(TimeBucketCounter.DAY_MILLIS, TimeZone.getTimeZone("UTC"));
+
+		counter.add(new Date(-1), 1);
+		counter.add(new Date(0), 1);
+
+		assertEquals(2, counter.countSince(new Date(-TimeBucketCounter.DAY_MILLIS)));
+		assertEquals(1, counter.countSince(new Date(0)));
+	}
+
+}
@@ -0,0 +1,108 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.jardoapps.usermodule.utils.TimingWheel.Timeout;
+
+public class TimingWheelTest {
+
+	@Test
+	public void testExpiration() {
+		TimingWheel<String> wheel = new TimingWheel<String>(10, 1000);
+
+		wheel.schedule("a", 1050);
+		wheel.schedule("b", 1055);
+		Timeout<String> c = wheel.schedule("c", 1100);
+		wheel.schedule("d", 500);
+		assertEquals(4, wheel.size());
+
+		// d is in the past, so it expires on the first advance
+		assertEquals(listOf("d"), wheel.advance(1040));
+		assertEquals(listOf("a"), wheel.advance(1050));
+
+		// b is rounded up to the next tick
+		assertEquals(listOf(), wheel.advance(1055));
+		assertEquals(listOf("b"), wheel.advance(1060));
+
+		wheel.cancel(c);
+		wheel.cancel(c);
+		assertEquals(listOf(), wheel.advance(2000));
+		assertEquals(0, wheel.size());
+	}
+
+	@Test
+	public void testRandomSchedule() {
+		Random random = new Random(3);
+		long now = 0;
+		TimingWheel<Integer> wheel = new TimingWheel<Integer>(1, now);
+
+		Map<Integer, Long> deadlines = new HashMap<Integer, Long>();
+		Map<Integer, Timeout<Integer>> timeouts = new HashMap<Integer, Timeout<Integer>>();
+
+		for (int i = 0; i < 20000; i++) {
+			// deadlines spread over several wheel levels
+			long deadline = now + 1 + (long) Math.pow(2, random.nextInt(20)) + random.nextInt(64);
+			deadlines.put(i, deadline);
+			timeouts.put(i, wheel.schedule(i, deadline));
+
+			if (random.nextInt(10) == 0) {
+				int cancelled = random.nextInt(i + 1);
+				if (deadlines.remove(cancelled) != null) {
+					wheel.cancel(timeouts.get(cancelled));
+				}
+			}
+
+			if (random.nextInt(5) == 0) {
+				now += random.nextInt(5000);
+				for (Integer expired : wheel.advance(now)) {
+					Long expectedDeadline = deadlines.remove(expired);
+					assertTrue("Expired twice or after cancel: " + expired, expectedDeadline != null);
+					assertTrue("Expired too early: " + expired, expectedDeadline <= now);
+				}
+				for (Long pending : deadlines.values()) {
+					assertTrue("Not expired in time", pending > now);
+				}
+			}
+		}
+
+		assertEquals(deadlines.size(), wheel.size());
+		wheel.advance(now + (1L << 22));
+		assertEquals(0, wheel.size());
+	}
+
+	private static List<String> listOf(String... values) {
+		List<String> result = new ArrayList<String>();
+		for (String value : values) {
+			result.add(value);
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,99 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule.jpa;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.transaction.Transactional;
+
+import com.jardoapps.usermodule.EmailOutboxModel;
+import com.jardoapps.usermodule.EmailSenderOutboxImpl;
+import com.jardoapps.usermodule.containers.OutboxEmail;
+import com.jardoapps.usermodule.jpa.dao.OutboxEmailEntityDao;
+import com.jardoapps.usermodule.jpa.entities.OutboxEmailEntity;
+
+/**
+ * A JPA implementation of the email outbox model used by
+ * {@link EmailSenderOutboxImpl}. It uses entity class
+ * <code>com.jardoapps.usermodule.jpa.entities.OutboxEmailEntity</code>, which
+ * has to be registered the same way as the entities of
+ * {@link UserDatabaseModelJpa}.
+ * <p>
+ * All methods join the current transaction if there is one, so if the
+ * {@link com.jardoapps.usermodule.UserManager UserManager} call is wrapped in
+ * a transaction, the email is stored atomically with the user or the
+ * password reset token it belongs to.
+ * <p>
+ * This class is a part of this library's public API.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class EmailOutboxModelJpa implements EmailOutboxModel, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@Inject
+	private OutboxEmailEntityDao outboxEmailEntityDao;
+
+	@Transactional
+	public long addEmail(OutboxEmail email) {
+		OutboxEmailEntity emailEntity = new OutboxEmailEntity(email);
+		outboxEmailEntityDao.add(emailEntity);
+		return emailEntity.getId();
+	}
+
+	@Transactional
+	public boolean claimEmail(long emailId, int expectedAttempts, Date nextAttemptTime) {
+		return outboxEmailEntityDao.claim(emailId, expectedAttempts, nextAttemptTime);
+	}
+
+	@Transactional
+	public int getEmailCount() {
+		return outboxEmailEntityDao.count();
+	}
+
+	@Transactional
+	public List<OutboxEmail> getDueEmails(Date now, int maxResults) {
+		List<OutboxEmailEntity> emailEntities = outboxEmailEntityDao.findDue(now, maxResults);
+
+		List<OutboxEmail> result = new ArrayList<OutboxEmail>(emailEntities.size());
+		for (OutboxEmailEntity emailEntity : emailEntities) {
+			result.add(emailEntity.toOutboxEmail());
+		}
+
+		return result;
+	}
+
+	@Transactional
+	public Date getOldestEmailCreationTime() {
+		return outboxEmailEntityDao.findOldestCreationTime();
+	}
+
+	@Transactional
+	public boolean removeEmail(long emailId) {
+		return outboxEmailEntityDao.delete(emailId);
+	}
+
+}
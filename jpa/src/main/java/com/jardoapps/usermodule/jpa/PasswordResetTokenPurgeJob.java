@@ -0,0 +1,196 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.jpa;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jardoapps.usermodule.UserManagementProperties;
+
+/**
+ * A maintenance job which deletes canceled and expired password reset tokens
+ * from the database, so that the token table does not grow forever. Tokens
+ * are deleted in batches, each in its own short transaction, with a pause
+ * between the batches, so that the job never holds locks for long. A token is
+ * expired if it is older than
+ * {@link UserManagementProperties#getPasswordResetTokenExpirationMinutes()}.
+ * <p>
+ * The job should be run periodically, for instance by a
+ * {@link java.util.concurrent.ScheduledExecutorService} or by the scheduler of
+ * the application framework. It must be created as a bean, so that
+ * {@link PasswordResetTokenPurgeModel}, which runs the batches in their
+ * transactions, is injected. Concurrent runs are skipped.
+ * <p>
+ * This class is a part of this library's public API.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class PasswordResetTokenPurgeJob implements Runnable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PasswordResetTokenPurgeJob.class);
+
+	private static final long MILLIS_IN_MINUTE = 60000L;
+
+	public static final int DEFAULT_BATCH_SIZE = 500;
+
+	public static final long DEFAULT_PAUSE_MILLIS = 100L;
+
+	@Inject
+	private PasswordResetTokenPurgeModel purgeModel;
+
+	private final UserManagementProperties properties;
+
+	private final AtomicBoolean running = new AtomicBoolean();
+
+	private volatile int batchSize = DEFAULT_BATCH_SIZE;
+
+	private volatile long pauseMillis = DEFAULT_PAUSE_MILLIS;
+
+	private volatile int lastRunRemovedRows;
+
+	private volatile long lastRunMillis;
+
+	private volatile long totalRemovedRows;
+
+	/**
+	 * Deletes all canceled and expired tokens.
+	 *
+	 * @return number of deleted tokens, or -1 if the job was already running
+	 */
+	public int purge() {
+		if (!running.compareAndSet(false, true)) {
+			LOGGER.warn("Password reset token purge is already running.");
+			return -1;
+		}
+
+		try {
+			long start = System.currentTimeMillis();
+			Date createdBefore = new Date(start - properties.getPasswordResetTokenExpirationMinutes() * MILLIS_IN_MINUTE);
+
+			int removed = 0;
+			long lastId = 0;
+			while (true) {
+				List<Long> ids = purgeModel.deletePurgeableTokens(lastId, createdBefore, batchSize);
+				removed += ids.size();
+
+				if (ids.size() < batchSize) {
+					break;
+				}
+				lastId = ids.get(ids.size() - 1);
+
+				if (pauseMillis > 0) {
+					try {
+						Thread.sleep(pauseMillis);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						LOGGER.warn("Password reset token purge interrupted.");
+						break;
+					}
+				}
+			}
+
+			lastRunRemovedRows = removed;
+			lastRunMillis = System.currentTimeMillis() - start;
+			totalRemovedRows += removed;
+
+			LOGGER.info("Purged {} password reset tokens in {} ms.", removed, lastRunMillis);
+			return removed;
+
+		} catch (RuntimeException e) {
+			LOGGER.error("DB error: Failed to purge password reset tokens.", e);
+			throw e;
+		} finally {
+			running.set(false);
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			purge();
+		} catch (RuntimeException e) {
+			// already logged, do not kill the scheduler's thread
+		}
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Sets the maximal number of tokens deleted in one transaction.
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be positive.");
+		}
+		this.batchSize = batchSize;
+	}
+
+	public long getPauseMillis() {
+		return pauseMillis;
+	}
+
+	/**
+	 * Sets the pause between two batches. Zero means no pause.
+	 */
+	public void setPauseMillis(long pauseMillis) {
+		if (pauseMillis < 0) {
+			throw new IllegalArgumentException("Pause cannot be negative.");
+		}
+		this.pauseMillis = pauseMillis;
+	}
+
+	/**
+	 * Returns the number of tokens deleted by the last completed run.
+	 */
+	public int getLastRunRemovedRows() {
+		return lastRunRemovedRows;
+	}
+
+	/**
+	 * Returns the duration of the last completed run in milliseconds.
+	 */
+	public long getLastRunMillis() {
+		return lastRunMillis;
+	}
+
+	/**
+	 * Returns the number of tokens deleted by all completed runs.
+	 */
+	public long getTotalRemovedRows() {
+		return totalRemovedRows;
+	}
+
+	/**
+	 * @param properties
+	 *            properties specifying the token expiration time
+	 */
+	public PasswordResetTokenPurgeJob(UserManagementProperties properties) {
+		this.properties = properties;
+	}
+
+}
@@ -0,0 +1,60 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.jpa;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.transaction.Transactional;
+
+import com.jardoapps.usermodule.jpa.dao.PasswordResetTokenEntityDao;
+
+/**
+ * The model used by {@link PasswordResetTokenPurgeJob}. Each call deletes one
+ * batch of tokens in its own transaction. It must be created as a bean, so
+ * that the DAO is injected and its transactions are managed.
+ * <p>
+ * This class is a part of this library's public API.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class PasswordResetTokenPurgeModel implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@Inject
+	private PasswordResetTokenEntityDao passwordResetTokenEntityDao;
+
+	/**
+	 * Deletes one batch of canceled tokens and tokens created before the
+	 * given time. Tokens are deleted in the order of their ids, starting
+	 * after the given id, so that the next batch can continue where this one
+	 * ended.
+	 * 
+	 * @return ids of the deleted tokens in ascending order
+	 */
+	@Transactional
+	public List<Long> deletePurgeableTokens(long afterId, Date createdBefore, int batchSize) {
+		return passwordResetTokenEntityDao.deletePurgeableTokens(afterId, createdBefore, batchSize);
+	}
+
+}
@@ -19,15 +19,28 @@
 package com.jardoapps.usermodule.jpa;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.inject.Inject;
 import javax.transaction.Transactional;
 
 import com.jardoapps.usermodule.User;
 import com.jardoapps.usermodule.UserDatabaseModel;
+import com.jardoapps.usermodule.UserVisitor;
+import com.jardoapps.usermodule.containers.LogInRecord;
 import com.jardoapps.usermodule.containers.PasswordResetToken;
 import com.jardoapps.usermodule.containers.SocialAccountDetails;
+import com.jardoapps.usermodule.containers.UserFilter;
+import com.jardoapps.usermodule.containers.UserFilter.Order;
 import com.jardoapps.usermodule.containers.UserPassword;
 import com.jardoapps.usermodule.jpa.dao.LogInRecordEntityDao;
 import com.jardoapps.usermodule.jpa.dao.PasswordResetTokenEntityDao;
@@ -53,6 +66,25 @@ import com.jardoapps.usermodule.jpa.entities.UserEntity;
  * If you're using Spring, you can set the SessionFactory's packagesToScan property to
  * <code>com.jardoapps.usermodule.jpa.entities</code>.
  * <p>
+ * Bulk operations like {@link #addUsers(List)} and
+ * {@link #makeLogInRecords(List)} persist entities in chunks of
+ * {@link #BATCH_SIZE}. To send each chunk to the database as a single JDBC
+ * batch, set the <code>hibernate.jdbc.batch_size</code> property to the same
+ * value. User ids are allocated from the sequence in blocks of the same size.
+ * Set-based queries like {@link #getRegisteredEmails(Collection)} and
+ * {@link #getUsersByIds(Collection)} pass at most {@link #MAX_IN_LIST_SIZE}
+ * values in one IN list.
+ * <p>
+ * {@link #exportUsers(UserVisitor)} reads the users in pages of
+ * {@link #EXPORT_PAGE_SIZE} by their ids (the last id of a page is where the
+ * next one starts), and clears the persistence context after every page.
+ * {@link #getUsers(UserFilter, User, int)} pages the same way, by id or by
+ * registration date and id, so deep pages cost the same as the first one.
+ * <p>
+ * {@link #recordSuccessfulLogIn(int, String)} inserts the log in record and
+ * runs the conditional updates of the user and their password reset tokens in
+ * one transaction, so a successful log in costs a single commit.
+ * <p>
  * This class is a part of this library's public API.
  * 
  * @author Jaroslav Brtiš
@@ -62,6 +94,24 @@ public class UserDatabaseModelJpa implements UserDatabaseModel, Serializable {
 
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * Number of entities persisted before the persistence context is flushed
+	 * and cleared during bulk operations.
+	 */
+	public static final int BATCH_SIZE = 50;
+
+	/**
+	 * Maximal number of values passed in one IN list, larger collections are
+	 * queried in chunks.
+	 */
+	public static final int MAX_IN_LIST_SIZE = 500;
+
+	/**
+	 * Number of users read by one query during
+	 * {@link #exportUsers(UserVisitor)}.
+	 */
+	public static final int EXPORT_PAGE_SIZE = 1000;
+
 	@Inject
 	private UserEntityDao userEntityDao;
 
@@ -95,6 +145,27 @@ public class UserDatabaseModelJpa implements UserDatabaseModel, Serializable {
 		return userEntity.getId();
 	}
 
+	@Transactional
+	public int[] addUsers(List<User> newUsers) {
+		int[] result = new int[newUsers.size()];
+		Date registrationDate = new Date();
+
+		for (int i = 0; i < result.length; i++) {
+			UserEntity userEntity = new UserEntity();
+			userEntity.copyUser(newUsers.get(i));
+			userEntity.setRegistrationDate(registrationDate);
+
+			userEntityDao.add(userEntity);
+			result[i] = userEntity.getId();
+
+			if ((i + 1) % BATCH_SIZE == 0) {
+				userEntityDao.flushAndClear();
+			}
+		}
+
+		return result;
+	}
+
 	@Transactional
 	public boolean cancelAllPasswordResetTokens(int userId) {
 		passwordResetTokenEntityDao.cancelTokensForUser(userId);
@@ -111,11 +182,57 @@ public class UserDatabaseModelJpa implements UserDatabaseModel, Serializable {
 		return userEntityDao.deleteUserEntity(userId);
 	}
 
+	@Transactional
+	public int exportUsers(UserVisitor visitor) {
+		int count = 0;
+		int lastUserId = 0;
+
+		List<UserEntity> page;
+		do {
+			page = userEntityDao.findPage(lastUserId, EXPORT_PAGE_SIZE);
+			for (UserEntity userEntity : page) {
+				lastUserId = userEntity.getId();
+				count++;
+				if (!visitor.visit(userEntity.toUser())) {
+					return count;
+				}
+			}
+
+			// the entities of the page are no longer needed
+			userEntityDao.clear();
+		} while (page.size() == EXPORT_PAGE_SIZE);
+
+		return count;
+	}
+
 	@Transactional
 	public int getRegisteredUserCount(Date since) {
 		return userEntityDao.getRegisteredUserCount(since);
 	}
 
+	private Set<String> getRegistered(Collection<String> values, boolean email) {
+		if (values.isEmpty()) {
+			return Collections.emptySet();
+		}
+
+		List<String> valueList = new ArrayList<String>(values);
+		Set<String> result = new HashSet<String>();
+		for (int from = 0; from < valueList.size(); from += MAX_IN_LIST_SIZE) {
+			List<String> chunk = valueList.subList(from, Math.min(from + MAX_IN_LIST_SIZE, valueList.size()));
+			result.addAll(email ? userEntityDao.findRegisteredEmails(chunk) : userEntityDao.findRegisteredNames(chunk));
+		}
+
+		return result;
+	}
+
+	public Set<String> getRegisteredEmails(Collection<String> emails) {
+		return getRegistered(emails, true);
+	}
+
+	public Set<String> getRegisteredUserNames(Collection<String> names) {
+		return getRegistered(names, false);
+	}
+
 	public PasswordResetToken getNewestPasswordResetToken(String email) {
 		PasswordResetTokenEntity tokenEntity = passwordResetTokenEntityDao.getNewestToken(email);
 
@@ -136,6 +253,16 @@ public class UserDatabaseModelJpa implements UserDatabaseModel, Serializable {
 		return userEntity.toUser();
 	}
 
+	public User getUserById(int userId) {
+		UserEntity userEntity = userEntityDao.findById(userId);
+
+		if (userEntity == null) {
+			return null;
+		}
+
+		return userEntity.toUser();
+	}
+
 	public User getUserByName(String name) {
 		UserEntity userEntity = userEntityDao.findByName(name);
 
@@ -146,6 +273,32 @@ public class UserDatabaseModelJpa implements UserDatabaseModel, Serializable {
 		return userEntity.toUser();
 	}
 
+	public Map<String, User> getUsersByEmails(Collection<String> emails) {
+		List<String> emailList = new ArrayList<String>(emails);
+		Map<String, User> result = new HashMap<String, User>();
+		for (int from = 0; from < emailList.size(); from += MAX_IN_LIST_SIZE) {
+			List<String> chunk = emailList.subList(from, Math.min(from + MAX_IN_LIST_SIZE, emailList.size()));
+			for (UserEntity userEntity : userEntityDao.findByEmails(chunk)) {
+				result.put(userEntity.getEmail(), userEntity.toUser());
+			}
+		}
+
+		return result;
+	}
+
+	public Map<Integer, User> getUsersByIds(Collection<Integer> userIds) {
+		List<Integer> idList = new ArrayList<Integer>(userIds);
+		Map<Integer, User> result = new HashMap<Integer, User>();
+		for (int from = 0; from < idList.size(); from += MAX_IN_LIST_SIZE) {
+			List<Integer> chunk = idList.subList(from, Math.min(from + MAX_IN_LIST_SIZE, idList.size()));
+			for (UserEntity userEntity : userEntityDao.findByIds(chunk)) {
+				result.put(userEntity.getId(), userEntity.toUser());
+			}
+		}
+
+		return result;
+	}
+
 	public User getUserBySocialAccount(SocialAccountDetails details) {
 
 		UserEntity userEntity = socialAccountDao.getUserByAccount(details.getAccountType(), details.getUserId());
@@ -161,10 +314,35 @@ public class UserDatabaseModelJpa implements UserDatabaseModel, Serializable {
 		return userEntityDao.getUserIdByEmail(email);
 	}
 
+	public Set<Integer> getUserIdsWithPasswordResetTokens() {
+		return new HashSet<Integer>(passwordResetTokenEntityDao.getUserIdsWithValidTokens());
+	}
+
 	public UserPassword getUserPassword(int userId) {
 		return userEntityDao.getUserPassword(userId);
 	}
 
+	private static List<User> toUsers(List<UserEntity> userEntities) {
+		List<User> result = new ArrayList<User>(userEntities.size());
+		for (UserEntity userEntity : userEntities) {
+			result.add(userEntity.toUser());
+		}
+
+		return result;
+	}
+
+	public List<User> getUsers(int afterUserId, int maxResults) {
+		return toUsers(userEntityDao.findPage(afterUserId, maxResults));
+	}
+
+	public List<User> getUsers(UserFilter filter, User after, int maxResults) {
+		// users without a registration date are never listed by date, so such a user cannot end a page
+		if (filter.getOrder() == Order.REGISTRATION_DATE && after != null && after.getRegistrationDate() == null) {
+			throw new IllegalArgumentException("User after which the page starts must have a registration date.");
+		}
+		return toUsers(userEntityDao.findPage(filter, after, maxResults));
+	}
+
 	public boolean isEmailRegistered(String email) {
 		return userEntityDao.isEmailRegistered(email);
 	}
@@ -173,18 +351,84 @@ public class UserDatabaseModelJpa implements UserDatabaseModel, Serializable {
 		return userEntityDao.isUserNameRegistered(name);
 	}
 
-	@Transactional
-	public boolean makeLogInRecord(int userId, boolean logInSuccessfull, String usersIp) {
+	private LogInRecordEntity createLogInRecordEntity(int userId, boolean logInSuccessfull, String usersIp, Date time) {
 
 		UserEntity user = new UserEntity();
 		user.setId(userId);
 
 		LogInRecordEntity logInRecordEntity = new LogInRecordEntity();
 		logInRecordEntity.setUser(user);
-		logInRecordEntity.setTime(new Date());
+		logInRecordEntity.setTime(time);
 		logInRecordEntity.setIp(usersIp);
 		logInRecordEntity.setSuccessful(logInSuccessfull);
 
+		return logInRecordEntity;
+	}
+
+	@Transactional
+	public boolean makeLogInRecord(int userId, boolean logInSuccessfull, String usersIp) {
+
+		Date now = new Date();
+		LogInRecordEntity logInRecordEntity = createLogInRecordEntity(userId, logInSuccessfull, usersIp, now);
+		logInRecordEntityDao.add(logInRecordEntity);
+
+		if (logInSuccessfull) {
+			userEntityDao.resetFailedLogInCount(userId);
+		} else {
+			userEntityDao.addFailedLogIns(userId, 1, now);
+		}
+
+		return true;
+	}
+
+	@Transactional
+	public boolean makeLogInRecords(List<LogInRecord> records) {
+
+		// failures after the last success of each user, in the order of the records
+		Map<Integer, LogInRecord> lastFailures = new LinkedHashMap<Integer, LogInRecord>();
+		Map<Integer, Integer> failureCounts = new HashMap<Integer, Integer>();
+		Set<Integer> succeeded = new HashSet<Integer>();
+
+		int count = 0;
+		for (LogInRecord record : records) {
+			LogInRecordEntity logInRecordEntity = createLogInRecordEntity(record.getUserId(), record.isSuccessful(), record.getIp(), record.getTime());
+			logInRecordEntityDao.add(logInRecordEntity);
+
+			if (++count % BATCH_SIZE == 0) {
+				logInRecordEntityDao.flushAndClear();
+			}
+
+			Integer userId = record.getUserId();
+			if (record.isSuccessful()) {
+				succeeded.add(userId);
+				lastFailures.remove(userId);
+				failureCounts.remove(userId);
+			} else {
+				lastFailures.put(userId, record);
+				Integer failures = failureCounts.get(userId);
+				failureCounts.put(userId, failures != null ? failures + 1 : 1);
+			}
+		}
+
+		// the counts are updated after all the records have been inserted, so the inserts are not interrupted by flushes
+		for (Integer userId : succeeded) {
+			userEntityDao.resetFailedLogInCount(userId);
+		}
+		for (Map.Entry<Integer, LogInRecord> entry : lastFailures.entrySet()) {
+			userEntityDao.addFailedLogIns(entry.getKey(), failureCounts.get(entry.getKey()), entry.getValue().getTime());
+		}
+
+		return true;
+	}
+
+	@Transactional
+	public boolean recordSuccessfulLogIn(int userId, String usersIp) {
+
+		// the bulk updates go first, so the insert is flushed with the commit and not by the updates
+		userEntityDao.resetFailedLogInCount(userId);
+		passwordResetTokenEntityDao.cancelTokensForUser(userId);
+
+		LogInRecordEntity logInRecordEntity = createLogInRecordEntity(userId, true, usersIp, new Date());
 		logInRecordEntityDao.add(logInRecordEntity);
 
 		return true;
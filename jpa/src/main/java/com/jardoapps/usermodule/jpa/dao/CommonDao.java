@@ -32,6 +32,24 @@ public class CommonDao<T> {
 		entityManager.persist(entity);
 	}
 
+	/**
+	 * Detaches all managed entities without flushing them. Used by read-only
+	 * bulk operations.
+	 */
+	public void clear() {
+		entityManager.clear();
+	}
+
+	/**
+	 * Flushes pending changes to the database and detaches all managed
+	 * entities, so that the persistence context does not grow during bulk
+	 * operations.
+	 */
+	public void flushAndClear() {
+		entityManager.flush();
+		entityManager.clear();
+	}
+
 	protected Query createQuery(String queryStr) {
 		return entityManager.createQuery(queryStr);
 	}
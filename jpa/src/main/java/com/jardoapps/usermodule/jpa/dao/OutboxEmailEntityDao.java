@@ -0,0 +1,72 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule.jpa.dao;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.List;
+
+import javax.persistence.Query;
+
+import com.jardoapps.usermodule.jpa.entities.OutboxEmailEntity;
+
+public class OutboxEmailEntityDao extends CommonDao<OutboxEmailEntity> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public boolean claim(long id, int expectedAttempts, Date nextAttemptTime) {
+		String queryStr = "UPDATE OutboxEmailEntity e SET e.attempts = e.attempts + 1, e.nextAttemptTime = :nextAttemptTime WHERE e.id = :id AND e.attempts = :attempts";
+
+		Query query = createQuery(queryStr);
+		query.setParameter("nextAttemptTime", nextAttemptTime);
+		query.setParameter("id", id);
+		query.setParameter("attempts", expectedAttempts);
+
+		return query.executeUpdate() > 0;
+	}
+
+	public int count() {
+		Query query = createQuery("SELECT COUNT(e) FROM OutboxEmailEntity e");
+		return ((Number) query.getSingleResult()).intValue();
+	}
+
+	public boolean delete(long id) {
+		Query query = createQuery("DELETE FROM OutboxEmailEntity e WHERE e.id = :id");
+		query.setParameter("id", id);
+		return query.executeUpdate() > 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public List<OutboxEmailEntity> findDue(Date now, int maxResults) {
+		String queryStr = "FROM OutboxEmailEntity e WHERE e.nextAttemptTime <= :now ORDER BY e.nextAttemptTime";
+
+		Query query = createQuery(queryStr);
+		query.setParameter("now", now);
+		query.setMaxResults(maxResults);
+
+		return query.getResultList();
+	}
+
+	public Date findOldestCreationTime() {
+		Query query = createQuery("SELECT MIN(e.creationTime) FROM OutboxEmailEntity e");
+		return getSingleResult(query);
+	}
+
+}
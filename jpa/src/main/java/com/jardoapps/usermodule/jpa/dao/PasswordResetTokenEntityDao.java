@@ -19,6 +19,8 @@
 package com.jardoapps.usermodule.jpa.dao;
 
 import java.io.Serializable;
+import java.util.Date;
+import java.util.List;
 
 import javax.persistence.Query;
 
@@ -29,15 +31,52 @@ public class PasswordResetTokenEntityDao extends CommonDao<PasswordResetTokenEnt
 	private static final long serialVersionUID = 1L;
 
 	public void cancelTokensForUser(int userId) {
-		String queryStr = "UPDATE PasswordResetTokenEntity prt SET prt.valid = false WHERE prt.user.id = :userId";
+		String queryStr = "UPDATE PasswordResetTokenEntity prt SET prt.valid = false WHERE prt.user.id = :userId AND prt.valid = true";
 
 		Query query = createQuery(queryStr);
 		query.setParameter("userId", userId);
 		query.executeUpdate();
 	}
 
+	/**
+	 * Deletes one batch of canceled tokens and tokens created before the
+	 * given time. Tokens are deleted in the order of their ids, starting
+	 * after the given id, so that the next batch can continue where this one
+	 * ended. Must be called within a transaction.
+	 * 
+	 * @return ids of the deleted tokens in ascending order
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Long> deletePurgeableTokens(long afterId, Date createdBefore, int batchSize) {
+		String queryStr = "SELECT prt.id FROM PasswordResetTokenEntity prt WHERE prt.id > :afterId AND (prt.valid = false OR prt.time < :createdBefore) ORDER BY prt.id";
+
+		Query query = createQuery(queryStr);
+		query.setParameter("afterId", afterId);
+		query.setParameter("createdBefore", createdBefore);
+		query.setMaxResults(batchSize);
+
+		List<Long> ids = query.getResultList();
+		if (ids.isEmpty()) {
+			return ids;
+		}
+
+		Query deleteQuery = createQuery("DELETE FROM PasswordResetTokenEntity prt WHERE prt.id IN (:ids)");
+		deleteQuery.setParameter("ids", ids);
+		deleteQuery.executeUpdate();
+
+		return ids;
+	}
+
+	@SuppressWarnings("unchecked")
+	public List<Integer> getUserIdsWithValidTokens() {
+		String queryStr = "SELECT DISTINCT prt.user.id FROM PasswordResetTokenEntity prt WHERE prt.valid = true";
+
+		Query query = createQuery(queryStr);
+		return query.getResultList();
+	}
+
 	public PasswordResetTokenEntity getNewestToken(String email) {
-		String queryStr = "FROM PasswordResetTokenEntity prt WHERE prt.user.email = :email ORDER BY prt.time DESC";
+		String queryStr = "FROM PasswordResetTokenEntity prt WHERE prt.user.email = :email AND prt.valid = true ORDER BY prt.time DESC";
 
 		Query query = createQuery(queryStr);
 		query.setParameter("email", email);
@@ -19,10 +19,15 @@
 package com.jardoapps.usermodule.jpa.dao;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 
 import javax.persistence.Query;
 
+import com.jardoapps.usermodule.User;
+import com.jardoapps.usermodule.containers.UserFilter;
+import com.jardoapps.usermodule.containers.UserFilter.Order;
 import com.jardoapps.usermodule.containers.UserPassword;
 import com.jardoapps.usermodule.jpa.entities.UserEntity;
 
@@ -30,6 +35,18 @@ public class UserEntityDao extends CommonDao<UserEntity> implements Serializable
 
 	private static final long serialVersionUID = 1L;
 
+	public boolean addFailedLogIns(int userId, int count, Date lastFailureTime) {
+		String queryStr = "UPDATE UserEntity u SET u.failedLogInCount = COALESCE(u.failedLogInCount, 0) + :count, u.lastFailedLogInTime = :time WHERE u.id = :userId";
+
+		Query query = createQuery(queryStr);
+		query.setParameter("userId", userId);
+		query.setParameter("count", count);
+		query.setParameter("time", lastFailureTime);
+
+		int updatedRows = query.executeUpdate();
+		return updatedRows == 1;
+	}
+
 	public boolean confirmRegistration(String email) {
 		String queryStr = "UPDATE UserEntity u SET u.registrationConfirmed = true WHERE u.email = :email";
 		Query query = createQuery(queryStr);
@@ -96,6 +113,57 @@ public class UserEntityDao extends CommonDao<UserEntity> implements Serializable
 		return getSingleResult(query);
 	}
 
+	public UserEntity findById(int userId) {
+		String queryStr = "FROM UserEntity u WHERE u.id = :id AND u.deleted = false";
+
+		Query query = createQuery(queryStr);
+		query.setParameter("id", userId);
+
+		return getSingleResult(query);
+	}
+
+	@SuppressWarnings("unchecked")
+	public List<UserEntity> findByEmails(Collection<String> emails) {
+		String queryStr = "FROM UserEntity u WHERE u.email IN (:emails) AND u.deleted = false";
+
+		Query query = createQuery(queryStr);
+		query.setParameter("emails", emails);
+		query.setHint("org.hibernate.readOnly", true);
+
+		return query.getResultList();
+	}
+
+	@SuppressWarnings("unchecked")
+	public List<UserEntity> findByIds(Collection<Integer> userIds) {
+		String queryStr = "FROM UserEntity u WHERE u.id IN (:ids) AND u.deleted = false";
+
+		Query query = createQuery(queryStr);
+		query.setParameter("ids", userIds);
+		query.setHint("org.hibernate.readOnly", true);
+
+		return query.getResultList();
+	}
+
+	@SuppressWarnings("unchecked")
+	public List<String> findRegisteredEmails(Collection<String> emails) {
+		String queryStr = "SELECT u.email FROM UserEntity u WHERE u.email IN (:emails) AND u.deleted = false";
+
+		Query query = createQuery(queryStr);
+		query.setParameter("emails", emails);
+
+		return query.getResultList();
+	}
+
+	@SuppressWarnings("unchecked")
+	public List<String> findRegisteredNames(Collection<String> names) {
+		String queryStr = "SELECT u.name FROM UserEntity u WHERE u.name IN (:names) AND u.deleted = false";
+
+		Query query = createQuery(queryStr);
+		query.setParameter("names", names);
+
+		return query.getResultList();
+	}
+
 	public UserEntity findByName(String name) {
 		String queryStr = "FROM UserEntity u WHERE u.name = :name AND u.deleted = false";
 
@@ -106,6 +174,93 @@ public class UserEntityDao extends CommonDao<UserEntity> implements Serializable
 		return getSingleResult(query);
 	}
 
+	@SuppressWarnings("unchecked")
+	public List<UserEntity> findPage(int afterId, int maxResults) {
+		String queryStr = "FROM UserEntity u WHERE u.id > :afterId AND u.deleted = false ORDER BY u.id";
+
+		Query query = createQuery(queryStr);
+		query.setParameter("afterId", afterId);
+		query.setMaxResults(maxResults);
+		// the whole page is read at once, and the entities are never modified
+		query.setHint("org.hibernate.fetchSize", maxResults);
+		query.setHint("org.hibernate.readOnly", true);
+
+		return query.getResultList();
+	}
+
+	/**
+	 * Returns a page of users matching the filter. The page starts right after
+	 * the given user, which is found by the sort key (not by an offset), so the
+	 * query reads only the rows of the page.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<UserEntity> findPage(UserFilter filter, User after, int maxResults) {
+		StringBuilder queryStr = new StringBuilder("FROM UserEntity u WHERE u.deleted = false");
+		if (filter.getRank() != null) {
+			queryStr.append(" AND u.rank = :rank");
+		}
+		if (filter.getRegistrationConfirmed() != null) {
+			queryStr.append(" AND u.registrationConfirmed = :confirmed");
+		}
+		if (filter.getRegisteredBefore() != null) {
+			queryStr.append(" AND u.registrationDate < :before");
+		}
+
+		Date from = filter.getRegisteredSince();
+		if (filter.getOrder() == Order.REGISTRATION_DATE) {
+			// the lower bound is always present so that the index on the date is used
+			if (from == null) {
+				from = new Date(0);
+			}
+			if (after != null && after.getRegistrationDate().after(from)) {
+				from = after.getRegistrationDate();
+			}
+
+			queryStr.append(" AND u.registrationDate >= :from");
+			if (after != null) {
+				queryStr.append(" AND (u.registrationDate > :afterDate OR u.id > :afterId)");
+			}
+			if (filter.getRank() != null) {
+				// the rank is fixed, ordering by it lets the database read the rows in the order of the rank index
+				queryStr.append(" ORDER BY u.rank, u.registrationDate, u.id");
+			} else {
+				queryStr.append(" ORDER BY u.registrationDate, u.id");
+			}
+		} else {
+			if (from != null) {
+				queryStr.append(" AND u.registrationDate >= :from");
+			}
+			queryStr.append(" AND u.id > :afterId ORDER BY u.id");
+		}
+
+		Query query = createQuery(queryStr.toString());
+		if (filter.getRank() != null) {
+			query.setParameter("rank", filter.getRank());
+		}
+		if (filter.getRegistrationConfirmed() != null) {
+			query.setParameter("confirmed", filter.getRegistrationConfirmed());
+		}
+		if (filter.getRegisteredBefore() != null) {
+			query.setParameter("before", filter.getRegisteredBefore());
+		}
+		if (from != null) {
+			query.setParameter("from", from);
+		}
+		if (filter.getOrder() == Order.REGISTRATION_DATE) {
+			if (after != null) {
+				query.setParameter("afterDate", after.getRegistrationDate());
+				query.setParameter("afterId", after.getId());
+			}
+		} else {
+			query.setParameter("afterId", after != null ? after.getId() : 0);
+		}
+		query.setMaxResults(maxResults);
+		query.setHint("org.hibernate.fetchSize", maxResults);
+		query.setHint("org.hibernate.readOnly", true);
+
+		return query.getResultList();
+	}
+
 	public boolean isEmailRegistered(String email) {
 		String queryStr = "SELECT count(*) FROM UserEntity u WHERE u.email = :email AND u.deleted = false";
 
@@ -126,6 +281,19 @@ public class UserEntityDao extends CommonDao<UserEntity> implements Serializable
 		return result > 0;
 	}
 
+	/**
+	 * Sets the failed log in count of the user to zero. Rows whose count is
+	 * already zero are not written.
+	 */
+	public void resetFailedLogInCount(int userId) {
+		String queryStr = "UPDATE UserEntity u SET u.failedLogInCount = 0 WHERE u.id = :userId AND u.failedLogInCount > 0";
+
+		Query query = createQuery(queryStr);
+		query.setParameter("userId", userId);
+
+		query.executeUpdate();
+	}
+
 	public boolean setUserPassword(int userId, UserPassword password) {
 		String queryStr = "UPDATE UserEntity u SET u.passwordHash = :hash, u.passwordSalt = :salt WHERE u.id = :userId";
 
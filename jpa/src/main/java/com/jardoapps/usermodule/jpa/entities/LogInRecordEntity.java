@@ -24,6 +24,7 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
@@ -37,7 +38,7 @@ import javax.persistence.Table;
  *
  */
 @Entity
-@Table(name = "um_login_record")
+@Table(name = "um_login_record", indexes = @Index(name = "um_login_record_user_idx", columnList = "user_id, date_time"))
 public class LogInRecordEntity {
 
 	@Id
@@ -0,0 +1,200 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule.jpa.entities;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+
+import com.jardoapps.usermodule.User;
+import com.jardoapps.usermodule.containers.OutboxEmail;
+import com.jardoapps.usermodule.defines.EmailType;
+
+/**
+ * An entity class for representing emails waiting in the outbox. The
+ * registrator of manually registered users is stored by value, because only
+ * its details are needed to send the email.
+ * <p>
+ * The declared index covers the lookup of due emails.
+ * <p>
+ * This class is a part of this library's public API.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+@Entity
+@Table(name = "um_email_outbox", indexes = @Index(name = "um_email_outbox_next_attempt_idx", columnList = "next_attempt_time"))
+public class OutboxEmailEntity {
+
+	@Id
+	@SequenceGenerator(name = "um_email_outbox_id_seq", sequenceName = "um_email_outbox_id_seq")
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "um_email_outbox_id_seq")
+	long id;
+
+	@Enumerated(EnumType.STRING)
+	@Column(name = "email_type")
+	EmailType type;
+
+	@Column(name = "email")
+	String email;
+
+	@Column(name = "user_name")
+	String userName;
+
+	@Column(name = "user_id")
+	int userId;
+
+	@Column(name = "code")
+	String code;
+
+	@Column(name = "registrator_id")
+	Integer registratorId;
+
+	@Column(name = "registrator_name")
+	String registratorName;
+
+	@Column(name = "registrator_email")
+	String registratorEmail;
+
+	@Column(name = "registrator_rank")
+	Integer registratorRank;
+
+	@Column(name = "creation_time")
+	Date creationTime;
+
+	@Column(name = "attempts")
+	int attempts;
+
+	@Column(name = "next_attempt_time")
+	Date nextAttemptTime;
+
+	public OutboxEmailEntity() {
+		super();
+	}
+
+	public OutboxEmailEntity(OutboxEmail outboxEmail) {
+		this.type = outboxEmail.getType();
+		this.email = outboxEmail.getEmail();
+		this.userName = outboxEmail.getUserName();
+		this.userId = outboxEmail.getUserId();
+		this.code = outboxEmail.getCode();
+		this.creationTime = outboxEmail.getCreationTime();
+		this.attempts = outboxEmail.getAttempts();
+		this.nextAttemptTime = outboxEmail.getNextAttemptTime();
+
+		User registrator = outboxEmail.getRegistrator();
+		if (registrator != null) {
+			this.registratorId = registrator.getId();
+			this.registratorName = registrator.getName();
+			this.registratorEmail = registrator.getEmail();
+			this.registratorRank = registrator.getRank();
+		}
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public void setId(long id) {
+		this.id = id;
+	}
+
+	public EmailType getType() {
+		return type;
+	}
+
+	public void setType(EmailType type) {
+		this.type = type;
+	}
+
+	public String getEmail() {
+		return email;
+	}
+
+	public void setEmail(String email) {
+		this.email = email;
+	}
+
+	public String getUserName() {
+		return userName;
+	}
+
+	public void setUserName(String userName) {
+		this.userName = userName;
+	}
+
+	public int getUserId() {
+		return userId;
+	}
+
+	public void setUserId(int userId) {
+		this.userId = userId;
+	}
+
+	public String getCode() {
+		return code;
+	}
+
+	public void setCode(String code) {
+		this.code = code;
+	}
+
+	public Date getCreationTime() {
+		return creationTime;
+	}
+
+	public void setCreationTime(Date creationTime) {
+		this.creationTime = creationTime;
+	}
+
+	public int getAttempts() {
+		return attempts;
+	}
+
+	public void setAttempts(int attempts) {
+		this.attempts = attempts;
+	}
+
+	public Date getNextAttemptTime() {
+		return nextAttemptTime;
+	}
+
+	public void setNextAttemptTime(Date nextAttemptTime) {
+		this.nextAttemptTime = nextAttemptTime;
+	}
+
+	public OutboxEmail toOutboxEmail() {
+		User registrator = null;
+		if (registratorId != null) {
+			registrator = new User(registratorId, registratorName, registratorEmail, null, true, null, registratorRank);
+		}
+
+		return new OutboxEmail(id, type, email, userName, userId, code, registrator, creationTime, attempts, nextAttemptTime);
+	}
+}
@@ -24,6 +24,7 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
@@ -33,13 +34,18 @@ import com.jardoapps.usermodule.containers.PasswordResetToken;
 /**
  * An entity class for representing password reset tokens.
  * <p>
+ * The tokens of a user are cancelled by their user id, and the users who have
+ * valid tokens are read by the valid flag, both using an index.
+ * <p>
  * This class is a part of this library's public API.
  * 
  * @author Jaroslav Brtiš
  *
  */
 @Entity
-@Table(name = "um_password_reset_token")
+@Table(name = "um_password_reset_token", indexes = {
+		@Index(name = "um_password_reset_token_user_idx", columnList = "user_id, date_time"),
+		@Index(name = "um_password_reset_token_valid_idx", columnList = "valid, user_id") })
 public class PasswordResetTokenEntity {
 
 	@Id
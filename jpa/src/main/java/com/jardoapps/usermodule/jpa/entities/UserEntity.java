@@ -25,27 +25,50 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 
 import com.jardoapps.usermodule.User;
 import com.jardoapps.usermodule.containers.UserPassword;
+import com.jardoapps.usermodule.jpa.UserDatabaseModelJpa;
 
 /**
  * An entity class for representing registered users.
  * <p>
+ * The declared indexes cover the lookups by email and name, which always
+ * filter out deleted users, and counting of registered users by registration
+ * date without reading the table rows. User listings ordered by
+ * registration date and id, optionally filtered by rank, read the rows in the
+ * order of an index, so they don't have to sort all matching users.
+ * <p>
+ * The failed log in count and the time of the last failed log in are kept in
+ * the user row by {@link UserDatabaseModelJpa#makeLogInRecord(int, boolean, String)},
+ * so that locked accounts can be detected without reading log in records. The
+ * columns are nullable (null meaning no failures), so they can be added to an
+ * existing table without a default value.
+ * <p>
+ * Ids are allocated from the sequence in blocks of
+ * {@link UserDatabaseModelJpa#BATCH_SIZE}, so that adding users in bulk does
+ * not query the sequence for every user.
+ * <p>
  * This class is a part of this library's public API.
  * 
  * @author Jaroslav Brtiš
  *
  */
 @Entity
-@Table(name = "um_user")
+@Table(name = "um_user", indexes = {
+		@Index(name = "um_user_email_idx", columnList = "email, deleted"),
+		@Index(name = "um_user_name_idx", columnList = "name, deleted"),
+		@Index(name = "um_user_reg_date_idx", columnList = "reg_date, confirmed, deleted"),
+		@Index(name = "um_user_reg_date_id_idx", columnList = "reg_date, id"),
+		@Index(name = "um_user_rank_idx", columnList = "rank, reg_date, id") })
 public class UserEntity {
 
 	@Id
 	@Column(name = "id")
-	@SequenceGenerator(name = "um_user_id_seq", sequenceName = "um_user_id_seq")
+	@SequenceGenerator(name = "um_user_id_seq", sequenceName = "um_user_id_seq", allocationSize = UserDatabaseModelJpa.BATCH_SIZE)
 	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "um_user_id_seq")
 	private int id;
 
@@ -76,6 +99,12 @@ public class UserEntity {
 	@Column(name = "salt")
 	private String passwordSalt;
 
+	@Column(name = "failed_logins")
+	private Integer failedLogInCount;
+
+	@Column(name = "last_failed_login")
+	private Date lastFailedLogInTime;
+
 	public UserEntity() {
 		super();
 	}
@@ -138,6 +167,14 @@ public class UserEntity {
 		return passwordSalt;
 	}
 
+	public Integer getFailedLogInCount() {
+		return failedLogInCount;
+	}
+
+	public Date getLastFailedLogInTime() {
+		return lastFailedLogInTime;
+	}
+
 	public void setId(int id) {
 		this.id = id;
 	}
@@ -178,9 +215,18 @@ public class UserEntity {
 		this.passwordSalt = passwordSalt;
 	}
 
+	public void setFailedLogInCount(Integer failedLogInCount) {
+		this.failedLogInCount = failedLogInCount;
+	}
+
+	public void setLastFailedLogInTime(Date lastFailedLogInTime) {
+		this.lastFailedLogInTime = lastFailedLogInTime;
+	}
+
 	public User toUser() {
 		UserPassword password = new UserPassword(passwordHash, passwordSalt);
-		User result = new User(id, name, email, registrationControlCode, registrationConfirmed, password, rank);
+		int failedLogIns = failedLogInCount != null ? failedLogInCount : 0;
+		User result = new User(id, name, email, registrationControlCode, registrationConfirmed, password, rank, registrationDate, failedLogIns, lastFailedLogInTime);
 		return result;
 	}
 
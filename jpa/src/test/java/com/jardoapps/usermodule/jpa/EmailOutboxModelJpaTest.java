@@ -0,0 +1,229 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule.jpa;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import javax.inject.Inject;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.jardoapps.usermodule.EmailOutboxModel;
+import com.jardoapps.usermodule.EmailSender;
+import com.jardoapps.usermodule.EmailSenderOutboxImpl;
+import com.jardoapps.usermodule.User;
+import com.jardoapps.usermodule.UserDatabaseModel;
+import com.jardoapps.usermodule.UserRanks;
+import com.jardoapps.usermodule.containers.OutboxEmail;
+import com.jardoapps.usermodule.containers.UserPassword;
+import com.jardoapps.usermodule.defines.EmailType;
+import com.jardoapps.usermodule.jpa.config.DatabaseTestConfig;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = DatabaseTestConfig.class)
+public class EmailOutboxModelJpaTest extends UMDatabaseTestCase {
+
+	/**
+	 * Runs the task after the current transaction commits, drops it if the
+	 * transaction rolls back.
+	 */
+	private static final Executor AFTER_COMMIT_EXECUTOR = new Executor() {
+		@Override
+		public void execute(final Runnable task) {
+			if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+				task.run();
+				return;
+			}
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					task.run();
+				}
+			});
+		}
+	};
+
+	@Inject
+	private EmailOutboxModel outboxModel;
+
+	@Inject
+	private UserDatabaseModel databaseModel;
+
+	@Inject
+	private PlatformTransactionManager transactionManager;
+
+	private static Date parseTime(String timeStr) throws ParseException {
+		return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(timeStr);
+	}
+
+	/**
+	 * Adds a user and sends the registration email in one transaction, the
+	 * same way as UserManager.registerUser does when wrapped in a transaction.
+	 */
+	private int registerUser(final EmailSender emailSender, final boolean rollback) {
+		return new TransactionTemplate(transactionManager).execute(new TransactionCallback<Integer>() {
+			@Override
+			public Integer doInTransaction(TransactionStatus status) {
+				User user = new User(0, "carl", "carl@test.com", "code", false, new UserPassword("hash", "salt"), UserRanks.NORMAL_USER);
+				int userId = databaseModel.addUser(user);
+				assertTrue(emailSender.sendRegistrationEmail("carl@test.com", "carl", userId, "code"));
+				if (rollback) {
+					status.setRollbackOnly();
+				}
+				return userId;
+			}
+		});
+	}
+
+	@Test
+	public void testEmailCommittedWithUser() throws Exception {
+		fillDatabase("emailOutboxModelJpaTest/emptyWithUsers.xml");
+
+		EmailSender delegate = Mockito.mock(EmailSender.class);
+		Mockito.when(delegate.sendRegistrationEmail(Mockito.anyString(), Mockito.anyString(), Mockito.anyInt(), Mockito.anyString())).thenReturn(true);
+
+		// long poll interval, so the email is only sent soon if the dispatcher is woken up after the commit
+		EmailSenderOutboxImpl outbox = new EmailSenderOutboxImpl(delegate, outboxModel, 10, 60000L, 3, 1000L);
+		outbox.setAfterCommitExecutor(AFTER_COMMIT_EXECUTOR);
+		try {
+			int userId = registerUser(outbox, false);
+			assertEquals(1, getConnection().getRowCount("um_user"));
+
+			Mockito.verify(delegate, Mockito.timeout(5000)).sendRegistrationEmail("carl@test.com", "carl", userId, "code");
+		} finally {
+			outbox.shutdown();
+		}
+	}
+
+	@Test
+	public void testEmailRolledBackWithUser() throws Exception {
+		fillDatabase("emailOutboxModelJpaTest/emptyWithUsers.xml");
+
+		EmailSender delegate = Mockito.mock(EmailSender.class);
+
+		EmailSenderOutboxImpl outbox = new EmailSenderOutboxImpl(delegate, outboxModel, 10, 60000L, 3, 1000L);
+		outbox.setAfterCommitExecutor(AFTER_COMMIT_EXECUTOR);
+		try {
+			registerUser(outbox, true);
+		} finally {
+			outbox.shutdown();
+		}
+
+		assertEquals(0, getConnection().getRowCount("um_user"));
+		assertEquals(0, outboxModel.getEmailCount());
+		Mockito.verifyZeroInteractions(delegate);
+	}
+
+	@Test
+	public void testAddEmail() throws Exception {
+		fillDatabase("emailOutboxModelJpaTest/empty.xml");
+
+		Date now = new Date();
+		User registrator = new User(1, "john", "john@test.com", null, true, null, UserRanks.ADMIN);
+		OutboxEmail email = new OutboxEmail(0, EmailType.MANUAL_REGISTRATION, "carl@test.com", "carl", 3, "8b1c998cf6efb43824bbab2d8c9b078b",
+				registrator, now, 0, now);
+
+		long id = outboxModel.addEmail(email);
+		assertTrue(id > 0);
+		assertEquals(1, outboxModel.getEmailCount());
+
+		List<OutboxEmail> due = outboxModel.getDueEmails(now, 10);
+		assertEquals(1, due.size());
+
+		OutboxEmail stored = due.get(0);
+		assertEquals(id, stored.getId());
+		assertEquals(EmailType.MANUAL_REGISTRATION, stored.getType());
+		assertEquals("carl@test.com", stored.getEmail());
+		assertEquals("carl", stored.getUserName());
+		assertEquals(3, stored.getUserId());
+		assertEquals("8b1c998cf6efb43824bbab2d8c9b078b", stored.getCode());
+		assertEquals(1, stored.getRegistrator().getId());
+		assertEquals("john", stored.getRegistrator().getName());
+		assertEquals("john@test.com", stored.getRegistrator().getEmail());
+		assertEquals(UserRanks.ADMIN, stored.getRegistrator().getRank());
+		assertEquals(0, stored.getAttempts());
+	}
+
+	@Test
+	public void testClaimEmail() throws Exception {
+		fillDatabase("emailOutboxModelJpaTest/outbox.xml");
+
+		Date nextAttemptTime = parseDate("2013-01-02");
+		assertEquals(true, outboxModel.claimEmail(1, 0, nextAttemptTime));
+
+		// already claimed
+		assertEquals(false, outboxModel.claimEmail(1, 0, nextAttemptTime));
+		assertEquals(false, outboxModel.claimEmail(4, 0, nextAttemptTime));
+
+		List<OutboxEmail> due = outboxModel.getDueEmails(nextAttemptTime, 10);
+		OutboxEmail claimed = due.get(due.size() - 1);
+		assertEquals(1, claimed.getId());
+		assertEquals(1, claimed.getAttempts());
+		assertEquals(nextAttemptTime.getTime(), claimed.getNextAttemptTime().getTime());
+	}
+
+	@Test
+	public void testGetDueEmails() throws Exception {
+		fillDatabase("emailOutboxModelJpaTest/outbox.xml");
+
+		List<OutboxEmail> due = outboxModel.getDueEmails(parseTime("2013-01-01 10:30:00"), 10);
+		assertEquals(2, due.size());
+		assertEquals(3, due.get(0).getId());
+		assertEquals(1, due.get(1).getId());
+		assertNull(due.get(1).getRegistrator());
+
+		due = outboxModel.getDueEmails(parseTime("2013-01-01 12:00:00"), 1);
+		assertEquals(1, due.size());
+		assertEquals(3, due.get(0).getId());
+	}
+
+	@Test
+	public void testGetOldestEmailCreationTime() throws Exception {
+		fillDatabase("emailOutboxModelJpaTest/empty.xml");
+		assertNull(outboxModel.getOldestEmailCreationTime());
+
+		fillDatabase("emailOutboxModelJpaTest/outbox.xml");
+		assertEquals(parseTime("2013-01-01 09:00:00").getTime(), outboxModel.getOldestEmailCreationTime().getTime());
+	}
+
+	@Test
+	public void testRemoveEmail() throws Exception {
+		fillDatabase("emailOutboxModelJpaTest/outbox.xml");
+
+		assertEquals(true, outboxModel.removeEmail(2));
+		assertEquals(false, outboxModel.removeEmail(2));
+		assertEquals(2, outboxModel.getEmailCount());
+	}
+
+}
@@ -0,0 +1,74 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.jpa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import javax.inject.Inject;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import com.jardoapps.usermodule.UserDatabaseModel;
+import com.jardoapps.usermodule.UserManagementPropertiesImpl;
+import com.jardoapps.usermodule.containers.PasswordResetToken;
+import com.jardoapps.usermodule.jpa.config.DatabaseTestConfig;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = DatabaseTestConfig.class)
+public class PasswordResetTokenPurgeJobTest extends UMDatabaseTestCase {
+
+	@Inject
+	private PasswordResetTokenPurgeJob purgeJob;
+
+	@Inject
+	private UserManagementPropertiesImpl properties;
+
+	@Inject
+	private UserDatabaseModel databaseModel;
+
+	@Test
+	public void testPurge() throws Exception {
+		fillDatabase("userDatabaseModelHbnTest/beforeGetNewestPasswordResetToken.xml");
+
+		// tokens created before 2012-10-01 are expired
+		long expirationMillis = System.currentTimeMillis() - parseDate("2012-10-01").getTime();
+		properties.setPasswordResetTokenExpirationMinutes((int) (expirationMillis / 60000));
+
+		purgeJob.setBatchSize(1);
+		purgeJob.setPauseMillis(0);
+
+		// token 1 is canceled, 2 is expired, 4 is canceled
+		assertEquals(3, purgeJob.purge());
+		assertEquals(3, purgeJob.getLastRunRemovedRows());
+		assertEquals(1, getConnection().getRowCount("um_password_reset_token"));
+
+		PasswordResetToken token = databaseModel.getNewestPasswordResetToken("john@test.com");
+		assertNotNull(token);
+		assertEquals("785bb1e5e77a14325fd31ebeae836fff", token.getKey());
+
+		// nothing left to purge
+		assertEquals(0, purgeJob.purge());
+		assertEquals(3, purgeJob.getTotalRemovedRows());
+	}
+
+}
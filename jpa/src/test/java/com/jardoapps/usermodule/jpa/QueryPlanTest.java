@@ -0,0 +1,307 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.jpa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import com.jardoapps.usermodule.EmailOutboxModel;
+import com.jardoapps.usermodule.User;
+import com.jardoapps.usermodule.UserDatabaseModel;
+import com.jardoapps.usermodule.UserRanks;
+import com.jardoapps.usermodule.containers.SocialAccountDetails;
+import com.jardoapps.usermodule.containers.UserFilter;
+import com.jardoapps.usermodule.containers.UserFilter.Order;
+import com.jardoapps.usermodule.containers.UserPassword;
+import com.jardoapps.usermodule.jpa.config.DatabaseTestConfig;
+import com.jardoapps.usermodule.jpa.config.SqlRecorder;
+
+/**
+ * Runs <code>EXPLAIN PLAN</code> on the SQL statements generated for the DAO
+ * queries and fails if any table is read by a full scan. Full scans of
+ * HSQLDB's internal tables (for instance the list of values of an IN
+ * condition) are allowed.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = DatabaseTestConfig.class)
+public class QueryPlanTest extends UMDatabaseTestCase {
+
+	private static final String FULL_SCAN = "access=FULL SCAN";
+
+	@Inject
+	private UserDatabaseModel databaseModel;
+
+	@Inject
+	private DataSource dataSource;
+
+	@Inject
+	private PasswordResetTokenPurgeJob purgeJob;
+
+	@Inject
+	private EmailOutboxModel outboxModel;
+
+	/**
+	 * Returns the names of the tables which are read by a full scan according
+	 * to the plan.
+	 */
+	private static List<String> findFullScans(String plan) {
+		List<String> result = new ArrayList<String>();
+
+		String table = null;
+		for (String line : plan.split("\n")) {
+			line = line.trim();
+			if (line.startsWith("table=")) {
+				table = line.substring("table=".length());
+			} else if (line.startsWith(FULL_SCAN) && table != null && !table.startsWith("SYSTEM_")) {
+				result.add(table);
+			}
+		}
+
+		return result;
+	}
+
+	private String explain(String sql) throws SQLException {
+		StringBuilder result = new StringBuilder();
+		try (Connection connection = dataSource.getConnection();
+				PreparedStatement statement = connection.prepareStatement("EXPLAIN PLAN FOR " + sql);
+				ResultSet resultSet = statement.executeQuery()) {
+			while (resultSet.next()) {
+				result.append(resultSet.getString(1)).append('\n');
+			}
+		}
+		return result.toString();
+	}
+
+	private void assertNoFullScan() throws SQLException {
+		List<String> statements = SqlRecorder.getStatements();
+		assertFalse("No SQL statement recorded.", statements.isEmpty());
+
+		for (String sql : statements) {
+			if (sql.startsWith("insert")) {
+				continue;
+			}
+
+			String plan = explain(sql);
+			assertTrue("Full scan in query: " + sql + "\n" + plan, findFullScans(plan).isEmpty());
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		fillDatabase("userDatabaseModelHbnTest/userList.xml");
+		SqlRecorder.clear();
+	}
+
+	@Test
+	public void testFullScanIsDetected() throws SQLException {
+		// guards against a change in the format of the plan
+		assertEquals(Arrays.asList("UM_USER"), findFullScans(explain("SELECT id FROM um_user WHERE reg_control_code = ?")));
+	}
+
+	@Test
+	public void testCancelTokensForUser() throws SQLException {
+		databaseModel.cancelAllPasswordResetTokens(1);
+		assertNoFullScan();
+	}
+
+	@Test
+	public void testGetUserIdsWithValidTokens() throws SQLException {
+		databaseModel.getUserIdsWithPasswordResetTokens();
+		assertNoFullScan();
+	}
+
+	@Test
+	public void testClaimOutboxEmail() throws SQLException {
+		outboxModel.claimEmail(1, 0, new Date());
+		assertNoFullScan();
+	}
+
+	@Test
+	public void testConfirmRegistration() throws SQLException {
+		databaseModel.confirmUserRegistration("mike@test.com");
+		assertNoFullScan();
+	}
+
+	@Test
+	public void testDeletePurgeableTokens() throws SQLException {
+		purgeJob.purge();
+		assertNoFullScan();
+	}
+
+	@Test
+	public void testDeleteOutboxEmail() throws SQLException {
+		outboxModel.removeEmail(1);
+		assertNoFullScan();
+	}
+
+	@Test
+	public void testDeleteUserEntity() throws SQLException {
+		databaseModel.deleteUser(2);
+		assertNoFullScan();
+	}
+
+	@Test
+	public void testFindDueOutboxEmails() throws SQLException {
+		outboxModel.getDueEmails(new Date(), 50);
+		assertNoFullScan();
+	}
+
+	@Test
+	public void testFindByEmail() throws SQLException {
+		databaseModel.getUserByEmail("john@test.com");
+		assertNoFullScan();
+	}
+
+	@Test
+	public void testFindById() throws SQLException {
+		databaseModel.getUserById(1);
+		assertNoFullScan();
+	}
+
+	@Test
+	public void testFindByName() throws SQLException {
+		databaseModel.getUserByName("john");
+		assertNoFullScan();
+	}
+
+	@Test
+	public void testFindByEmails() throws SQLException {
+		databaseModel.getUsersByEmails(Arrays.asList("john@test.com", "mike@test.com"));
+		assertNoFullScan();
+	}
+
+	@Test
+	public void testFindByIds() throws SQLException {
+		databaseModel.getUsersByIds(Arrays.asList(1, 2));
+		assertNoFullScan();
+	}
+
+	@Test
+	public void testFindPage() throws SQLException {
+		databaseModel.getUsers(0, 10);
+		assertNoFullScan();
+	}
+
+	@Test
+	public void testFindFilteredPage() throws SQLException, ParseException {
+		User after = databaseModel.getUserById(1);
+		Date since = parseDate("2013-01-01");
+		SqlRecorder.clear();
+
+		databaseModel.getUsers(UserFilter.ALL, null, 10);
+		databaseModel.getUsers(UserFilter.ALL.withRank(UserRanks.ADMIN), after, 10);
+		databaseModel.getUsers(UserFilter.ALL.withRegistrationConfirmed(false), after, 10);
+		databaseModel.getUsers(UserFilter.ALL.withRegisteredSince(since).withRegisteredBefore(new Date()), after, 10);
+		assertNoFullScan();
+	}
+
+	@Test
+	public void testFindFilteredPageByRegistrationDate() throws SQLException, ParseException {
+		User after = databaseModel.getUserById(1);
+		UserFilter filter = UserFilter.ALL.withOrder(Order.REGISTRATION_DATE);
+		SqlRecorder.clear();
+
+		databaseModel.getUsers(filter, null, 10);
+		databaseModel.getUsers(filter, after, 10);
+		databaseModel.getUsers(filter.withRank(UserRanks.ADMIN), after, 10);
+		databaseModel.getUsers(filter.withRegistrationConfirmed(false).withRegisteredBefore(new Date()), after, 10);
+		assertNoFullScan();
+	}
+
+	@Test
+	public void testGetNewestToken() throws SQLException {
+		databaseModel.getNewestPasswordResetToken("john@test.com");
+		assertNoFullScan();
+	}
+
+	@Test
+	public void testGetRegisteredUserCount() throws SQLException {
+		databaseModel.getRegisteredUserCount(new Date(0));
+		assertNoFullScan();
+	}
+
+	@Test
+	public void testFindRegisteredEmails() throws SQLException {
+		databaseModel.getRegisteredEmails(Arrays.asList("john@test.com", "carl@test.com"));
+		assertNoFullScan();
+	}
+
+	@Test
+	public void testFindRegisteredNames() throws SQLException {
+		databaseModel.getRegisteredUserNames(Arrays.asList("john", "carl"));
+		assertNoFullScan();
+	}
+
+	@Test
+	public void testGetUserByAccount() throws SQLException {
+		databaseModel.getUserBySocialAccount(new SocialAccountDetails("FCB", "2", "", ""));
+		assertNoFullScan();
+	}
+
+	@Test
+	public void testGetUserIdByEmail() throws SQLException {
+		databaseModel.getUserIdByEmail("john@test.com");
+		assertNoFullScan();
+	}
+
+	@Test
+	public void testGetUserPassword() throws SQLException {
+		databaseModel.getUserPassword(1);
+		assertNoFullScan();
+	}
+
+	@Test
+	public void testIsEmailRegistered() throws SQLException {
+		databaseModel.isEmailRegistered("john@test.com");
+		assertNoFullScan();
+	}
+
+	@Test
+	public void testIsUserNameRegistered() throws SQLException {
+		databaseModel.isUserNameRegistered("john");
+		assertNoFullScan();
+	}
+
+	@Test
+	public void testSetUserPassword() throws SQLException {
+		databaseModel.setUserPassword(1, new UserPassword("hash", "salt"));
+		assertNoFullScan();
+	}
+
+}
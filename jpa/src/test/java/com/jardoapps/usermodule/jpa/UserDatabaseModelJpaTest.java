@@ -18,13 +18,28 @@
 
 package com.jardoapps.usermodule.jpa;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 
 import org.dbunit.DatabaseUnitException;
 import org.dbunit.dataset.IDataSet;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -34,10 +49,15 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import com.jardoapps.usermodule.User;
 import com.jardoapps.usermodule.UserDatabaseModel;
 import com.jardoapps.usermodule.UserRanks;
+import com.jardoapps.usermodule.UserVisitor;
+import com.jardoapps.usermodule.containers.LogInRecord;
 import com.jardoapps.usermodule.containers.PasswordResetToken;
 import com.jardoapps.usermodule.containers.SocialAccountDetails;
+import com.jardoapps.usermodule.containers.UserFilter;
+import com.jardoapps.usermodule.containers.UserFilter.Order;
 import com.jardoapps.usermodule.containers.UserPassword;
 import com.jardoapps.usermodule.jpa.config.DatabaseTestConfig;
+import com.jardoapps.usermodule.jpa.config.SqlRecorder;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration(classes = DatabaseTestConfig.class)
@@ -46,6 +66,49 @@ public class UserDatabaseModelJpaTest extends UMDatabaseTestCase {
 	@Inject
 	private UserDatabaseModel databaseModel;
 
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	private void insertUsers(int firstId, int count) throws Exception {
+		Connection connection = getConnection().getConnection();
+		String sql = "INSERT INTO um_user (id, email, name, confirmed, deleted, rank, reg_date) VALUES (?, ?, ?, true, false, 2, ?)";
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			for (int id = firstId; id < firstId + count; id++) {
+				statement.setInt(1, id);
+				statement.setString(2, "user" + id + "@test.com");
+				statement.setString(3, "user" + id);
+				statement.setTimestamp(4, new Timestamp(0));
+				statement.addBatch();
+			}
+			statement.executeBatch();
+		}
+	}
+
+	private static List<Integer> getIds(List<User> users) {
+		List<Integer> result = new ArrayList<Integer>();
+		for (User user : users) {
+			result.add(user.getId());
+		}
+		return result;
+	}
+
+	/**
+	 * Lists all users matching the filter page by page and returns their ids.
+	 */
+	private List<Integer> getAllIds(UserFilter filter, int pageSize) {
+		List<Integer> result = new ArrayList<Integer>();
+		User after = null;
+		List<User> page;
+		do {
+			page = databaseModel.getUsers(filter, after, pageSize);
+			result.addAll(getIds(page));
+			if (!page.isEmpty()) {
+				after = page.get(page.size() - 1);
+			}
+		} while (page.size() == pageSize);
+		return result;
+	}
+
 	@Test
 	public void testAddPasswordResetToken() throws SQLException, Exception {
 		fillDatabase("userDatabaseModelHbnTest/beforeAddPasswordResetToken.xml");
@@ -75,7 +138,39 @@ public class UserDatabaseModelJpaTest extends UMDatabaseTestCase {
 
 		IDataSet expectedDataSet = loadFlatXmlDataSet("userDatabaseModelHbnTest/afterAddUser.xml");
 
-		assertTableContent(expectedDataSet, "um_user", new String[] { "reg_date" });
+		assertTableContent(expectedDataSet, "um_user", new String[] { "reg_date", "failed_logins", "last_failed_login" });
+	}
+
+	@Test
+	public void testAddUsers() throws SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/beforeSaveUserWithSocialAccount.xml");
+
+		UserPassword password = new UserPassword("ea1baa4cad9d822a51a1aa267a618fb2ac6d5d98a89709a595487ea493a69e90",
+				"7886788cb39bf33c856ef18206a81ce4b498dc5a1a4199abc0cb0fb686eab008");
+
+		// more users than fit into one batch
+		List<User> users = new ArrayList<User>();
+		List<String> emails = new ArrayList<String>();
+		for (int i = 0; i < 2 * UserDatabaseModelJpa.BATCH_SIZE + 1; i++) {
+			users.add(new User(0, "user" + i, "user" + i + "@test.com", "ea587b759f423f0bfadfe7aeba0ee3fe", i % 2 == 0, password, UserRanks.NORMAL_USER));
+			emails.add("user" + i + "@test.com");
+		}
+
+		int[] result = databaseModel.addUsers(users);
+		assertEquals(users.size(), result.length);
+
+		Set<Integer> ids = new HashSet<Integer>();
+		for (int i = 0; i < result.length; i++) {
+			assertTrue(result[i] > 0);
+			assertTrue(ids.add(result[i]));
+
+			User added = databaseModel.getUserById(result[i]);
+			assertEquals("user" + i + "@test.com", added.getEmail());
+			assertEquals(i % 2 == 0, added.isRegistrationConfirmed());
+			assertNotNull(added.getRegistrationDate());
+		}
+
+		assertEquals(new HashSet<String>(emails), databaseModel.getRegisteredEmails(emails));
 	}
 
 	@Test
@@ -87,13 +182,22 @@ public class UserDatabaseModelJpaTest extends UMDatabaseTestCase {
 		assertTableContent(expectedDataSet, "um_password_reset_token", new String[] { "id" });
 	}
 
+	@Test
+	public void testGetUserIdsWithPasswordResetTokens() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/beforeCancelAllPasswordResetTokens.xml");
+		assertEquals(new HashSet<Integer>(Arrays.asList(1, 2)), databaseModel.getUserIdsWithPasswordResetTokens());
+
+		databaseModel.cancelAllPasswordResetTokens(1);
+		assertEquals(Collections.singleton(2), databaseModel.getUserIdsWithPasswordResetTokens());
+	}
+
 	@Test
 	public void testConfirmUserRegistration() throws DatabaseUnitException, SQLException, Exception {
 		fillDatabase("userDatabaseModelHbnTest/beforeConfirmRegistration.xml");
 		databaseModel.confirmUserRegistration("john@test.com");
 
 		IDataSet expectedDataSet = loadFlatXmlDataSet("userDatabaseModelHbnTest/afterConfirmRegistration.xml");
-		assertTableContent(expectedDataSet, "um_user", new String[] {});
+		assertTableContent(expectedDataSet, "um_user", new String[] { "failed_logins", "last_failed_login" });
 	}
 
 	@Test
@@ -107,7 +211,64 @@ public class UserDatabaseModelJpaTest extends UMDatabaseTestCase {
 		assertEquals(false, result);
 
 		IDataSet expectedDataSet = loadFlatXmlDataSet("userDatabaseModelHbnTest/afterDeleteUser.xml");
-		assertTableContent(expectedDataSet, "um_user", new String[] {});
+		assertTableContent(expectedDataSet, "um_user", new String[] { "failed_logins", "last_failed_login" });
+	}
+
+	@Test
+	public void testExportUsers() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/userList.xml");
+
+		final List<User> exported = new ArrayList<User>();
+		int result = databaseModel.exportUsers(new UserVisitor() {
+			@Override
+			public boolean visit(User user) {
+				exported.add(user);
+				return true;
+			}
+		});
+
+		// allan is deleted
+		assertEquals(2, result);
+		assertEquals("john", exported.get(0).getName());
+		assertEquals("mike", exported.get(1).getName());
+		assertEquals("7342f7c8d3d1d68ee7c03ab72b3deac613b837a4c4c07042cbeca974ea7ba218", exported.get(0).getPassword().getHash());
+
+		// stopped by the visitor
+		result = databaseModel.exportUsers(new UserVisitor() {
+			@Override
+			public boolean visit(User user) {
+				return false;
+			}
+		});
+		assertEquals(1, result);
+	}
+
+	@Test
+	public void testExportUsersKeepsPersistenceContextSmall() throws Exception {
+		fillDatabase("userDatabaseModelHbnTest/userList.xml");
+
+		final int count = 3 * UserDatabaseModelJpa.EXPORT_PAGE_SIZE + 10;
+		insertUsers(100, count);
+
+		final int[] maxManagedEntities = new int[1];
+		final int[] lastId = new int[1];
+		int result = databaseModel.exportUsers(new UserVisitor() {
+			@Override
+			public boolean visit(User user) {
+				assertTrue(user.getId() > lastId[0]);
+				lastId[0] = user.getId();
+
+				int managedEntities = entityManager.unwrap(Session.class).getStatistics().getEntityCount();
+				maxManagedEntities[0] = Math.max(maxManagedEntities[0], managedEntities);
+				return true;
+			}
+		});
+
+		assertEquals(count + 2, result);
+		assertEquals(100 + count - 1, lastId[0]);
+		// the visitor runs in the session of the export, which holds at most one page
+		assertTrue(maxManagedEntities[0] > 0);
+		assertTrue("Managed entities: " + maxManagedEntities[0], maxManagedEntities[0] <= UserDatabaseModelJpa.EXPORT_PAGE_SIZE);
 	}
 
 	@Test
@@ -129,7 +290,7 @@ public class UserDatabaseModelJpaTest extends UMDatabaseTestCase {
 		PasswordResetToken result = databaseModel.getNewestPasswordResetToken("non-existing@test.com");
 		assertEquals(null, result);
 
-		// no token for user
+		// only a canceled token for user
 		result = databaseModel.getNewestPasswordResetToken("mike@test.com");
 		assertEquals(null, result);
 
@@ -155,6 +316,24 @@ public class UserDatabaseModelJpaTest extends UMDatabaseTestCase {
 		assertEquals(1, result.getId());
 	}
 
+	@Test
+	public void testGetUserById() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/userList.xml");
+
+		User result = databaseModel.getUserById(10);
+		assertEquals(null, result);
+
+		// deleted user
+		result = databaseModel.getUserById(3);
+		assertEquals(null, result);
+
+		result = databaseModel.getUserById(2);
+		assertNotNull(result);
+		assertEquals("mike@test.com", result.getEmail());
+		assertEquals(false, result.isRegistrationConfirmed());
+		assertNotNull(result.getRegistrationDate());
+	}
+
 	@Test
 	public void testGetUserByName() throws DatabaseUnitException, SQLException, Exception {
 		fillDatabase("userDatabaseModelHbnTest/userList.xml");
@@ -234,6 +413,158 @@ public class UserDatabaseModelJpaTest extends UMDatabaseTestCase {
 		assertEquals("7886788cb39bf33c856ef18206a81ce4b498dc5a1a4199abc0cb0fb686eab008", result.getSalt());
 	}
 
+	@Test
+	public void testGetUsers() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/userList.xml");
+
+		// deleted user 3 is skipped
+		List<User> result = databaseModel.getUsers(0, 10);
+		assertEquals(2, result.size());
+		assertEquals(1, result.get(0).getId());
+		assertEquals(2, result.get(1).getId());
+
+		result = databaseModel.getUsers(0, 1);
+		assertEquals(1, result.size());
+		assertEquals(1, result.get(0).getId());
+
+		result = databaseModel.getUsers(1, 10);
+		assertEquals(1, result.size());
+		assertEquals("mike@test.com", result.get(0).getEmail());
+
+		result = databaseModel.getUsers(2, 10);
+		assertEquals(0, result.size());
+	}
+
+	@Test
+	public void testGetUsersFiltered() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/userFilter.xml");
+
+		// deleted user 3 is skipped
+		assertEquals(Arrays.asList(1, 2, 4, 5), getIds(databaseModel.getUsers(UserFilter.ALL, null, 10)));
+
+		assertEquals(Arrays.asList(1, 2, 5), getIds(databaseModel.getUsers(UserFilter.ALL.withRank(UserRanks.NORMAL_USER), null, 10)));
+		assertEquals(Arrays.asList(2), getIds(databaseModel.getUsers(UserFilter.ALL.withRegistrationConfirmed(false), null, 10)));
+		assertEquals(Arrays.asList(2, 4, 5), getIds(databaseModel.getUsers(UserFilter.ALL.withRegisteredSince(parseDate("2013-01-02")), null, 10)));
+		assertEquals(Arrays.asList(1), getIds(databaseModel.getUsers(UserFilter.ALL.withRegisteredBefore(parseDate("2013-01-02")), null, 10)));
+
+		UserFilter filter = UserFilter.ALL.withRank(UserRanks.NORMAL_USER).withRegistrationConfirmed(true).withRegisteredSince(parseDate("2013-01-02"));
+		assertEquals(Arrays.asList(5), getIds(databaseModel.getUsers(filter, null, 10)));
+		assertEquals(Arrays.asList(5), getIds(databaseModel.getUsers(filter.withOrder(Order.REGISTRATION_DATE), null, 10)));
+	}
+
+	@Test
+	public void testGetUsersPagedById() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/userFilter.xml");
+
+		List<User> result = databaseModel.getUsers(UserFilter.ALL, null, 3);
+		assertEquals(Arrays.asList(1, 2, 4), getIds(result));
+
+		result = databaseModel.getUsers(UserFilter.ALL, result.get(2), 3);
+		assertEquals(Arrays.asList(5), getIds(result));
+
+		assertEquals(Arrays.asList(1, 2, 5), getAllIds(UserFilter.ALL.withRank(UserRanks.NORMAL_USER), 1));
+	}
+
+	@Test
+	public void testGetUsersPagedByRegistrationDate() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/userFilter.xml");
+
+		// users 4 and 5 were registered at the same time, so they are ordered by id
+		UserFilter filter = UserFilter.ALL.withOrder(Order.REGISTRATION_DATE);
+		assertEquals(Arrays.asList(1, 4, 5, 2), getIds(databaseModel.getUsers(filter, null, 10)));
+		assertEquals(Arrays.asList(1, 4, 5, 2), getAllIds(filter, 1));
+		assertEquals(Arrays.asList(1, 4, 5, 2), getAllIds(filter, 2));
+
+		filter = filter.withRegisteredSince(parseDate("2013-01-02"));
+		assertEquals(Arrays.asList(4, 5, 2), getAllIds(filter, 1));
+
+		filter = filter.withRegisteredBefore(parseDate("2013-01-03"));
+		assertEquals(Arrays.asList(4, 5), getAllIds(filter, 1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testGetUsersPagedByRegistrationDateAfterUserWithoutDate() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/userFilter.xml");
+
+		User after = new User(1, "john", "john@test.com", null, true, null, UserRanks.NORMAL_USER);
+		assertEquals(Arrays.asList(2, 4), getIds(databaseModel.getUsers(UserFilter.ALL, after, 2)));
+
+		databaseModel.getUsers(UserFilter.ALL.withOrder(Order.REGISTRATION_DATE), after, 2);
+	}
+
+	@Test
+	public void testGetUsersByEmails() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/userList.xml");
+
+		// allan is deleted
+		Map<String, User> result = databaseModel.getUsersByEmails(Arrays.asList("john@test.com", "allan@test.com", "non-existing@test.com"));
+		assertEquals(1, result.size());
+		assertEquals(1, result.get("john@test.com").getId());
+		assertEquals("john", result.get("john@test.com").getName());
+
+		assertEquals(0, databaseModel.getUsersByEmails(Collections.<String> emptyList()).size());
+	}
+
+	@Test
+	public void testGetUsersByIds() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/userList.xml");
+
+		// user 3 is deleted
+		Map<Integer, User> result = databaseModel.getUsersByIds(Arrays.asList(1, 2, 3, 4));
+		assertEquals(2, result.size());
+		assertEquals("john@test.com", result.get(1).getEmail());
+		assertEquals("mike@test.com", result.get(2).getEmail());
+
+		assertEquals(0, databaseModel.getUsersByIds(Collections.<Integer> emptyList()).size());
+	}
+
+	@Test
+	public void testGetUsersByIdsInChunks() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/userList.xml");
+
+		List<Integer> userIds = new ArrayList<Integer>();
+		for (int i = 0; i < UserDatabaseModelJpa.MAX_IN_LIST_SIZE + 10; i++) {
+			userIds.add(1000 + i);
+		}
+		userIds.add(2);
+
+		Map<Integer, User> result = databaseModel.getUsersByIds(userIds);
+		assertEquals(Collections.singleton(2), result.keySet());
+	}
+
+	@Test
+	public void testGetRegisteredEmails() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/userList.xml");
+
+		// allan is deleted
+		Set<String> result = databaseModel.getRegisteredEmails(Arrays.asList("john@test.com", "mike@test.com", "allan@test.com", "non-existing@test.com"));
+		assertEquals(new HashSet<String>(Arrays.asList("john@test.com", "mike@test.com")), result);
+
+		result = databaseModel.getRegisteredEmails(Collections.<String> emptyList());
+		assertEquals(0, result.size());
+	}
+
+	@Test
+	public void testGetRegisteredEmailsInChunks() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/userList.xml");
+
+		List<String> emails = new ArrayList<String>();
+		for (int i = 0; i < UserDatabaseModelJpa.MAX_IN_LIST_SIZE + 10; i++) {
+			emails.add("non-existing" + i + "@test.com");
+		}
+		emails.add("john@test.com");
+
+		assertEquals(Collections.singleton("john@test.com"), databaseModel.getRegisteredEmails(emails));
+	}
+
+	@Test
+	public void testGetRegisteredUserNames() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/userList.xml");
+
+		Set<String> result = databaseModel.getRegisteredUserNames(Arrays.asList("john", "mike", "allan", "non-existing"));
+		assertEquals(new HashSet<String>(Arrays.asList("john", "mike")), result);
+	}
+
 	@Test
 	public void testIsEmailRegistered() throws DatabaseUnitException, SQLException, Exception {
 		fillDatabase("userDatabaseModelHbnTest/userList.xml");
@@ -283,6 +614,108 @@ public class UserDatabaseModelJpaTest extends UMDatabaseTestCase {
 		assertTableContent(expectedDataSet, "um_login_record", new String[] { "date_time", "id" });
 	}
 
+	@Test
+	public void testMakeLogInRecords() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/beforeMakeLogInRecord.xml");
+
+		LogInRecord failed = new LogInRecord(1, false, "0000:0000:0000:0000:0000:0000:192.168.255.255", new Date());
+		LogInRecord successful = new LogInRecord(2, true, "195.210.29.1", new Date());
+
+		boolean result = databaseModel.makeLogInRecords(Arrays.asList(failed, successful));
+		assertEquals(true, result);
+
+		IDataSet expectedDataSet = loadFlatXmlDataSet("userDatabaseModelHbnTest/afterMakeLogInRecord.xml");
+		assertTableContent(expectedDataSet, "um_login_record", new String[] { "date_time", "id" });
+	}
+
+	@Test
+	public void testRecordSuccessfulLogIn() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/beforeRecordSuccessfulLogIn.xml");
+
+		boolean result = databaseModel.recordSuccessfulLogIn(1, "195.210.29.1");
+		assertEquals(true, result);
+
+		IDataSet expectedDataSet = loadFlatXmlDataSet("userDatabaseModelHbnTest/afterRecordSuccessfulLogIn.xml");
+		assertTableContent(expectedDataSet, "um_login_record", new String[] { "date_time", "id" });
+
+		expectedDataSet = loadFlatXmlDataSet("userDatabaseModelHbnTest/afterCancelAllPasswordResetTokens.xml");
+		assertTableContent(expectedDataSet, "um_password_reset_token", new String[] { "id" });
+
+		assertEquals(0, databaseModel.getUserById(1).getFailedLogInCount());
+	}
+
+	@Test
+	public void testRecordSuccessfulLogInCommitsOnce() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/beforeRecordSuccessfulLogIn.xml");
+
+		Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+		assertTrue("Statistics are disabled.", statistics.isStatisticsEnabled());
+		statistics.clear();
+		SqlRecorder.clear();
+
+		databaseModel.recordSuccessfulLogIn(1, "195.210.29.1");
+
+		assertEquals(1, statistics.getTransactionCount());
+		assertEquals(1, statistics.getSuccessfulTransactionCount());
+
+		// both updates are executed before the insert, which is flushed by the commit
+		List<String> statements = SqlRecorder.getStatements();
+		List<String> modifications = new ArrayList<String>();
+		for (String sql : statements) {
+			if (sql.startsWith("update") || sql.startsWith("insert")) {
+				modifications.add(sql.substring(0, sql.indexOf(' ', sql.indexOf(' ') + 1)));
+			}
+		}
+		assertEquals(Arrays.asList("update um_user", "update um_password_reset_token", "insert into"), modifications);
+	}
+
+	@Test
+	public void testMakeLogInRecordUpdatesFailedLogInCount() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/beforeMakeLogInRecord.xml");
+
+		assertEquals(0, databaseModel.getUserById(1).getFailedLogInCount());
+		assertEquals(null, databaseModel.getUserById(1).getLastFailedLogInTime());
+
+		databaseModel.makeLogInRecord(1, false, "195.210.29.1");
+		databaseModel.makeLogInRecord(1, false, "195.210.29.1");
+
+		User user = databaseModel.getUserById(1);
+		assertEquals(2, user.getFailedLogInCount());
+		assertNotNull(user.getLastFailedLogInTime());
+		assertEquals(0, databaseModel.getUserById(2).getFailedLogInCount());
+
+		databaseModel.makeLogInRecord(1, true, "195.210.29.1");
+
+		user = databaseModel.getUserById(1);
+		assertEquals(0, user.getFailedLogInCount());
+		assertNotNull(user.getLastFailedLogInTime());
+	}
+
+	@Test
+	public void testMakeLogInRecordsUpdatesFailedLogInCount() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/beforeMakeLogInRecord.xml");
+		databaseModel.makeLogInRecord(2, false, "195.210.29.1");
+
+		Date lastFailure = parseDate("2014-01-01 12:00:00");
+		List<LogInRecord> records = Arrays.asList(
+				new LogInRecord(1, false, "195.210.29.1", parseDate("2014-01-01 10:00:00")),
+				new LogInRecord(2, true, "195.210.29.1", parseDate("2014-01-01 10:00:00")),
+				new LogInRecord(1, false, "195.210.29.1", lastFailure),
+				new LogInRecord(2, false, "195.210.29.1", lastFailure));
+
+		boolean result = databaseModel.makeLogInRecords(records);
+		assertEquals(true, result);
+
+		User user = databaseModel.getUserById(1);
+		assertEquals(2, user.getFailedLogInCount());
+		assertEquals(lastFailure.getTime(), user.getLastFailedLogInTime().getTime());
+
+		// the failure made before the success is not counted
+		user = databaseModel.getUserById(2);
+		assertEquals(1, user.getFailedLogInCount());
+		assertEquals(lastFailure.getTime(), user.getLastFailedLogInTime().getTime());
+	}
+
 	@Test
 	public void testSaveUserWithSocialAccount() throws Exception {
 		fillDatabase("userDatabaseModelHbnTest/beforeSaveUserWithSocialAccount.xml");
@@ -291,11 +724,15 @@ public class UserDatabaseModelJpaTest extends UMDatabaseTestCase {
 		SocialAccountDetails details = new SocialAccountDetails("GHB", "2", "", "");
 
 		int result = databaseModel.saveUserWithSocialAccount(user, details);
-		assertEquals(1, result);
+		assertTrue(result > 0);
+
+		// the ids come from sequences used by other tests too, so they are checked separately
+		assertEquals(result, databaseModel.getUserByEmail("mike@test.com").getId());
+		assertEquals(result, databaseModel.getUserBySocialAccount(details).getId());
 
 		IDataSet expectedDataSet = loadFlatXmlDataSet("userDatabaseModelHbnTest/afterSaveUserWithSocialAccount.xml");
-		assertTableContent(expectedDataSet, "um_user", new String[] { "reg_date", "reg_control_code", "password", "salt" });
-		assertTableContent(expectedDataSet, "um_social_account", null);
+		assertTableContent(expectedDataSet, "um_user", new String[] { "id", "reg_date", "reg_control_code", "password", "salt", "failed_logins", "last_failed_login" });
+		assertTableContent(expectedDataSet, "um_social_account", new String[] { "id", "user_id" });
 	}
 	
 	@Test
@@ -313,7 +750,7 @@ public class UserDatabaseModelJpaTest extends UMDatabaseTestCase {
 		assertEquals(true, result);
 
 		IDataSet expectedDataSet = loadFlatXmlDataSet("userDatabaseModelHbnTest/afterSetUserPassword.xml");
-		assertTableContent(expectedDataSet, "um_user", new String[] {});
+		assertTableContent(expectedDataSet, "um_user", new String[] { "failed_logins", "last_failed_login" });
 	}
 
 }
@@ -0,0 +1,148 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.jpa;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import com.jardoapps.usermodule.User;
+import com.jardoapps.usermodule.UserDatabaseModel;
+import com.jardoapps.usermodule.containers.UserFilter;
+import com.jardoapps.usermodule.containers.UserFilter.Order;
+import com.jardoapps.usermodule.jpa.config.DatabaseTestConfig;
+import com.jardoapps.usermodule.jpa.config.SqlRecorder;
+
+/**
+ * Compares the time it takes to read the first and the 10,000th page of users
+ * by {@link UserDatabaseModel#getUsers(UserFilter, User, int)} (keyset
+ * pagination) with reading the same pages by <code>OFFSET</code>. It uses the
+ * in-memory test database (HSQLDB), which reads rows in the order of an index
+ * only for the primary key or after an equality condition, so the listing
+ * ordered by registration date without a rank filter sorts all remaining
+ * users there. It is not run by the build, run its main method manually.
+ */
+public class UserListingBenchmark {
+
+	private static final int PAGE_SIZE = 20;
+
+	private static final int DEEP_PAGE = 10000;
+
+	private static final int USER_COUNT = PAGE_SIZE * (DEEP_PAGE + 1);
+
+	private static final int ITERATIONS = 20;
+
+	private static final int ROUNDS = 3;
+
+	private static final long FIRST_REG_DATE = 1356998400000L;
+
+	private static final String OFFSET_SQL = "SELECT id, email, name, reg_date FROM um_user WHERE deleted = false ORDER BY id LIMIT ? OFFSET ?";
+
+	/** Prevents the JIT from removing the measured code. */
+	private static long sink;
+
+	private static Timestamp getRegistrationDate(int userId) {
+		// a few users share each registration date
+		return new Timestamp(FIRST_REG_DATE + userId / 4 * 1000L);
+	}
+
+	private static void insertUsers(DataSource dataSource) throws SQLException {
+		String sql = "INSERT INTO um_user (id, email, name, confirmed, deleted, rank, reg_date) VALUES (?, ?, ?, true, false, 200, ?)";
+		try (Connection connection = dataSource.getConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
+			for (int id = 1; id <= USER_COUNT; id++) {
+				statement.setInt(1, id);
+				statement.setString(2, "user" + id + "@test.com");
+				statement.setString(3, "user" + id);
+				statement.setTimestamp(4, getRegistrationDate(id));
+				statement.addBatch();
+				if (id % 1000 == 0 || id == USER_COUNT) {
+					statement.executeBatch();
+				}
+			}
+		}
+	}
+
+	private static void measurePage(UserDatabaseModel databaseModel, UserFilter filter, User after, String name) {
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			List<User> page = databaseModel.getUsers(filter, after, PAGE_SIZE);
+			sink += page.get(0).getId();
+		}
+		print(name, System.nanoTime() - start);
+	}
+
+	private static void measureKeyset(UserDatabaseModel databaseModel, UserFilter filter, User after, String name) {
+		measurePage(databaseModel, filter, null, name + ", page 1");
+		measurePage(databaseModel, filter, after, name + ", page " + DEEP_PAGE);
+	}
+
+	private static void measureOffset(DataSource dataSource, int offset, String name) throws SQLException {
+		long start = System.nanoTime();
+		try (Connection connection = dataSource.getConnection(); PreparedStatement statement = connection.prepareStatement(OFFSET_SQL)) {
+			for (int i = 0; i < ITERATIONS; i++) {
+				statement.setInt(1, PAGE_SIZE);
+				statement.setInt(2, offset);
+				try (ResultSet resultSet = statement.executeQuery()) {
+					resultSet.next();
+					sink += resultSet.getInt(1);
+				}
+			}
+		}
+		print(name, System.nanoTime() - start);
+	}
+
+	private static void print(String name, long nanos) {
+		System.out.printf("%-29s | %10.3f%n", name, nanos / 1e6 / ITERATIONS);
+	}
+
+	public static void main(String[] args) throws SQLException {
+		try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(DatabaseTestConfig.class)) {
+			UserDatabaseModel databaseModel = context.getBean(UserDatabaseModel.class);
+			DataSource dataSource = context.getBean(DataSource.class);
+
+			insertUsers(dataSource);
+
+			// last user of the page preceding the deep page, the same for all orders
+			int afterId = PAGE_SIZE * (DEEP_PAGE - 1);
+			User after = new User(afterId, "user" + afterId, "user" + afterId + "@test.com", null, true, null, 200, getRegistrationDate(afterId));
+
+			UserFilter byDate = UserFilter.ALL.withOrder(Order.REGISTRATION_DATE);
+
+			System.out.println("query                         | ms/page");
+			for (int round = 0; round < ROUNDS; round++) {
+				measureKeyset(databaseModel, UserFilter.ALL, after, "keyset id");
+				measureKeyset(databaseModel, byDate.withRank(200), after, "keyset rank, date");
+				measureKeyset(databaseModel, byDate, after, "keyset date");
+				measureOffset(dataSource, 0, "offset id, page 1");
+				measureOffset(dataSource, PAGE_SIZE * (DEEP_PAGE - 1), "offset id, page " + DEEP_PAGE);
+				SqlRecorder.clear();
+			}
+
+			System.out.println("(" + sink + ")");
+		}
+	}
+
+}
@@ -6,9 +6,15 @@ import org.springframework.context.annotation.PropertySource;
 import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
+import com.jardoapps.usermodule.EmailOutboxModel;
 import com.jardoapps.usermodule.UserDatabaseModel;
+import com.jardoapps.usermodule.UserManagementPropertiesImpl;
+import com.jardoapps.usermodule.jpa.EmailOutboxModelJpa;
+import com.jardoapps.usermodule.jpa.PasswordResetTokenPurgeJob;
+import com.jardoapps.usermodule.jpa.PasswordResetTokenPurgeModel;
 import com.jardoapps.usermodule.jpa.UserDatabaseModelJpa;
 import com.jardoapps.usermodule.jpa.dao.LogInRecordEntityDao;
+import com.jardoapps.usermodule.jpa.dao.OutboxEmailEntityDao;
 import com.jardoapps.usermodule.jpa.dao.PasswordResetTokenEntityDao;
 import com.jardoapps.usermodule.jpa.dao.SocialAccountDao;
 import com.jardoapps.usermodule.jpa.dao.UserEntityDao;
@@ -29,11 +35,36 @@ public class DatabaseTestConfig {
 		return new UserDatabaseModelJpa();
 	}
 
+	@Bean
+	public EmailOutboxModel getEmailOutboxModel() {
+		return new EmailOutboxModelJpa();
+	}
+
+	@Bean
+	public UserManagementPropertiesImpl getUserManagementProperties() {
+		return new UserManagementPropertiesImpl();
+	}
+
+	@Bean
+	public PasswordResetTokenPurgeJob getPasswordResetTokenPurgeJob(UserManagementPropertiesImpl properties) {
+		return new PasswordResetTokenPurgeJob(properties);
+	}
+
+	@Bean
+	public PasswordResetTokenPurgeModel getPasswordResetTokenPurgeModel() {
+		return new PasswordResetTokenPurgeModel();
+	}
+
 	@Bean
 	public LogInRecordEntityDao getLogInRecordEntityDao() {
 		return new LogInRecordEntityDao();
 	}
 
+	@Bean
+	public OutboxEmailEntityDao getOutboxEmailEntityDao() {
+		return new OutboxEmailEntityDao();
+	}
+
 	@Bean
 	public PasswordResetTokenEntityDao getPasswordResetTokenEntityDao() {
 		return new PasswordResetTokenEntityDao();
@@ -32,7 +32,9 @@ public class DatasourceConfig {
 	@DependsOn({ DATASOURCE_BEAN_NAME })
 	public EntityManagerFactory getEntityManagerFactory(@Qualifier(DATASOURCE_BEAN_NAME) DataSource dataSource,
 			@Value("#{'${jdbc.packagesToScan}'.split(',')}") String[] packagesToScan, @Value("${hibernate.dialect}") String dialect, @Value("${hibernate.hbm2ddl.auto}") String ddl,
-			@Value("${hibernate.default_schema:}") String defaultSchema, @Value("${jdbc.extraMappings:}") String extraMappings) {
+			@Value("${hibernate.default_schema:}") String defaultSchema, @Value("${jdbc.extraMappings:}") String extraMappings,
+			@Value("${hibernate.session_factory.statement_inspector:}") String statementInspector, @Value("${hibernate.jdbc.batch_size:}") String batchSize,
+			@Value("${hibernate.generate_statistics:}") String generateStatistics) {
 		HibernateJpaVendorAdapter vendorAdapter = new HibernateJpaVendorAdapter();
 		vendorAdapter.setGenerateDdl(true);
 
@@ -52,6 +54,15 @@ public class DatasourceConfig {
 		if (defaultSchema != null) {
 			props.put("hibernate.default_schema", defaultSchema);
 		}
+		if (!StringUtils.isEmpty(statementInspector)) {
+			props.put("hibernate.session_factory.statement_inspector", statementInspector);
+		}
+		if (!StringUtils.isEmpty(batchSize)) {
+			props.put("hibernate.jdbc.batch_size", batchSize);
+		}
+		if (!StringUtils.isEmpty(generateStatistics)) {
+			props.put("hibernate.generate_statistics", generateStatistics);
+		}
 		factory.setJpaProperties(props);
 
 		LOGGER.debug("Packages to scan: {}", (Object[]) packagesToScan);
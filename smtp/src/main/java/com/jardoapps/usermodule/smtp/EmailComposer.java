@@ -0,0 +1,59 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule.smtp;
+
+import java.io.Serializable;
+
+import com.jardoapps.usermodule.EmailSender;
+import com.jardoapps.usermodule.User;
+import com.jardoapps.usermodule.defines.EmailType;
+
+/**
+ * This interface is used by {@link SmtpEmailSender} to create the content of
+ * the emails. Its arguments are those of the corresponding
+ * {@link EmailSender} method.
+ * <p>
+ * Implementations must be thread safe.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public interface EmailComposer extends Serializable {
+
+	/**
+	 * Creates the content of an email.
+	 *
+	 * @param type
+	 *            type of the email
+	 * @param userName
+	 *            name of the recipient, null for lost password emails
+	 * @param userId
+	 *            id of the recipient, 0 for lost password emails
+	 * @param code
+	 *            registration control code, or password reset token key for
+	 *            lost password emails
+	 * @param registrator
+	 *            user who registered the recipient, null for all emails except
+	 *            manual registration emails
+	 * @return content of the email
+	 */
+	EmailContent compose(EmailType type, String userName, int userId, String code, User registrator);
+
+}
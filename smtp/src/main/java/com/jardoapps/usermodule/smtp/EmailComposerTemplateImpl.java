@@ -0,0 +1,134 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.smtp;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+
+import com.jardoapps.usermodule.User;
+import com.jardoapps.usermodule.defines.EmailType;
+
+/**
+ * An {@link EmailComposer} which creates the emails from
+ * {@link EmailTemplate templates}, one subject template and one body template
+ * per {@link EmailType}. The templates are parsed when they are set, and each
+ * thread renders them into its own reusable buffer, so composing an email
+ * only allocates the resulting strings.
+ * <p>
+ * The templates should be set before the composer is used. Composing an email
+ * of a type without templates throws {@link IllegalStateException}.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class EmailComposerTemplateImpl implements EmailComposer {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Buffers which grew larger than this are not kept for reuse.
+	 */
+	private static final int MAX_BUFFER_CAPACITY = 64 * 1024;
+
+	private final EmailTemplate[] subjectTemplates = new EmailTemplate[EmailType.values().length];
+
+	private final EmailTemplate[] bodyTemplates = new EmailTemplate[EmailType.values().length];
+
+	private transient ThreadLocal<StringBuilder> buffers;
+
+	private void init() {
+		buffers = new ThreadLocal<StringBuilder>() {
+			@Override
+			protected StringBuilder initialValue() {
+				return new StringBuilder(1024);
+			}
+		};
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		init();
+	}
+
+	private String render(EmailTemplate template, String userName, int userId, String code, User registrator) {
+		StringBuilder buffer = buffers.get();
+		buffer.setLength(0);
+
+		template.render(buffer, userName, userId, code, registrator);
+		String result = buffer.toString();
+
+		if (buffer.capacity() > MAX_BUFFER_CAPACITY) {
+			buffers.remove();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Sets the templates for emails of the given type.
+	 *
+	 * @param type
+	 *            type of the emails
+	 * @param subject
+	 *            subject template
+	 * @param body
+	 *            body template
+	 * @throws IllegalArgumentException
+	 *             if any of the templates is invalid
+	 * @see EmailTemplate
+	 */
+	public void setTemplates(EmailType type, String subject, String body) {
+		setTemplates(type, new EmailTemplate(subject), new EmailTemplate(body));
+	}
+
+	/**
+	 * Sets the templates for emails of the given type.
+	 *
+	 * @param type
+	 *            type of the emails
+	 * @param subject
+	 *            subject template
+	 * @param body
+	 *            body template
+	 */
+	public void setTemplates(EmailType type, EmailTemplate subject, EmailTemplate body) {
+		if (type == null || subject == null || body == null) {
+			throw new IllegalArgumentException("Email type and templates cannot be null.");
+		}
+
+		subjectTemplates[type.ordinal()] = subject;
+		bodyTemplates[type.ordinal()] = body;
+	}
+
+	@Override
+	public EmailContent compose(EmailType type, String userName, int userId, String code, User registrator) {
+		EmailTemplate subject = subjectTemplates[type.ordinal()];
+		EmailTemplate body = bodyTemplates[type.ordinal()];
+		if (subject == null || body == null) {
+			throw new IllegalStateException("No templates for " + type + " emails.");
+		}
+
+		return new EmailContent(render(subject, userName, userId, code, registrator), render(body, userName, userId, code, registrator));
+	}
+
+	public EmailComposerTemplateImpl() {
+		init();
+	}
+
+}
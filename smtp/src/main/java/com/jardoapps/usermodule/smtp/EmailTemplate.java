@@ -0,0 +1,213 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.smtp;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.jardoapps.usermodule.User;
+
+/**
+ * A text template with placeholders written as <code>${name}</code>. The
+ * template is parsed once, when it is created, into an array of literal
+ * segments and an array of placeholders between them, so rendering only
+ * appends them to a buffer. Two dollar signs (<code>$$</code>) produce a
+ * literal dollar sign.
+ * <p>
+ * Supported placeholders are listed in {@link Placeholder}. Placeholders whose
+ * value is null (for instance the registrator of a self registered user) are
+ * rendered as empty strings.
+ * <p>
+ * Instances of this class are immutable and thread safe.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class EmailTemplate implements Serializable {
+
+	/**
+	 * Values which can be inserted into a template.
+	 */
+	public enum Placeholder {
+
+		/** <code>${userName}</code> - name of the recipient */
+		USER_NAME("userName"),
+
+		/** <code>${userId}</code> - id of the recipient */
+		USER_ID("userId"),
+
+		/** <code>${code}</code> - registration control code */
+		CODE("code"),
+
+		/**
+		 * <code>${tokenKey}</code> - password reset token key, the same value
+		 * as <code>${code}</code>
+		 */
+		TOKEN_KEY("tokenKey"),
+
+		/** <code>${registratorName}</code> - name of the registrator */
+		REGISTRATOR_NAME("registratorName"),
+
+		/** <code>${registratorEmail}</code> - email of the registrator */
+		REGISTRATOR_EMAIL("registratorEmail");
+
+		private final String name;
+
+		public String getName() {
+			return name;
+		}
+
+		private Placeholder(String name) {
+			this.name = name;
+		}
+	}
+
+	private static final long serialVersionUID = 1L;
+
+	private final String source;
+
+	/**
+	 * Literal segments, one more than placeholders. The placeholder with index
+	 * <code>i</code> goes between segments <code>i</code> and
+	 * <code>i + 1</code>.
+	 */
+	private final String[] segments;
+
+	private final Placeholder[] placeholders;
+
+	private final int literalLength;
+
+	private static Placeholder findPlaceholder(String name) {
+		for (Placeholder placeholder : Placeholder.values()) {
+			if (placeholder.getName().equals(name)) {
+				return placeholder;
+			}
+		}
+		throw new IllegalArgumentException("Unknown template placeholder: ${" + name + "}");
+	}
+
+	private static void appendNullable(StringBuilder out, String value) {
+		if (value != null) {
+			out.append(value);
+		}
+	}
+
+	/**
+	 * Appends the rendered template to the given buffer.
+	 *
+	 * @param out
+	 *            buffer to append to
+	 * @param userName
+	 *            name of the recipient
+	 * @param userId
+	 *            id of the recipient
+	 * @param code
+	 *            registration control code or password reset token key
+	 * @param registrator
+	 *            user who registered the recipient, can be null
+	 */
+	public void render(StringBuilder out, String userName, int userId, String code, User registrator) {
+		out.ensureCapacity(out.length() + literalLength + 64);
+
+		for (int i = 0; i < placeholders.length; i++) {
+			out.append(segments[i]);
+
+			switch (placeholders[i]) {
+			case USER_NAME:
+				appendNullable(out, userName);
+				break;
+			case USER_ID:
+				out.append(userId);
+				break;
+			case CODE:
+			case TOKEN_KEY:
+				appendNullable(out, code);
+				break;
+			case REGISTRATOR_NAME:
+				appendNullable(out, registrator != null ? registrator.getName() : null);
+				break;
+			case REGISTRATOR_EMAIL:
+				appendNullable(out, registrator != null ? registrator.getEmail() : null);
+				break;
+			}
+		}
+
+		out.append(segments[placeholders.length]);
+	}
+
+	/**
+	 * Returns the text from which this template was parsed.
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * Parses the template.
+	 *
+	 * @param source
+	 *            template text
+	 * @throws IllegalArgumentException
+	 *             if the template contains an unknown or unterminated
+	 *             placeholder
+	 */
+	public EmailTemplate(String source) {
+		if (source == null) {
+			throw new IllegalArgumentException("Template cannot be null.");
+		}
+
+		List<String> segmentList = new ArrayList<String>();
+		List<Placeholder> placeholderList = new ArrayList<Placeholder>();
+		StringBuilder segment = new StringBuilder();
+		int length = 0;
+
+		int pos = 0;
+		while (pos < source.length()) {
+			char c = source.charAt(pos);
+
+			if (c == '$' && source.startsWith("$$", pos)) {
+				segment.append('$');
+				pos += 2;
+			} else if (c == '$' && source.startsWith("${", pos)) {
+				int end = source.indexOf('}', pos);
+				if (end < 0) {
+					throw new IllegalArgumentException("Unterminated template placeholder at position " + pos + ".");
+				}
+				placeholderList.add(findPlaceholder(source.substring(pos + 2, end)));
+				segmentList.add(segment.toString());
+				length += segment.length();
+				segment.setLength(0);
+				pos = end + 1;
+			} else {
+				segment.append(c);
+				pos++;
+			}
+		}
+
+		segmentList.add(segment.toString());
+		length += segment.length();
+
+		this.source = source;
+		this.segments = segmentList.toArray(new String[segmentList.size()]);
+		this.placeholders = placeholderList.toArray(new Placeholder[placeholderList.size()]);
+		this.literalLength = length;
+	}
+
+}
@@ -0,0 +1,398 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule.smtp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * A persistent connection to an SMTP server, which can send any number of
+ * messages. If the server advertises the PIPELINING extension, the envelope
+ * commands of a message are sent together and their replies are read
+ * afterwards, which saves two round trips per message.
+ * <p>
+ * If configured, the connection is encrypted by STARTTLS and authenticated by
+ * AUTH PLAIN or, if the server does not support it, AUTH LOGIN, before any
+ * message is sent. Credentials are never sent over an unencrypted connection.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+class SmtpConnection implements Closeable {
+
+	private static final Charset ASCII = StandardCharsets.US_ASCII;
+
+	private static final String CRLF = "\r\n";
+
+	private Socket socket;
+
+	private BufferedReader reader;
+
+	private OutputStream output;
+
+	private boolean encrypted;
+
+	private boolean pipelining;
+
+	private boolean startTlsSupported;
+
+	// space separated and surrounded mechanism names, like " PLAIN LOGIN "
+	private String authMechanisms = " ";
+
+	private int sentMessages;
+
+	private long lastUsedMillis;
+
+	private String lastReply;
+
+	private static void closeQuietly(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// nothing to do
+		}
+	}
+
+	private static String base64(String value) {
+		StringBuilder result = new StringBuilder();
+		SmtpEmailSender.appendBase64(result, value.getBytes(StandardCharsets.UTF_8), 0);
+		return result.toString();
+	}
+
+	private void setSocket(Socket socket) throws IOException {
+		this.socket = socket;
+		this.reader = new BufferedReader(new InputStreamReader(new BufferedInputStream(socket.getInputStream()), ASCII));
+		this.output = new BufferedOutputStream(socket.getOutputStream());
+	}
+
+	private int readReply() throws IOException {
+		StringBuilder text = new StringBuilder();
+		while (true) {
+			String line = reader.readLine();
+			if (line == null) {
+				throw new EOFException("Connection closed by the SMTP server.");
+			}
+			if (line.length() < 3) {
+				throw new IOException("Invalid SMTP reply: " + line);
+			}
+
+			text.append(line).append('\n');
+
+			// continuation lines have a dash after the code
+			if (line.length() == 3 || line.charAt(3) != '-') {
+				lastReply = text.toString().trim();
+				try {
+					return Integer.parseInt(line.substring(0, 3));
+				} catch (NumberFormatException e) {
+					throw new IOException("Invalid SMTP reply: " + line);
+				}
+			}
+		}
+	}
+
+	private void write(String line) throws IOException {
+		output.write(line.getBytes(ASCII));
+		output.write(CRLF.getBytes(ASCII));
+	}
+
+	private void check(int replyCode, int expectedClass, String command) throws SmtpException {
+		if (replyCode / 100 != expectedClass) {
+			throw new SmtpException("SMTP server rejected " + command + ": " + lastReply, replyCode);
+		}
+	}
+
+	/**
+	 * Sends EHLO and reads the extensions supported by the server.
+	 *
+	 * @return false if the server does not support ESMTP
+	 */
+	private boolean ehlo(String localHostName) throws IOException {
+		write("EHLO " + localHostName);
+		output.flush();
+
+		pipelining = false;
+		startTlsSupported = false;
+		authMechanisms = " ";
+
+		if (readReply() / 100 != 2) {
+			return false;
+		}
+
+		for (String line : lastReply.split("\n")) {
+			if (line.length() <= 4) {
+				continue;
+			}
+
+			String extension = line.substring(4).trim().toUpperCase(Locale.ENGLISH);
+			if (extension.startsWith("PIPELINING")) {
+				pipelining = true;
+			} else if (extension.equals("STARTTLS")) {
+				startTlsSupported = true;
+			} else if (extension.startsWith("AUTH ")) {
+				authMechanisms = " " + extension.substring(5).trim() + " ";
+			}
+		}
+		return true;
+	}
+
+	private void greet(String localHostName) throws IOException {
+		check(readReply(), 2, "connection");
+
+		if (ehlo(localHostName)) {
+			return;
+		}
+
+		// server does not support ESMTP
+		write("HELO " + localHostName);
+		output.flush();
+		check(readReply(), 2, "HELO");
+	}
+
+	private void startTls(SmtpProperties properties) throws IOException {
+		if (!startTlsSupported) {
+			throw new IOException("SMTP server does not support STARTTLS.");
+		}
+
+		write("STARTTLS");
+		output.flush();
+		check(readReply(), 2, "STARTTLS");
+
+		SSLSocketFactory factory = properties.getSslSocketFactory();
+		if (factory == null) {
+			factory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+		}
+
+		SSLSocket sslSocket = (SSLSocket) factory.createSocket(socket, properties.getHost(), properties.getPort(), true);
+
+		// verify that the certificate belongs to the host
+		SSLParameters parameters = sslSocket.getSSLParameters();
+		parameters.setEndpointIdentificationAlgorithm("HTTPS");
+		sslSocket.setSSLParameters(parameters);
+		sslSocket.startHandshake();
+
+		setSocket(sslSocket);
+		encrypted = true;
+
+		// the extensions have to be read again over the encrypted connection
+		if (!ehlo(properties.getLocalHostName())) {
+			throw new IOException("SMTP server rejected EHLO after STARTTLS: " + lastReply);
+		}
+	}
+
+	private void authenticate(String userName, String password) throws IOException {
+		if (!encrypted) {
+			throw new IOException("SMTP credentials cannot be sent over an unencrypted connection, STARTTLS has to be enabled.");
+		}
+
+		if (authMechanisms.contains(" PLAIN ")) {
+			write("AUTH PLAIN " + base64("\0" + userName + "\0" + password));
+			output.flush();
+			check(readReply(), 2, "AUTH PLAIN");
+		} else if (authMechanisms.contains(" LOGIN ")) {
+			write("AUTH LOGIN");
+			output.flush();
+			check(readReply(), 3, "AUTH LOGIN");
+
+			write(base64(userName));
+			output.flush();
+			check(readReply(), 3, "AUTH LOGIN user name");
+
+			write(base64(password));
+			output.flush();
+			check(readReply(), 2, "AUTH LOGIN password");
+		} else {
+			throw new IOException("SMTP server does not support AUTH PLAIN or AUTH LOGIN.");
+		}
+	}
+
+	private void sendEnvelope(String from, String to) throws IOException {
+		if (!pipelining) {
+			write("MAIL FROM:<" + from + ">");
+			output.flush();
+			check(readReply(), 2, "MAIL FROM");
+
+			write("RCPT TO:<" + to + ">");
+			output.flush();
+			check(readReply(), 2, "RCPT TO");
+
+			write("DATA");
+			output.flush();
+			check(readReply(), 3, "DATA");
+			return;
+		}
+
+		write("MAIL FROM:<" + from + ">");
+		write("RCPT TO:<" + to + ">");
+		write("DATA");
+		output.flush();
+
+		// all replies have to be read, even if an earlier command failed
+		int mailReplyCode = readReply();
+		String mailReply = lastReply;
+		int rcptReplyCode = readReply();
+		String rcptReply = lastReply;
+		int dataReplyCode = readReply();
+
+		if (mailReplyCode / 100 != 2 || rcptReplyCode / 100 != 2) {
+			if (dataReplyCode / 100 == 3) {
+				// the server accepted DATA without a valid envelope, send an empty message
+				write(".");
+				output.flush();
+				readReply();
+			}
+
+			boolean mailFailed = mailReplyCode / 100 != 2;
+			throw new SmtpException("SMTP server rejected " + (mailFailed ? "MAIL FROM: " + mailReply : "RCPT TO: " + rcptReply),
+					mailFailed ? mailReplyCode : rcptReplyCode);
+		}
+
+		check(dataReplyCode, 3, "DATA");
+	}
+
+	private void reset() throws IOException {
+		write("RSET");
+		output.flush();
+		check(readReply(), 2, "RSET");
+	}
+
+	/**
+	 * Sends one message.
+	 *
+	 * @param from
+	 *            envelope sender address
+	 * @param to
+	 *            envelope recipient address
+	 * @param data
+	 *            message headers and body, with CRLF line endings, ending with
+	 *            CRLF and with no line starting with a dot
+	 * @throws SmtpException
+	 *             if the server rejected the message, the connection can still
+	 *             be used
+	 * @throws IOException
+	 *             if the connection failed, it must be closed
+	 */
+	public void send(String from, String to, byte[] data) throws IOException {
+		try {
+			sendEnvelope(from, to);
+
+			output.write(data);
+			write(".");
+			output.flush();
+			check(readReply(), 2, "message");
+		} catch (SmtpException e) {
+			reset();
+			throw e;
+		} finally {
+			lastUsedMillis = System.currentTimeMillis();
+		}
+
+		sentMessages++;
+	}
+
+	/**
+	 * Says goodbye to the server and closes the socket. Errors are ignored.
+	 */
+	@Override
+	public void close() {
+		try {
+			write("QUIT");
+			output.flush();
+			readReply();
+		} catch (IOException e) {
+			// the connection is being closed anyway
+		} finally {
+			closeQuietly(socket);
+		}
+	}
+
+	public boolean isPipelining() {
+		return pipelining;
+	}
+
+	/**
+	 * Returns the number of messages sent over this connection.
+	 */
+	public int getSentMessages() {
+		return sentMessages;
+	}
+
+	/**
+	 * Returns the time this connection was opened or last used.
+	 */
+	public long getLastUsedMillis() {
+		return lastUsedMillis;
+	}
+
+	/**
+	 * Returns true if the connection is encrypted by STARTTLS.
+	 */
+	public boolean isEncrypted() {
+		return encrypted;
+	}
+
+	/**
+	 * Connects to the server, greets it and, if configured, encrypts the
+	 * connection and authenticates.
+	 */
+	public static SmtpConnection open(SmtpProperties properties) throws IOException {
+		Socket socket = new Socket();
+		try {
+			socket.connect(new InetSocketAddress(properties.getHost(), properties.getPort()), properties.getConnectTimeoutMillis());
+			socket.setSoTimeout(properties.getReadTimeoutMillis());
+			socket.setTcpNoDelay(true);
+
+			SmtpConnection connection = new SmtpConnection(socket);
+			connection.greet(properties.getLocalHostName());
+			if (properties.isStartTls()) {
+				connection.startTls(properties);
+			}
+			if (properties.getUserName() != null) {
+				connection.authenticate(properties.getUserName(), properties.getPassword());
+			}
+			return connection;
+		} catch (IOException e) {
+			closeQuietly(socket);
+			throw e;
+		}
+	}
+
+	private SmtpConnection(Socket socket) throws IOException {
+		setSocket(socket);
+		this.lastUsedMillis = System.currentTimeMillis();
+	}
+
+}
@@ -0,0 +1,147 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule.smtp;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of {@link SmtpConnection SMTP connections}. Idle connections
+ * are reused until they have sent the maximal number of messages or have
+ * been idle for too long. If all connections are in use, callers wait for
+ * one to be released.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+class SmtpConnectionPool {
+
+	private final SmtpProperties properties;
+
+	private final BlockingQueue<SmtpConnection> idleConnections;
+
+	private final Semaphore permits;
+
+	private final AtomicLong openedConnections = new AtomicLong();
+
+	private volatile boolean closed;
+
+	private SmtpConnection pollIdle() {
+		SmtpConnection connection;
+		while ((connection = idleConnections.poll()) != null) {
+			if (System.currentTimeMillis() - connection.getLastUsedMillis() <= properties.getMaxIdleMillis()) {
+				return connection;
+			}
+			connection.close();
+		}
+		return null;
+	}
+
+	/**
+	 * Returns an idle connection, or opens a new one if there is none or if
+	 * a new one is requested. The connection must be passed to
+	 * {@link #release(SmtpConnection, boolean)} after use.
+	 *
+	 * @param fresh
+	 *            whether a new connection should be opened even if there are
+	 *            idle ones
+	 * @throws IOException
+	 *             if the pool is closed, if no connection was released in
+	 *             time or if a new connection could not be opened
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for a connection
+	 */
+	public SmtpConnection borrow(boolean fresh) throws IOException, InterruptedException {
+		if (closed) {
+			throw new IOException("SMTP connection pool is closed.");
+		}
+
+		if (!permits.tryAcquire(properties.getPoolTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+			throw new IOException("Timed out waiting for a free SMTP connection.");
+		}
+
+		try {
+			SmtpConnection connection = fresh ? null : pollIdle();
+			if (connection == null) {
+				connection = SmtpConnection.open(properties);
+				openedConnections.incrementAndGet();
+			}
+			return connection;
+		} catch (IOException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns a borrowed connection to the pool.
+	 *
+	 * @param healthy
+	 *            false if the connection failed and must be closed
+	 */
+	public void release(SmtpConnection connection, boolean healthy) {
+		try {
+			boolean reusable = healthy && !closed && connection.getSentMessages() < properties.getMaxMessagesPerConnection();
+			if (!reusable || !idleConnections.offer(connection)) {
+				connection.close();
+			} else if (closed) {
+				// the pool was closed while the connection was being returned
+				close();
+			}
+		} finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * Closes all idle connections. Connections which are in use are closed
+	 * when they are released.
+	 */
+	public void close() {
+		closed = true;
+
+		SmtpConnection connection;
+		while ((connection = idleConnections.poll()) != null) {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Returns the number of connections opened since the pool was created.
+	 */
+	public long getOpenedConnectionCount() {
+		return openedConnections.get();
+	}
+
+	public SmtpConnectionPool(SmtpProperties properties) {
+		if (properties.getPoolSize() < 1) {
+			throw new IllegalArgumentException("Pool size must be positive.");
+		}
+
+		this.properties = properties;
+		this.idleConnections = new ArrayBlockingQueue<SmtpConnection>(properties.getPoolSize());
+		this.permits = new Semaphore(properties.getPoolSize(), true);
+	}
+
+}
@@ -0,0 +1,283 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule.smtp;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jardoapps.usermodule.EmailSender;
+import com.jardoapps.usermodule.User;
+import com.jardoapps.usermodule.defines.EmailType;
+
+/**
+ * An {@link EmailSender} implementation which sends plain text emails to an
+ * SMTP server. It keeps a pool of persistent connections, so the TCP and
+ * SMTP handshakes are not repeated for every email, and it pipelines the
+ * commands of each message if the server supports it. The content of the
+ * emails is created by an {@link EmailComposer}.
+ * <p>
+ * Connections are only encrypted if {@link SmtpProperties#isStartTls()
+ * STARTTLS} is enabled; without it, use the sender only with a trusted relay
+ * on the local host or network. Credentials, if set, are sent by AUTH PLAIN
+ * or LOGIN over the encrypted connection only.
+ * <p>
+ * If a reused connection turns out to be closed by the server, the email is
+ * retried once over a new connection. Emails rejected by the server are not
+ * retried.
+ * <p>
+ * Method {@link #shutdown()} should be called when the application stops, to
+ * close the connections.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class SmtpEmailSender implements EmailSender {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(SmtpEmailSender.class);
+
+	private static final String CRLF = "\r\n";
+
+	private static final int BASE64_LINE_LENGTH = 76;
+
+	private static final char[] BASE64_DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+	private final SmtpProperties properties;
+
+	private final EmailComposer composer;
+
+	private transient SmtpConnectionPool pool;
+
+	private transient AtomicLong sentEmails;
+
+	private transient AtomicLong failedEmails;
+
+	private static boolean isAscii(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			if (value.charAt(i) > 127) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isValidAddress(String address) {
+		if (address == null || address.isEmpty()) {
+			return false;
+		}
+		for (int i = 0; i < address.length(); i++) {
+			char c = address.charAt(i);
+			if (c == '\r' || c == '\n' || c == '<' || c == '>' || c > 127) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static void appendBase64(StringBuilder result, byte[] bytes, int lineLength) {
+		int lineStart = result.length();
+		for (int i = 0; i < bytes.length; i += 3) {
+			int b0 = bytes[i] & 0xff;
+			int b1 = i + 1 < bytes.length ? bytes[i + 1] & 0xff : 0;
+			int b2 = i + 2 < bytes.length ? bytes[i + 2] & 0xff : 0;
+
+			result.append(BASE64_DIGITS[b0 >> 2]);
+			result.append(BASE64_DIGITS[((b0 & 0x03) << 4) | (b1 >> 4)]);
+			result.append(i + 1 < bytes.length ? BASE64_DIGITS[((b1 & 0x0f) << 2) | (b2 >> 6)] : '=');
+			result.append(i + 2 < bytes.length ? BASE64_DIGITS[b2 & 0x3f] : '=');
+
+			if (lineLength > 0 && result.length() - lineStart >= lineLength && i + 3 < bytes.length) {
+				result.append(CRLF);
+				lineStart = result.length();
+			}
+		}
+	}
+
+	private static void appendHeader(StringBuilder message, String name, String value) {
+		// line breaks in a header value would allow injecting other headers
+		String singleLine = value.replace('\r', ' ').replace('\n', ' ');
+
+		message.append(name).append(": ");
+		if (isAscii(singleLine)) {
+			message.append(singleLine);
+		} else {
+			message.append("=?UTF-8?B?");
+			appendBase64(message, singleLine.getBytes(StandardCharsets.UTF_8), 0);
+			message.append("?=");
+		}
+		message.append(CRLF);
+	}
+
+	private void init() {
+		pool = new SmtpConnectionPool(properties);
+		sentEmails = new AtomicLong();
+		failedEmails = new AtomicLong();
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		init();
+	}
+
+	private byte[] createMessage(String to, EmailContent content) {
+		byte[] body = content.getBody().getBytes(StandardCharsets.UTF_8);
+		StringBuilder message = new StringBuilder(512 + body.length * 4 / 3);
+
+		SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss Z", Locale.US);
+
+		appendHeader(message, "Date", dateFormat.format(new Date()));
+		appendHeader(message, "From", properties.getFromAddress());
+		appendHeader(message, "To", to);
+		appendHeader(message, "Subject", content.getSubject());
+		appendHeader(message, "MIME-Version", "1.0");
+		appendHeader(message, "Content-Type", "text/plain; charset=UTF-8");
+		appendHeader(message, "Content-Transfer-Encoding", "base64");
+		message.append(CRLF);
+
+		// base64 lines never start with a dot, so no dot stuffing is needed
+		appendBase64(message, body, BASE64_LINE_LENGTH);
+		message.append(CRLF);
+
+		return message.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private void deliver(String to, byte[] message) throws IOException, InterruptedException {
+		boolean fresh = false;
+		while (true) {
+			SmtpConnection connection = pool.borrow(fresh);
+			boolean reused = connection.getSentMessages() > 0;
+			boolean healthy = false;
+			try {
+				connection.send(properties.getFromAddress(), to, message);
+				healthy = true;
+				return;
+			} catch (SmtpException e) {
+				healthy = true;
+				throw e;
+			} catch (IOException e) {
+				if (!reused || fresh) {
+					throw e;
+				}
+				// the server has probably closed the idle connection
+				fresh = true;
+			} finally {
+				pool.release(connection, healthy);
+			}
+		}
+	}
+
+	private boolean send(EmailType type, String email, String userName, int userId, String code, User registrator) {
+		if (!isValidAddress(email)) {
+			LOGGER.error("Email error: Invalid recipient address of {} email: '{}'.", type, email);
+			failedEmails.incrementAndGet();
+			return false;
+		}
+
+		try {
+			EmailContent content = composer.compose(type, userName, userId, code, registrator);
+			deliver(email, createMessage(email, content));
+			sentEmails.incrementAndGet();
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			LOGGER.error("Email error: Interrupted while sending {} email to {}.", type, email);
+		} catch (IOException | RuntimeException e) {
+			LOGGER.error("Email error: Failed to send " + type + " email to " + email + ".", e);
+		}
+
+		failedEmails.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Closes all connections to the SMTP server. Emails sent after the
+	 * shutdown fail.
+	 */
+	public void shutdown() {
+		pool.close();
+	}
+
+	/**
+	 * Returns the number of emails accepted by the SMTP server.
+	 */
+	public long getSentEmailCount() {
+		return sentEmails.get();
+	}
+
+	/**
+	 * Returns the number of emails which failed to be sent.
+	 */
+	public long getFailedEmailCount() {
+		return failedEmails.get();
+	}
+
+	/**
+	 * Returns the number of connections opened to the SMTP server.
+	 */
+	public long getOpenedConnectionCount() {
+		return pool.getOpenedConnectionCount();
+	}
+
+	@Override
+	public boolean sendLostPasswordEmail(String email, String tokenKey) {
+		return send(EmailType.LOST_PASSWORD, email, null, 0, tokenKey, null);
+	}
+
+	@Override
+	public boolean sendManualRegistrationEmail(String email, String userName, int userId, String registrationControlCode, User registrator) {
+		return send(EmailType.MANUAL_REGISTRATION, email, userName, userId, registrationControlCode, registrator);
+	}
+
+	@Override
+	public boolean sendRegistrationEmail(String email, String userName, int userId, String registrationControlCode) {
+		return send(EmailType.REGISTRATION, email, userName, userId, registrationControlCode, null);
+	}
+
+	/**
+	 * @param properties
+	 *            SMTP server and connection pool settings, must be
+	 *            serializable if this sender is serialized
+	 * @param composer
+	 *            creates the content of the emails
+	 */
+	public SmtpEmailSender(SmtpProperties properties, EmailComposer composer) {
+		if (properties == null || composer == null) {
+			throw new IllegalArgumentException("Properties and composer cannot be null.");
+		}
+		if (!isValidAddress(properties.getFromAddress())) {
+			throw new IllegalArgumentException("Invalid from address: " + properties.getFromAddress());
+		}
+
+		this.properties = properties;
+		this.composer = composer;
+
+		init();
+	}
+
+}
@@ -0,0 +1,98 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule.smtp;
+
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Use an instance of this interface to configure {@link SmtpEmailSender}.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public interface SmtpProperties {
+
+	String getHost();
+
+	int getPort();
+
+	/**
+	 * Returns the host name sent to the server in the EHLO command.
+	 */
+	String getLocalHostName();
+
+	/**
+	 * Returns true if the connections must be encrypted with the STARTTLS
+	 * command. The server's certificate and host name are verified. A
+	 * connection to a server which does not support STARTTLS fails.
+	 */
+	boolean isStartTls();
+
+	/**
+	 * Returns the factory of the encrypted sockets, or null to use the
+	 * default one, which trusts the certificates trusted by the JVM.
+	 */
+	SSLSocketFactory getSslSocketFactory();
+
+	/**
+	 * Returns the user name to authenticate with, or null if the server does
+	 * not require authentication. The credentials are only sent over an
+	 * encrypted connection, so STARTTLS must be enabled.
+	 */
+	String getUserName();
+
+	/**
+	 * Returns the password to authenticate with.
+	 */
+	String getPassword();
+
+	/**
+	 * Returns the address the emails are sent from.
+	 */
+	String getFromAddress();
+
+	/**
+	 * Returns the maximal number of open connections.
+	 */
+	int getPoolSize();
+
+	/**
+	 * Returns the number of messages sent over one connection before it is
+	 * closed and replaced by a new one.
+	 */
+	int getMaxMessagesPerConnection();
+
+	/**
+	 * Returns the time after which an idle connection is closed instead of
+	 * being reused.
+	 */
+	long getMaxIdleMillis();
+
+	int getConnectTimeoutMillis();
+
+	int getReadTimeoutMillis();
+
+	/**
+	 * Returns the maximal time to wait for a free connection when all
+	 * connections are in use.
+	 */
+	long getPoolTimeoutMillis();
+
+}
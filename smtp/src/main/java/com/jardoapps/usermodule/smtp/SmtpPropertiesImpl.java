@@ -0,0 +1,193 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule.smtp;
+
+import java.io.Serializable;
+
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Basic implementation of {@link SmtpProperties} with setters.
+ *
+ * @author Jaroslav Brtiš
+ * @since 0.4.0
+ */
+public class SmtpPropertiesImpl implements SmtpProperties, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private String host = "localhost";
+
+	private int port = 25;
+
+	private String localHostName = "localhost";
+
+	private boolean startTls;
+
+	private transient SSLSocketFactory sslSocketFactory;
+
+	private String userName;
+
+	private String password;
+
+	private String fromAddress;
+
+	private int poolSize = 4;
+
+	private int maxMessagesPerConnection = 100;
+
+	private long maxIdleMillis = 30000L;
+
+	private int connectTimeoutMillis = 10000;
+
+	private int readTimeoutMillis = 30000;
+
+	private long poolTimeoutMillis = 30000L;
+
+	@Override
+	public String getHost() {
+		return host;
+	}
+
+	public void setHost(String host) {
+		this.host = host;
+	}
+
+	@Override
+	public int getPort() {
+		return port;
+	}
+
+	public void setPort(int port) {
+		this.port = port;
+	}
+
+	@Override
+	public String getLocalHostName() {
+		return localHostName;
+	}
+
+	public void setLocalHostName(String localHostName) {
+		this.localHostName = localHostName;
+	}
+
+	@Override
+	public boolean isStartTls() {
+		return startTls;
+	}
+
+	public void setStartTls(boolean startTls) {
+		this.startTls = startTls;
+	}
+
+	@Override
+	public SSLSocketFactory getSslSocketFactory() {
+		return sslSocketFactory;
+	}
+
+	/**
+	 * Sets the factory of the encrypted sockets. It is not serialized.
+	 */
+	public void setSslSocketFactory(SSLSocketFactory sslSocketFactory) {
+		this.sslSocketFactory = sslSocketFactory;
+	}
+
+	@Override
+	public String getUserName() {
+		return userName;
+	}
+
+	public void setUserName(String userName) {
+		this.userName = userName;
+	}
+
+	@Override
+	public String getPassword() {
+		return password;
+	}
+
+	public void setPassword(String password) {
+		this.password = password;
+	}
+
+	@Override
+	public String getFromAddress() {
+		return fromAddress;
+	}
+
+	public void setFromAddress(String fromAddress) {
+		this.fromAddress = fromAddress;
+	}
+
+	@Override
+	public int getPoolSize() {
+		return poolSize;
+	}
+
+	public void setPoolSize(int poolSize) {
+		this.poolSize = poolSize;
+	}
+
+	@Override
+	public int getMaxMessagesPerConnection() {
+		return maxMessagesPerConnection;
+	}
+
+	public void setMaxMessagesPerConnection(int maxMessagesPerConnection) {
+		this.maxMessagesPerConnection = maxMessagesPerConnection;
+	}
+
+	@Override
+	public long getMaxIdleMillis() {
+		return maxIdleMillis;
+	}
+
+	public void setMaxIdleMillis(long maxIdleMillis) {
+		this.maxIdleMillis = maxIdleMillis;
+	}
+
+	@Override
+	public int getConnectTimeoutMillis() {
+		return connectTimeoutMillis;
+	}
+
+	public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+		this.connectTimeoutMillis = connectTimeoutMillis;
+	}
+
+	@Override
+	public int getReadTimeoutMillis() {
+		return readTimeoutMillis;
+	}
+
+	public void setReadTimeoutMillis(int readTimeoutMillis) {
+		this.readTimeoutMillis = readTimeoutMillis;
+	}
+
+	@Override
+	public long getPoolTimeoutMillis() {
+		return poolTimeoutMillis;
+	}
+
+	public void setPoolTimeoutMillis(long poolTimeoutMillis) {
+		this.poolTimeoutMillis = poolTimeoutMillis;
+	}
+
+}
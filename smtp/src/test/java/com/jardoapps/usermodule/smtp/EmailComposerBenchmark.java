@@ -0,0 +1,105 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.smtp;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import com.jardoapps.usermodule.defines.EmailType;
+
+/**
+ * Compares composing registration emails by {@link EmailComposerTemplateImpl}
+ * with composing them by {@link String#format(String, Object...)}. It prints
+ * the throughput and the allocated bytes per email. It is not run by the
+ * build, run its main method manually.
+ */
+public class EmailComposerBenchmark {
+
+	private static final int ITERATIONS = 1000000;
+
+	private static final int ROUNDS = 5;
+
+	private static final String SUBJECT = "Welcome to example.com, ${userName}";
+
+	private static final String BODY = "Hello ${userName},\n\nthank you for registering at example.com. Your user id is ${userId}.\n"
+			+ "Please confirm your registration by visiting https://example.com/confirm?id=${userId}&code=${code}\n\nExample team";
+
+	private static final String SUBJECT_FORMAT = "Welcome to example.com, %s";
+
+	private static final String BODY_FORMAT = "Hello %s,\n\nthank you for registering at example.com. Your user id is %d.\n"
+			+ "Please confirm your registration by visiting https://example.com/confirm?id=%d&code=%s\n\nExample team";
+
+	private static final String[] NAMES = { "john", "ann", "peter", "mary" };
+
+	private static final String CODE = "63ab83e73fee9c2113f625fab4ac8c65";
+
+	/** Prevents the JIT from removing the measured code. */
+	private static long sink;
+
+	private static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	private static void measureTemplates(EmailComposerTemplateImpl composer) {
+		long bytes = allocatedBytes();
+		long start = System.nanoTime();
+
+		for (int i = 0; i < ITERATIONS; i++) {
+			EmailContent content = composer.compose(EmailType.REGISTRATION, NAMES[i & 3], i, CODE, null);
+			sink += content.getSubject().length() + content.getBody().length();
+		}
+
+		print("templates", System.nanoTime() - start, allocatedBytes() - bytes);
+	}
+
+	private static void measureFormat() {
+		long bytes = allocatedBytes();
+		long start = System.nanoTime();
+
+		for (int i = 0; i < ITERATIONS; i++) {
+			String name = NAMES[i & 3];
+			EmailContent content = new EmailContent(String.format(SUBJECT_FORMAT, name), String.format(BODY_FORMAT, name, i, i, CODE));
+			sink += content.getSubject().length() + content.getBody().length();
+		}
+
+		print("String.format", System.nanoTime() - start, allocatedBytes() - bytes);
+	}
+
+	private static void print(String name, long nanos, long bytes) {
+		System.out.printf("%-13s | %10.0f | %17.0f%n", name, ITERATIONS * 1e9 / nanos, (double) bytes / ITERATIONS);
+	}
+
+	public static void main(String[] args) {
+		EmailComposerTemplateImpl composer = new EmailComposerTemplateImpl();
+		composer.setTemplates(EmailType.REGISTRATION, SUBJECT, BODY);
+
+		System.out.println("composer      |   emails/s | allocated B/email");
+		for (int round = 0; round < ROUNDS; round++) {
+			measureTemplates(composer);
+			measureFormat();
+		}
+
+		System.out.println("(" + sink + ")");
+	}
+
+}
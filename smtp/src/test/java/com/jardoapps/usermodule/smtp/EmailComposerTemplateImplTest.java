@@ -0,0 +1,122 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.smtp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jardoapps.usermodule.User;
+import com.jardoapps.usermodule.UserRanks;
+import com.jardoapps.usermodule.defines.EmailType;
+
+public class EmailComposerTemplateImplTest {
+
+	private static final User REGISTRATOR = new User(1, "admin", "admin@example.com", null, true, null, UserRanks.ADMIN);
+
+	private EmailComposerTemplateImpl composer;
+
+	private static String render(String template, String userName, int userId, String code, User registrator) {
+		StringBuilder out = new StringBuilder();
+		new EmailTemplate(template).render(out, userName, userId, code, registrator);
+		return out.toString();
+	}
+
+	@Before
+	public void setUp() {
+		composer = new EmailComposerTemplateImpl();
+		composer.setTemplates(EmailType.REGISTRATION, "Welcome ${userName}", "Hello ${userName}, your id is ${userId}.\nConfirm with code ${code}.");
+		composer.setTemplates(EmailType.MANUAL_REGISTRATION, "Welcome ${userName}", "You were registered by ${registratorName} (${registratorEmail}), code ${code}.");
+		composer.setTemplates(EmailType.LOST_PASSWORD, "Password reset", "Reset your password at https://example.com/reset?key=${tokenKey}");
+	}
+
+	@Test
+	public void testRenderTemplate() {
+		assertEquals("", render("", "john", 5, "abc", null));
+		assertEquals("plain text", render("plain text", "john", 5, "abc", null));
+		assertEquals("john", render("${userName}", "john", 5, "abc", null));
+		assertEquals("5-abc-abc-john", render("${userId}-${code}-${tokenKey}-${userName}", "john", 5, "abc", null));
+		assertEquals("admin <admin@example.com>", render("${registratorName} <${registratorEmail}>", "john", 5, "abc", REGISTRATOR));
+	}
+
+	@Test
+	public void testRenderNullValues() {
+		assertEquals("Hello , registered by .", render("Hello ${userName}, registered by ${registratorName}.", null, 0, null, null));
+	}
+
+	@Test
+	public void testEscapedDollar() {
+		assertEquals("costs $5 ${userName} $", render("costs $5 $${userName} $$", "john", 5, "abc", null));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownPlaceholder() {
+		new EmailTemplate("Hello ${password}");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnterminatedPlaceholder() {
+		new EmailTemplate("Hello ${userName");
+	}
+
+	@Test
+	public void testCompose() {
+		EmailContent content = composer.compose(EmailType.REGISTRATION, "john", 42, "c0de", null);
+		assertEquals("Welcome john", content.getSubject());
+		assertEquals("Hello john, your id is 42.\nConfirm with code c0de.", content.getBody());
+
+		content = composer.compose(EmailType.MANUAL_REGISTRATION, "john", 42, "c0de", REGISTRATOR);
+		assertEquals("You were registered by admin (admin@example.com), code c0de.", content.getBody());
+
+		content = composer.compose(EmailType.LOST_PASSWORD, null, 0, "t0ken", null);
+		assertEquals("Password reset", content.getSubject());
+		assertEquals("Reset your password at https://example.com/reset?key=t0ken", content.getBody());
+
+		// the reused buffer must not leak the previous email
+		content = composer.compose(EmailType.REGISTRATION, "ann", 7, "x", null);
+		assertEquals("Hello ann, your id is 7.\nConfirm with code x.", content.getBody());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testComposeWithoutTemplates() {
+		new EmailComposerTemplateImpl().compose(EmailType.REGISTRATION, "john", 42, "c0de", null);
+	}
+
+	@Test
+	public void testSerialization() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(composer);
+		}
+
+		EmailComposerTemplateImpl copy;
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			copy = (EmailComposerTemplateImpl) in.readObject();
+		}
+
+		assertEquals("Welcome john", copy.compose(EmailType.REGISTRATION, "john", 42, "c0de", null).getSubject());
+	}
+
+}
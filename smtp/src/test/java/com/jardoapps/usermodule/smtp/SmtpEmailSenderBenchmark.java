@@ -0,0 +1,114 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule.smtp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.jardoapps.usermodule.User;
+import com.jardoapps.usermodule.defines.EmailType;
+
+/**
+ * Measures how many emails per second {@link SmtpEmailSender} sends to a
+ * {@link TestSmtpServer} with a simulated round trip time, for different pool
+ * sizes, with and without pipelining. It is not run by the build, run its
+ * main method manually.
+ */
+public class SmtpEmailSenderBenchmark {
+
+	private static final int EMAILS = 2000;
+
+	private static final int SENDER_THREADS = 32;
+
+	private static final long ROUND_TRIP_MILLIS = 1;
+
+	private static final int[] POOL_SIZES = { 1, 2, 4, 8, 16 };
+
+	private static class BenchmarkComposer implements EmailComposer {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public EmailContent compose(EmailType type, String userName, int userId, String code, User registrator) {
+			return new EmailContent("Registration", "Hello " + userName + ", confirm your registration with code " + code + ".");
+		}
+	}
+
+	private static double measure(boolean pipelining, int poolSize) throws Exception {
+		try (TestSmtpServer server = new TestSmtpServer(pipelining, ROUND_TRIP_MILLIS)) {
+			SmtpPropertiesImpl properties = new SmtpPropertiesImpl();
+			properties.setHost("127.0.0.1");
+			properties.setPort(server.getPort());
+			properties.setFromAddress("noreply@example.com");
+			properties.setPoolSize(poolSize);
+			properties.setMaxMessagesPerConnection(EMAILS);
+
+			final SmtpEmailSender sender = new SmtpEmailSender(properties, new BenchmarkComposer());
+			final AtomicInteger next = new AtomicInteger();
+
+			ExecutorService executor = Executors.newFixedThreadPool(SENDER_THREADS);
+			long start = System.nanoTime();
+
+			List<Future<Void>> results = new ArrayList<Future<Void>>();
+			for (int t = 0; t < SENDER_THREADS; t++) {
+				results.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						int idx;
+						while ((idx = next.getAndIncrement()) < EMAILS) {
+							sender.sendRegistrationEmail("user" + idx + "@example.com", "user" + idx, idx, "63ab83e73fee9c2113f625fab4ac8c65");
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> result : results) {
+				result.get();
+			}
+
+			long nanos = System.nanoTime() - start;
+			executor.shutdown();
+			sender.shutdown();
+
+			if (sender.getSentEmailCount() != EMAILS) {
+				throw new IllegalStateException("Only " + sender.getSentEmailCount() + " emails were sent.");
+			}
+
+			return EMAILS * 1e9 / nanos;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		// warm up
+		measure(true, 4);
+
+		System.out.println("round trip " + ROUND_TRIP_MILLIS + " ms, " + SENDER_THREADS + " sender threads, " + EMAILS + " emails");
+		System.out.println("pool size | emails/s pipelining | emails/s no pipelining");
+		for (int poolSize : POOL_SIZES) {
+			System.out.printf("%9d | %19.0f | %22.0f%n", poolSize, measure(true, poolSize), measure(false, poolSize));
+		}
+	}
+
+}
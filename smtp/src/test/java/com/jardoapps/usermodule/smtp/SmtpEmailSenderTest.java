@@ -0,0 +1,369 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule.smtp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.jardoapps.usermodule.User;
+import com.jardoapps.usermodule.UserRanks;
+import com.jardoapps.usermodule.defines.EmailType;
+import com.jardoapps.usermodule.smtp.TestSmtpServer.ReceivedMessage;
+
+public class SmtpEmailSenderTest {
+
+	private static final String FROM = "noreply@example.com";
+
+	private static class TestComposer implements EmailComposer {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public EmailContent compose(EmailType type, String userName, int userId, String code, User registrator) {
+			String registratorName = registrator != null ? registrator.getName() : null;
+			return new EmailContent(type + " for " + userName, "Hello " + userName + " (" + userId + "), code " + code + ", registered by "
+					+ registratorName + ".\n.\nBye");
+		}
+	}
+
+	private TestSmtpServer server;
+
+	private SmtpEmailSender sender;
+
+	private SmtpPropertiesImpl createProperties(int poolSize, int maxMessagesPerConnection) {
+		SmtpPropertiesImpl properties = new SmtpPropertiesImpl();
+		properties.setHost("127.0.0.1");
+		properties.setPort(server.getPort());
+		properties.setFromAddress(FROM);
+		properties.setPoolSize(poolSize);
+		properties.setMaxMessagesPerConnection(maxMessagesPerConnection);
+		properties.setReadTimeoutMillis(5000);
+		return properties;
+	}
+
+	private SmtpEmailSender createSender(int poolSize, int maxMessagesPerConnection) {
+		return new SmtpEmailSender(createProperties(poolSize, maxMessagesPerConnection), new TestComposer());
+	}
+
+	/**
+	 * Creates a sender which encrypts the connections and authenticates as
+	 * john.
+	 */
+	private SmtpEmailSender createSecureSender(String password) throws Exception {
+		SmtpPropertiesImpl properties = createProperties(1, 100);
+		properties.setStartTls(true);
+		properties.setSslSocketFactory(createSslContext().getSocketFactory());
+		properties.setUserName("john");
+		properties.setPassword(password);
+		return new SmtpEmailSender(properties, new TestComposer());
+	}
+
+	/**
+	 * Creates a context with the self-signed certificate of localhost and
+	 * 127.0.0.1, which both holds the server's key and trusts the
+	 * certificate.
+	 */
+	private static SSLContext createSslContext() throws Exception {
+		char[] password = "changeit".toCharArray();
+
+		KeyStore keyStore = KeyStore.getInstance("JKS");
+		try (InputStream input = SmtpEmailSenderTest.class.getResourceAsStream("/test-smtp-server.jks")) {
+			keyStore.load(input, password);
+		}
+
+		KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		keyManagerFactory.init(keyStore, password);
+		TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+		trustManagerFactory.init(keyStore);
+
+		SSLContext sslContext = SSLContext.getInstance("TLS");
+		sslContext.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), null);
+		return sslContext;
+	}
+
+	private static String header(ReceivedMessage message, String name) {
+		for (String line : message.getData().split("\r\n")) {
+			if (line.startsWith(name + ": ")) {
+				return line.substring(name.length() + 2);
+			}
+		}
+		return null;
+	}
+
+	private static String body(ReceivedMessage message) {
+		String data = message.getData();
+		String base64 = data.substring(data.indexOf("\r\n\r\n") + 4).replace("\r\n", "");
+		return new String(TestSmtpServer.decodeBase64(base64), StandardCharsets.UTF_8);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (sender != null) {
+			sender.shutdown();
+		}
+		if (server != null) {
+			server.close();
+		}
+	}
+
+	@Test
+	public void testSendRegistrationEmail() throws Exception {
+		server = new TestSmtpServer(true, 0);
+		sender = createSender(2, 100);
+
+		assertEquals(true, sender.sendRegistrationEmail("john@example.com", "John", 1, "5658ffccee7f0ebfda2b226238b1eb6e"));
+
+		List<ReceivedMessage> messages = server.getMessages();
+		assertEquals(1, messages.size());
+
+		ReceivedMessage message = messages.get(0);
+		assertEquals(FROM, message.getFrom());
+		assertEquals("john@example.com", message.getRecipients().get(0));
+		assertEquals("REGISTRATION for John", header(message, "Subject"));
+		assertEquals("john@example.com", header(message, "To"));
+		assertEquals("Hello John (1), code 5658ffccee7f0ebfda2b226238b1eb6e, registered by null.\n.\nBye", body(message));
+	}
+
+	@Test
+	public void testSendManualRegistrationEmail() throws Exception {
+		server = new TestSmtpServer(true, 0);
+		sender = createSender(2, 100);
+
+		User registrator = new User(5, "Admin", "admin@example.com", "", true, null, UserRanks.ADMIN);
+		assertEquals(true, sender.sendManualRegistrationEmail("mike@example.com", "Mike", 3, "code", registrator));
+		assertEquals(true, sender.sendLostPasswordEmail("john@example.com", "key"));
+
+		List<ReceivedMessage> messages = server.getMessages();
+		assertEquals("Hello Mike (3), code code, registered by Admin.\n.\nBye", body(messages.get(0)));
+		assertEquals("LOST_PASSWORD for null", header(messages.get(1), "Subject"));
+	}
+
+	@Test
+	public void testNonAsciiSubject() throws Exception {
+		server = new TestSmtpServer(true, 0);
+		sender = createSender(1, 100);
+
+		assertEquals(true, sender.sendRegistrationEmail("jiri@example.com", "Jiří", 1, "code"));
+
+		ReceivedMessage message = server.getMessages().get(0);
+		String subject = header(message, "Subject");
+		assertTrue(subject.startsWith("=?UTF-8?B?"));
+		assertEquals("REGISTRATION for Jiří", new String(TestSmtpServer.decodeBase64(subject.substring(10, subject.length() - 2)),
+				StandardCharsets.UTF_8));
+		assertEquals("Hello Jiří (1), code code, registered by null.\n.\nBye", body(message));
+	}
+
+	@Test
+	public void testConnectionIsReused() throws Exception {
+		server = new TestSmtpServer(true, 0);
+		sender = createSender(4, 100);
+
+		for (int i = 0; i < 10; i++) {
+			assertEquals(true, sender.sendLostPasswordEmail("user" + i + "@example.com", "key" + i));
+		}
+
+		assertEquals(10, server.getMessages().size());
+		assertEquals(1, server.getAcceptedConnectionCount());
+		assertEquals(1, sender.getOpenedConnectionCount());
+	}
+
+	@Test
+	public void testMaxMessagesPerConnection() throws Exception {
+		server = new TestSmtpServer(true, 0);
+		sender = createSender(4, 3);
+
+		for (int i = 0; i < 7; i++) {
+			assertEquals(true, sender.sendLostPasswordEmail("user" + i + "@example.com", "key" + i));
+		}
+
+		assertEquals(7, server.getMessages().size());
+		assertEquals(3, sender.getOpenedConnectionCount());
+	}
+
+	@Test
+	public void testWithoutPipelining() throws Exception {
+		server = new TestSmtpServer(false, 0);
+		sender = createSender(1, 100);
+
+		assertEquals(true, sender.sendLostPasswordEmail("john@example.com", "key1"));
+		assertEquals(true, sender.sendLostPasswordEmail("mike@example.com", "key2"));
+
+		assertEquals(2, server.getMessages().size());
+		assertEquals(1, server.getAcceptedConnectionCount());
+	}
+
+	@Test
+	public void testRejectedRecipient() throws Exception {
+		server = new TestSmtpServer(true, 0);
+		server.rejectRecipient("nobody@example.com");
+		sender = createSender(1, 100);
+
+		assertEquals(false, sender.sendLostPasswordEmail("nobody@example.com", "key1"));
+		assertEquals(true, sender.sendLostPasswordEmail("john@example.com", "key2"));
+
+		// the connection survived the rejection
+		assertEquals(1, server.getMessages().size());
+		assertEquals(1, sender.getOpenedConnectionCount());
+		assertEquals(1, sender.getSentEmailCount());
+		assertEquals(1, sender.getFailedEmailCount());
+	}
+
+	@Test
+	public void testReconnectAfterServerClosedConnection() throws Exception {
+		server = new TestSmtpServer(true, 0);
+		sender = createSender(1, 100);
+
+		assertEquals(true, sender.sendLostPasswordEmail("john@example.com", "key1"));
+		server.disconnectAll();
+		assertEquals(true, sender.sendLostPasswordEmail("mike@example.com", "key2"));
+
+		assertEquals(2, server.getMessages().size());
+		assertEquals(2, sender.getOpenedConnectionCount());
+	}
+
+	@Test
+	public void testInvalidAddress() throws Exception {
+		server = new TestSmtpServer(true, 0);
+		sender = createSender(1, 100);
+
+		assertEquals(false, sender.sendLostPasswordEmail("john@example.com>\r\nRCPT TO:<mike@example.com", "key"));
+		assertEquals(0, server.getMessages().size());
+	}
+
+	@Test
+	public void testConcurrentSending() throws Exception {
+		server = new TestSmtpServer(true, 1);
+		sender = createSender(4, 1000);
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+		for (int i = 0; i < 200; i++) {
+			final int idx = i;
+			results.add(executor.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					return sender.sendRegistrationEmail("user" + idx + "@example.com", "user" + idx, idx, "code");
+				}
+			}));
+		}
+
+		for (Future<Boolean> result : results) {
+			assertEquals(true, result.get());
+		}
+		executor.shutdown();
+
+		assertEquals(200, server.getMessages().size());
+		assertTrue(sender.getOpenedConnectionCount() <= 4);
+	}
+
+	@Test
+	public void testStartTlsAndAuthPlain() throws Exception {
+		server = new TestSmtpServer(true, 0);
+		server.enableStartTls(createSslContext());
+		server.requireAuthentication("PLAIN LOGIN", "john", "secret");
+		sender = createSecureSender("secret");
+
+		assertEquals(true, sender.sendRegistrationEmail("carl@example.com", "carl", 3, "code"));
+		assertEquals(true, sender.sendRegistrationEmail("mike@example.com", "mike", 4, "code"));
+
+		assertEquals(2, server.getMessages().size());
+		assertEquals(1, server.getEncryptedConnectionCount());
+		assertEquals(1, server.getAuthenticatedConnectionCount());
+	}
+
+	@Test
+	public void testAuthLogin() throws Exception {
+		server = new TestSmtpServer(false, 0);
+		server.enableStartTls(createSslContext());
+		server.requireAuthentication("LOGIN", "john", "secret");
+		sender = createSecureSender("secret");
+
+		assertEquals(true, sender.sendRegistrationEmail("carl@example.com", "carl", 3, "code"));
+		assertEquals(1, server.getMessages().size());
+		assertEquals(1, server.getAuthenticatedConnectionCount());
+	}
+
+	@Test
+	public void testWrongPassword() throws Exception {
+		server = new TestSmtpServer(true, 0);
+		server.enableStartTls(createSslContext());
+		server.requireAuthentication("PLAIN", "john", "secret");
+		sender = createSecureSender("wrong");
+
+		assertEquals(false, sender.sendRegistrationEmail("carl@example.com", "carl", 3, "code"));
+		assertEquals(1, sender.getFailedEmailCount());
+		assertEquals(0, server.getMessages().size());
+	}
+
+	@Test
+	public void testCredentialsNotSentUnencrypted() throws Exception {
+		server = new TestSmtpServer(true, 0);
+		server.requireAuthentication("PLAIN LOGIN", "john", "secret");
+
+		SmtpPropertiesImpl properties = createProperties(1, 100);
+		properties.setUserName("john");
+		properties.setPassword("secret");
+		sender = new SmtpEmailSender(properties, new TestComposer());
+
+		assertEquals(false, sender.sendRegistrationEmail("carl@example.com", "carl", 3, "code"));
+		assertEquals(0, server.getAuthenticatedConnectionCount());
+	}
+
+	@Test
+	public void testStartTlsNotSupported() throws Exception {
+		server = new TestSmtpServer(true, 0);
+		sender = createSecureSender("secret");
+
+		assertEquals(false, sender.sendRegistrationEmail("carl@example.com", "carl", 3, "code"));
+		assertEquals(0, server.getMessages().size());
+	}
+
+	@Test
+	public void testUntrustedCertificate() throws Exception {
+		server = new TestSmtpServer(true, 0);
+		server.enableStartTls(createSslContext());
+
+		// the default factory does not trust the self-signed certificate
+		SmtpPropertiesImpl properties = createProperties(1, 100);
+		properties.setStartTls(true);
+		sender = new SmtpEmailSender(properties, new TestComposer());
+
+		assertEquals(false, sender.sendRegistrationEmail("carl@example.com", "carl", 3, "code"));
+		assertEquals(0, server.getMessages().size());
+	}
+
+}
@@ -0,0 +1,402 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule.smtp;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * A minimal in-process SMTP server for tests and benchmarks. It accepts all
+ * messages (except for rejected recipients) and keeps them in memory.
+ * <p>
+ * To simulate network latency, the server waits for the given round trip time
+ * whenever it has answered all commands received so far, before sending the
+ * replies. So a client which waits for every reply pays the round trip for
+ * every command, while a pipelining client pays it once per batch of
+ * commands.
+ * <p>
+ * STARTTLS and AUTH PLAIN and LOGIN can be enabled. Then messages are only
+ * accepted from authenticated clients.
+ */
+public class TestSmtpServer implements Closeable {
+
+	public static class ReceivedMessage {
+
+		private final String from;
+		private final List<String> recipients;
+		private final String data;
+
+		public String getFrom() {
+			return from;
+		}
+
+		public List<String> getRecipients() {
+			return recipients;
+		}
+
+		public String getData() {
+			return data;
+		}
+
+		public ReceivedMessage(String from, List<String> recipients, String data) {
+			this.from = from;
+			this.recipients = recipients;
+			this.data = data;
+		}
+	}
+
+	private final ServerSocket serverSocket;
+
+	private final ExecutorService executor;
+
+	private final boolean pipelining;
+
+	private final long roundTripMillis;
+
+	private final Queue<ReceivedMessage> messages = new ConcurrentLinkedQueue<ReceivedMessage>();
+
+	private final Set<String> rejectedRecipients = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	private final Set<Socket> openSockets = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+
+	private final AtomicInteger acceptedConnections = new AtomicInteger();
+
+	private final AtomicInteger encryptedConnections = new AtomicInteger();
+
+	private final AtomicInteger authenticatedConnections = new AtomicInteger();
+
+	private volatile SSLContext sslContext;
+
+	private volatile String authMechanisms;
+
+	private volatile String userName;
+
+	private volatile String password;
+
+	public static byte[] decodeBase64(String base64) {
+		String digits = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+
+		int buffer = 0;
+		int bits = 0;
+		for (char c : base64.toCharArray()) {
+			if (c == '=') {
+				break;
+			}
+			buffer = (buffer << 6) | digits.indexOf(c);
+			bits += 6;
+			if (bits >= 8) {
+				bits -= 8;
+				result.write((buffer >> bits) & 0xff);
+			}
+		}
+
+		return result.toByteArray();
+	}
+
+	private static String decodeBase64String(String base64) {
+		return new String(decodeBase64(base64), StandardCharsets.UTF_8);
+	}
+
+	private static String argument(String line) {
+		int start = line.indexOf('<');
+		int end = line.lastIndexOf('>');
+		return start >= 0 && end > start ? line.substring(start + 1, end) : "";
+	}
+
+	private void accept() {
+		while (!serverSocket.isClosed()) {
+			final Socket socket;
+			try {
+				socket = serverSocket.accept();
+			} catch (IOException e) {
+				return;
+			}
+
+			acceptedConnections.incrementAndGet();
+			openSockets.add(socket);
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						handle(socket);
+					} catch (IOException | InterruptedException e) {
+						// client disconnected or server closed
+					} finally {
+						openSockets.remove(socket);
+						try {
+							socket.close();
+						} catch (IOException e) {
+							// nothing to do
+						}
+					}
+				}
+			});
+		}
+	}
+
+	private void reply(BufferedReader reader, Writer writer, String reply) throws IOException, InterruptedException {
+		writer.write(reply);
+		writer.write("\r\n");
+
+		if (!reader.ready()) {
+			if (roundTripMillis > 0) {
+				Thread.sleep(roundTripMillis);
+			}
+			writer.flush();
+		}
+	}
+
+	private String ehloReply(boolean encrypted) {
+		StringBuilder reply = new StringBuilder("250-localhost\r\n");
+		if (pipelining) {
+			reply.append("250-PIPELINING\r\n");
+		}
+		if (sslContext != null && !encrypted) {
+			reply.append("250-STARTTLS\r\n");
+		}
+		if (authMechanisms != null) {
+			reply.append("250-AUTH ").append(authMechanisms).append("\r\n");
+		}
+		return reply.append("250 8BITMIME").toString();
+	}
+
+	private boolean checkCredentials(String userName, String password) {
+		return userName.equals(this.userName) && password.equals(this.password);
+	}
+
+	private void handle(Socket socket) throws IOException, InterruptedException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+		Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII);
+
+		boolean encrypted = false;
+		boolean authenticated = false;
+		String from = null;
+		List<String> recipients = new ArrayList<String>();
+
+		reply(reader, writer, "220 localhost test SMTP server");
+
+		String line;
+		while ((line = reader.readLine()) != null) {
+			String command = line.length() >= 4 ? line.substring(0, 4).toUpperCase() : line.toUpperCase();
+
+			if (command.equals("EHLO")) {
+				reply(reader, writer, ehloReply(encrypted));
+			} else if (command.equals("HELO") || command.equals("NOOP")) {
+				reply(reader, writer, "250 OK");
+			} else if (line.equalsIgnoreCase("STARTTLS") && sslContext != null && !encrypted) {
+				reply(reader, writer, "220 Ready to start TLS");
+				writer.flush();
+
+				SSLSocket sslSocket = (SSLSocket) sslContext.getSocketFactory().createSocket(socket, null, socket.getPort(), true);
+				sslSocket.setUseClientMode(false);
+				sslSocket.startHandshake();
+
+				reader = new BufferedReader(new InputStreamReader(sslSocket.getInputStream(), StandardCharsets.US_ASCII));
+				writer = new OutputStreamWriter(sslSocket.getOutputStream(), StandardCharsets.US_ASCII);
+				encrypted = true;
+				encryptedConnections.incrementAndGet();
+
+				// the client has to start over
+				from = null;
+				recipients.clear();
+			} else if (command.equals("AUTH") && authMechanisms != null) {
+				String[] parts = line.split(" ");
+				String mechanism = parts.length > 1 ? parts[1].toUpperCase() : "";
+				boolean valid;
+
+				if (!(" " + authMechanisms + " ").contains(" " + mechanism + " ")) {
+					reply(reader, writer, "504 Unrecognized authentication type");
+					continue;
+				} else if (mechanism.equals("PLAIN")) {
+					String[] credentials = parts.length > 2 ? decodeBase64String(parts[2]).split("\0", -1) : new String[0];
+					valid = credentials.length == 3 && checkCredentials(credentials[1], credentials[2]);
+				} else {
+					reply(reader, writer, "334 VXNlcm5hbWU6");
+					String user = decodeBase64String(reader.readLine());
+					reply(reader, writer, "334 UGFzc3dvcmQ6");
+					valid = checkCredentials(user, decodeBase64String(reader.readLine()));
+				}
+
+				if (valid) {
+					authenticated = true;
+					authenticatedConnections.incrementAndGet();
+					reply(reader, writer, "235 Authentication successful");
+				} else {
+					reply(reader, writer, "535 Authentication failed");
+				}
+			} else if (command.equals("MAIL") && authMechanisms != null && !authenticated) {
+				reply(reader, writer, "530 Authentication required");
+			} else if (command.equals("MAIL")) {
+				from = argument(line);
+				recipients.clear();
+				reply(reader, writer, "250 OK");
+			} else if (command.equals("RCPT")) {
+				String recipient = argument(line);
+				if (from == null) {
+					reply(reader, writer, "503 MAIL first");
+				} else if (rejectedRecipients.contains(recipient)) {
+					reply(reader, writer, "550 No such user");
+				} else {
+					recipients.add(recipient);
+					reply(reader, writer, "250 OK");
+				}
+			} else if (command.equals("DATA")) {
+				if (recipients.isEmpty()) {
+					reply(reader, writer, "554 No valid recipients");
+					continue;
+				}
+
+				reply(reader, writer, "354 End data with <CR><LF>.<CR><LF>");
+
+				StringBuilder data = new StringBuilder();
+				while ((line = reader.readLine()) != null && !line.equals(".")) {
+					data.append(line.startsWith(".") ? line.substring(1) : line).append("\r\n");
+				}
+
+				messages.add(new ReceivedMessage(from, new ArrayList<String>(recipients), data.toString()));
+				from = null;
+				recipients.clear();
+				reply(reader, writer, "250 OK");
+			} else if (command.equals("RSET")) {
+				from = null;
+				recipients.clear();
+				reply(reader, writer, "250 OK");
+			} else if (command.equals("QUIT")) {
+				reply(reader, writer, "221 Bye");
+				writer.flush();
+				return;
+			} else {
+				reply(reader, writer, "500 Unknown command");
+			}
+		}
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	public List<ReceivedMessage> getMessages() {
+		return new ArrayList<ReceivedMessage>(messages);
+	}
+
+	public int getAcceptedConnectionCount() {
+		return acceptedConnections.get();
+	}
+
+	public int getEncryptedConnectionCount() {
+		return encryptedConnections.get();
+	}
+
+	public int getAuthenticatedConnectionCount() {
+		return authenticatedConnections.get();
+	}
+
+	/**
+	 * Advertises the STARTTLS extension and encrypts the connections by the
+	 * given context.
+	 */
+	public void enableStartTls(SSLContext sslContext) {
+		this.sslContext = sslContext;
+	}
+
+	/**
+	 * Advertises the given AUTH mechanisms (PLAIN and/or LOGIN) and requires
+	 * the clients to authenticate with the given credentials.
+	 */
+	public void requireAuthentication(String mechanisms, String userName, String password) {
+		this.authMechanisms = mechanisms;
+		this.userName = userName;
+		this.password = password;
+	}
+
+	public void rejectRecipient(String address) {
+		rejectedRecipients.add(address);
+	}
+
+	/**
+	 * Closes all client connections, like a server closing idle connections.
+	 */
+	public void disconnectAll() throws IOException {
+		for (Socket socket : openSockets) {
+			socket.close();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		serverSocket.close();
+		disconnectAll();
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Starts the server on a free port of the loopback interface.
+	 *
+	 * @param pipelining
+	 *            whether the PIPELINING extension is advertised
+	 * @param roundTripMillis
+	 *            simulated network round trip time
+	 */
+	public TestSmtpServer(boolean pipelining, long roundTripMillis) throws IOException {
+		this.pipelining = pipelining;
+		this.roundTripMillis = roundTripMillis;
+		this.serverSocket = new ServerSocket(0, 100, InetAddress.getLoopbackAddress());
+		this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "test-smtp-server");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				accept();
+			}
+		});
+	}
+
+}